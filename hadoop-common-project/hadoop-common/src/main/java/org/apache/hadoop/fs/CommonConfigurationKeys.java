@@ -78,6 +78,19 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final int IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_DEFAULT =
       100;
 
+  /** Whether socket readers read requests into pooled direct buffers. */
+  public static final String IPC_SERVER_RPC_READ_POOLED_BUFFERS_KEY =
+      "ipc.server.read.pooled-buffers.enabled";
+  /** Default value for IPC_SERVER_RPC_READ_POOLED_BUFFERS_KEY. */
+  public static final boolean IPC_SERVER_RPC_READ_POOLED_BUFFERS_DEFAULT =
+      false;
+  /** Largest request read into a pooled buffer. */
+  public static final String IPC_SERVER_RPC_READ_POOLED_BUFFERS_MAX_SIZE_KEY =
+      "ipc.server.read.pooled-buffers.max-request-size";
+  /** Default value for IPC_SERVER_RPC_READ_POOLED_BUFFERS_MAX_SIZE_KEY. */
+  public static final int IPC_SERVER_RPC_READ_POOLED_BUFFERS_MAX_SIZE_DEFAULT =
+      8 * 1024;
+
   /** Max request size a server will accept. */
   public static final String IPC_MAXIMUM_DATA_LENGTH =
       "ipc.maximum.data.length";
@@ -117,6 +130,10 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Callqueue subqueue capacity weights. */
   public static final String IPC_CALLQUEUE_CAPACITY_WEIGHTS_KEY =
       "callqueue.capacity.weights";
+  /** Number of lock-free shards per callqueue subqueue, 0 to disable. */
+  public static final String IPC_CALLQUEUE_SUBQUEUE_SHARDS_KEY =
+      "callqueue.subqueue.shards";
+  public static final int IPC_CALLQUEUE_SUBQUEUE_SHARDS_DEFAULT = 0;
 
   /**
    * IPC scheduler priority levels.
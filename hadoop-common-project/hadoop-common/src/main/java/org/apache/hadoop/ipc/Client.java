@@ -113,6 +113,27 @@ protected Boolean initialValue() {
     return (AsyncGet<T, IOException>) ASYNC_RPC_RESPONSE.get();
   }
 
+  /**
+   * Get the response of the last call made in asynchronous mode by the
+   * current thread as a future, instead of {@link #getAsyncRpcResponse()}.
+   * The future is completed by the connection thread that receives the
+   * response, so dependent stages that do more than trivial work should run
+   * on their own executor.
+   *
+   * @param <T> the type of the response.
+   * @return the future of the rpc response.
+   */
+  @SuppressWarnings("unchecked")
+  @Unstable
+  public static <T extends Writable> CompletableFuture<T>
+      getAsyncRpcResponseFuture() {
+    return (CompletableFuture<T>) getAsyncCallResponse().toFuture();
+  }
+
+  static AsyncCallResponse getAsyncCallResponse() {
+    return (AsyncCallResponse) ASYNC_RPC_RESPONSE.get();
+  }
+
   /**
    * Set call id and retry count for the next call.
    * @param cid input cid.
@@ -283,6 +304,7 @@ static class Call {
     boolean done;               // true when call is done
     private final Object externalHandler;
     private AlignmentContext alignmentContext;
+    private Runnable completionCallback;
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -322,6 +344,24 @@ protected synchronized void callComplete() {
           externalHandler.notify();
         }
       }
+
+      if (completionCallback != null) {
+        completionCallback.run();
+      }
+    }
+
+    /**
+     * Set a callback to run once the call is complete, right away if it is
+     * already complete. The callback runs on the thread completing the call
+     * and must not block.
+     *
+     * @param callback callback to run.
+     */
+    synchronized void setCompletionCallback(Runnable callback) {
+      this.completionCallback = callback;
+      if (done) {
+        callback.run();
+      }
     }
 
     /**
@@ -1495,36 +1535,7 @@ Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
     }
 
     if (isAsynchronousMode()) {
-      final AsyncGet<Writable, IOException> asyncGet
-          = new AsyncGet<Writable, IOException>() {
-        @Override
-        public Writable get(long timeout, TimeUnit unit)
-            throws IOException, TimeoutException{
-          boolean done = true;
-          try {
-            final Writable w = getRpcResponse(call, connection, timeout, unit);
-            if (w == null) {
-              done = false;
-              throw new TimeoutException(call + " timed out "
-                  + timeout + " " + unit);
-            }
-            return w;
-          } finally {
-            if (done) {
-              releaseAsyncCall();
-            }
-          }
-        }
-
-        @Override
-        public boolean isDone() {
-          synchronized (call) {
-            return call.done;
-          }
-        }
-      };
-
-      ASYNC_RPC_RESPONSE.set(asyncGet);
+      ASYNC_RPC_RESPONSE.set(new AsyncCallResponse(call, connection));
       return null;
     } else {
       return getRpcResponse(call, connection, -1, null);
@@ -1558,6 +1569,76 @@ private void releaseAsyncCall() {
     asyncCallCounter.decrementAndGet();
   }
 
+  /**
+   * The response of a call made in asynchronous mode. It is either read
+   * with {@link #get(long, TimeUnit)} or through a future, and the call is
+   * released once its response is read.
+   */
+  final class AsyncCallResponse
+      implements AsyncGet<Writable, IOException> {
+    private final Call call;
+    private final Connection connection;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private AsyncCallResponse(Call call, Connection connection) {
+      this.call = call;
+      this.connection = connection;
+    }
+
+    @Override
+    public Writable get(long timeout, TimeUnit unit)
+        throws IOException, TimeoutException {
+      boolean done = true;
+      try {
+        final Writable w = getRpcResponse(call, connection, timeout, unit);
+        if (w == null) {
+          done = false;
+          throw new TimeoutException(call + " timed out "
+              + timeout + " " + unit);
+        }
+        return w;
+      } finally {
+        if (done) {
+          release();
+        }
+      }
+    }
+
+    @Override
+    public boolean isDone() {
+      synchronized (call) {
+        return call.done;
+      }
+    }
+
+    CompletableFuture<Writable> toFuture() {
+      final CompletableFuture<Writable> future = new CompletableFuture<>();
+      call.setCompletionCallback(() -> {
+        Writable response = null;
+        IOException error = null;
+        try {
+          response = getRpcResponse(call, connection, 0, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+          error = e;
+        }
+        // Release the call before the caller can see the response.
+        release();
+        if (error != null) {
+          future.completeExceptionally(error);
+        } else {
+          future.complete(response);
+        }
+      });
+      return future;
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        releaseAsyncCall();
+      }
+    }
+  }
+
   @VisibleForTesting
   int getAsyncCallCount() {
     return asyncCallCounter.get();
@@ -54,6 +54,7 @@
 import org.apache.hadoop.metrics2.MetricsSource;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.util.HeavyHitters;
 import org.apache.hadoop.metrics2.util.MBeans;
 import org.apache.hadoop.metrics2.util.Metrics2Util.NameValuePair;
 import org.apache.hadoop.metrics2.util.Metrics2Util.TopN;
@@ -131,6 +132,19 @@ public class DecayRpcScheduler implements RpcScheduler,
   public static final Boolean
       IPC_DECAYSCHEDULER_BACKOFF_RESPONSETIME_ENABLE_DEFAULT = false;
 
+  // Decay the costs by weighing new calls more instead of sweeping all the
+  // stored costs every period
+  public static final String IPC_DECAYSCHEDULER_INCREMENTAL_DECAY_ENABLE_KEY =
+      "decay-scheduler.incremental-decay.enable";
+  public static final boolean
+      IPC_DECAYSCHEDULER_INCREMENTAL_DECAY_ENABLE_DEFAULT = false;
+
+  // Bound the number of callers whose costs are tracked, evicting the
+  // lightest callers first. 0 tracks all callers.
+  public static final String IPC_DECAYSCHEDULER_MAX_TRACKED_CALLERS_KEY =
+      "decay-scheduler.max.tracked.callers";
+  public static final int IPC_DECAYSCHEDULER_MAX_TRACKED_CALLERS_DEFAULT = 0;
+
   // Specifies the average response time (ms) thresholds of each
   // level to trigger backoff
   public static final String
@@ -153,6 +167,11 @@ public class DecayRpcScheduler implements RpcScheduler,
   // idx 1 for the raw call cost
   private final ConcurrentHashMap<Object, List<AtomicLong>> callCosts =
       new ConcurrentHashMap<Object, List<AtomicLong>>();
+  // When the number of tracked callers is bounded, the decayed costs of the
+  // callers as of the last decay sweep. A new caller replaces the caller
+  // with the smallest cost in callCosts. Callers are only added to callCosts
+  // while holding its lock, so that the decay sweep can rebuild it.
+  private final HeavyHitters<Object> trackedCallers;
 
   // Should be the sum of all AtomicLongs in decayed callCosts except
   // service-user.
@@ -185,6 +204,13 @@ public class DecayRpcScheduler implements RpcScheduler,
   // Tune the behavior of the scheduler
   private final long decayPeriodMillis; // How long between each tick
   private final double decayFactor; // nextCost = currentCost * decayFactor
+  // With incremental decay, the decayed costs and their totals are stored
+  // multiplied by costWeight, which grows by 1 / decayFactor every period.
+  // The stored costs are only swept and rescaled once it reaches
+  // MAX_COST_WEIGHT.
+  private final boolean incrementalDecay;
+  private volatile double costWeight = 1.0;
+  private static final double MAX_COST_WEIGHT = 1 << 10;
   private final int numLevels;
   private final double[] thresholds;
   private final IdentityProvider identityProvider;
@@ -242,6 +268,9 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     this.namespace = ns;
     this.decayFactor = parseDecayFactor(ns, conf);
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
+    this.incrementalDecay = conf.getBoolean(ns + "." +
+        IPC_DECAYSCHEDULER_INCREMENTAL_DECAY_ENABLE_KEY,
+        IPC_DECAYSCHEDULER_INCREMENTAL_DECAY_ENABLE_DEFAULT);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
     this.costProvider = this.parseCostProvider(ns, conf);
     this.thresholds = parseThresholds(ns, conf, numLevels);
@@ -250,6 +279,13 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     this.backOffResponseTimeThresholds =
         parseBackOffResponseTimeThreshold(ns, conf, numLevels);
     this.serviceUserNames = this.parseServiceUserNames(ns, conf);
+    int maxTrackedCallers = conf.getInt(ns + "." +
+        IPC_DECAYSCHEDULER_MAX_TRACKED_CALLERS_KEY,
+        IPC_DECAYSCHEDULER_MAX_TRACKED_CALLERS_DEFAULT);
+    Preconditions.checkArgument(maxTrackedCallers >= 0,
+        "the maximum number of tracked callers must not be negative");
+    this.trackedCallers = maxTrackedCallers > 0 ?
+        new HeavyHitters<>(maxTrackedCallers) : null;
 
     // Setup response time metrics
     responseTimeTotalInCurrWindow = new AtomicLongArray(numLevels);
@@ -479,6 +515,18 @@ private static Boolean parseBackOffByResponseTimeEnabled(String ns,
   private void decayCurrentCosts() {
     LOG.debug("Start to decay current costs.");
     try {
+      if (incrementalDecay) {
+        double nextCostWeight = costWeight / decayFactor;
+        if (nextCostWeight < MAX_COST_WEIGHT) {
+          // Weigh the new costs more instead of decaying the stored ones
+          costWeight = nextCostWeight;
+          updateAverageResponseTime(true);
+          return;
+        }
+      }
+      // Rescale the stored costs to a weight of 1 while decaying them
+      final double scale = decayFactor / costWeight;
+      costWeight = 1.0;
       long totalDecayedCost = 0;
       long totalRawCost = 0;
       long totalServiceUserDecayedCost = 0;
@@ -494,7 +542,7 @@ private void decayCurrentCosts() {
 
         // Compute the next value by reducing it by the decayFactor
         long currentValue = decayedCost.get();
-        long nextValue = (long) (currentValue * decayFactor);
+        long nextValue = (long) (currentValue * scale);
         if (isServiceUser((String) entry.getKey())) {
           totalServiceUserRawCost += rawCost.get();
           totalServiceUserDecayedCost += nextValue;
@@ -517,6 +565,10 @@ private void decayCurrentCosts() {
         }
       }
 
+      if (trackedCallers != null) {
+        updateTrackedCallers();
+      }
+
       // Update the total so that we remain in sync
       totalDecayedCallCost.set(totalDecayedCost);
       totalRawCallCost.set(totalRawCost);
@@ -539,6 +591,22 @@ private void decayCurrentCosts() {
     }
   }
 
+  /**
+   * Refresh the tracked callers with the decayed costs in callCosts.
+   */
+  private void updateTrackedCallers() {
+    synchronized (trackedCallers) {
+      trackedCallers.clear();
+      for (Map.Entry<Object, List<AtomicLong>> entry : callCosts.entrySet()) {
+        Object evicted = trackedCallers.add(entry.getKey(),
+            entry.getValue().get(0).get());
+        if (evicted != null) {
+          callCosts.remove(evicted);
+        }
+      }
+    }
+  }
+
   /**
    * Update the scheduleCache to match current conditions in callCosts.
    */
@@ -577,18 +645,22 @@ private void addCost(Object identity, long costDelta) {
       cost.add(new AtomicLong(0));
 
       // Put it in, or get the AtomicInteger that was put in by another thread
-      List<AtomicLong> otherCost = callCosts.putIfAbsent(identity, cost);
+      List<AtomicLong> otherCost = trackedCallers == null ?
+          callCosts.putIfAbsent(identity, cost) : putTrackedCost(identity, cost);
       if (otherCost != null) {
         cost = otherCost;
       }
     }
 
+    long decayedCostDelta = incrementalDecay ?
+        Math.round(costDelta * costWeight) : costDelta;
+
     // Update the total
     if (!isServiceUser((String) identity)) {
-      totalDecayedCallCost.getAndAdd(costDelta);
+      totalDecayedCallCost.getAndAdd(decayedCostDelta);
       totalRawCallCost.getAndAdd(costDelta);
     } else {
-      totalServiceUserDecayedCallCost.getAndAdd(costDelta);
+      totalServiceUserDecayedCallCost.getAndAdd(decayedCostDelta);
       totalServiceUserRawCallCost.getAndAdd(costDelta);
     }
 
@@ -596,7 +668,35 @@ private void addCost(Object identity, long costDelta) {
     // been clobbered from callCosts. Nonetheless, we return what
     // we have.
     cost.get(1).getAndAdd(costDelta);
-    cost.get(0).getAndAdd(costDelta);
+    cost.get(0).getAndAdd(decayedCostDelta);
+  }
+
+  /**
+   * Put the costs of a new caller in callCosts, making room for it by
+   * dropping the lightest caller.
+   *
+   * @return the costs of the caller put in by another thread, or null
+   */
+  private List<AtomicLong> putTrackedCost(Object identity,
+      List<AtomicLong> cost) {
+    synchronized (trackedCallers) {
+      List<AtomicLong> otherCost = callCosts.putIfAbsent(identity, cost);
+      if (otherCost == null) {
+        Object evicted = trackedCallers.add(identity, 0);
+        if (evicted != null) {
+          LOG.debug("Stop tracking the cost of caller {}.", evicted);
+          callCosts.remove(evicted);
+        }
+      }
+      return otherCost;
+    }
+  }
+
+  /**
+   * Convert a stored decayed cost to its actual value.
+   */
+  private long unscaledCost(long storedCost) {
+    return incrementalDecay ? (long) (storedCost / costWeight) : storedCost;
   }
 
   /**
@@ -640,9 +740,10 @@ private int computePriorityLevel(long cost, Object identity) {
    * @return integer scheduling decision from 0 to numLevels - 1
    */
   private int cachedOrComputedPriorityLevel(Object identity) {
-    // Try the cache
+    // Try the cache, which is only refreshed on a full decay sweep when
+    // decaying incrementally
     Map<Object, Integer> scheduleCache = scheduleCacheRef.get();
-    if (scheduleCache != null) {
+    if (scheduleCache != null && !incrementalDecay) {
       Integer priority = scheduleCache.get(identity);
       if (priority != null) {
         LOG.debug("Cache priority for: {} with priority: {}", identity,
@@ -824,12 +925,19 @@ void forceDecay() {
     decayCurrentCosts();
   }
 
+  @VisibleForTesting
+  Set<Object> getTrackedCallers() {
+    return trackedCallers == null ? Collections.emptySet()
+        : trackedCallers.getCounts().keySet();
+  }
+
   @VisibleForTesting
   Map<Object, Long> getCallCostSnapshot() {
     HashMap<Object, Long> snapshot = new HashMap<Object, Long>();
 
     for (Map.Entry<Object, List<AtomicLong>> entry : callCosts.entrySet()) {
-      snapshot.put(entry.getKey(), entry.getValue().get(0).get());
+      snapshot.put(entry.getKey(),
+          unscaledCost(entry.getValue().get(0).get()));
     }
 
     return Collections.unmodifiableMap(snapshot);
@@ -837,7 +945,7 @@ Map<Object, Long> getCallCostSnapshot() {
 
   @VisibleForTesting
   long getTotalCallSnapshot() {
-    return totalDecayedCallCost.get();
+    return unscaledCost(totalDecayedCallCost.get());
   }
 
   /**
@@ -974,7 +1082,7 @@ public int getUniqueIdentityCount() {
   }
 
   public long getTotalCallVolume() {
-    return totalDecayedCallCost.get();
+    return unscaledCost(totalDecayedCallCost.get());
   }
 
   public long getTotalRawCallVolume() {
@@ -982,7 +1090,7 @@ public long getTotalRawCallVolume() {
   }
 
   public long getTotalServiceUserCallVolume() {
-    return totalServiceUserDecayedCallCost.get();
+    return unscaledCost(totalServiceUserDecayedCallCost.get());
   }
 
   public long getTotalServiceUserRawCallVolume() {
@@ -1139,7 +1247,7 @@ private Map<Object, Long> getDecayedCallCosts() {
     while (it.hasNext()) {
       Map.Entry<Object, List<AtomicLong>> entry = it.next();
       Object user = entry.getKey();
-      Long decayedCost = entry.getValue().get(0).get();
+      Long decayedCost = unscaledCost(entry.getValue().get(0).get());
       if (decayedCost > 0) {
         decayedCallCosts.put(user, decayedCost);
       }
@@ -35,6 +35,7 @@
 import org.apache.hadoop.classification.VisibleForTesting;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
 import org.apache.hadoop.metrics2.MetricsCollector;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
@@ -114,7 +115,9 @@ public FairCallQueue(int priorityLevels, int capacity, String ns, boolean server
    * @param conf the configuration to read from
    * Notes: Each sub-queue has a capacity of `capacity / numSubqueues`.
    * The first or the highest priority sub-queue has an excess capacity
-   * of `capacity % numSubqueues`
+   * of `capacity % numSubqueues`. If
+   * {@link CommonConfigurationKeys#IPC_CALLQUEUE_SUBQUEUE_SHARDS_KEY} is set,
+   * each sub-queue is a {@link ShardedBlockingQueue} with that many shards.
    */
   public FairCallQueue(int priorityLevels, int capacity, String ns,
       int[] capacityWeights, boolean serverFailOverEnabled, Configuration conf) {
@@ -135,12 +138,20 @@ public FairCallQueue(int priorityLevels, int capacity, String ns,
     }
     int residueCapacity = capacity % totalWeights;
     int unitCapacity = capacity / totalWeights;
+    int numShards = conf.getInt(ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_SUBQUEUE_SHARDS_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_SUBQUEUE_SHARDS_DEFAULT);
+    if (numShards > 0) {
+      LOG.info("FairCallQueue sub-queues use " + numShards + " shards");
+    }
     int queueCapacity;
     for(int i=0; i < numQueues; i++) {
       queueCapacity = unitCapacity * capacityWeights[i];
       if (i == 0) {
-        this.queues.add(new LinkedBlockingQueue<E>(
-            queueCapacity + residueCapacity));
+        queueCapacity += residueCapacity;
+      }
+      if (numShards > 0) {
+        this.queues.add(new ShardedBlockingQueue<E>(numShards, queueCapacity));
       } else {
         this.queues.add(new LinkedBlockingQueue<E>(queueCapacity));
       }
@@ -526,6 +526,17 @@ RequestHeaderProto getRequestHeader() throws IOException {
       return requestHeader;
     }
 
+    @Override
+    void detach() {
+      try {
+        // keep the header for toString once the buffer is reused.
+        getRequestHeader();
+      } catch (IOException e) {
+        // the request could not be decoded, so it was never served.
+      }
+      super.detach();
+    }
+
     @Override
     public void writeTo(ResponseBuffer out) throws IOException {
       requestHeader.writeDelimitedTo(out);
@@ -45,11 +45,15 @@
 
 import javax.net.SocketFactory;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -83,6 +87,21 @@ public static AsyncGet<Message, Exception> getAsyncReturnMessage() {
     return ASYNC_RETURN_MESSAGE.get();
   }
 
+  /**
+   * Get the return message of the last call made in asynchronous mode by
+   * the current thread as a future, instead of
+   * {@link #getAsyncReturnMessage()}. The future completes on the connection
+   * thread that receives the response, see
+   * {@link Client#getAsyncRpcResponseFuture()}.
+   *
+   * @return the future of the return message.
+   */
+  @Unstable
+  public static CompletableFuture<Message> getAsyncReturnMessageFuture() {
+    return ((Invoker.AsyncReturnMessage) ASYNC_RETURN_MESSAGE.get())
+        .toFuture();
+  }
+
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout) throws IOException {
@@ -282,27 +301,46 @@ public Message invoke(Object proxy, final Method method, Object[] args)
       }
 
       if (Client.isAsynchronousMode()) {
-        final AsyncGet<RpcWritable.Buffer, IOException> arr
-            = Client.getAsyncRpcResponse();
-        final AsyncGet<Message, Exception> asyncGet =
-            new AsyncGet<Message, Exception>() {
-              @Override
-              public Message get(long timeout, TimeUnit unit) throws Exception {
-                return getReturnMessage(method, arr.get(timeout, unit));
-              }
-
-              @Override
-              public boolean isDone() {
-            return arr.isDone();
-          }
-        };
-        ASYNC_RETURN_MESSAGE.set(asyncGet);
+        ASYNC_RETURN_MESSAGE.set(new AsyncReturnMessage(method));
         return null;
       } else {
         return getReturnMessage(method, val);
       }
     }
 
+    /** The return message of a call made in asynchronous mode. */
+    private final class AsyncReturnMessage
+        implements AsyncGet<Message, Exception> {
+      private final Method method;
+      private final Client.AsyncCallResponse response =
+          Client.getAsyncCallResponse();
+
+      private AsyncReturnMessage(Method method) {
+        this.method = method;
+      }
+
+      @Override
+      public Message get(long timeout, TimeUnit unit) throws Exception {
+        return getReturnMessage(method,
+            (RpcWritable.Buffer) response.get(timeout, unit));
+      }
+
+      @Override
+      public boolean isDone() {
+        return response.isDone();
+      }
+
+      CompletableFuture<Message> toFuture() {
+        return response.toFuture().thenApply(w -> {
+          try {
+            return getReturnMessage(method, (RpcWritable.Buffer) w);
+          } catch (ServiceException e) {
+            throw new CompletionException(e.getCause());
+          }
+        });
+      }
+    }
+
     protected Writable constructRpcRequest(Method method, Message theRequest) {
       RequestHeaderProto rpcRequestHeader = constructRpcRequestHeader(method);
       return new RpcProtobufRequest(rpcRequestHeader, theRequest);
@@ -457,6 +495,46 @@ public static ProtobufRpcEngineCallback2 registerForDeferredResponse2() {
       return callback;
     }
 
+    /**
+     * Complete the current call from a future instead of from the value
+     * returned by the server method. Must be called from the handler thread
+     * serving the call; the server method should return the result of this
+     * method. The handler is released as soon as the server method returns
+     * and the response is sent when the future completes.
+     *
+     * A {@link ServiceException}, {@link CompletionException} or
+     * {@link ExecutionException} completing the future is unwrapped to its
+     * cause, the same as for an exception thrown by a blocking method.
+     *
+     * @param future completes with the response message of the call.
+     * @param <T> type of the response message.
+     * @return null, to be returned by the server method.
+     */
+    @InterfaceStability.Unstable
+    public static <T extends Message> T deferResponse(
+        CompletableFuture<T> future) {
+      final ProtobufRpcEngineCallback2 callback =
+          registerForDeferredResponse2();
+      future.whenComplete((response, t) -> {
+        if (t == null) {
+          callback.setResponse(response);
+        } else {
+          callback.error(unwrapDeferredException(t));
+        }
+      });
+      return null;
+    }
+
+    private static Throwable unwrapDeferredException(Throwable t) {
+      while ((t instanceof CompletionException
+          || t instanceof ExecutionException
+          || t instanceof UncheckedIOException
+          || t instanceof ServiceException) && t.getCause() != null) {
+        t = t.getCause();
+      }
+      return t;
+    }
+
     /**
      * Construct an RPC server.
      *
@@ -664,6 +742,17 @@ RequestHeaderProto getRequestHeader() throws IOException {
       return requestHeader;
     }
 
+    @Override
+    void detach() {
+      try {
+        // keep the header for toString once the buffer is reused.
+        getRequestHeader();
+      } catch (IOException e) {
+        // the request could not be decoded, so it was never served.
+      }
+      super.detach();
+    }
+
     @Override
     public void writeTo(ResponseBuffer out) throws IOException {
       requestHeader.writeDelimitedTo(out);
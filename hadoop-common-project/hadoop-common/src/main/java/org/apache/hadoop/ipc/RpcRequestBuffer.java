@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.io.ByteBufferPool;
+
+/**
+ * A pooled buffer holding one RPC request as read from the socket. The
+ * reader and the call decoded from it each hold a reference, and the buffer
+ * goes back to the pool once both are done, so the request is decoded
+ * straight from the buffer without copying it to the heap.
+ */
+final class RpcRequestBuffer {
+  private static final int MIN_CAPACITY = 512;
+
+  private final ByteBufferPool pool;
+  private final ByteBuffer buffer;
+  private final AtomicInteger refCount = new AtomicInteger(1);
+
+  private RpcRequestBuffer(ByteBufferPool pool, ByteBuffer buffer) {
+    this.pool = pool;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Get a direct buffer of exactly the given length from the pool, with one
+   * reference held by the caller.
+   */
+  static RpcRequestBuffer allocate(ByteBufferPool pool, int length) {
+    // round up so buffers are reused across requests of similar sizes
+    int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(
+        Math.max(1, length - 1)) << 1);
+    ByteBuffer buffer = pool.getBuffer(true, capacity);
+    buffer.limit(length);
+    return new RpcRequestBuffer(pool, buffer);
+  }
+
+  ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  void retain() {
+    if (refCount.getAndIncrement() <= 0) {
+      throw new IllegalStateException("RPC request buffer already released");
+    }
+  }
+
+  void release() {
+    int count = refCount.decrementAndGet();
+    if (count == 0) {
+      pool.putBuffer(buffer);
+    } else if (count < 0) {
+      throw new IllegalStateException("RPC request buffer released twice");
+    }
+  }
+
+  int refCount() {
+    return refCount.get();
+  }
+}
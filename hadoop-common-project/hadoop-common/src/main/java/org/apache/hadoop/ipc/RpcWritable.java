@@ -83,8 +83,16 @@ public void writeTo(ResponseBuffer out) throws IOException {
     @Override
     <T> T readFrom(ByteBuffer bb) throws IOException {
       // create a stream that may consume up to the entire ByteBuffer.
-      DataInputStream in = new DataInputStream(new ByteArrayInputStream(
-          bb.array(), bb.position() + bb.arrayOffset(), bb.remaining()));
+      final DataInputStream in;
+      if (bb.hasArray()) {
+        in = new DataInputStream(new ByteArrayInputStream(
+            bb.array(), bb.position() + bb.arrayOffset(), bb.remaining()));
+      } else {
+        // writables can only be read from a stream, so copy a direct buffer.
+        byte[] bytes = new byte[bb.remaining()];
+        bb.duplicate().get(bytes);
+        in = new DataInputStream(new ByteArrayInputStream(bytes));
+      }
       try {
         writable.readFields(in);
       } finally {
@@ -121,9 +129,11 @@ <T> T readFrom(ByteBuffer bb) throws IOException {
       // using the parser with a byte[]-backed coded input stream is the
       // most efficient way to deserialize a protobuf.  it has a direct
       // path to the PB ctor that doesn't create multi-layered streams
-      // that internally buffer.
-      CodedInputStream cis = CodedInputStream.newInstance(
-          bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      // that internally buffer.  a direct buffer is parsed in place too.
+      CodedInputStream cis = bb.hasArray()
+          ? CodedInputStream.newInstance(
+              bb.array(), bb.position() + bb.arrayOffset(), bb.remaining())
+          : CodedInputStream.newInstance(bb);
       try {
         cis.pushLimit(cis.readRawVarint32());
         message = message.getParserForType().parseFrom(cis);
@@ -156,10 +166,25 @@ ByteBuffer getByteBuffer() {
       return bb;
     }
 
+    /**
+     * Drop the backing buffer before it is reused for another request.
+     * Anything not decoded by then can no longer be read.
+     */
+    void detach() {
+      bb = null;
+    }
+
     @Override
     void writeTo(ResponseBuffer out) throws IOException {
       out.ensureCapacity(bb.remaining());
-      out.write(bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      if (bb.hasArray()) {
+        out.write(bb.array(), bb.position() + bb.arrayOffset(),
+            bb.remaining());
+      } else {
+        byte[] bytes = new byte[bb.remaining()];
+        bb.duplicate().get(bytes);
+        out.write(bytes, 0, bytes.length);
+      }
     }
 
     @SuppressWarnings("unchecked")
@@ -86,6 +86,8 @@
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.ha.HealthCheckFailedException;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
@@ -494,6 +496,9 @@ protected ResponseBuffer initialValue() {
   };
   private int socketSendBufferSize;
   private final int maxDataLength;
+  // pool of direct buffers requests are read into, null if disabled
+  private final ByteBufferPool requestBufferPool;
+  private final int maxPooledRequestSize;
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
 
   volatile private boolean running = true;         // true while server runs
@@ -1158,6 +1163,13 @@ public boolean isResponseDeferred() {
       return this.deferredResponse;
     }
 
+    /**
+     * Release the buffer the request was decoded from, once the call has
+     * been served or dropped.
+     */
+    void releaseRequestBuffer() {
+    }
+
     public void setDeferredResponse(Writable response) {
     }
 
@@ -1177,6 +1189,8 @@ private class RpcCall extends Call {
 
     private ResponseParams responseParams; // the response params
     private Writable rv;                   // the byte response
+    // pooled buffer rpcRequest is decoded from, until the call is served
+    private RpcRequestBuffer requestBuffer;
 
     RpcCall(RpcCall call) {
       super(call);
@@ -1209,6 +1223,22 @@ boolean isOpen() {
       return connection.channel.isOpen();
     }
 
+    void setRequestBuffer(RpcRequestBuffer buffer) {
+      buffer.retain();
+      this.requestBuffer = buffer;
+    }
+
+    @Override
+    void releaseRequestBuffer() {
+      if (requestBuffer != null) {
+        if (rpcRequest instanceof RpcWritable.Buffer) {
+          ((RpcWritable.Buffer) rpcRequest).detach();
+        }
+        requestBuffer.release();
+        requestBuffer = null;
+      }
+    }
+
     void setResponseFields(Writable returnValue,
                            ResponseParams responseParams) {
       this.rv = returnValue;
@@ -2012,6 +2042,8 @@ public class Connection {
 
     private SocketChannel channel;
     private ByteBuffer data;
+    // pooled buffer backing data, if any
+    private RpcRequestBuffer requestBuffer;
     private final ByteBuffer dataLengthBuffer;
     private LinkedList<RpcCall> responseQueue;
     // number of outstanding rpcs
@@ -2541,7 +2573,13 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLength = dataLengthBuffer.getInt();
           checkDataLength(dataLength);
           // Set buffer for reading EXACTLY the RPC-packet length and no more.
-          data = ByteBuffer.allocate(dataLength);
+          if (requestBufferPool != null && dataLength <= maxPooledRequestSize) {
+            requestBuffer =
+                RpcRequestBuffer.allocate(requestBufferPool, dataLength);
+            data = requestBuffer.getBuffer();
+          } else {
+            data = ByteBuffer.allocate(dataLength);
+          }
         }
         // Now read the RPC packet
         count = channelRead(channel, data);
@@ -2552,7 +2590,15 @@ public int readAndProcess() throws IOException, InterruptedException {
           ByteBuffer requestData = data;
           data = null; // null out in case processOneRpc throws.
           boolean isHeaderRead = connectionContextRead;
-          processOneRpc(requestData);
+          try {
+            processOneRpc(requestData);
+          } finally {
+            // calls queued from the buffer hold their own reference
+            if (requestBuffer != null) {
+              requestBuffer.release();
+              requestBuffer = null;
+            }
+          }
           // the last rpc-request we processed could have simply been the
           // connectionContext; if so continue to read the first RPC.
           if (!isHeaderRead) {
@@ -2927,6 +2973,9 @@ private void processRpcRequest(RpcRequestHeaderProto header,
           header.getRetryCount(), rpcRequest,
           ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), span, callerContext);
+      if (requestBuffer != null) {
+        call.setRequestBuffer(requestBuffer);
+      }
 
       // Save the priority level assignment by the scheduler
       call.setPriorityLevel(callQueue.getPriorityLevel(call));
@@ -2962,8 +3011,10 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       try {
         internalQueueCall(call);
       } catch (RpcServerException rse) {
+        call.releaseRequestBuffer();
         throw rse;
       } catch (IOException ioe) {
+        call.releaseRequestBuffer();
         throw new FatalRpcServerException(
             RpcErrorCodeProto.ERROR_RPC_SERVER, ioe);
       }
@@ -3224,6 +3275,7 @@ public void run() {
                 call, (call.isResponseDeferred() ? ", deferred" : ""),
                 call.getDetailedMetricsName(), call.getRemoteUser(),
                 call.getProcessingDetails());
+            call.releaseRequestBuffer();
           }
         }
       }
@@ -3237,6 +3289,7 @@ private void requeueCall(Call call)
         rpcMetrics.incrRequeueCalls();
       } catch (RpcServerException rse) {
         call.doResponse(rse.getCause(), rse.getRpcStatusProto());
+        call.releaseRequestBuffer();
       }
     }
 
@@ -3343,6 +3396,16 @@ protected Server(String bindAddress, int port,
     this.readerPendingConnectionQueue = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_DEFAULT);
+    if (conf.getBoolean(
+        CommonConfigurationKeys.IPC_SERVER_RPC_READ_POOLED_BUFFERS_KEY,
+        CommonConfigurationKeys.IPC_SERVER_RPC_READ_POOLED_BUFFERS_DEFAULT)) {
+      this.requestBufferPool = new ElasticByteBufferPool();
+    } else {
+      this.requestBufferPool = null;
+    }
+    this.maxPooledRequestSize = conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_RPC_READ_POOLED_BUFFERS_MAX_SIZE_KEY,
+        CommonConfigurationKeys.IPC_SERVER_RPC_READ_POOLED_BUFFERS_MAX_SIZE_DEFAULT);
 
     // Setup appropriate callqueue
     final String prefix = getQueueClassPrefix();
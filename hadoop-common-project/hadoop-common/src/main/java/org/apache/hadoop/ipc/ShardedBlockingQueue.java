@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+
+/**
+ * A bounded blocking queue split into lock-free shards. Each producer thread
+ * offers to its own shard first, so RPC readers do not contend on a single
+ * put lock, and consumers scan the shards starting from their own one. The
+ * capacity is split evenly among the shards; an offer falls back to the other
+ * shards when the home shard is full, so the whole capacity can be used.
+ *
+ * The queue is FIFO per shard only. The blocking methods poll with a short
+ * back-off instead of waiting on a condition; FairCallQueue only blocks on a
+ * sub-queue when all the sub-queues are full.
+ */
+class ShardedBlockingQueue<E> extends AbstractQueue<E>
+    implements BlockingQueue<E> {
+
+  private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final class Shard<E> {
+    private final ConcurrentLinkedQueue<E> queue =
+        new ConcurrentLinkedQueue<E>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    private Shard(int capacity) {
+      this.capacity = capacity;
+    }
+
+    private boolean offer(E e) {
+      while (true) {
+        int current = size.get();
+        if (current >= capacity) {
+          return false;
+        }
+        if (size.compareAndSet(current, current + 1)) {
+          queue.offer(e);
+          return true;
+        }
+      }
+    }
+
+    private E poll() {
+      E e = queue.poll();
+      if (e != null) {
+        size.decrementAndGet();
+      }
+      return e;
+    }
+  }
+
+  private final List<Shard<E>> shards;
+  private final int capacity;
+
+  ShardedBlockingQueue(int numShards, int capacity) {
+    if (numShards < 1) {
+      throw new IllegalArgumentException("Number of shards must be at " +
+          "least 1");
+    }
+    this.capacity = capacity;
+    this.shards = new ArrayList<Shard<E>>(numShards);
+    for (int i = 0; i < numShards; i++) {
+      int shardCapacity = capacity / numShards;
+      if (i == 0) {
+        shardCapacity += capacity % numShards;
+      }
+      shards.add(new Shard<E>(shardCapacity));
+    }
+  }
+
+  @VisibleForTesting
+  int getNumShards() {
+    return shards.size();
+  }
+
+  private int homeShard() {
+    return (int) (Thread.currentThread().getId() % shards.size());
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    int numShards = shards.size();
+    int home = homeShard();
+    for (int i = 0; i < numShards; i++) {
+      if (shards.get((home + i) % numShards).offer(e)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offer(e)) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      backOff();
+    }
+    return true;
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    while (!offer(e)) {
+      backOff();
+    }
+  }
+
+  @Override
+  public E poll() {
+    int numShards = shards.size();
+    int home = homeShard();
+    for (int i = 0; i < numShards; i++) {
+      E e = shards.get((home + i) % numShards).poll();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    E e;
+    while ((e = poll()) == null) {
+      if (System.nanoTime() - deadline >= 0) {
+        return null;
+      }
+      backOff();
+    }
+    return e;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    E e;
+    while ((e = poll()) == null) {
+      backOff();
+    }
+    return e;
+  }
+
+  private static void backOff() throws InterruptedException {
+    LockSupport.parkNanos(BACKOFF_NANOS);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  @Override
+  public E peek() {
+    for (Shard<E> shard : shards) {
+      E e = shard.queue.peek();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Like the other methods of this queue, size provides no strict
+   * consistency under concurrent updates.
+   */
+  @Override
+  public int size() {
+    int size = 0;
+    for (Shard<E> shard : shards) {
+      size += shard.size.get();
+    }
+    return size;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Math.max(0, capacity - size());
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    int drained = 0;
+    E e;
+    while (drained < maxElements && (e = poll()) != null) {
+      c.add(e);
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the queued elements, which does
+   * not support removal.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<E>();
+    for (Shard<E> shard : shards) {
+      snapshot.addAll(shard.queue);
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+}
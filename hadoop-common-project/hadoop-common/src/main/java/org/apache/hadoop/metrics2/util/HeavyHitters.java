@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Preconditions;
+
+/**
+ * Implementation of the Space-Saving algorithm of Metwally, Agrawal and
+ * El Abbadi for finding the heavy hitters of a stream of weighted keys in
+ * bounded memory.
+ * <p>
+ * At most {@code capacity} keys are counted. A key which is not counted
+ * replaces the key with the smallest count, and inherits its count as the
+ * error of its own count. The count of a key thus never underestimates its
+ * weight in the stream and overestimates it by at most
+ * {@code total / capacity}. Any key whose weight is more than that is
+ * guaranteed to be counted.
+ * <p>
+ * See: Metwally, Agrawal and El Abbadi "Efficient Computation of Frequent
+ * and Top-k Elements in Data Streams" in ICDT 2005
+ * <p>
+ * The counters are kept in a min-heap, so that adding a weight costs
+ * O(log capacity). This class is thread safe.
+ */
+@InterfaceAudience.Private
+public class HeavyHitters<K> {
+
+  private static final class Counter<K> {
+    private K key;
+    private long count;
+    private long error;
+    private int index;
+  }
+
+  private final int capacity;
+  private final Map<K, Counter<K>> counters;
+  private final Counter<K>[] heap;
+  private int size;
+  private long total;
+
+  /**
+   * @param capacity the maximum number of keys to count
+   */
+  @SuppressWarnings("unchecked")
+  public HeavyHitters(int capacity) {
+    Preconditions.checkArgument(capacity > 0,
+        "capacity must be positive: %s", capacity);
+    this.capacity = capacity;
+    this.counters = new HashMap<>();
+    this.heap = new Counter[capacity];
+  }
+
+  /**
+   * Add a weight to the count of a key.
+   *
+   * @param key the key
+   * @param weight the non negative weight to add
+   * @return the key which was evicted to count the given key, or null
+   */
+  public synchronized K add(K key, long weight) {
+    Preconditions.checkArgument(weight >= 0,
+        "weight must not be negative: %s", weight);
+    total += weight;
+    Counter<K> counter = counters.get(key);
+    if (counter != null) {
+      counter.count += weight;
+      siftDown(counter.index);
+      return null;
+    }
+    if (size < capacity) {
+      counter = new Counter<>();
+      counter.key = key;
+      counter.count = weight;
+      counter.index = size;
+      heap[size++] = counter;
+      counters.put(key, counter);
+      siftUp(counter.index);
+      return null;
+    }
+    // Replace the key with the smallest count.
+    counter = heap[0];
+    final K evicted = counter.key;
+    counters.remove(evicted);
+    counter.key = key;
+    counter.error = counter.count;
+    counter.count += weight;
+    counters.put(key, counter);
+    siftDown(0);
+    return evicted;
+  }
+
+  /**
+   * @return the count of the key, or 0 if it is not counted
+   */
+  public synchronized long getCount(K key) {
+    final Counter<K> counter = counters.get(key);
+    return counter == null ? 0 : counter.count;
+  }
+
+  /**
+   * @return the maximum overestimate of the count of the key
+   */
+  public synchronized long getError(K key) {
+    final Counter<K> counter = counters.get(key);
+    return counter == null ? 0 : counter.error;
+  }
+
+  /**
+   * @return the counts of all counted keys, which add up to the total.
+   */
+  public synchronized Map<K, Long> getCounts() {
+    final Map<K, Long> counts = new HashMap<>(size * 4 / 3 + 1);
+    for (int i = 0; i < size; i++) {
+      counts.put(heap[i].key, heap[i].count);
+    }
+    return counts;
+  }
+
+  /**
+   * @return the total weight added.
+   */
+  public synchronized long getTotal() {
+    return total;
+  }
+
+  /**
+   * @return the number of counted keys.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Stop counting a key.
+   * @return the count of the key, or 0 if it was not counted
+   */
+  public synchronized long remove(K key) {
+    final Counter<K> counter = counters.remove(key);
+    if (counter == null) {
+      return 0;
+    }
+    total -= counter.count;
+    final Counter<K> last = heap[--size];
+    heap[size] = null;
+    if (last != counter) {
+      heap[counter.index] = last;
+      last.index = counter.index;
+      siftUp(last.index);
+      siftDown(last.index);
+    }
+    return counter.count;
+  }
+
+  /**
+   * Multiply all counts by a factor, and stop counting the keys whose count
+   * drops to zero.
+   * @param factor the factor between 0 and 1
+   */
+  public synchronized void decay(double factor) {
+    Preconditions.checkArgument(factor >= 0 && factor <= 1,
+        "factor must be between 0 and 1: %s", factor);
+    int kept = 0;
+    total = 0;
+    for (int i = 0; i < size; i++) {
+      final Counter<K> counter = heap[i];
+      counter.count = (long) (counter.count * factor);
+      counter.error = (long) (counter.error * factor);
+      if (counter.count == 0) {
+        counters.remove(counter.key);
+        continue;
+      }
+      total += counter.count;
+      counter.index = kept;
+      heap[kept++] = counter;
+    }
+    for (int i = kept; i < size; i++) {
+      heap[i] = null;
+    }
+    size = kept;
+    // The relative order of the counts is kept, but rounding may have made
+    // equal counts out of different ones.
+    for (int i = size / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  /** Stop counting all keys. */
+  public synchronized void clear() {
+    counters.clear();
+    for (int i = 0; i < size; i++) {
+      heap[i] = null;
+    }
+    size = 0;
+    total = 0;
+  }
+
+  private void siftUp(int i) {
+    final Counter<K> counter = heap[i];
+    while (i > 0) {
+      final int parent = (i - 1) / 2;
+      if (heap[parent].count <= counter.count) {
+        break;
+      }
+      move(heap[parent], i);
+      i = parent;
+    }
+    move(counter, i);
+  }
+
+  private void siftDown(int i) {
+    final Counter<K> counter = heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+        child++;
+      }
+      if (counter.count <= heap[child].count) {
+        break;
+      }
+      move(heap[child], i);
+      i = child;
+    }
+    move(counter, i);
+  }
+
+  private void move(Counter<K> counter, int i) {
+    heap[i] = counter;
+    counter.index = i;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + "(capacity=" + capacity + ", size="
+        + size + ", total=" + total + ")";
+  }
+}
@@ -88,6 +88,7 @@ protected NetworkTopology init(InnerNode.Factory factory) {
       // again if another factory is specified.
       this.factory = factory;
       this.clusterMap = factory.newInnerNode(NodeBase.ROOT);
+      this.snapshot = null;
     }
     return this;
   }
@@ -118,6 +119,12 @@ protected NetworkTopology init(InnerNode.Factory factory) {
   /** the lock used to manage access */
   protected ReadWriteLock netlock = new ReentrantReadWriteLock(true);
 
+  /**
+   * Immutable view of the current tree used by the lock-free read paths;
+   * null when the tree has changed since it was last built.
+   */
+  private volatile Snapshot snapshot;
+
   // keeping the constructor because other components like MR still uses this.
   public NetworkTopology() {
     this.factory = InnerNodeImpl.FACTORY;
@@ -162,6 +169,8 @@ public void add(Node node) {
           depthOfAllLeaves = node.getLevel();
         }
       }
+      // an existing leaf with the same name may have been replaced
+      invalidateSnapshot();
       LOG.debug("NetworkTopology became:\n{}", this);
     } finally {
       netlock.writeLock().unlock();
@@ -233,6 +242,7 @@ public void remove(Node node) {
           numOfRacks--;
         }
         interRemoveNodeWithEmptyRack(node);
+        invalidateSnapshot();
       }
       LOG.debug("NetworkTopology became:\n{}", this);
     } finally {
@@ -247,6 +257,10 @@ public void remove(Node node) {
    */
   public boolean contains(Node node) {
     if (node == null) return false;
+    Snapshot s = getSnapshot();
+    if (s.indexOfLeaf(node) >= 0 && isCurrent(s)) {
+      return true;
+    }
     netlock.readLock().lock();
     try {
       Node parent = node.getParent();
@@ -330,6 +344,11 @@ public int getDistance(Node node1, Node node2) {
       LOG.warn("One of the nodes is a null pointer");
       return Integer.MAX_VALUE;
     }
+    Snapshot s = getSnapshot();
+    int dist = s.getDistance(node1, node2);
+    if (dist >= 0 && isCurrent(s)) {
+      return dist;
+    }
     Node n1=node1, n2=node2;
     int dis = 0;
     netlock.readLock().lock();
@@ -482,19 +501,53 @@ public Node chooseRandom(final String scope) {
    */
   public Node chooseRandom(final String scope,
       final Collection<Node> excludedNodes) {
+    if (scope.startsWith("~")) {
+      return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
+    } else {
+      return chooseRandom(scope, null, excludedNodes);
+    }
+  }
+
+  /**
+   * Randomly choose one node from <i>scope</i> but not from
+   * <i>excludedScope</i> or <i>excludedNodes</i>. The choice is made from the
+   * current {@link Snapshot} without taking {@link #netlock}; the tree is only
+   * walked under the read lock when the snapshot cannot resolve the request.
+   *
+   * @param scope range of nodes from which a node will be chosen
+   * @param excludedScope range of nodes to be excluded; can be null
+   * @param excludedNodes nodes to be excluded from; can be null
+   * @return the chosen node, or null if none can be chosen
+   */
+  protected Node chooseRandom(final String scope, String excludedScope,
+      final Collection<Node> excludedNodes) {
+    Snapshot s = getSnapshot();
+    int index = s.chooseRandom(scope, excludedScope, excludedNodes,
+        getRandom(), null);
+    // the tree may have changed while choosing, in which case the choice is
+    // made again from the tree so that a removed node is never returned
+    if (isCurrent(s)) {
+      if (index == Snapshot.NONE) {
+        LOG.debug("chooseRandom returning null");
+        return null;
+      }
+      if (index >= 0) {
+        Node ret = s.getLeaf(index);
+        if (excludedNodes == null || !excludedNodes.contains(ret)) {
+          LOG.debug("chooseRandom returning {}", ret);
+          return ret;
+        }
+      }
+    }
     netlock.readLock().lock();
     try {
-      if (scope.startsWith("~")) {
-        return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
-      } else {
-        return chooseRandom(scope, null, excludedNodes);
-      }
+      return chooseRandomFromTree(scope, excludedScope, excludedNodes);
     } finally {
       netlock.readLock().unlock();
     }
   }
 
-  protected Node chooseRandom(final String scope, String excludedScope,
+  private Node chooseRandomFromTree(final String scope, String excludedScope,
       final Collection<Node> excludedNodes) {
     if (excludedScope != null) {
       if (isChildScope(scope, excludedScope)) {
@@ -1131,4 +1184,296 @@ private void countEmptyRacks() {
     numOfEmptyRacks = count;
     LOG.debug("Current numOfEmptyRacks is {}", numOfEmptyRacks);
   }
+
+  /**
+   * Drop the current snapshot so that the next reader rebuilds it.
+   * Must be called with {@link #netlock}'s write lock held after every change
+   * to the shape of the tree.
+   */
+  protected void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /**
+   * @param s a snapshot
+   * @return whether the tree did not change since the snapshot was built.
+   * As snapshots are dropped under the write lock, a result read from a
+   * snapshot that is still current after the read does not include any node
+   * whose removal has completed.
+   */
+  protected boolean isCurrent(Snapshot s) {
+    return snapshot == s;
+  }
+
+  /**
+   * @return an immutable snapshot of the current tree. The snapshot is built
+   * lazily under {@link #netlock}'s read lock after the tree has changed, so
+   * a burst of node registrations costs a single rebuild.
+   */
+  protected Snapshot getSnapshot() {
+    Snapshot s = snapshot;
+    if (s != null) {
+      return s;
+    }
+    netlock.readLock().lock();
+    try {
+      s = snapshot;
+      if (s == null) {
+        s = new Snapshot(clusterMap);
+        snapshot = s;
+      }
+      return s;
+    } finally {
+      netlock.readLock().unlock();
+    }
+  }
+
+  /**
+   * An immutable view of the leaves of the topology tree.
+   * <p>
+   * The leaves are kept in an array in the same order as
+   * {@link InnerNode#getLeaf(int, Node)} visits them, so the leaves of every
+   * subtree occupy a contiguous range of the array. Random choices within a
+   * scope, and within a scope minus an excluded subtree, are then plain index
+   * arithmetic and never touch the tree or {@link #netlock}.
+   * <p>
+   * Subclasses can build per-leaf attribute indexes on top of a snapshot by
+   * passing a prefix count array to
+   * {@link #chooseRandom(String, String, Collection, Random, int[])}: entry
+   * {@code i} holds the number of matching leaves before leaf {@code i}, and
+   * the returned index is then the position among the matching leaves.
+   */
+  protected static final class Snapshot {
+    /** No node can be chosen. */
+    public static final int NONE = -1;
+    /** The snapshot cannot resolve the request; consult the tree instead. */
+    public static final int UNRESOLVED = -2;
+
+    private final InnerNode root;
+    private final Node[] leaves;
+    /** The ancestors of each leaf, root first; shared by siblings. */
+    private final Node[][] ancestors;
+    private final Map<Node, Integer> leafIndex = new IdentityHashMap<>();
+    /** Normalized path to {start, end} of a subtree, or {index} of a leaf. */
+    private final Map<String, int[]> ranges = new HashMap<>();
+
+    Snapshot(InnerNode root) {
+      this.root = root;
+      int numOfLeaves = root.getNumOfLeaves();
+      this.leaves = new Node[numOfLeaves];
+      this.ancestors = new Node[numOfLeaves][];
+      int count = addSubtree(root, NodeBase.ROOT, new Node[0], 0);
+      Preconditions.checkState(count == numOfLeaves,
+          "Found %s leaves but expected %s", count, numOfLeaves);
+    }
+
+    private int addSubtree(InnerNode node, String path, Node[] parents,
+        int start) {
+      Node[] chain = Arrays.copyOf(parents, parents.length + 1);
+      chain[parents.length] = node;
+      int next = start;
+      for (Node child : node.getChildren()) {
+        String childPath = path + NodeBase.PATH_SEPARATOR_STR + child.getName();
+        if (child instanceof InnerNode) {
+          next = addSubtree((InnerNode) child, childPath, chain, next);
+        } else {
+          leaves[next] = child;
+          ancestors[next] = chain;
+          leafIndex.put(child, next);
+          ranges.put(childPath, new int[] {next});
+          next++;
+        }
+      }
+      ranges.put(path, new int[] {start, next});
+      return next;
+    }
+
+    /** @return the root of the tree this snapshot was built from. */
+    public InnerNode getRoot() {
+      return root;
+    }
+
+    /** @return the number of leaves in the snapshot. */
+    public int getNumOfLeaves() {
+      return leaves.length;
+    }
+
+    /**
+     * @param index the index of a leaf
+     * @return the leaf at the given index
+     */
+    public Node getLeaf(int index) {
+      return leaves[index];
+    }
+
+    /**
+     * @param node a node
+     * @return the index of the given leaf instance, or -1 if it is not a leaf
+     * of this snapshot
+     */
+    public int indexOfLeaf(Node node) {
+      Integer index = leafIndex.get(node);
+      return index == null ? -1 : index;
+    }
+
+    /**
+     * @param node1 one node
+     * @param node2 another node
+     * @return the distance between two leaves of this snapshot as defined by
+     * {@link NetworkTopology#getDistance(Node, Node)}, or -1 if either node
+     * is not a leaf of this snapshot
+     */
+    int getDistance(Node node1, Node node2) {
+      int i1 = indexOfLeaf(node1);
+      int i2 = i1 < 0 ? -1 : indexOfLeaf(node2);
+      if (i2 < 0) {
+        return -1;
+      }
+      Node[] a1 = ancestors[i1];
+      Node[] a2 = ancestors[i2];
+      if (a1 == a2) {
+        return 2;
+      }
+      if (a1.length != a2.length) {
+        return -1;
+      }
+      int level = a1.length - 1;
+      while (level > 0 && a1[level] != a2[level]) {
+        level--;
+      }
+      return 2 * (a1.length - level);
+    }
+
+    /**
+     * Randomly choose one leaf from <i>scope</i> but not from
+     * <i>excludedScope</i> or <i>excludedNodes</i>, with equal probability
+     * for every valid leaf. Random numbers are drawn in the same order as
+     * the tree based implementation does.
+     *
+     * @param scope range of nodes from which a node will be chosen
+     * @param excludedScope range of nodes to be excluded; can be null
+     * @param excludedNodes nodes to be excluded from; can be null
+     * @param r the random number generator to use
+     * @param prefix prefix counts of the leaves to choose from, or null to
+     *               choose from all leaves
+     * @return the index of the chosen leaf, {@link #NONE} or
+     * {@link #UNRESOLVED}
+     */
+    public int chooseRandom(String scope, String excludedScope,
+        Collection<Node> excludedNodes, Random r, int[] prefix) {
+      if (excludedScope != null) {
+        if (isChildScope(scope, excludedScope)) {
+          return NONE;
+        }
+        if (!isChildScope(excludedScope, scope)) {
+          excludedScope = null;
+        }
+      }
+      int[] range = ranges.get(NodeBase.normalize(scope));
+      if (range == null) {
+        return NONE;
+      }
+      if (range.length == 1) {
+        // the scope is a single leaf
+        int index = range[0];
+        if (excludedNodes != null && excludedNodes.contains(leaves[index])) {
+          return NONE;
+        }
+        if (prefix == null) {
+          return index;
+        }
+        return prefix[index + 1] > prefix[index] ? prefix[index] : NONE;
+      }
+      int start = range[0];
+      int end = range[1];
+      int exStart = end;
+      int exEnd = end;
+      if (excludedScope != null) {
+        int[] excluded = ranges.get(NodeBase.normalize(excludedScope));
+        if (excluded == null) {
+          return UNRESOLVED;
+        }
+        exStart = excluded[0];
+        exEnd = excluded.length == 1 ? exStart + 1 : excluded[1];
+      }
+      int[] excludedIndexes = null;
+      int numExcluded = 0;
+      if (excludedNodes != null && !excludedNodes.isEmpty()) {
+        excludedIndexes = new int[excludedNodes.size()];
+        for (Node node : excludedNodes) {
+          int index = indexOfLeaf(node);
+          if (index < 0 && node != null) {
+            int[] nodeRange =
+                ranges.get(NodeBase.normalize(NodeBase.getPath(node)));
+            if (nodeRange == null) {
+              continue;
+            }
+            if (nodeRange.length != 1) {
+              // excluding a whole subtree; let the tree handle it
+              return UNRESOLVED;
+            }
+            index = nodeRange[0];
+          }
+          if (index < start || index >= end
+              || (index >= exStart && index < exEnd)) {
+            continue;
+          }
+          if (prefix != null) {
+            if (prefix[index + 1] == prefix[index]) {
+              continue;
+            }
+            index = prefix[index];
+          }
+          excludedIndexes[numExcluded++] = index;
+        }
+        Arrays.sort(excludedIndexes, 0, numExcluded);
+        int distinct = 0;
+        for (int i = 0; i < numExcluded; i++) {
+          if (distinct == 0
+              || excludedIndexes[distinct - 1] != excludedIndexes[i]) {
+            excludedIndexes[distinct++] = excludedIndexes[i];
+          }
+        }
+        numExcluded = distinct;
+      }
+      if (prefix != null) {
+        start = prefix[start];
+        end = prefix[end];
+        exStart = prefix[exStart];
+        exEnd = prefix[exEnd];
+      }
+      int excludedScopeSize = exEnd - exStart;
+      int total = end - start - excludedScopeSize;
+      int available = total - numExcluded;
+      if (available <= 0) {
+        return NONE;
+      }
+      if (excludedIndexes == null) {
+        return toIndex(r.nextInt(total), start, exStart, excludedScopeSize);
+      }
+      // Same as the tree based selection: the nth valid leaf is chosen unless
+      // a first random pick happens to be valid.
+      int nthValid = r.nextInt(available);
+      int first = toIndex(r.nextInt(total), start, exStart, excludedScopeSize);
+      if (Arrays.binarySearch(excludedIndexes, 0, numExcluded, first) < 0) {
+        return first;
+      }
+      for (int i = 0; i < numExcluded; i++) {
+        int excluded = excludedIndexes[i];
+        int position = excluded - start
+            - (excluded >= exEnd ? excludedScopeSize : 0);
+        if (position > nthValid) {
+          break;
+        }
+        nthValid++;
+      }
+      return toIndex(nthValid, start, exStart, excludedScopeSize);
+    }
+
+    private static int toIndex(int position, int start, int exStart,
+        int excludedScopeSize) {
+      int index = start + position;
+      return index >= exStart ? index + excludedScopeSize : index;
+    }
+  }
 }
@@ -213,6 +213,8 @@ public void add(Node node) {
           incrementRacks();
         }
       }
+      // an existing leaf with the same name may have been replaced
+      invalidateSnapshot();
       if(LOG.isDebugEnabled()) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
@@ -244,6 +246,7 @@ public void remove(Node node) {
         if (rack == null) {
           numOfRacks--;
         }
+        invalidateSnapshot();
       }
       if(LOG.isDebugEnabled()) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
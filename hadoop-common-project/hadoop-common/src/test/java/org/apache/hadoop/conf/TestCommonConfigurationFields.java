@@ -162,6 +162,7 @@ public void initializeMemberVariables() {
     xmlPropsToSkipCompare.add("ipc.scheduler.impl");
     xmlPropsToSkipCompare.add("ipc.[port_number].scheduler.priority.levels");
     xmlPropsToSkipCompare.add("ipc.[port_number].callqueue.capacity.weights");
+    xmlPropsToSkipCompare.add("ipc.[port_number].callqueue.subqueue.shards");
     xmlPropsToSkipCompare.add(
         "ipc.[port_number].faircallqueue.multiplexer.weights");
     xmlPropsToSkipCompare.add("ipc.[port_number].identity-provider.impl");
@@ -171,6 +172,8 @@ public void initializeMemberVariables() {
     xmlPropsToSkipCompare.add("ipc.[port_number].decay-scheduler.period-ms");
     xmlPropsToSkipCompare.add("ipc.[port_number].decay-scheduler.decay-factor");
     xmlPropsToSkipCompare.add("ipc.[port_number].decay-scheduler.thresholds");
+    xmlPropsToSkipCompare.add(
+        "ipc.[port_number].decay-scheduler.incremental-decay.enable");
     xmlPropsToSkipCompare.add(
         "ipc.[port_number].decay-scheduler.backoff.responsetime.enable");
     xmlPropsToSkipCompare.add(
@@ -179,6 +182,8 @@ public void initializeMemberVariables() {
         "ipc.[port_number].decay-scheduler.metrics.top.user.count");
     xmlPropsToSkipCompare.add(
         "ipc.[port_number].decay-scheduler.service-users");
+    xmlPropsToSkipCompare.add(
+        "ipc.[port_number].decay-scheduler.max.tracked.callers");
     xmlPropsToSkipCompare.add("ipc.[port_number].weighted-cost.lockshared");
     xmlPropsToSkipCompare.add("ipc.[port_number].weighted-cost.lockexclusive");
     xmlPropsToSkipCompare.add("ipc.[port_number].weighted-cost.handler");
@@ -38,6 +38,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -291,6 +292,37 @@ public void testCallGetReturnRpcResponseMultipleTimes() throws IOException,
     }
   }
 
+  @Test(timeout = 60000)
+  public void testAsyncRpcResponseFuture() throws IOException,
+      InterruptedException, ExecutionException {
+    int handlerCount = 10, callCount = 100;
+    Server server = new TestIPC.TestServer(handlerCount, false, conf);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, conf);
+
+    try {
+      List<CompletableFuture<LongWritable>> futures = new ArrayList<>();
+      List<Long> expectedValues = new ArrayList<>();
+      Client.setAsynchronousMode(true);
+      for (int i = 0; i < callCount; i++) {
+        final long param = TestIPC.RANDOM.nextLong();
+        TestIPC.call(client, param, addr, conf);
+        futures.add(Client.getAsyncRpcResponseFuture());
+        expectedValues.add(param);
+      }
+      for (int i = 0; i < callCount; i++) {
+        assertEquals("call" + i + " failed.",
+            expectedValues.get(i).longValue(), futures.get(i).get().get());
+      }
+      // The calls are released once their futures complete.
+      assertEquals(0, client.getAsyncCallCount());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout = 60000)
   public void testFutureGetWithTimeout() throws IOException,
       InterruptedException, ExecutionException {
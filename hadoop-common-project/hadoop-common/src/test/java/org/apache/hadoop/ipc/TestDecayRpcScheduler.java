@@ -44,6 +44,7 @@
 import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TestDecayRpcScheduler {
   private Schedulable mockCall(String id) {
@@ -265,6 +266,139 @@ public void testDecay() throws Exception {
     assertEquals(null, scheduler.getCallCostSnapshot().get("B"));
   }
 
+  @Test
+  public void testIncrementalDecay() throws Exception {
+    Configuration conf = new Configuration();
+    final String namespace = "ipc.21";
+    conf.setLong(namespace + "." // Never decay
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999999);
+    conf.setDouble(namespace + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_FACTOR_KEY, 0.5);
+    conf.set(namespace + "." + IPC_DECAYSCHEDULER_THRESHOLDS_KEY, "25, 50, 75");
+    conf.setBoolean(namespace + "." + DecayRpcScheduler
+        .IPC_DECAYSCHEDULER_INCREMENTAL_DECAY_ENABLE_KEY, true);
+    scheduler = new DecayRpcScheduler(4, namespace, conf);
+    UserGroupInformation ugiA = UserGroupInformation.createRemoteUser("A");
+    UserGroupInformation ugiB = UserGroupInformation.createRemoteUser("B");
+
+    for (int i = 0; i < 4; i++) {
+      getPriorityIncrementCallCount("A");
+    }
+    for (int i = 0; i < 8; i++) {
+      getPriorityIncrementCallCount("B");
+    }
+    assertEquals(12, scheduler.getTotalCallSnapshot());
+    assertEquals(1, scheduler.getPriorityLevel(ugiA)); // 4 out of 12
+    assertEquals(2, scheduler.getPriorityLevel(ugiB)); // 8 out of 12
+
+    scheduler.forceDecay();
+
+    assertEquals(6, scheduler.getTotalCallSnapshot());
+    assertEquals(2, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(4, scheduler.getCallCostSnapshot().get("B").longValue());
+
+    // New calls weigh more than the decayed ones and are reflected in the
+    // priorities right away
+    for (int i = 0; i < 4; i++) {
+      getPriorityIncrementCallCount("A");
+    }
+    assertEquals(10, scheduler.getTotalCallSnapshot());
+    assertEquals(6, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(2, scheduler.getPriorityLevel(ugiA)); // 6 out of 10
+    assertEquals(1, scheduler.getPriorityLevel(ugiB)); // 4 out of 10
+
+    scheduler.forceDecay();
+
+    assertEquals(5, scheduler.getTotalCallSnapshot());
+    assertEquals(3, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(2, scheduler.getCallCostSnapshot().get("B").longValue());
+
+    // The stored costs are swept once the weight of new calls is too large
+    for (int i = 0; i < 8; i++) {
+      scheduler.forceDecay();
+    }
+    assertEquals(0, scheduler.getTotalCallSnapshot());
+    assertEquals(0, scheduler.getUniqueIdentityCount());
+  }
+
+  @Test
+  public void testMaxTrackedCallers() throws Exception {
+    Configuration conf = new Configuration();
+    final String namespace = "ipc.22";
+    conf.setLong(namespace + "." // Never decay
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999999);
+    conf.setDouble(namespace + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_FACTOR_KEY, 0.5);
+    conf.setInt(namespace + "." + DecayRpcScheduler
+        .IPC_DECAYSCHEDULER_MAX_TRACKED_CALLERS_KEY, 2);
+    scheduler = new DecayRpcScheduler(1, namespace, conf);
+
+    for (int i = 0; i < 8; i++) {
+      getPriorityIncrementCallCount("A");
+    }
+    for (int i = 0; i < 4; i++) {
+      getPriorityIncrementCallCount("B");
+    }
+    scheduler.forceDecay();
+    assertEquals(2, scheduler.getUniqueIdentityCount());
+
+    // The new caller replaces the one with the smallest cost
+    getPriorityIncrementCallCount("C");
+    assertEquals(2, scheduler.getUniqueIdentityCount());
+    assertEquals(4, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(1, scheduler.getCallCostSnapshot().get("C").longValue());
+    assertEquals(null, scheduler.getCallCostSnapshot().get("B"));
+
+    // Until the next decay sweep it is only as heavy as the caller it replaced
+    getPriorityIncrementCallCount("D");
+    assertEquals(2, scheduler.getUniqueIdentityCount());
+    assertEquals(4, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(null, scheduler.getCallCostSnapshot().get("C"));
+    assertEquals(1, scheduler.getCallCostSnapshot().get("D").longValue());
+  }
+
+  @Test
+  public void testDecayWithConcurrentNewCallers() throws Exception {
+    Configuration conf = new Configuration();
+    final String namespace = "ipc.23";
+    conf.setLong(namespace + "." // Never decay
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999999);
+    conf.setInt(namespace + "." + DecayRpcScheduler
+        .IPC_DECAYSCHEDULER_MAX_TRACKED_CALLERS_KEY, 8);
+    scheduler = new DecayRpcScheduler(1, namespace, conf);
+
+    final int numHandlers = 4;
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread decayer = new Thread(() -> {
+      while (!done.get()) {
+        scheduler.forceDecay();
+      }
+    });
+    Thread[] handlers = new Thread[numHandlers];
+    for (int i = 0; i < numHandlers; i++) {
+      final int handler = i;
+      handlers[i] = new Thread(() -> {
+        for (int j = 0; j < 20000; j++) {
+          getPriorityIncrementCallCount("user" + handler + "-" + j % 100);
+        }
+      });
+    }
+    decayer.start();
+    for (Thread handler : handlers) {
+      handler.start();
+    }
+    for (Thread handler : handlers) {
+      handler.join();
+    }
+    done.set(true);
+    decayer.join();
+
+    // Every caller with a cost is tracked, and only those are.
+    assertTrue(scheduler.getUniqueIdentityCount() <= 8);
+    assertEquals(scheduler.getCallCostSnapshot().keySet(),
+        scheduler.getTrackedCallers());
+  }
+
   @Test
   @SuppressWarnings("deprecation")
   public void testPriority() throws Exception {
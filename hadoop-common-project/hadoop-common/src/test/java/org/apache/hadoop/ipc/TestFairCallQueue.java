@@ -30,6 +30,7 @@
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -52,6 +53,7 @@
 import org.apache.hadoop.security.UserGroupInformation;
 import org.mockito.Mockito;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcStatusProto;
 
@@ -108,6 +110,27 @@ public void testTotalCapacityOfSubQueues() {
     assertThat(fairCallQueue.remainingCapacity()).isEqualTo(1025);
   }
 
+  @Test
+  public void testShardedSubQueues() throws InterruptedException {
+    Configuration conf = new Configuration();
+    conf.setInt("ns." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_SUBQUEUE_SHARDS_KEY, 3);
+    fcq = new FairCallQueue<Schedulable>(2, 10, "ns", conf);
+    assertThat(fcq.remainingCapacity()).isEqualTo(10);
+
+    // Calls overflow into the other shards and then into the lower queue
+    assertCanPut(fcq, 10, 10);
+    assertEquals(10, fcq.size());
+    assertArrayEquals(new int[]{5, 5}, fcq.getQueueSizes());
+
+    assertNotNull(fcq.take());
+    assertEquals(9, fcq.size());
+    assertEquals(1, fcq.remainingCapacity());
+
+    // Put blocks once all the shards of the last queue are full again
+    assertCanPut(fcq, 1, 2);
+  }
+
   @Test
   public void testPrioritization() {
     int numQueues = 10;
@@ -76,10 +76,16 @@ public class TestProtoBufRpc extends TestRpcBase {
    * RPC server.
    */
   private boolean testWithLegacyFirst;
+  /**
+   * Test with requests read into pooled direct buffers.
+   */
+  private boolean testWithPooledBuffers;
 
-  public TestProtoBufRpc(Boolean testWithLegacy, Boolean testWithLegacyFirst) {
+  public TestProtoBufRpc(Boolean testWithLegacy, Boolean testWithLegacyFirst,
+      Boolean testWithPooledBuffers) {
     this.testWithLegacy = testWithLegacy;
     this.testWithLegacyFirst = testWithLegacyFirst;
+    this.testWithPooledBuffers = testWithPooledBuffers;
   }
 
   @ProtocolInfo(protocolName = "testProto2", protocolVersion = 1)
@@ -154,9 +160,11 @@ public TestProtosLegacy.SleepResponseProto sleep(
   @Parameters
   public static Collection<Object[]> params() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[] {Boolean.TRUE, Boolean.TRUE });
-    params.add(new Object[] {Boolean.TRUE, Boolean.FALSE });
-    params.add(new Object[] {Boolean.FALSE, Boolean.FALSE });
+    params.add(new Object[] {Boolean.TRUE, Boolean.TRUE, Boolean.FALSE});
+    params.add(new Object[] {Boolean.TRUE, Boolean.FALSE, Boolean.FALSE});
+    params.add(new Object[] {Boolean.FALSE, Boolean.FALSE, Boolean.FALSE});
+    params.add(new Object[] {Boolean.TRUE, Boolean.FALSE, Boolean.TRUE});
+    params.add(new Object[] {Boolean.FALSE, Boolean.FALSE, Boolean.TRUE});
     return params;
   }
 
@@ -166,6 +174,9 @@ public void setUp() throws IOException { // Setup server for both protocols
     conf = new Configuration();
     conf.setInt(CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH, 1024);
     conf.setBoolean(CommonConfigurationKeys.IPC_SERVER_LOG_SLOW_RPC, true);
+    conf.setBoolean(
+        CommonConfigurationKeys.IPC_SERVER_RPC_READ_POOLED_BUFFERS_KEY,
+        testWithPooledBuffers);
     // Set RPC engine to protobuf RPC engine
     if (testWithLegacy) {
       RPC.setProtocolEngine(conf, TestRpcService2Legacy.class,
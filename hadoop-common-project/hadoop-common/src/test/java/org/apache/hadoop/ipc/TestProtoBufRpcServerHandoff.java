@@ -18,13 +18,17 @@
 
 package org.apache.hadoop.ipc;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.thirdparty.protobuf.BlockingService;
 import org.apache.hadoop.thirdparty.protobuf.RpcController;
@@ -93,6 +97,55 @@ public void test() throws Exception {
 
   }
 
+  @Test(timeout = 20000)
+  public void testFutureHandoff() throws Exception {
+    Configuration conf = new Configuration();
+
+    BlockingService blockingService =
+        TestProtobufRpcHandoffProto.newReflectiveBlockingService(
+            new TestProtoBufRpcServerFutureHandoffServer());
+
+    RPC.setProtocolEngine(conf, TestProtoBufRpcServerHandoffProtocol.class,
+        ProtobufRpcEngine2.class);
+    RPC.Server server = new RPC.Builder(conf)
+        .setProtocol(TestProtoBufRpcServerHandoffProtocol.class)
+        .setInstance(blockingService)
+        .setNumHandlers(1) // A single handler must serve both calls.
+        .build();
+    server.start();
+    try {
+      final TestProtoBufRpcServerHandoffProtocol client = RPC.getProxy(
+          TestProtoBufRpcServerHandoffProtocol.class, 1,
+          server.getListenerAddress(), conf);
+
+      ExecutorService executorService = Executors.newFixedThreadPool(2);
+      long submitTime = System.currentTimeMillis();
+      Future<ClientInvocationCallable> future1 =
+          executorService.submit(new ClientInvocationCallable(client, 3000L));
+      Future<ClientInvocationCallable> future2 =
+          executorService.submit(new ClientInvocationCallable(client, 3000L));
+      ClientInvocationCallable callable1 = future1.get();
+      ClientInvocationCallable callable2 = future2.get();
+      executorService.shutdown();
+
+      Assert.assertTrue(Math.abs(callable1.endTime - callable2.endTime) < 2000L);
+      Assert.assertTrue(System.currentTimeMillis() - submitTime < 5000L);
+
+      // A future completed exceptionally is returned as a remote exception.
+      try {
+        client.sleep(null, TestProtos.SleepRequestProto2.newBuilder()
+            .setSleepTime(-1).build());
+        Assert.fail("Expected the deferred call to fail");
+      } catch (ServiceException e) {
+        Assert.assertTrue(e.getCause() instanceof RemoteException);
+        Assert.assertEquals(IOException.class.getName(),
+            ((RemoteException) e.getCause()).getClassName());
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
   private static class ClientInvocationCallable
       implements Callable<ClientInvocationCallable> {
     final TestProtoBufRpcServerHandoffProtocol client;
@@ -135,6 +188,34 @@ public String toString() {
       extends TestProtobufRpcHandoffProto.BlockingInterface {
   }
 
+  public static class TestProtoBufRpcServerFutureHandoffServer
+      implements TestProtoBufRpcServerHandoffProtocol {
+
+    private final ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor();
+
+    @Override
+    public TestProtos.SleepResponseProto2 sleep
+        (RpcController controller,
+         TestProtos.SleepRequestProto2 request) throws
+        ServiceException {
+      final long startTime = System.currentTimeMillis();
+      final CompletableFuture<TestProtos.SleepResponseProto2> future =
+          new CompletableFuture<>();
+      if (request.getSleepTime() < 0) {
+        future.completeExceptionally(
+            new ServiceException(new IOException("negative sleep time")));
+      } else {
+        executor.schedule(() -> future.complete(
+            TestProtos.SleepResponseProto2.newBuilder()
+                .setReceiveTime(startTime)
+                .setResponseTime(System.currentTimeMillis()).build()),
+            request.getSleepTime(), TimeUnit.MILLISECONDS);
+      }
+      return ProtobufRpcEngine2.Server.deferResponse(future);
+    }
+  }
+
   public static class TestProtoBufRpcServerHandoffServer
       implements TestProtoBufRpcServerHandoffProtocol {
 
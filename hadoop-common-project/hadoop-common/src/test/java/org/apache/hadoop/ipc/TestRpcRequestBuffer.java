@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.Test;
+
+public class TestRpcRequestBuffer {
+
+  @Test
+  public void testReturnedToPoolWhenReleased() throws Exception {
+    ElasticByteBufferPool pool = new ElasticByteBufferPool();
+    RpcRequestBuffer buffer = RpcRequestBuffer.allocate(pool, 700);
+    assertTrue(buffer.getBuffer().isDirect());
+    assertEquals(700, buffer.getBuffer().remaining());
+    assertEquals(1024, buffer.getBuffer().capacity());
+
+    // the call decoded from the buffer outlives the reader's reference
+    buffer.retain();
+    buffer.release();
+    assertEquals(1, buffer.refCount());
+    assertEquals(0, pool.size(true));
+    buffer.release();
+    assertEquals(1, pool.size(true));
+
+    LambdaTestUtils.intercept(IllegalStateException.class, buffer::release);
+    LambdaTestUtils.intercept(IllegalStateException.class, buffer::retain);
+
+    // a request of a similar size reuses the buffer
+    RpcRequestBuffer next = RpcRequestBuffer.allocate(pool, 600);
+    assertSame(buffer.getBuffer(), next.getBuffer());
+    assertEquals(600, next.getBuffer().remaining());
+    assertEquals(0, pool.size(true));
+  }
+}
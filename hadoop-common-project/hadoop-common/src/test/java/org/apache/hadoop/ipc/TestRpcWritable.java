@@ -94,6 +94,35 @@ public void testBufferWrapper() throws IOException {
     Assert.assertEquals(0, buf.remaining());
   }
 
+  @Test
+  public void testDirectBufferWrapper() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    message1.writeDelimitedTo(dos);
+    writable.write(dos);
+    message2.writeDelimitedTo(dos);
+
+    ByteBuffer bb = ByteBuffer.allocateDirect(baos.size());
+    bb.put(baos.toByteArray());
+    bb.flip();
+    RpcWritable.Buffer buf = RpcWritable.Buffer.wrap(bb);
+
+    Object actual = buf.getValue(EchoRequestProto.getDefaultInstance());
+    Assert.assertEquals(message1, actual);
+    actual = buf.newInstance(LongWritable.class, null);
+    Assert.assertEquals(writable, actual);
+    actual = buf.getValue(EchoRequestProto.getDefaultInstance());
+    Assert.assertEquals(message2, actual);
+    Assert.assertEquals(0, buf.remaining());
+
+    // the decoded message must not share the buffer once it is reused
+    bb.clear();
+    while (bb.hasRemaining()) {
+      bb.put((byte) 0);
+    }
+    Assert.assertEquals("testing2", ((EchoRequestProto) actual).getMessage());
+  }
+
   @Test
   public void testBufferWrapperNested() throws IOException {
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
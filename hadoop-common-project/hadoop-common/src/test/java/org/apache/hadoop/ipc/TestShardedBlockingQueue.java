@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestShardedBlockingQueue {
+
+  @Test
+  public void testCapacityIsSplitAmongShards() {
+    ShardedBlockingQueue<Integer> queue = new ShardedBlockingQueue<>(4, 10);
+    assertEquals(4, queue.getNumShards());
+    assertEquals(10, queue.remainingCapacity());
+
+    // A single producer overflows into the other shards
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(10));
+    assertEquals(10, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(10, queue.drainTo(drained));
+    assertEquals(10, drained.size());
+    assertEquals(0, queue.size());
+    assertNull(queue.poll());
+    assertNull(queue.peek());
+  }
+
+  @Test
+  public void testFifoForSingleProducer() {
+    ShardedBlockingQueue<Integer> queue = new ShardedBlockingQueue<>(3, 30);
+    for (int i = 0; i < 5; i++) {
+      queue.offer(i);
+    }
+    assertEquals(0, queue.peek().intValue());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, queue.poll().intValue());
+    }
+  }
+
+  @Test
+  public void testTimeouts() throws InterruptedException {
+    ShardedBlockingQueue<Integer> queue = new ShardedBlockingQueue<>(2, 1);
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+    assertFalse(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+    assertEquals(1, queue.take().intValue());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentProducersAndConsumers() throws Exception {
+    final int numProducers = 8;
+    final int numConsumers = 4;
+    final int callsPerProducer = 20000;
+    final ShardedBlockingQueue<Integer> queue =
+        new ShardedBlockingQueue<>(numProducers, 64);
+    final ConcurrentHashMap<Integer, Boolean> seen = new ConcurrentHashMap<>();
+    final AtomicInteger duplicates = new AtomicInteger();
+    final CountDownLatch done =
+        new CountDownLatch(numProducers * callsPerProducer);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < numProducers; p++) {
+      final int base = p * callsPerProducer;
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < callsPerProducer; i++) {
+            queue.put(base + i);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+    }
+    for (int c = 0; c < numConsumers; c++) {
+      threads.add(new Thread(() -> {
+        try {
+          while (true) {
+            Integer e = queue.take();
+            if (seen.putIfAbsent(e, Boolean.TRUE) != null) {
+              duplicates.incrementAndGet();
+            }
+            done.countDown();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    done.await();
+    for (Thread t : threads) {
+      t.interrupt();
+      t.join();
+    }
+
+    assertEquals(0, duplicates.get());
+    assertEquals(numProducers * callsPerProducer, seen.size());
+    assertEquals(0, queue.size());
+  }
+}
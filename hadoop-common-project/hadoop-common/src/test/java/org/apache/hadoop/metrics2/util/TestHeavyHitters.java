@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test the heavy hitters summary.
+ */
+public class TestHeavyHitters {
+
+  @Test
+  public void testExactBelowCapacity() {
+    HeavyHitters<String> hh = new HeavyHitters<>(3);
+    assertNull(hh.add("a", 5));
+    assertNull(hh.add("b", 1));
+    assertNull(hh.add("a", 2));
+    assertNull(hh.add("c", 3));
+    assertEquals(7, hh.getCount("a"));
+    assertEquals(1, hh.getCount("b"));
+    assertEquals(3, hh.getCount("c"));
+    assertEquals(0, hh.getError("a"));
+    assertEquals(11, hh.getTotal());
+    assertEquals(3, hh.size());
+  }
+
+  @Test
+  public void testEviction() {
+    HeavyHitters<String> hh = new HeavyHitters<>(2);
+    hh.add("a", 5);
+    hh.add("b", 1);
+    // "c" replaces the smallest count and inherits it as its error
+    assertEquals("b", hh.add("c", 2));
+    assertEquals(0, hh.getCount("b"));
+    assertEquals(3, hh.getCount("c"));
+    assertEquals(1, hh.getError("c"));
+    assertEquals(2, hh.size());
+    assertEquals(8, hh.getTotal());
+
+    Map<String, Long> counts = hh.getCounts();
+    assertEquals(2, counts.size());
+    assertEquals(5L, (long) counts.get("a"));
+    assertEquals(3L, (long) counts.get("c"));
+
+    assertEquals(3, hh.remove("c"));
+    assertEquals(0, hh.remove("c"));
+    assertEquals(1, hh.size());
+    assertEquals(5, hh.getTotal());
+    assertNull(hh.add("d", 1));
+  }
+
+  @Test
+  public void testErrorBound() {
+    final int capacity = 50;
+    HeavyHitters<Integer> hh = new HeavyHitters<>(capacity);
+    Map<Integer, Long> exact = new HashMap<>();
+    Random random = new Random(0);
+    long total = 0;
+    for (int i = 0; i < 100000; i++) {
+      // a few heavy keys among many light ones
+      int key = random.nextInt(10) < 3 ? random.nextInt(5)
+          : 5 + random.nextInt(10000);
+      long weight = 1 + random.nextInt(3);
+      hh.add(key, weight);
+      exact.merge(key, weight, Long::sum);
+      total += weight;
+    }
+    assertEquals(total, hh.getTotal());
+    long sum = 0;
+    for (Map.Entry<Integer, Long> e : hh.getCounts().entrySet()) {
+      long actual = exact.get(e.getKey());
+      assertTrue(e.getValue() >= actual);
+      assertTrue(e.getValue() - hh.getError(e.getKey()) <= actual);
+      assertTrue(e.getValue() - actual <= total / capacity);
+      sum += e.getValue();
+    }
+    assertEquals(total, sum);
+    for (int key = 0; key < 5; key++) {
+      assertTrue("heavy key " + key, hh.getCount(key) > 0);
+    }
+  }
+
+  @Test
+  public void testDecay() {
+    HeavyHitters<String> hh = new HeavyHitters<>(3);
+    hh.add("a", 8);
+    hh.add("b", 1);
+    hh.add("c", 4);
+    hh.decay(0.5);
+    assertEquals(4, hh.getCount("a"));
+    assertEquals(0, hh.getCount("b"));
+    assertEquals(2, hh.getCount("c"));
+    assertEquals(2, hh.size());
+    assertEquals(6, hh.getTotal());
+    // the smallest count is still evicted first
+    assertNull(hh.add("d", 3));
+    assertEquals("c", hh.add("e", 1));
+
+    hh.clear();
+    assertEquals(0, hh.size());
+    assertEquals(0, hh.getTotal());
+  }
+}
@@ -33,17 +33,22 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.ByteBufferPositionedReadable;
@@ -56,10 +61,13 @@
 import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
@@ -1503,10 +1511,16 @@ public int read(long position, byte[] buffer, int offset, int length)
       return 0;
     }
     ByteBuffer bb = ByteBuffer.wrap(buffer, offset, length);
-    return pread(position, bb);
+    return pread(position, bb, true);
   }
 
-  private int pread(long position, ByteBuffer buffer)
+  /**
+   * Positional read.
+   * @param hedged whether the blocks may be read with hedged reads. The
+   *               reads run on the hedged read thread pool pass false, so
+   *               they do not submit further reads to the same pool.
+   */
+  private int pread(long position, ByteBuffer buffer, boolean hedged)
       throws IOException {
     // sanity checks
     dfsClient.checkOpen();
@@ -1540,7 +1554,7 @@ private int pread(long position, ByteBuffer buffer)
           blk.getBlockSize() - targetStart);
       long targetEnd = targetStart + bytesToRead - 1;
       try {
-        if (dfsClient.isHedgedReadsEnabled() && !blk.isStriped()) {
+        if (hedged && dfsClient.isHedgedReadsEnabled() && !blk.isStriped()) {
           hedgedFetchBlockByteRange(blk, targetStart,
               targetEnd, buffer, corruptedBlocks, exceptionMap);
         } else {
@@ -1761,7 +1775,7 @@ public int read(long position, final ByteBuffer buf) throws IOException {
     if (!buf.hasRemaining()) {
       return 0;
     }
-    return pread(position, buf);
+    return pread(position, buf, true);
   }
 
   @Override
@@ -1777,6 +1791,117 @@ public void readFully(long position, final ByteBuffer buf)
     }
   }
 
+  /**
+   * Read a list of file ranges. The ranges which are close to each other in
+   * the same block are coalesced and read with a single pread, so they share
+   * one block reader. When hedged reads are enabled, the coalesced ranges are
+   * read in parallel on the hedged read thread pool and this call returns
+   * before the data is read; otherwise they are read by the calling thread.
+   * The reads on the pool do not hedge themselves, as a read waiting for a
+   * hedged read on the pool it runs on could take all of its threads.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    final List<? extends FileRange> sortedRanges =
+        VectoredReadUtils.validateAndSortRanges(ranges,
+            Optional.of(getFileLength()));
+    if (sortedRanges.isEmpty()) {
+      return;
+    }
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    final List<CombinedFileRange> combinedRanges =
+        mergeRangesPerBlock(sortedRanges);
+    for (CombinedFileRange combined : combinedRanges) {
+      final CompletableFuture<ByteBuffer> data = new CompletableFuture<>();
+      combined.setData(data);
+      for (FileRange range : combined.getUnderlying()) {
+        range.setData(data.thenApply(buf ->
+            VectoredReadUtils.sliceTo(buf, combined.getOffset(), range)));
+      }
+    }
+    final ThreadPoolExecutor pool = dfsClient.getHedgedReadsThreadPool();
+    if (!dfsClient.isHedgedReadsEnabled() || combinedRanges.size() == 1) {
+      for (CombinedFileRange combined : combinedRanges) {
+        readCombinedRange(combined, allocate, true);
+      }
+      return;
+    }
+    // A few tasks take the ranges from a queue rather than one task per
+    // range, so the reads do not crowd out the hedged reads of the pool.
+    final ConcurrentLinkedQueue<CombinedFileRange> queue =
+        new ConcurrentLinkedQueue<>(combinedRanges);
+    final int numTasks =
+        Math.min(combinedRanges.size(), pool.getMaximumPoolSize());
+    for (int i = 0; i < numTasks; i++) {
+      pool.execute(() -> {
+        CombinedFileRange combined;
+        while ((combined = queue.poll()) != null) {
+          readCombinedRange(combined, allocate, false);
+        }
+      });
+    }
+  }
+
+  /**
+   * Coalesce sorted ranges, without merging ranges which start in different
+   * blocks.
+   */
+  private List<CombinedFileRange> mergeRangesPerBlock(
+      List<? extends FileRange> sortedRanges) throws IOException {
+    final FileRange first = sortedRanges.get(0);
+    final FileRange last = sortedRanges.get(sortedRanges.size() - 1);
+    final List<LocatedBlock> blocks = getBlockRange(first.getOffset(),
+        Math.max(1, last.getOffset() + last.getLength() - first.getOffset()));
+    final List<CombinedFileRange> combinedRanges = new ArrayList<>();
+    int start = 0;
+    for (LocatedBlock blk : blocks) {
+      final long blockEnd = blk.getStartOffset() + blk.getBlockSize();
+      int end = start;
+      while (end < sortedRanges.size()
+          && sortedRanges.get(end).getOffset() < blockEnd) {
+        end++;
+      }
+      if (end > start) {
+        combinedRanges.addAll(VectoredReadUtils.mergeSortedRanges(
+            sortedRanges.subList(start, end), 1, minSeekForVectorReads(),
+            maxReadSizeForVectorReads()));
+        start = end;
+      }
+    }
+    if (start < sortedRanges.size()) {
+      // the length of the last block is not known yet
+      combinedRanges.addAll(VectoredReadUtils.mergeSortedRanges(
+          sortedRanges.subList(start, sortedRanges.size()), 1,
+          minSeekForVectorReads(), maxReadSizeForVectorReads()));
+    }
+    return combinedRanges;
+  }
+
+  private void readCombinedRange(CombinedFileRange combined,
+      IntFunction<ByteBuffer> allocate, boolean hedged) {
+    final CompletableFuture<ByteBuffer> data = combined.getData();
+    try {
+      final ByteBuffer buf = allocate.apply(combined.getLength());
+      long position = combined.getOffset();
+      while (buf.hasRemaining()) {
+        int nbytes = pread(position, buf, hedged);
+        if (nbytes < 0) {
+          throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY);
+        }
+        position += nbytes;
+      }
+      buf.flip();
+      data.complete(buf);
+    } catch (IOException | RuntimeException e) {
+      DFSClient.LOG.debug("Failed to read {} of {}", combined, src, e);
+      data.completeExceptionally(e);
+    }
+  }
+
   /** Utility class to encapsulate data node info and its address. */
   static final class DNAddrPair {
     final DatanodeInfo info;
@@ -1997,6 +2122,7 @@ public boolean hasCapability(String capability) {
     case StreamCapabilities.UNBUFFER:
     case StreamCapabilities.READBYTEBUFFER:
     case StreamCapabilities.PREADBYTEBUFFER:
+    case StreamCapabilities.VECTOREDIO:
       return true;
     default:
       return false;
@@ -132,12 +132,19 @@ public class DFSOutputStream extends FSOutputSummer
   private int writePacketSize;
   private boolean leaseRecovered = false;
 
-  /** Use {@link ByteArrayManager} to create buffer for non-heartbeat packets.*/
+  /**
+   * Use {@link ByteArrayManager}, or the pool of direct buffers if enabled, to
+   * create buffer for non-heartbeat packets.
+   */
   protected DFSPacket createPacket(int packetSize, int chunksPerPkt,
       long offsetInBlock, long seqno, boolean lastPacketInBlock)
       throws InterruptedIOException {
     final byte[] buf;
     final int bufferSize = PacketHeader.PKT_MAX_HEADER_LEN + packetSize;
+    if (dfsClient.getConf().isWriteDirectBuffersEnabled()) {
+      return DFSPacket.newDirect(bufferSize, chunksPerPkt, offsetInBlock,
+          seqno, getChecksumSize(), lastPacketInBlock);
+    }
 
     try {
       buf = byteArrayManager.newByteArray(bufferSize);
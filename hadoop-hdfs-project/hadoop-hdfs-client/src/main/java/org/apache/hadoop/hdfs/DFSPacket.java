@@ -21,7 +21,9 @@
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -30,6 +32,7 @@
 import org.apache.hadoop.hdfs.util.ByteArrayManager;
 import org.apache.hadoop.tracing.Span;
 import org.apache.hadoop.tracing.SpanContext;
+import org.apache.hadoop.util.DirectBufferPool;
 
 /****************************************************************
  * DFSPacket is used by DataStreamer and DFSOutputStream.
@@ -41,12 +44,15 @@
 public class DFSPacket {
   public static final long HEART_BEAT_SEQNO = -1L;
   private static final SpanContext[] EMPTY = new SpanContext[0];
+  /** The direct buffers of the packets created by {@link #newDirect}. */
+  private static final DirectBufferPool DIRECT_BUFFER_POOL =
+      new DirectBufferPool();
   private final long seqno; // sequence number of buffer in block
   private final long offsetInBlock; // offset in block
   private boolean syncBlock; // this packet forces the current block to disk
   private int numChunks; // number of chunks currently in packet
   private final int maxChunks; // max chunks in packet
-  private byte[] buf;
+  private ByteBuffer buf;
   private final boolean lastPacketInBlock; // is this the last packet in block?
 
   /**
@@ -83,6 +89,12 @@ public class DFSPacket {
    */
   public DFSPacket(byte[] buf, int chunksPerPkt, long offsetInBlock, long seqno,
                    int checksumSize, boolean lastPacketInBlock) {
+    this(ByteBuffer.wrap(buf), chunksPerPkt, offsetInBlock, seqno,
+        checksumSize, lastPacketInBlock);
+  }
+
+  private DFSPacket(ByteBuffer buf, int chunksPerPkt, long offsetInBlock,
+      long seqno, int checksumSize, boolean lastPacketInBlock) {
     this.lastPacketInBlock = lastPacketInBlock;
     this.numChunks = 0;
     this.offsetInBlock = offsetInBlock;
@@ -97,6 +109,24 @@ public DFSPacket(byte[] buf, int chunksPerPkt, long offsetInBlock, long seqno,
     maxChunks = chunksPerPkt;
   }
 
+  /**
+   * Create a new packet in a direct buffer taken from a pool. The buffer is
+   * returned to the pool by {@link #releaseBuffer}, and
+   * {@link #writeTo(DataOutputStream, WritableByteChannel)} writes it to the
+   * socket channel without copying it to the heap.
+   *
+   * @param bufferSize the size of the buffer storing data and checksums
+   * @see #DFSPacket(byte[], int, long, long, int, boolean)
+   */
+  static DFSPacket newDirect(int bufferSize, int chunksPerPkt,
+      long offsetInBlock, long seqno, int checksumSize,
+      boolean lastPacketInBlock) {
+    final ByteBuffer buf = DIRECT_BUFFER_POOL.getBuffer(bufferSize);
+    buf.clear();
+    return new DFSPacket(buf, chunksPerPkt, offsetInBlock, seqno,
+        checksumSize, lastPacketInBlock);
+  }
+
   /**
    * Write data to this packet.
    *
@@ -108,10 +138,11 @@ public DFSPacket(byte[] buf, int chunksPerPkt, long offsetInBlock, long seqno,
   synchronized void writeData(byte[] inarray, int off, int len)
       throws ClosedChannelException {
     checkBuffer();
-    if (dataPos + len > buf.length) {
+    if (dataPos + len > buf.capacity()) {
       throw new BufferOverflowException();
     }
-    System.arraycopy(inarray, off, buf, dataPos, len);
+    buf.position(dataPos);
+    buf.put(inarray, off, len);
     dataPos += len;
   }
 
@@ -119,12 +150,14 @@ public synchronized void writeData(ByteBuffer inBuffer, int len)
       throws ClosedChannelException {
     checkBuffer();
     len =  len > inBuffer.remaining() ? inBuffer.remaining() : len;
-    if (dataPos + len > buf.length) {
+    if (dataPos + len > buf.capacity()) {
       throw new BufferOverflowException();
     }
-    for (int i = 0; i < len; i++) {
-      buf[dataPos + i] = inBuffer.get();
-    }
+    final ByteBuffer src = inBuffer.duplicate();
+    src.limit(src.position() + len);
+    buf.position(dataPos);
+    buf.put(src);
+    inBuffer.position(inBuffer.position() + len);
     dataPos += len;
   }
 
@@ -145,7 +178,8 @@ public synchronized void writeChecksum(byte[] inarray, int off, int len)
     if (checksumPos + len > dataStart) {
       throw new BufferOverflowException();
     }
-    System.arraycopy(inarray, off, buf, checksumPos, len);
+    buf.position(checksumPos);
+    buf.put(inarray, off, len);
     checksumPos += len;
   }
 
@@ -154,7 +188,19 @@ public synchronized void writeChecksum(byte[] inarray, int off, int len)
    *
    * @throws IOException
    */
-  public synchronized void writeTo(DataOutputStream stm) throws IOException {
+  public void writeTo(DataOutputStream stm) throws IOException {
+    writeTo(stm, null);
+  }
+
+  /**
+   * Write the full packet, including the header, to the given output stream.
+   * A packet in a direct buffer is written to the channel if it is not null,
+   * after flushing the stream which must be buffering the same channel.
+   *
+   * @throws IOException
+   */
+  public synchronized void writeTo(DataOutputStream stm,
+      WritableByteChannel channel) throws IOException {
     checkBuffer();
 
     final int dataLen = dataPos - dataStart;
@@ -167,8 +213,16 @@ public synchronized void writeTo(DataOutputStream stm) throws IOException {
     if (checksumPos != dataStart) {
       // Move the checksum to cover the gap. This can happen for the last
       // packet or during an hflush/hsync call.
-      System.arraycopy(buf, checksumStart, buf,
-          dataStart - checksumLen , checksumLen);
+      if (buf.hasArray()) {
+        System.arraycopy(buf.array(), checksumStart, buf.array(),
+            dataStart - checksumLen, checksumLen);
+      } else {
+        final byte[] checksums = new byte[checksumLen];
+        buf.position(checksumStart);
+        buf.get(checksums);
+        buf.position(dataStart - checksumLen);
+        buf.put(checksums);
+      }
       checksumPos = dataStart;
       checksumStart = checksumPos - checksumLen;
     }
@@ -180,23 +234,39 @@ public synchronized void writeTo(DataOutputStream stm) throws IOException {
 
     // Copy the header data into the buffer immediately preceding the checksum
     // data.
-    System.arraycopy(header.getBytes(), 0, buf, headerStart,
-        header.getSerializedSize());
+    buf.position(headerStart);
+    buf.put(header.getBytes(), 0, header.getSerializedSize());
 
+    final int pktEnd =
+        headerStart + header.getSerializedSize() + checksumLen + dataLen;
     // corrupt the data for testing.
     if (DFSClientFaultInjector.get().corruptPacket()) {
-      buf[headerStart+header.getSerializedSize() + checksumLen + dataLen-1] ^=
-          0xff;
+      buf.put(pktEnd - 1, (byte) (buf.get(pktEnd - 1) ^ 0xff));
     }
 
     // Write the now contiguous full packet to the output stream.
-    stm.write(buf, headerStart,
-        header.getSerializedSize() + checksumLen + dataLen);
+    if (buf.hasArray()) {
+      stm.write(buf.array(), headerStart, pktEnd - headerStart);
+    } else {
+      buf.limit(pktEnd);
+      buf.position(headerStart);
+      try {
+        if (channel != null) {
+          stm.flush();
+          while (buf.hasRemaining()) {
+            channel.write(buf);
+          }
+        } else {
+          Channels.newChannel(stm).write(buf);
+        }
+      } finally {
+        buf.clear();
+      }
+    }
 
     // undo corruption.
     if (DFSClientFaultInjector.get().uncorruptPacket()) {
-      buf[headerStart+header.getSerializedSize() + checksumLen + dataLen-1] ^=
-          0xff;
+      buf.put(pktEnd - 1, (byte) (buf.get(pktEnd - 1) ^ 0xff));
     }
   }
 
@@ -207,10 +277,15 @@ private synchronized void checkBuffer() throws ClosedChannelException {
   }
 
   /**
-   * Release the buffer in this packet to ByteArrayManager.
+   * Release the buffer in this packet to ByteArrayManager, or to the pool of
+   * direct buffers if it was created by {@link #newDirect}.
    */
   synchronized void releaseBuffer(ByteArrayManager bam) {
-    bam.release(buf);
+    if (buf != null && buf.isDirect()) {
+      DIRECT_BUFFER_POOL.returnBuffer(buf);
+    } else {
+      bam.release(buf == null ? null : buf.array());
+    }
     buf = null;
   }
 
@@ -30,6 +30,7 @@
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -476,6 +477,11 @@ boolean doWaitForRestart() {
   protected final BlockToWrite block; // its length is number of bytes acked
   protected Token<BlockTokenIdentifier> accessToken;
   private DataOutputStream blockStream;
+  /**
+   * The socket channel under blockStream, or null if the socket is wrapped
+   * by SASL. Packets in direct buffers are written to it directly.
+   */
+  private WritableByteChannel blockChannel;
   private DataInputStream blockReplyStream;
   private ResponseProcessor response = null;
   private final Object nodesLock = new Object();
@@ -893,7 +899,7 @@ private void waitForAllAcks() throws IOException {
   private void sendPacket(DFSPacket packet) throws IOException {
     // write out data to remote datanode
     try {
-      packet.writeTo(blockStream);
+      packet.writeTo(blockStream, blockChannel);
       blockStream.flush();
     } catch (IOException e) {
       // HDFS-3398 treat primary DN is down since client is unable to
@@ -1096,6 +1102,7 @@ void closeStream() {
         b.add(e);
       } finally {
         blockStream = null;
+        blockChannel = null;
       }
     }
     if (blockReplyStream != null) {
@@ -1888,6 +1895,7 @@ boolean createBlockOutputStream(DatanodeInfo[] nodes,
     while (true) {
       boolean result = false;
       DataOutputStream out = null;
+      WritableByteChannel channel = null;
       try {
         assert null == s : "Previous socket unclosed";
         assert null == blockReplyStream : "Previous blockReplyStream unclosed";
@@ -1899,6 +1907,10 @@ boolean createBlockOutputStream(DatanodeInfo[] nodes,
         InputStream unbufIn = NetUtils.getInputStream(s, readTimeout);
         IOStreamPair saslStreams = dfsClient.saslClient.socketSend(s,
             unbufOut, unbufIn, dfsClient, accessToken, nodes[0]);
+        if (saslStreams.out == unbufOut &&
+            unbufOut instanceof WritableByteChannel) {
+          channel = (WritableByteChannel) unbufOut;
+        }
         unbufOut = saslStreams.out;
         unbufIn = saslStreams.in;
         out = new DataOutputStream(new BufferedOutputStream(unbufOut,
@@ -1948,6 +1960,7 @@ boolean createBlockOutputStream(DatanodeInfo[] nodes,
 
         assert null == blockStream : "Previous blockStream unclosed";
         blockStream = out;
+        blockChannel = channel;
         result =  true; // success
         errorState.resetInternalError();
         lastException.clear();
@@ -416,6 +416,8 @@ interface Write {
     String RECOVER_LEASE_ON_CLOSE_EXCEPTION_KEY =
         PREFIX + "recover.lease.on.close.exception";
     boolean RECOVER_LEASE_ON_CLOSE_EXCEPTION_DEFAULT = false;
+    String  DIRECT_BUFFERS_ENABLED_KEY = PREFIX + "direct-buffers.enabled";
+    boolean DIRECT_BUFFERS_ENABLED_DEFAULT = false;
 
     interface ByteArrayManager {
       String PREFIX = Write.PREFIX + "byte-array-manager.";
@@ -485,6 +487,8 @@ interface ShortCircuit {
       int     STREAMS_CACHE_SIZE_DEFAULT = 256;
       String  STREAMS_CACHE_EXPIRY_MS_KEY = PREFIX + "streams.cache.expiry.ms";
       long    STREAMS_CACHE_EXPIRY_MS_DEFAULT = 5*MINUTE;
+      String  STREAMS_CACHE_SHARDS_KEY = PREFIX + "streams.cache.shards";
+      int     STREAMS_CACHE_SHARDS_DEFAULT = 1;
 
       String  METRICS_SAMPLING_PERCENTAGE_KEY =
           PREFIX + "metrics.sampling.percentage";
@@ -123,6 +123,7 @@ public class DfsClientConf {
   private final int writePacketSize;
   private final int writeMaxPackets;
   private final ByteArrayManager.Conf writeByteArrayManagerConf;
+  private final boolean writeDirectBuffersEnabled;
   private final int socketTimeout;
   private final int socketSendBufferSize;
   private final long excludedNodesCacheExpiry;
@@ -223,6 +224,8 @@ public DfsClientConf(Configuration conf) {
         Write.MAX_PACKETS_IN_FLIGHT_DEFAULT);
 
     writeByteArrayManagerConf = loadWriteByteArrayManagerConf(conf);
+    writeDirectBuffersEnabled = conf.getBoolean(
+        Write.DIRECT_BUFFERS_ENABLED_KEY, Write.DIRECT_BUFFERS_ENABLED_DEFAULT);
 
     defaultBlockSize = conf.getLongBytes(DFS_BLOCK_SIZE_KEY,
         DFS_BLOCK_SIZE_DEFAULT);
@@ -522,6 +525,13 @@ public ByteArrayManager.Conf getWriteByteArrayManagerConf() {
     return writeByteArrayManagerConf;
   }
 
+  /**
+   * @return whether packets are written from pooled direct buffers
+   */
+  public boolean isWriteDirectBuffersEnabled() {
+    return writeDirectBuffersEnabled;
+  }
+
   /**
    * @return whether TCP_NODELAY should be set on client sockets
    */
@@ -763,6 +773,7 @@ public static class ShortCircuitConf {
     private final boolean domainSocketDataTraffic;
     private final int shortCircuitStreamsCacheSize;
     private final long shortCircuitStreamsCacheExpiryMs;
+    private final int shortCircuitStreamsCacheShards;
     private final int shortCircuitSharedMemoryWatcherInterruptCheckMs;
 
     // Short Circuit Read Metrics
@@ -834,6 +845,11 @@ public ShortCircuitConf(Configuration conf) {
       shortCircuitStreamsCacheExpiryMs = conf.getLong(
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_KEY,
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_DEFAULT);
+      shortCircuitStreamsCacheShards = conf.getInt(
+          Read.ShortCircuit.STREAMS_CACHE_SHARDS_KEY,
+          Read.ShortCircuit.STREAMS_CACHE_SHARDS_DEFAULT);
+      Preconditions.checkArgument(shortCircuitStreamsCacheShards >= 1,
+          Read.ShortCircuit.STREAMS_CACHE_SHARDS_KEY + " must be at least 1.");
       shortCircuitMmapEnabled = conf.getBoolean(
           Mmap.ENABLED_KEY,
           Mmap.ENABLED_DEFAULT);
@@ -929,6 +945,13 @@ public long getShortCircuitStreamsCacheExpiryMs() {
       return shortCircuitStreamsCacheExpiryMs;
     }
 
+    /**
+     * @return the shortCircuitStreamsCacheShards
+     */
+    public int getShortCircuitStreamsCacheShards() {
+      return shortCircuitStreamsCacheShards;
+    }
+
     /**
      * @return the shortCircuitSharedMemoryWatcherInterruptCheckMs
      */
@@ -991,6 +1014,8 @@ public String confAsString() {
           + shortCircuitStreamsCacheSize
           + ", shortCircuitStreamsCacheExpiryMs = "
           + shortCircuitStreamsCacheExpiryMs
+          + ", shortCircuitStreamsCacheShards = "
+          + shortCircuitStreamsCacheShards
           + ", shortCircuitMmapCacheSize = "
           + shortCircuitMmapCacheSize
           + ", shortCircuitMmapCacheExpiryMs = "
@@ -23,6 +23,7 @@
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
@@ -210,6 +211,18 @@ public void mirrorPacketTo(DataOutputStream mirrorOut) throws IOException {
         curPacketBuf.remaining());
   }
 
+  /**
+   * Rewrite the last-read packet on the wire to the given channel, without
+   * copying a direct buffer to the heap.
+   */
+  public void mirrorPacketTo(WritableByteChannel mirrorOut)
+      throws IOException {
+    ByteBuffer pkt = curPacketBuf.duplicate();
+    while (pkt.hasRemaining()) {
+      mirrorOut.write(pkt);
+    }
+  }
+
 
   private static void doReadFully(ReadableByteChannel ch, InputStream in,
       ByteBuffer buf) throws IOException {
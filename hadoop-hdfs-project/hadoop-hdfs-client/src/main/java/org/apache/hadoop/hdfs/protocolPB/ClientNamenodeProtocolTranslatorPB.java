@@ -25,7 +25,9 @@
 import java.util.List;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -122,6 +124,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetContentSummaryRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetContentSummaryResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetCurrentEditLogTxidRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDataEncryptionKeyRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDataEncryptionKeyResponseProto;
@@ -274,6 +277,9 @@ public class ClientNamenodeProtocolTranslatorPB implements
     ProtocolMetaInterface, ClientProtocol, Closeable, ProtocolTranslator {
   final private ClientNamenodeProtocolPB rpcProxy;
 
+  private static final ThreadLocal<CompletableFuture<?>> ASYNC_RETURN_FUTURE =
+      new ThreadLocal<>();
+
   static final GetServerDefaultsRequestProto VOID_GET_SERVER_DEFAULT_REQUEST =
       GetServerDefaultsRequestProto.newBuilder().build();
 
@@ -337,10 +343,15 @@ public LocatedBlocks getBlockLocations(String src, long offset, long length)
         .setOffset(offset)
         .setLength(length)
         .build();
-    GetBlockLocationsResponseProto resp = ipc(() -> rpcProxy.getBlockLocations(null,
-        req));
-    return resp.hasLocations() ?
-        PBHelperClient.convert(resp.getLocations()) : null;
+    Function<GetBlockLocationsResponseProto, LocatedBlocks> converter =
+        resp -> resp.hasLocations() ?
+            PBHelperClient.convert(resp.getLocations()) : null;
+    if (Client.isAsynchronousMode()) {
+      ipc(() -> rpcProxy.getBlockLocations(null, req));
+      setAsyncReturnFuture(converter);
+      return null;
+    }
+    return converter.apply(ipc(() -> rpcProxy.getBlockLocations(null, req)));
   }
 
   @Override
@@ -452,6 +463,38 @@ public boolean isDone() {
     AsyncCallHandler.setLowerLayerAsyncReturn(asyncGet);
   }
 
+  /**
+   * Set the future of the converted return value of the last call made in
+   * asynchronous mode, see {@link #getAsyncReturnFuture()}.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T extends Message, R> void setAsyncReturnFuture(
+      Function<T, R> converter) {
+    ASYNC_RETURN_FUTURE.set(ProtobufRpcEngine2.getAsyncReturnMessageFuture()
+        .thenApply(message -> converter.apply((T) message)));
+  }
+
+  /**
+   * Get the return value of the last call made in asynchronous mode by the
+   * current thread as a future. This is supported by
+   * {@link #getBlockLocations}, {@link #getListing}, {@link #getFileInfo}
+   * and {@link #getContentSummary}. The future completes on the IPC
+   * connection thread, with the remote exception if the call fails. The
+   * future can only be taken once.
+   *
+   * @param <T> the type of the return value.
+   * @return the future of the return value, null if the last call does not
+   *         support it.
+   */
+  @SuppressWarnings("unchecked")
+  @InterfaceStability.Unstable
+  public static <T> CompletableFuture<T> getAsyncReturnFuture() {
+    CompletableFuture<T> future =
+        (CompletableFuture<T>) ASYNC_RETURN_FUTURE.get();
+    ASYNC_RETURN_FUTURE.remove();
+    return future;
+  }
+
   @Override
   public void setOwner(String src, String username, String groupname)
       throws IOException {
@@ -618,11 +661,15 @@ public DirectoryListing getListing(String src, byte[] startAfter,
         .setSrc(src)
         .setStartAfter(ByteString.copyFrom(startAfter))
         .setNeedLocation(needLocation).build();
-    GetListingResponseProto result = ipc(() -> rpcProxy.getListing(null, req));
-    if (result.hasDirList()) {
-      return PBHelperClient.convert(result.getDirList());
+    Function<GetListingResponseProto, DirectoryListing> converter =
+        result -> result.hasDirList() ?
+            PBHelperClient.convert(result.getDirList()) : null;
+    if (Client.isAsynchronousMode()) {
+      ipc(() -> rpcProxy.getListing(null, req));
+      setAsyncReturnFuture(converter);
+      return null;
     }
-    return null;
+    return converter.apply(ipc(() -> rpcProxy.getListing(null, req)));
   }
 
   @Override
@@ -817,8 +864,14 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
     GetFileInfoRequestProto req = GetFileInfoRequestProto.newBuilder()
         .setSrc(src)
         .build();
-    GetFileInfoResponseProto res = ipc(() -> rpcProxy.getFileInfo(null, req));
-    return res.hasFs() ? PBHelperClient.convert(res.getFs()) : null;
+    Function<GetFileInfoResponseProto, HdfsFileStatus> converter =
+        res -> res.hasFs() ? PBHelperClient.convert(res.getFs()) : null;
+    if (Client.isAsynchronousMode()) {
+      ipc(() -> rpcProxy.getFileInfo(null, req));
+      setAsyncReturnFuture(converter);
+      return null;
+    }
+    return converter.apply(ipc(() -> rpcProxy.getFileInfo(null, req)));
   }
 
   @Override
@@ -850,8 +903,14 @@ public ContentSummary getContentSummary(String path) throws IOException {
         .newBuilder()
         .setPath(path)
         .build();
-    return PBHelperClient.convert(ipc(() -> rpcProxy.getContentSummary(null, req))
-        .getSummary());
+    Function<GetContentSummaryResponseProto, ContentSummary> converter =
+        res -> PBHelperClient.convert(res.getSummary());
+    if (Client.isAsynchronousMode()) {
+      ipc(() -> rpcProxy.getContentSummary(null, req));
+      setAsyncReturnFuture(converter);
+      return null;
+    }
+    return converter.apply(ipc(() -> rpcProxy.getContentSummary(null, req)));
   }
 
   @Override
@@ -27,9 +27,11 @@
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -97,41 +99,50 @@ private class CacheCleaner implements Runnable, Closeable {
      * an already-existing mmap gives a huge performance boost, since the
      * page table entries don't have to be re-populated.  Both the mmap
      * and non-mmap evictable lists have maximum sizes and maximum lifespans.
+     *
+     * The shards are swept one at a time, so that the cleaner only holds up
+     * the threads using one shard at any moment.
      */
     @Override
     public void run() {
-      ShortCircuitCache.this.lock.lock();
-      try {
-        if (ShortCircuitCache.this.closed) return;
-        long curMs = Time.monotonicNow();
-
-        LOG.debug("{}: cache cleaner running at {}", this, curMs);
-
-        int numDemoted = demoteOldEvictableMmaped(curMs);
-        int numPurged = 0;
-        Long evictionTimeNs;
-        while (!evictable.isEmpty()) {
-          Object eldestKey = evictable.firstKey();
-          evictionTimeNs = (Long)eldestKey;
-          long evictionTimeMs =
-              TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
-          if (evictionTimeMs + maxNonMmappedEvictableLifespanMs >= curMs) break;
-          ShortCircuitReplica replica = (ShortCircuitReplica)evictable.get(
-              eldestKey);
-          if (LOG.isTraceEnabled()) {
-            LOG.trace("CacheCleaner: purging " + replica + ": " +
-                StringUtils.getStackTrace(Thread.currentThread()));
+      if (ShortCircuitCache.this.closed) return;
+      long curMs = Time.monotonicNow();
+
+      LOG.debug("{}: cache cleaner running at {}", this, curMs);
+
+      int numDemoted = 0;
+      int numPurged = 0;
+      for (Shard shard : shards) {
+        shard.lock.lock();
+        try {
+          if (ShortCircuitCache.this.closed) return;
+          numDemoted += demoteOldEvictableMmaped(shard, curMs);
+          Long evictionTimeNs;
+          while (!shard.evictable.isEmpty()) {
+            Object eldestKey = shard.evictable.firstKey();
+            evictionTimeNs = (Long)eldestKey;
+            long evictionTimeMs = TimeUnit.MILLISECONDS.convert(
+                evictionTimeNs, TimeUnit.NANOSECONDS);
+            if (evictionTimeMs + maxNonMmappedEvictableLifespanMs >= curMs) {
+              break;
+            }
+            ShortCircuitReplica replica =
+                (ShortCircuitReplica)shard.evictable.get(eldestKey);
+            if (LOG.isTraceEnabled()) {
+              LOG.trace("CacheCleaner: purging " + replica + ": " +
+                  StringUtils.getStackTrace(Thread.currentThread()));
+            }
+            purge(replica);
+            numPurged++;
           }
-          purge(replica);
-          numPurged++;
+        } finally {
+          shard.lock.unlock();
         }
-
-        LOG.debug("{}: finishing cache cleaner run started at {}. Demoted {} "
-                + "mmapped replicas; purged {} replicas.",
-            this, curMs, numDemoted, numPurged);
-      } finally {
-        ShortCircuitCache.this.lock.unlock();
       }
+
+      LOG.debug("{}: finishing cache cleaner run started at {}. Demoted {} "
+              + "mmapped replicas; purged {} replicas.",
+          this, curMs, numDemoted, numPurged);
     }
 
     @Override
@@ -264,9 +275,45 @@ public interface ShortCircuitReplicaCreator {
   }
 
   /**
-   * Lock protecting the cache.
+   * A shard of the cache.
+   *
+   * Replicas are assigned to a shard by the hash of their key.  Each shard
+   * has its own lock, replicaInfoMap and eviction lists, so that threads
+   * opening and closing readers of different blocks seldom contend.
+   */
+  private static final class Shard {
+    /**
+     * Lock protecting the shard.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * A map containing all ShortCircuitReplicaInfo objects of the shard,
+     * organized by Key.  ShortCircuitReplicaInfo objects may contain a
+     * replica, or an InvalidToken exception.
+     */
+    private final HashMap<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>>
+        replicaInfoMap = new HashMap<>();
+
+    /**
+     * LinkedMap of evictable elements.
+     *
+     * Maps (unique) insertion time in nanoseconds to the element.
+     */
+    private final LinkedMap evictable = new LinkedMap();
+
+    /**
+     * LinkedMap of mmaped evictable elements.
+     *
+     * Maps (unique) insertion time in nanoseconds to the element.
+     */
+    private final LinkedMap evictableMmapped = new LinkedMap();
+  }
+
+  /**
+   * The shards of the cache.
    */
-  private final ReentrantLock lock = new ReentrantLock();
+  private final Shard[] shards;
 
   /**
    * The executor service that runs the cacheCleaner.
@@ -284,49 +331,28 @@ public interface ShortCircuitReplicaCreator {
       setDaemon(true).setNameFormat("ShortCircuitCache_SlotReleaser").
       build());
 
-  /**
-   * A map containing all ShortCircuitReplicaInfo objects, organized by Key.
-   * ShortCircuitReplicaInfo objects may contain a replica, or an InvalidToken
-   * exception.
-   */
-  private final HashMap<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>>
-      replicaInfoMap = new HashMap<>();
-
   /**
    * The CacheCleaner.  We don't create this and schedule it until it becomes
    * necessary.
    */
   private CacheCleaner cacheCleaner;
 
-  /**
-   * LinkedMap of evictable elements.
-   *
-   * Maps (unique) insertion time in nanoseconds to the element.
-   */
-  private final LinkedMap evictable = new LinkedMap();
-
   /**
    * Maximum total size of the cache, including both mmapped and
-   * no$-mmapped elements.
+   * no$-mmapped elements.  Each shard holds at most its share of it.
    */
-  private int maxTotalSize;
+  private volatile int maxTotalSize;
 
   /**
    * Non-mmaped elements older than this will be closed.
    */
-  private long maxNonMmappedEvictableLifespanMs;
+  private volatile long maxNonMmappedEvictableLifespanMs;
 
   /**
-   * LinkedMap of mmaped evictable elements.
-   *
-   * Maps (unique) insertion time in nanoseconds to the element.
-   */
-  private final LinkedMap evictableMmapped = new LinkedMap();
-
-  /**
-   * Maximum number of mmaped evictable elements.
+   * Maximum number of mmaped evictable elements.  Each shard holds at most
+   * its share of it.
    */
-  private int maxEvictableMmapedSize;
+  private volatile int maxEvictableMmapedSize;
 
   /**
    * Mmaped elements older than this will be closed.
@@ -348,12 +374,12 @@ public interface ShortCircuitReplicaCreator {
   /**
    * True if the ShortCircuitCache is closed.
    */
-  private boolean closed = false;
+  private volatile boolean closed = false;
 
   /**
    * Number of existing mmaps associated with this cache.
    */
-  private int outstandingMmapCount = 0;
+  private final AtomicInteger outstandingMmapCount = new AtomicInteger();
 
   /**
    * Manages short-circuit shared memory segments for the client.
@@ -374,15 +400,33 @@ public static ShortCircuitCache fromConf(ShortCircuitConf conf) {
         conf.getShortCircuitMmapCacheExpiryMs(),
         conf.getShortCircuitMmapCacheRetryTimeout(),
         conf.getShortCircuitCacheStaleThresholdMs(),
-        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs());
+        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs(),
+        conf.getShortCircuitStreamsCacheShards());
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, shmInterruptCheckMs, 1);
+  }
+
+  public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
+      int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
+      long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs,
+      int numShards) {
     Preconditions.checkArgument(maxTotalSize >= 0,
         "maxTotalSize must be greater than zero.");
     this.maxTotalSize = maxTotalSize;
+    Preconditions.checkArgument(numShards > 0,
+        HdfsClientConfigKeys.Read.ShortCircuit.STREAMS_CACHE_SHARDS_KEY
+            + " must be greater than zero.");
+    // A shard must be able to hold at least one evictable replica.
+    this.shards = new Shard[Math.min(numShards, Math.max(1, maxTotalSize))];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new Shard();
+    }
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0,
         "maxNonMmappedEvictableLifespanMs must be greater than zero.");
     this.maxNonMmappedEvictableLifespanMs = maxNonMmappedEvictableLifespanMs;
@@ -415,63 +459,102 @@ public void setMaxTotalSize(int maxTotalSize) {
     this.maxTotalSize = maxTotalSize;
   }
 
+  @VisibleForTesting
+  int getNumShards() {
+    return shards.length;
+  }
+
+  /**
+   * @return the shard which holds the replica of a block.
+   */
+  private Shard shardFor(ExtendedBlockId key) {
+    return shards.length == 1 ? shards[0] :
+        shards[Math.floorMod(key.hashCode(), shards.length)];
+  }
+
+  /**
+   * @return the share of a limit held by one shard.  The shares are
+   *         rounded up, so the cache as a whole may hold a few replicas
+   *         more than the limit.
+   */
+  private int perShard(int limit) {
+    return (limit + shards.length - 1) / shards.length;
+  }
+
   /**
    * Increment the reference count of a replica, and remove it from any free
    * list it may be in.
    *
-   * You must hold the cache lock while calling this function.
+   * You must hold the shard lock while calling this function.
    *
    * @param replica      The replica we're removing.
    */
   private void ref(ShortCircuitReplica replica) {
-    lock.lock();
+    Shard shard = shardFor(replica.key);
+    shard.lock.lock();
     try {
-      Preconditions.checkArgument(replica.refCount > 0,
-          "can't ref %s because its refCount reached %d", replica,
-          replica.refCount);
+      int refCount = replica.refCount.get();
+      Preconditions.checkArgument(refCount > 0,
+          "can't ref %s because its refCount reached %d", replica, refCount);
       Long evictableTimeNs = replica.getEvictableTimeNs();
-      replica.refCount++;
+      refCount = replica.refCount.incrementAndGet();
       if (evictableTimeNs != null) {
-        String removedFrom = removeEvictable(replica);
+        String removedFrom = removeEvictable(shard, replica);
         if (LOG.isTraceEnabled()) {
           LOG.trace(this + ": " + removedFrom +
               " no longer contains " + replica + ".  refCount " +
-              (replica.refCount - 1) + " -> " + replica.refCount +
+              (refCount - 1) + " -> " + refCount +
               StringUtils.getStackTrace(Thread.currentThread()));
 
         }
       } else if (LOG.isTraceEnabled()) {
         LOG.trace(this + ": replica  refCount " +
-            (replica.refCount - 1) + " -> " + replica.refCount +
+            (refCount - 1) + " -> " + refCount +
             StringUtils.getStackTrace(Thread.currentThread()));
       }
     } finally {
-      lock.unlock();
+      shard.lock.unlock();
+    }
+  }
+
+  /**
+   * @return why a replica which has not been purged yet should be, or null
+   *         if it is still usable.
+   */
+  private static String getPurgeReason(ShortCircuitReplica replica) {
+    if (!replica.getDataStream().getChannel().isOpen()) {
+      return "purging replica because its data channel is closed.";
+    } else if (!replica.getMetaStream().getChannel().isOpen()) {
+      return "purging replica because its meta channel is closed.";
+    } else if (replica.isStale()) {
+      return "purging replica because it is stale.";
     }
+    return null;
   }
 
   /**
    * Unreference a replica.
    *
-   * You must hold the cache lock while calling this function.
+   * References which leave the replica in use by someone besides the cache
+   * are dropped without taking the shard lock, since the eviction lists do
+   * not change.  The last references are dropped under the shard lock.
    *
    * @param replica   The replica being unreferenced.
    */
   void unref(ShortCircuitReplica replica) {
-    lock.lock();
+    if ((replica.purged || getPurgeReason(replica) == null) &&
+        replica.tryUnref()) {
+      LOG.trace("{}: unref replica {} without the shard lock", this, replica);
+      return;
+    }
+    Shard shard = shardFor(replica.key);
+    shard.lock.lock();
     try {
       // If the replica is stale or unusable, but we haven't purged it yet,
       // let's do that.  It would be a shame to evict a non-stale replica so
       // that we could put a stale or unusable one into the cache.
       if (!replica.purged) {
-        String purgeReason = null;
-        if (!replica.getDataStream().getChannel().isOpen()) {
-          purgeReason = "purging replica because its data channel is closed.";
-        } else if (!replica.getMetaStream().getChannel().isOpen()) {
-          purgeReason = "purging replica because its meta channel is closed.";
-        } else if (replica.isStale()) {
-          purgeReason = "purging replica because it is stale.";
-        }
+        String purgeReason = getPurgeReason(replica);
         if (purgeReason != null) {
           LOG.debug("{}: {}", this, purgeReason);
           purge(replica);
@@ -479,7 +562,7 @@ void unref(ShortCircuitReplica replica) {
       }
       String addedString = "";
       boolean shouldTrimEvictionMaps = false;
-      int newRefCount = --replica.refCount;
+      int newRefCount = replica.refCount.decrementAndGet();
       if (newRefCount == 0) {
         // Close replica, since there are no remaining references to it.
         Preconditions.checkArgument(replica.purged,
@@ -494,18 +577,19 @@ void unref(ShortCircuitReplica replica) {
           // Add the replica to the end of an eviction list.
           // Eviction lists are sorted by time.
           if (replica.hasMmap()) {
-            insertEvictable(System.nanoTime(), replica, evictableMmapped);
+            insertEvictable(System.nanoTime(), replica,
+                shard.evictableMmapped);
             addedString = "added to evictableMmapped, ";
           } else {
-            insertEvictable(System.nanoTime(), replica, evictable);
+            insertEvictable(System.nanoTime(), replica, shard.evictable);
             addedString = "added to evictable, ";
           }
           shouldTrimEvictionMaps = true;
         }
       } else {
-        Preconditions.checkArgument(replica.refCount >= 0,
+        Preconditions.checkArgument(newRefCount >= 0,
             "replica's refCount went negative (refCount = %d" +
-                " for %s)", replica.refCount, replica);
+                " for %s)", newRefCount, replica);
       }
       if (LOG.isTraceEnabled()) {
         LOG.trace(this + ": unref replica " + replica +
@@ -514,25 +598,28 @@ void unref(ShortCircuitReplica replica) {
             StringUtils.getStackTrace(Thread.currentThread()));
       }
       if (shouldTrimEvictionMaps) {
-        trimEvictionMaps();
+        trimEvictionMaps(shard);
       }
     } finally {
-      lock.unlock();
+      shard.lock.unlock();
     }
   }
 
   /**
    * Demote old evictable mmaps into the regular eviction map.
    *
-   * You must hold the cache lock while calling this function.
+   * You must hold the shard lock while calling this function.
    *
+   * @param shard The shard to demote mmaps of.
    * @param now   Current time in monotonic milliseconds.
    * @return      Number of replicas demoted.
    */
-  private int demoteOldEvictableMmaped(long now) {
+  private int demoteOldEvictableMmaped(Shard shard, long now) {
     int numDemoted = 0;
     boolean needMoreSpace = false;
     Long evictionTimeNs;
+    final LinkedMap evictableMmapped = shard.evictableMmapped;
+    final int maxSize = perShard(maxEvictableMmapedSize);
 
     while (!evictableMmapped.isEmpty()) {
       Object eldestKey = evictableMmapped.firstKey();
@@ -540,7 +627,7 @@ private int demoteOldEvictableMmaped(long now) {
       long evictionTimeMs =
           TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
       if (evictionTimeMs + maxEvictableMmapedLifespanMs >= now) {
-        if (evictableMmapped.size() < maxEvictableMmapedSize) {
+        if (evictableMmapped.size() < maxSize) {
           break;
         }
         needMoreSpace = true;
@@ -556,20 +643,25 @@ private int demoteOldEvictableMmaped(long now) {
       }
       removeEvictable(replica, evictableMmapped);
       munmap(replica);
-      insertEvictable(evictionTimeNs, replica, evictable);
+      insertEvictable(evictionTimeNs, replica, shard.evictable);
       numDemoted++;
     }
     return numDemoted;
   }
 
   /**
-   * Trim the eviction lists.
+   * Trim the eviction lists of a shard.
+   *
+   * You must hold the shard lock while calling this function.
    */
-  private void trimEvictionMaps() {
+  private void trimEvictionMaps(Shard shard) {
     long now = Time.monotonicNow();
-    demoteOldEvictableMmaped(now);
+    demoteOldEvictableMmaped(shard, now);
 
-    while (evictable.size() + evictableMmapped.size() > maxTotalSize) {
+    final LinkedMap evictable = shard.evictable;
+    final LinkedMap evictableMmapped = shard.evictableMmapped;
+    while (evictable.size() + evictableMmapped.size() >
+        perShard(maxTotalSize)) {
       ShortCircuitReplica replica;
       if (evictable.isEmpty()) {
         replica = (ShortCircuitReplica) evictableMmapped
@@ -593,21 +685,22 @@ private void trimEvictionMaps() {
    */
   private void munmap(ShortCircuitReplica replica) {
     replica.munmap();
-    outstandingMmapCount--;
+    outstandingMmapCount.decrementAndGet();
   }
 
   /**
    * Remove a replica from an evictable map.
    *
+   * @param shard     The shard of the replica.
    * @param replica   The replica to remove.
    * @return          The map it was removed from.
    */
-  private String removeEvictable(ShortCircuitReplica replica) {
+  private String removeEvictable(Shard shard, ShortCircuitReplica replica) {
     if (replica.hasMmap()) {
-      removeEvictable(replica, evictableMmapped);
+      removeEvictable(replica, shard.evictableMmapped);
       return "evictableMmapped";
     } else {
-      removeEvictable(replica, evictable);
+      removeEvictable(replica, shard.evictable);
       return "evictable";
     }
   }
@@ -656,7 +749,7 @@ private void insertEvictable(Long evictionTimeNs,
    * outstanding references to it.  However, it does mean the cache won't
    * hand it out to anyone after this.
    *
-   * You must hold the cache lock while calling this function.
+   * You must hold the shard lock while calling this function.
    *
    * @param replica   The replica being removed.
    */
@@ -665,17 +758,19 @@ private void purge(ShortCircuitReplica replica) {
     String evictionMapName = null;
     Preconditions.checkArgument(!replica.purged);
     replica.purged = true;
-    Waitable<ShortCircuitReplicaInfo> val = replicaInfoMap.get(replica.key);
+    Shard shard = shardFor(replica.key);
+    Waitable<ShortCircuitReplicaInfo> val =
+        shard.replicaInfoMap.get(replica.key);
     if (val != null) {
       ShortCircuitReplicaInfo info = val.getVal();
       if ((info != null) && (info.getReplica() == replica)) {
-        replicaInfoMap.remove(replica.key);
+        shard.replicaInfoMap.remove(replica.key);
         removedFromInfoMap = true;
       }
     }
     Long evictableTimeNs = replica.getEvictableTimeNs();
     if (evictableTimeNs != null) {
-      evictionMapName = removeEvictable(replica);
+      evictionMapName = removeEvictable(shard, replica);
     }
     if (LOG.isTraceEnabled()) {
       StringBuilder builder = new StringBuilder();
@@ -696,8 +791,6 @@ private void purge(ShortCircuitReplica replica) {
   /**
    * Fetch or create a replica.
    *
-   * You must hold the cache lock while calling this function.
-   *
    * @param key          Key to use for lookup.
    * @param creator      Replica creator callback.  Will be called without
    *                     the cache lock being held.
@@ -708,7 +801,8 @@ private void purge(ShortCircuitReplica replica) {
   public ShortCircuitReplicaInfo fetchOrCreate(ExtendedBlockId key,
       ShortCircuitReplicaCreator creator) {
     Waitable<ShortCircuitReplicaInfo> newWaitable;
-    lock.lock();
+    Shard shard = shardFor(key);
+    shard.lock.lock();
     try {
       ShortCircuitReplicaInfo info = null;
       for (int i = 0; i < FETCH_OR_CREATE_RETRY_TIMES; i++){
@@ -717,7 +811,8 @@ public ShortCircuitReplicaInfo fetchOrCreate(ExtendedBlockId key,
               this, key);
           return null;
         }
-        Waitable<ShortCircuitReplicaInfo> waitable = replicaInfoMap.get(key);
+        Waitable<ShortCircuitReplicaInfo> waitable =
+            shard.replicaInfoMap.get(key);
         if (waitable != null) {
           try {
             info = fetch(key, waitable);
@@ -729,10 +824,10 @@ public ShortCircuitReplicaInfo fetchOrCreate(ExtendedBlockId key,
       }
       if (info != null) return info;
       // We need to load the replica ourselves.
-      newWaitable = new Waitable<>(lock.newCondition());
-      replicaInfoMap.put(key, newWaitable);
+      newWaitable = new Waitable<>(shard.lock.newCondition());
+      shard.replicaInfoMap.put(key, newWaitable);
     } finally {
-      lock.unlock();
+      shard.lock.unlock();
     }
     return create(key, creator, newWaitable);
   }
@@ -802,7 +897,8 @@ private ShortCircuitReplicaInfo create(ExtendedBlockId key,
       LOG.warn(this + ": failed to load " + key, e);
     }
     if (info == null) info = new ShortCircuitReplicaInfo();
-    lock.lock();
+    Shard shard = shardFor(key);
+    shard.lock.lock();
     try {
       if (info.getReplica() != null) {
         // On success, make sure the cache cleaner thread is running.
@@ -814,8 +910,9 @@ private ShortCircuitReplicaInfo create(ExtendedBlockId key,
         // to increment the reference count here.
       } else {
         // On failure, remove the waitable from the replicaInfoMap.
-        Waitable<ShortCircuitReplicaInfo> waitableInMap = replicaInfoMap.get(key);
-        if (waitableInMap == newWaitable) replicaInfoMap.remove(key);
+        Waitable<ShortCircuitReplicaInfo> waitableInMap =
+            shard.replicaInfoMap.get(key);
+        if (waitableInMap == newWaitable) shard.replicaInfoMap.remove(key);
         if (info.getInvalidTokenException() != null) {
           LOG.info(this + ": could not load " + key + " due to InvalidToken " +
               "exception.", info.getInvalidTokenException());
@@ -825,12 +922,12 @@ private ShortCircuitReplicaInfo create(ExtendedBlockId key,
       }
       newWaitable.provide(info);
     } finally {
-      lock.unlock();
+      shard.lock.unlock();
     }
     return info;
   }
 
-  private void startCacheCleanerThreadIfNeeded() {
+  private synchronized void startCacheCleanerThreadIfNeeded() {
     if (cacheCleaner == null) {
       cacheCleaner = new CacheCleaner();
       long rateMs = cacheCleaner.getRateInMs();
@@ -846,7 +943,8 @@ private void startCacheCleanerThreadIfNeeded() {
   ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
       boolean anchored) {
     Condition newCond;
-    lock.lock();
+    Shard shard = shardFor(replica.key);
+    shard.lock.lock();
     try {
       while (replica.mmapData != null) {
         if (replica.mmapData instanceof MappedByteBuffer) {
@@ -871,27 +969,42 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
               replica.mmapData.getClass().getName());
         }
       }
-      newCond = lock.newCondition();
+      newCond = shard.lock.newCondition();
       replica.mmapData = newCond;
     } finally {
-      lock.unlock();
+      shard.lock.unlock();
     }
     MappedByteBuffer map = replica.loadMmapInternal();
-    lock.lock();
+    shard.lock.lock();
     try {
       if (map == null) {
         replica.mmapData = Time.monotonicNow();
         newCond.signalAll();
         return null;
       } else {
-        outstandingMmapCount++;
+        outstandingMmapCount.incrementAndGet();
         replica.mmapData = map;
         ref(replica);
         newCond.signalAll();
         return new ClientMmap(replica, map, anchored);
       }
     } finally {
-      lock.unlock();
+      shard.lock.unlock();
+    }
+  }
+
+  /**
+   * Lock all the shards, in order.
+   */
+  private void lockAllShards() {
+    for (Shard shard : shards) {
+      shard.lock.lock();
+    }
+  }
+
+  private void unlockAllShards() {
+    for (int i = shards.length - 1; i >= 0; i--) {
+      shards[i].lock.unlock();
     }
   }
 
@@ -901,25 +1014,29 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
   @Override
   public void close() {
     try {
-      lock.lock();
+      lockAllShards();
       if (closed) return;
       closed = true;
       LOG.info(this + ": closing");
       maxNonMmappedEvictableLifespanMs = 0;
       maxEvictableMmapedSize = 0;
       // Close and join cacheCleaner thread.
-      IOUtilsClient.cleanupWithLogger(LOG, cacheCleaner);
-      // Purge all replicas.
-      while (!evictable.isEmpty()) {
-        Object eldestKey = evictable.firstKey();
-        purge((ShortCircuitReplica) evictable.get(eldestKey));
+      synchronized (this) {
+        IOUtilsClient.cleanupWithLogger(LOG, cacheCleaner);
       }
-      while (!evictableMmapped.isEmpty()) {
-        Object eldestKey = evictableMmapped.firstKey();
-        purge((ShortCircuitReplica) evictableMmapped.get(eldestKey));
+      // Purge all replicas.
+      for (Shard shard : shards) {
+        while (!shard.evictable.isEmpty()) {
+          Object eldestKey = shard.evictable.firstKey();
+          purge((ShortCircuitReplica) shard.evictable.get(eldestKey));
+        }
+        while (!shard.evictableMmapped.isEmpty()) {
+          Object eldestKey = shard.evictableMmapped.firstKey();
+          purge((ShortCircuitReplica) shard.evictableMmapped.get(eldestKey));
+        }
       }
     } finally {
-      lock.unlock();
+      unlockAllShards();
     }
 
     releaserExecutor.shutdown();
@@ -963,32 +1080,62 @@ void visit(int numOutstandingMmaps,
 
   @VisibleForTesting // ONLY for testing
   public void accept(CacheVisitor visitor) {
-    lock.lock();
+    lockAllShards();
     try {
       Map<ExtendedBlockId, ShortCircuitReplica> replicas = new HashMap<>();
       Map<ExtendedBlockId, InvalidToken> failedLoads = new HashMap<>();
-      for (Entry<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>> entry :
-          replicaInfoMap.entrySet()) {
-        Waitable<ShortCircuitReplicaInfo> waitable = entry.getValue();
-        if (waitable.hasVal()) {
-          if (waitable.getVal().getReplica() != null) {
-            replicas.put(entry.getKey(), waitable.getVal().getReplica());
-          } else {
-            // The exception may be null here, indicating a failed load that
-            // isn't the result of an invalid block token.
-            failedLoads.put(entry.getKey(),
-                waitable.getVal().getInvalidTokenException());
+      for (Shard shard : shards) {
+        for (Entry<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>> entry :
+            shard.replicaInfoMap.entrySet()) {
+          Waitable<ShortCircuitReplicaInfo> waitable = entry.getValue();
+          if (waitable.hasVal()) {
+            if (waitable.getVal().getReplica() != null) {
+              replicas.put(entry.getKey(), waitable.getVal().getReplica());
+            } else {
+              // The exception may be null here, indicating a failed load that
+              // isn't the result of an invalid block token.
+              failedLoads.put(entry.getKey(),
+                  waitable.getVal().getInvalidTokenException());
+            }
           }
         }
       }
+      LinkedMap evictable = shards[0].evictable;
+      LinkedMap evictableMmapped = shards[0].evictableMmapped;
+      if (shards.length > 1) {
+        TreeMap<Long, Object> merged = new TreeMap<>();
+        TreeMap<Long, Object> mergedMmapped = new TreeMap<>();
+        for (Shard shard : shards) {
+          mergeEvictable(shard.evictable, merged);
+          mergeEvictable(shard.evictableMmapped, mergedMmapped);
+        }
+        evictable = new LinkedMap(merged);
+        evictableMmapped = new LinkedMap(mergedMmapped);
+      }
       LOG.debug("visiting {} with outstandingMmapCount={}, replicas={}, "
               + "failedLoads={}, evictable={}, evictableMmapped={}",
           visitor.getClass().getName(), outstandingMmapCount, replicas,
           failedLoads, evictable, evictableMmapped);
-      visitor.visit(outstandingMmapCount, replicas, failedLoads,
+      visitor.visit(outstandingMmapCount.get(), replicas, failedLoads,
           evictable, evictableMmapped);
     } finally {
-      lock.unlock();
+      unlockAllShards();
+    }
+  }
+
+  /**
+   * Add the eviction list of a shard to a list merged from all the shards.
+   * The eviction times are only unique within a shard, so a time which is
+   * taken is bumped the same way as in {@link #insertEvictable}.
+   */
+  private static void mergeEvictable(LinkedMap shardMap,
+      TreeMap<Long, Object> merged) {
+    for (Object key : shardMap.keySet()) {
+      long evictionTimeNs = (Long) key;
+      while (merged.containsKey(evictionTimeNs)) {
+        evictionTimeNs++;
+      }
+      merged.put(evictionTimeNs, shardMap.get(key));
     }
   }
 
@@ -1061,6 +1208,10 @@ public DfsClientShmManager getDfsClientShmManager() {
    */
   @VisibleForTesting
   public int getReplicaInfoMapSize() {
-    return replicaInfoMap.size();
+    int size = 0;
+    for (Shard shard : shards) {
+      size += shard.replicaInfoMap.size();
+    }
+    return size;
   }
 }
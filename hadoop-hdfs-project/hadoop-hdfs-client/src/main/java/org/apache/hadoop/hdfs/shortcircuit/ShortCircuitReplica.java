@@ -22,6 +22,7 @@
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.ExtendedBlockId;
@@ -97,9 +98,9 @@ public class ShortCircuitReplica {
   /**
    * True if this replica has been purged from the cache; false otherwise.
    *
-   * Protected by the cache lock.
+   * Set under the cache shard lock.
    */
-  boolean purged = false;
+  volatile boolean purged = false;
 
   /**
    * Number of external references to this replica.  Replicas are referenced
@@ -107,9 +108,10 @@ public class ShortCircuitReplica {
    * The number starts at 2 because when we create a replica, it is referenced
    * by both the cache and the requester.
    *
-   * Protected by the cache lock.
+   * Changes which make the replica evictable or close it are made under the
+   * cache shard lock; see {@link #tryUnref()} for the others.
    */
-  int refCount = 2;
+  final AtomicInteger refCount = new AtomicInteger(2);
 
   /**
    * The monotonic time in nanoseconds at which the replica became evictable, or
@@ -143,6 +145,25 @@ public void unref() {
     cache.unref(this);
   }
 
+  /**
+   * Drop a reference without the cache shard lock.  This only succeeds when
+   * at least two references remain afterwards, since dropping to one makes
+   * the replica evictable and dropping to zero closes it.
+   *
+   * @return true if the reference was dropped.
+   */
+  boolean tryUnref() {
+    while (true) {
+      int count = refCount.get();
+      if (count <= 2) {
+        return false;
+      }
+      if (refCount.compareAndSet(count, count - 1)) {
+        return true;
+      }
+    }
+  }
+
   /**
    * Check if the replica is stale.
    *
@@ -233,9 +254,8 @@ void munmap() {
   void close() {
     String suffix = "";
 
-    Preconditions.checkState(refCount == 0,
-        "tried to close replica with refCount %d: %s", refCount, this);
-    refCount = -1;
+    Preconditions.checkState(refCount.compareAndSet(0, -1),
+        "tried to close replica with refCount %d: %s", refCount.get(), this);
     Preconditions.checkState(purged,
         "tried to close unpurged replica %s", this);
     if (hasMmap()) {
@@ -17,8 +17,15 @@
  */
 package org.apache.hadoop.hdfs;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
 import java.util.Random;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
+import org.apache.hadoop.hdfs.util.ByteArrayManager;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.junit.Assert;
 import org.junit.Test;
@@ -55,6 +62,59 @@ public void testPacket() throws Exception {
 
   }
 
+  @Test
+  public void testDirectPacket() throws Exception {
+    Random r = new Random(12345L);
+    byte[] data =  new byte[chunkSize * 2 + 100];
+    r.nextBytes(data);
+    byte[] checksum = new byte[checksumSize * 3];
+    r.nextBytes(checksum);
+
+    // Fewer chunks than the maximum, so the checksums are moved.
+    int bufSize = PacketHeader.PKT_MAX_HEADER_LEN +
+        maxChunksPerPacket * (chunkSize + checksumSize);
+    DFSPacket heap = new DFSPacket(new byte[bufSize], maxChunksPerPacket,
+        0, 0, checksumSize, false);
+    DFSPacket direct = DFSPacket.newDirect(bufSize, maxChunksPerPacket,
+        0, 0, checksumSize, false);
+    for (DFSPacket p : new DFSPacket[] {heap, direct}) {
+      p.writeData(data, 0, chunkSize);
+      p.writeData(ByteBuffer.wrap(data, chunkSize,
+          data.length - chunkSize), data.length);
+      p.writeChecksum(checksum, 0, checksum.length);
+    }
+
+    DataOutputBuffer expected = new DataOutputBuffer();
+    heap.writeTo(expected);
+    byte[] expectedBytes =
+        Arrays.copyOf(expected.getData(), expected.getLength());
+
+    // Written through the stream.
+    DataOutputBuffer os = new DataOutputBuffer();
+    direct.writeTo(os);
+    Assert.assertArrayEquals(expectedBytes,
+        Arrays.copyOf(os.getData(), os.getLength()));
+
+    // Written to the channel, after the bytes buffered by the stream.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataOutputStream stm = new DataOutputStream(out);
+    stm.write(1);
+    direct.writeTo(stm, Channels.newChannel(out));
+    byte[] written = out.toByteArray();
+    Assert.assertEquals(1, written[0]);
+    Assert.assertArrayEquals(expectedBytes,
+        Arrays.copyOfRange(written, 1, written.length));
+
+    ByteArrayManager bam = ByteArrayManager.newInstance(null);
+    direct.releaseBuffer(bam);
+    try {
+      direct.writeData(data, 0, 1);
+      Assert.fail("wrote to a released packet");
+    } catch (ClosedChannelException e) {
+      // expected
+    }
+  }
+
   public static void assertArrayRegionsEqual(byte []buf1, int off1, byte []buf2,
                                              int off2, int len) {
     for (int i = 0; i < len; i++) {
@@ -62,6 +62,15 @@ public class RBFConfigKeys extends CommonConfigurationKeysPublic {
   public static final String DFS_ROUTER_HANDLER_QUEUE_SIZE_KEY =
       FEDERATION_ROUTER_PREFIX + "handler.queue.size";
   public static final int DFS_ROUTER_HANDLER_QUEUE_SIZE_DEFAULT = 100;
+  public static final String DFS_ROUTER_ASYNC_RPC_ENABLE_KEY =
+      FEDERATION_ROUTER_PREFIX + "async.rpc.enable";
+  public static final boolean DFS_ROUTER_ASYNC_RPC_ENABLE_DEFAULT = false;
+  public static final String DFS_ROUTER_ASYNC_RPC_HANDLER_COUNT_KEY =
+      FEDERATION_ROUTER_PREFIX + "async.rpc.handler.count";
+  public static final int DFS_ROUTER_ASYNC_RPC_HANDLER_COUNT_DEFAULT = 8;
+  public static final String DFS_ROUTER_ASYNC_RPC_MAX_CALLS_KEY =
+      FEDERATION_ROUTER_PREFIX + "async.rpc.max.calls";
+  public static final int DFS_ROUTER_ASYNC_RPC_MAX_CALLS_DEFAULT = 1000;
   public static final String DFS_ROUTER_RPC_BIND_HOST_KEY =
       FEDERATION_ROUTER_PREFIX + "rpc-bind-host";
   public static final int DFS_ROUTER_RPC_PORT_DEFAULT = 8888;
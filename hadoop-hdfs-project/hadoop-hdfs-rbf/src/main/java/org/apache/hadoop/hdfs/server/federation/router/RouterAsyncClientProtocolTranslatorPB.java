@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.federation.router;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetContentSummaryRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetContentSummaryResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetListingRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetListingResponseProto;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.ProtobufRpcEngine2;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.thirdparty.protobuf.Message;
+import org.apache.hadoop.thirdparty.protobuf.RpcController;
+import org.apache.hadoop.thirdparty.protobuf.ServiceException;
+
+/**
+ * Client protocol translator for the Router that forwards the read calls
+ * which usually wait on downstream namenodes without blocking the RPC
+ * handler. The calls are sent to the namenodes with asynchronous IPC and the
+ * response of the client call is deferred until the namenodes answer; the
+ * RPC handler is free to take the next call as soon as the calls are sent.
+ * Failover, retries, the next locations of sequential calls and merging the
+ * results run on a small pool of async handlers. This is enabled by
+ * {@link RBFConfigKeys#DFS_ROUTER_ASYNC_RPC_ENABLE_KEY}.
+ */
+class RouterAsyncClientProtocolTranslatorPB
+    extends ClientNamenodeProtocolServerSideTranslatorPB {
+
+  private static final GetListingResponseProto VOID_GETLISTING_RESPONSE =
+      GetListingResponseProto.newBuilder().build();
+  private static final GetFileInfoResponseProto VOID_GETFILEINFO_RESPONSE =
+      GetFileInfoResponseProto.newBuilder().build();
+
+  /** A call to the Router client protocol that completes asynchronously. */
+  @FunctionalInterface
+  private interface AsyncCall<T> {
+    CompletableFuture<T> call(RouterClientProtocol clientProto,
+        Executor executor) throws IOException;
+  }
+
+  private final RouterRpcServer server;
+  private final ThreadPoolExecutor executor;
+
+  RouterAsyncClientProtocolTranslatorPB(RouterRpcServer server,
+      int handlerCount) throws IOException {
+    super(server);
+    this.server = server;
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("Router Async Handler-%d")
+        .setDaemon(true)
+        .build();
+    this.executor = new ThreadPoolExecutor(handlerCount, handlerCount,
+        0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        threadFactory);
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public GetBlockLocationsResponseProto getBlockLocations(
+      RpcController controller, GetBlockLocationsRequestProto req)
+      throws ServiceException {
+    return forward((clientProto, callExecutor) ->
+        clientProto.getBlockLocationsAsync(req.getSrc(), req.getOffset(),
+            req.getLength(), callExecutor), b -> {
+          GetBlockLocationsResponseProto.Builder builder =
+              GetBlockLocationsResponseProto.newBuilder();
+          if (b != null) {
+            builder.setLocations(PBHelperClient.convert(b));
+          }
+          return builder.build();
+        });
+  }
+
+  @Override
+  public GetListingResponseProto getListing(RpcController controller,
+      GetListingRequestProto req) throws ServiceException {
+    return forward((clientProto, callExecutor) ->
+        clientProto.getListingAsync(req.getSrc(),
+            req.getStartAfter().toByteArray(), req.getNeedLocation(),
+            callExecutor), result -> {
+          if (result != null) {
+            return GetListingResponseProto.newBuilder().setDirList(
+                PBHelperClient.convert(result)).build();
+          }
+          return VOID_GETLISTING_RESPONSE;
+        });
+  }
+
+  @Override
+  public GetFileInfoResponseProto getFileInfo(RpcController controller,
+      GetFileInfoRequestProto req) throws ServiceException {
+    return forward((clientProto, callExecutor) ->
+        clientProto.getFileInfoAsync(req.getSrc(), callExecutor), result -> {
+          if (result != null) {
+            return GetFileInfoResponseProto.newBuilder().setFs(
+                PBHelperClient.convert(result)).build();
+          }
+          return VOID_GETFILEINFO_RESPONSE;
+        });
+  }
+
+  @Override
+  public GetContentSummaryResponseProto getContentSummary(
+      RpcController controller, GetContentSummaryRequestProto req)
+      throws ServiceException {
+    return forward((clientProto, callExecutor) ->
+        clientProto.getContentSummaryAsync(req.getPath(), callExecutor),
+        result -> GetContentSummaryResponseProto.newBuilder()
+            .setSummary(PBHelperClient.convert(result)).build());
+  }
+
+  /**
+   * Send the call to the namenodes and defer the response of the current RPC
+   * until it completes.
+   */
+  private <T, R extends Message> R forward(AsyncCall<T> asyncCall,
+      Function<T, R> converter) throws ServiceException {
+    CompletableFuture<R> response;
+    try {
+      response = asyncCall.call(server.getClientProtocolModule(),
+          getCallExecutor()).thenApply(converter);
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    return ProtobufRpcEngine2.Server.deferResponse(response);
+  }
+
+  /**
+   * Get an executor for the async handlers that carries the current call and
+   * caller context, as the Router reads the remote user and address from
+   * them.
+   */
+  private Executor getCallExecutor() {
+    final Server.Call originCall = Server.getCurCall().get();
+    final CallerContext originContext = CallerContext.getCurrent();
+    return command -> executor.execute(() -> {
+      Server.getCurCall().set(originCall);
+      CallerContext.setCurrent(originContext);
+      try {
+        command.run();
+      } finally {
+        Server.getCurCall().set(null);
+        CallerContext.setCurrent(null);
+      }
+    });
+  }
+}
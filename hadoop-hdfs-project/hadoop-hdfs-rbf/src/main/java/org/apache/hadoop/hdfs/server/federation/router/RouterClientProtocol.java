@@ -20,6 +20,8 @@
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SERVER_DEFAULTS_VALIDITY_PERIOD_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SERVER_DEFAULTS_VALIDITY_PERIOD_MS_KEY;
 import static org.apache.hadoop.hdfs.server.federation.router.FederationUtil.updateMountPointStatus;
+import static org.apache.hadoop.util.functional.FunctionalIO.toUncheckedFunction;
+import static org.apache.hadoop.util.functional.FunctionalIO.toUncheckedIOExceptionSupplier;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.crypto.CryptoProtocolVersion;
 import org.apache.hadoop.fs.BatchedRemoteIterator.BatchedEntries;
@@ -117,6 +119,8 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -254,6 +258,30 @@ public LocatedBlocks getBlockLocations(String src, final long offset,
         LocatedBlocks.class, null);
   }
 
+  /**
+   * Asynchronous version of {@link #getBlockLocations(String, long, long)}.
+   *
+   * @param src Path of the file.
+   * @param offset Range start.
+   * @param length Range length.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the file block locations.
+   * @throws IOException If the call cannot be sent.
+   */
+  CompletableFuture<LocatedBlocks> getBlockLocationsAsync(String src,
+      final long offset, final long length, Executor executor)
+      throws IOException {
+    rpcServer.checkOperation(NameNode.OperationCategory.READ);
+
+    List<RemoteLocation> locations =
+        rpcServer.getLocationsForPath(src, false, false);
+    RemoteMethod remoteMethod = new RemoteMethod("getBlockLocations",
+        new Class<?>[] {String.class, long.class, long.class},
+        new RemoteParam(), offset, length);
+    return rpcClient.invokeSequentialAsync(locations, remoteMethod,
+        LocatedBlocks.class, null, executor);
+  }
+
   @Override
   public FsServerDefaults getServerDefaults() throws IOException {
     rpcServer.checkOperation(NameNode.OperationCategory.READ);
@@ -838,6 +866,55 @@ public DirectoryListing getListing(String src, byte[] startAfter,
 
     List<RemoteResult<RemoteLocation, DirectoryListing>> listings =
         getListingInt(src, startAfter, needLocation);
+    return mergeListing(src, startAfter, listings);
+  }
+
+  /**
+   * Asynchronous version of {@link #getListing(String, byte[], boolean)}.
+   * The listings of the subclusters are fetched asynchronously; the mount
+   * points under the path are added from the executor, which may wait on the
+   * namenodes for their status.
+   *
+   * @param src The directory to list.
+   * @param startAfter The name to start listing after.
+   * @param needLocation If block locations need to be returned.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the partial listing.
+   * @throws IOException If the call cannot be sent.
+   */
+  CompletableFuture<DirectoryListing> getListingAsync(String src,
+      byte[] startAfter, boolean needLocation, Executor executor)
+      throws IOException {
+    rpcServer.checkOperation(NameNode.OperationCategory.READ);
+
+    List<RemoteLocation> locations = getListingLocations(src);
+    CompletableFuture<List<RemoteResult<RemoteLocation, DirectoryListing>>>
+        listings;
+    if (locations.isEmpty()) {
+      listings = CompletableFuture.completedFuture(new ArrayList<>());
+    } else {
+      listings = rpcClient.invokeConcurrentAsync(locations,
+          getListingMethod(startAfter, needLocation), DirectoryListing.class,
+          executor);
+    }
+    return listings.thenApplyAsync(toUncheckedFunction(
+        results -> mergeListing(src, startAfter, results)), executor);
+  }
+
+  /**
+   * Merge the listings of the subclusters with the mount points under the
+   * path.
+   *
+   * @param src The directory to list.
+   * @param startAfter The name to start listing after.
+   * @param listings Listings of the subclusters.
+   * @return The combined listing, null if the directory cannot be found.
+   * @throws IOException If a subcluster failed and partial listings are not
+   *           allowed.
+   */
+  private DirectoryListing mergeListing(String src, byte[] startAfter,
+      List<RemoteResult<RemoteLocation, DirectoryListing>> listings)
+      throws IOException {
     TreeMap<byte[], HdfsFileStatus> nnListing = new TreeMap<>(comparator);
     int totalRemainingEntries = 0;
     int remainingEntries = 0;
@@ -976,18 +1053,76 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
 
     // If there is no real path, check mount points
     if (ret == null) {
-      List<String> children = subclusterResolver.getMountPoints(src);
-      if (children != null && !children.isEmpty()) {
-        Map<String, Long> dates = getMountPointDates(src);
-        long date = 0;
-        if (dates != null && dates.containsKey(src)) {
-          date = dates.get(src);
-        }
-        ret = getMountPointStatus(src, children.size(), date, false);
-      } else if (children != null) {
-        // The src is a mount point, but there are no files or directories
-        ret = getMountPointStatus(src, 0, 0, false);
+      ret = getMountPointFileInfo(src, noLocationException);
+    }
+    return ret;
+  }
+
+  /**
+   * Asynchronous version of {@link #getFileInfo(String)}. If the path is not
+   * in any subcluster, the mount points are checked from the executor, which
+   * may wait on the namenodes for their status.
+   *
+   * @param src The path.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the file status, null if the path does not exist.
+   * @throws IOException If the call cannot be sent.
+   */
+  CompletableFuture<HdfsFileStatus> getFileInfoAsync(String src,
+      Executor executor) throws IOException {
+    rpcServer.checkOperation(NameNode.OperationCategory.READ);
+
+    final List<RemoteLocation> locations;
+    try {
+      locations = rpcServer.getLocationsForPath(src, false, false);
+    } catch (NoLocationException | RouterResolveException e) {
+      return CompletableFuture.supplyAsync(toUncheckedIOExceptionSupplier(
+          () -> getMountPointFileInfo(src, e)), executor);
+    }
+    RemoteMethod method = new RemoteMethod("getFileInfo",
+        new Class<?>[] {String.class}, new RemoteParam());
+
+    CompletableFuture<HdfsFileStatus> ret;
+    // If it's a directory, we check in all locations
+    if (rpcServer.isPathAll(src)) {
+      ret = rpcClient.invokeConcurrentAsync(
+          locations, method, HdfsFileStatus.class, executor)
+          .thenApply(toUncheckedFunction(results -> mergeFileInfo(locations,
+              RouterRpcClient.getConcurrentResults(results, false))));
+    } else {
+      // Check for file information sequentially
+      ret = rpcClient.invokeSequentialAsync(
+          locations, method, HdfsFileStatus.class, null, executor);
+    }
+    // If there is no real path, check mount points
+    return ret.thenApplyAsync(toUncheckedFunction(status ->
+        status != null ? status : getMountPointFileInfo(src, null)), executor);
+  }
+
+  /**
+   * Get the file info of a path that is not in any subcluster from the mount
+   * points.
+   *
+   * @param src The path.
+   * @param noLocationException Exception if the path has no location.
+   * @return The mount point status, null if the path is not a mount point.
+   * @throws IOException The exception of the missing location, if the path
+   *           does not contain any mount point either.
+   */
+  private HdfsFileStatus getMountPointFileInfo(String src,
+      IOException noLocationException) throws IOException {
+    HdfsFileStatus ret = null;
+    List<String> children = subclusterResolver.getMountPoints(src);
+    if (children != null && !children.isEmpty()) {
+      Map<String, Long> dates = getMountPointDates(src);
+      long date = 0;
+      if (dates != null && dates.containsKey(src)) {
+        date = dates.get(src);
       }
+      ret = getMountPointStatus(src, children.size(), date, false);
+    } else if (children != null) {
+      // The src is a mount point, but there are no files or directories
+      ret = getMountPointStatus(src, 0, 0, false);
     }
 
     // Can't find mount point for path and the path didn't contain any sub monit points,
@@ -1384,13 +1519,47 @@ public ContentSummary getContentSummary(String path) throws IOException {
     rpcServer.checkOperation(NameNode.OperationCategory.READ);
 
     // Get the summaries from regular files
-    final Collection<ContentSummary> summaries = new ArrayList<>();
     final List<RemoteLocation> locations = getLocationsForContentSummary(path);
     final RemoteMethod method = new RemoteMethod("getContentSummary",
         new Class<?>[] {String.class}, new RemoteParam());
     final List<RemoteResult<RemoteLocation, ContentSummary>> results =
         rpcClient.invokeConcurrent(locations, method,
             false, -1, ContentSummary.class);
+    return mergeContentSummaries(results);
+  }
+
+  /**
+   * Asynchronous version of {@link #getContentSummary(String)}.
+   *
+   * @param path The path.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the content summary of the path.
+   * @throws IOException If the call cannot be sent.
+   */
+  CompletableFuture<ContentSummary> getContentSummaryAsync(String path,
+      Executor executor) throws IOException {
+    rpcServer.checkOperation(NameNode.OperationCategory.READ);
+
+    final List<RemoteLocation> locations = getLocationsForContentSummary(path);
+    final RemoteMethod method = new RemoteMethod("getContentSummary",
+        new Class<?>[] {String.class}, new RemoteParam());
+    return rpcClient.invokeConcurrentAsync(locations, method,
+        ContentSummary.class, executor)
+        .thenApply(toUncheckedFunction(this::mergeContentSummaries));
+  }
+
+  /**
+   * Aggregate the content summaries of the subclusters.
+   *
+   * @param results Content summary per subcluster.
+   * @return The aggregated content summary.
+   * @throws IOException If a subcluster failed and partial listings are not
+   *           allowed, or if the path is not found.
+   */
+  private ContentSummary mergeContentSummaries(
+      List<RemoteResult<RemoteLocation, ContentSummary>> results)
+      throws IOException {
+    final Collection<ContentSummary> summaries = new ArrayList<>();
     FileNotFoundException notFoundException = null;
     for (RemoteResult<RemoteLocation, ContentSummary> result : results) {
       if (result.hasException()) {
@@ -2164,6 +2333,19 @@ private HdfsFileStatus getFileInfoAll(final List<RemoteLocation> locations,
     Map<RemoteLocation, HdfsFileStatus> results =
         rpcClient.invokeConcurrent(locations, method, false, false, timeOutMs,
             HdfsFileStatus.class);
+    return mergeFileInfo(locations, results);
+  }
+
+  /**
+   * Merge the file info from all the locations.
+   *
+   * @param locations Locations checked.
+   * @param results File info per location.
+   * @return The first file info if it's a file, the directory if it's
+   *         everywhere.
+   */
+  private HdfsFileStatus mergeFileInfo(final List<RemoteLocation> locations,
+      final Map<RemoteLocation, HdfsFileStatus> results) {
     int children = 0;
     // We return the first file
     HdfsFileStatus dirStatus = null;
@@ -2365,26 +2547,41 @@ private long getModifiedTime(Map<String, Long> ret, String path,
    */
   private List<RemoteResult<RemoteLocation, DirectoryListing>> getListingInt(
       String src, byte[] startAfter, boolean needLocation) throws IOException {
+    List<RemoteLocation> locations = getListingLocations(src);
+    // Locate the dir and fetch the listing.
+    if (locations.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<RemoteResult<RemoteLocation, DirectoryListing>> listings = rpcClient
+        .invokeConcurrent(locations, getListingMethod(startAfter, needLocation),
+            false, -1, DirectoryListing.class);
+    return listings;
+  }
+
+  /**
+   * Get the remote locations to list a directory.
+   *
+   * @param src The directory to list.
+   * @return The remote locations, empty if the path has no location.
+   * @throws IOException If the locations cannot be resolved.
+   */
+  private List<RemoteLocation> getListingLocations(String src)
+      throws IOException {
     try {
-      List<RemoteLocation> locations =
-          rpcServer.getLocationsForPath(src, false, false);
-      // Locate the dir and fetch the listing.
-      if (locations.isEmpty()) {
-        return new ArrayList<>();
-      }
-      RemoteMethod method = new RemoteMethod("getListing",
-          new Class<?>[] {String.class, startAfter.getClass(), boolean.class},
-          new RemoteParam(), startAfter, needLocation);
-      List<RemoteResult<RemoteLocation, DirectoryListing>> listings = rpcClient
-          .invokeConcurrent(locations, method, false, -1,
-              DirectoryListing.class);
-      return listings;
+      return rpcServer.getLocationsForPath(src, false, false);
     } catch (NoLocationException | RouterResolveException e) {
       LOG.debug("Cannot get locations for {}, {}.", src, e.getMessage());
       return new ArrayList<>();
     }
   }
 
+  private static RemoteMethod getListingMethod(byte[] startAfter,
+      boolean needLocation) throws IOException {
+    return new RemoteMethod("getListing",
+        new Class<?>[] {String.class, startAfter.getClass(), boolean.class},
+        new RemoteParam(), startAfter, needLocation);
+  }
+
   /**
    * Check if we should add the mount point into the total listing.
    * This should be done under either of the two cases:
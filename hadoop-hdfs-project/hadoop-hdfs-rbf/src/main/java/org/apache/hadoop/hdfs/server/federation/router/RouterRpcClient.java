@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hdfs.server.federation.router;
 
+import static org.apache.hadoop.fs.CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.HADOOP_CALLER_CONTEXT_SEPARATOR_DEFAULT;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.HADOOP_CALLER_CONTEXT_SEPARATOR_KEY;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IPC_CLIENT_CONNECT_MAX_RETRIES_ON_SOCKET_TIMEOUTS_KEY;
@@ -29,6 +30,7 @@
 import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -50,8 +52,11 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -60,6 +65,7 @@
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -68,6 +74,7 @@
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolTranslatorPB;
 import org.apache.hadoop.hdfs.server.federation.fairness.RouterRpcFairnessPolicyController;
 import org.apache.hadoop.hdfs.server.federation.resolver.ActiveNamenodeResolver;
 import org.apache.hadoop.hdfs.server.federation.resolver.FederationNamenodeContext;
@@ -77,7 +84,9 @@
 import org.apache.hadoop.io.retry.RetryPolicies;
 import org.apache.hadoop.io.retry.RetryPolicy;
 import org.apache.hadoop.io.retry.RetryPolicy.RetryAction.RetryDecision;
+import org.apache.hadoop.ipc.AsyncCallLimitExceededException;
 import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Client;
 import org.apache.hadoop.ipc.ObserverRetryOnActiveException;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RetriableException;
@@ -267,6 +276,12 @@ private Configuration getClientConfiguration(final Configuration conf) {
     if (connectTimeOut >= 0) {
       clientConf.setLong(IPC_CLIENT_CONNECT_TIMEOUT_KEY, connectTimeOut);
     }
+    if (conf.getBoolean(RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_ENABLE_KEY,
+        RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_ENABLE_DEFAULT)) {
+      clientConf.setInt(IPC_CLIENT_ASYNC_CALLS_MAX_KEY, conf.getInt(
+          RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_MAX_CALLS_KEY,
+          RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_MAX_CALLS_DEFAULT));
+    }
     return clientConf;
   }
 
@@ -526,11 +541,10 @@ public Object invokeMethod(
     if (rpcMonitor != null) {
       rpcMonitor.proxyOp();
     }
-    boolean failover = false;
-    boolean shouldUseObserver = useObserver;
-    Map<FederationNamenodeContext, IOException> ioes = new LinkedHashMap<>();
+    final InvocationState state = new InvocationState(useObserver);
     for (FederationNamenodeContext namenode : namenodes) {
-      if (!shouldUseObserver && (namenode.getState() == FederationNamenodeServiceState.OBSERVER)) {
+      if (!state.shouldUseObserver &&
+          (namenode.getState() == FederationNamenodeServiceState.OBSERVER)) {
         continue;
       }
       ConnectionContext connection = null;
@@ -542,88 +556,156 @@ public Object invokeMethod(
         final Object proxy = client.getProxy();
 
         ret = invoke(nsId, namenode, useObserver, 0, method, proxy, params);
-        if (failover &&
-            FederationNamenodeServiceState.OBSERVER != namenode.getState()) {
-          // Success on alternate server, update
-          InetSocketAddress address = client.getAddress();
-          namenodeResolver.updateActiveNamenode(nsId, address);
-        }
+        onInvokeSuccess(state, namenode, client.getAddress(), method);
         if (this.rpcMonitor != null) {
           this.rpcMonitor.proxyOpComplete(true, nsId, namenode.getState());
         }
-        if (this.router.getRouterClientMetrics() != null) {
-          this.router.getRouterClientMetrics().incInvokedMethod(method);
-        }
         return ret;
       } catch (IOException ioe) {
-        ioes.put(namenode, ioe);
-        if (ioe instanceof ObserverRetryOnActiveException) {
-          LOG.info("Encountered ObserverRetryOnActiveException from {}."
-                  + " Retry active namenode directly.", namenode);
-          shouldUseObserver = false;
-        } else if (ioe instanceof StandbyException) {
-          // Fail over indicated by retry policy and/or NN
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpFailureStandby(nsId);
-          }
-          failover = true;
-        } else if (isUnavailableException(ioe)) {
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpFailureCommunicate(nsId);
-          }
-          if (FederationNamenodeServiceState.OBSERVER == namenode.getState()) {
-            namenodeResolver.updateUnavailableNamenode(nsId,
-                NetUtils.createSocketAddr(namenode.getRpcAddress()));
-          } else {
-            failover = true;
-          }
-        } else if (ioe instanceof RemoteException) {
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpComplete(true, nsId, namenode.getState());
-          }
-          RemoteException re = (RemoteException) ioe;
-          ioe = re.unwrapRemoteException();
-          ioe = getCleanException(ioe);
-          // RemoteException returned by NN
-          throw ioe;
-        } else if (ioe instanceof ConnectionNullException) {
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpFailureCommunicate(nsId);
-          }
-          LOG.error("Get connection for {} {} error: {}", nsId, rpcAddress,
-              ioe.getMessage());
-          // Throw StandbyException so that client can retry
-          StandbyException se = new StandbyException(ioe.getMessage());
-          se.initCause(ioe);
-          throw se;
-        } else if (ioe instanceof NoNamenodesAvailableException) {
-          IOException cause = (IOException) ioe.getCause();
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpNoNamenodes(nsId);
-          }
-          LOG.error("Cannot get available namenode for {} {} error: {}",
-              nsId, rpcAddress, ioe.getMessage());
-          // Rotate cache so that client can retry the next namenode in the cache
-          if (shouldRotateCache(cause)) {
-            this.namenodeResolver.rotateCache(nsId, namenode, useObserver);
-          }
-          // Throw RetriableException so that client can retry
-          throw new RetriableException(ioe);
-        } else {
-          // Other communication error, this is a failure
-          // Communication retries are handled by the retry policy
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpFailureCommunicate(nsId);
-            this.rpcMonitor.proxyOpComplete(false, nsId, namenode.getState());
-          }
-          throw ioe;
-        }
+        handleInvokeFailure(ioe, namenode, useObserver, state);
       } finally {
         if (connection != null) {
           connection.release();
         }
       }
     }
+    throw getNoNamenodeAvailableException(method, params, namenodes,
+        state.ioes);
+  }
+
+  /**
+   * State of an invocation across the namenodes of a nameservice.
+   */
+  private static final class InvocationState {
+    /** If the call failed over from another namenode. */
+    private boolean failover = false;
+    /** If observer namenodes can still be used. */
+    private boolean shouldUseObserver;
+    /** Exceptions of the namenodes that failed. */
+    private final Map<FederationNamenodeContext, IOException> ioes =
+        new LinkedHashMap<>();
+
+    private InvocationState(boolean useObserver) {
+      this.shouldUseObserver = useObserver;
+    }
+  }
+
+  /**
+   * Record the success of a call to a namenode.
+   *
+   * @param state State of the invocation.
+   * @param namenode Namenode that answered the call.
+   * @param address Address of the namenode.
+   * @param method Method that was invoked.
+   * @throws IOException If the active namenode cannot be updated.
+   */
+  private void onInvokeSuccess(InvocationState state,
+      FederationNamenodeContext namenode, InetSocketAddress address,
+      Method method) throws IOException {
+    if (state.failover &&
+        FederationNamenodeServiceState.OBSERVER != namenode.getState()) {
+      // Success on alternate server, update
+      namenodeResolver.updateActiveNamenode(
+          namenode.getNameserviceId(), address);
+    }
+    if (this.router.getRouterClientMetrics() != null) {
+      this.router.getRouterClientMetrics().incInvokedMethod(method);
+    }
+  }
+
+  /**
+   * Handle the failure of a call to a namenode. Returns normally when the
+   * call should be tried on the next namenode.
+   *
+   * @param ioe Exception of the call.
+   * @param namenode Namenode that failed the call.
+   * @param useObserver Whether to use observer namenodes.
+   * @param state State of the invocation.
+   * @throws IOException If the exception has to be reported to the client.
+   */
+  private void handleInvokeFailure(IOException ioe,
+      FederationNamenodeContext namenode, boolean useObserver,
+      InvocationState state) throws IOException {
+    String nsId = namenode.getNameserviceId();
+    String rpcAddress = namenode.getRpcAddress();
+    state.ioes.put(namenode, ioe);
+    if (ioe instanceof ObserverRetryOnActiveException) {
+      LOG.info("Encountered ObserverRetryOnActiveException from {}."
+              + " Retry active namenode directly.", namenode);
+      state.shouldUseObserver = false;
+    } else if (ioe instanceof StandbyException) {
+      // Fail over indicated by retry policy and/or NN
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpFailureStandby(nsId);
+      }
+      state.failover = true;
+    } else if (isUnavailableException(ioe)) {
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpFailureCommunicate(nsId);
+      }
+      if (FederationNamenodeServiceState.OBSERVER == namenode.getState()) {
+        namenodeResolver.updateUnavailableNamenode(nsId,
+            NetUtils.createSocketAddr(namenode.getRpcAddress()));
+      } else {
+        state.failover = true;
+      }
+    } else if (ioe instanceof RemoteException) {
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpComplete(true, nsId, namenode.getState());
+      }
+      RemoteException re = (RemoteException) ioe;
+      ioe = re.unwrapRemoteException();
+      ioe = getCleanException(ioe);
+      // RemoteException returned by NN
+      throw ioe;
+    } else if (ioe instanceof ConnectionNullException) {
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpFailureCommunicate(nsId);
+      }
+      LOG.error("Get connection for {} {} error: {}", nsId, rpcAddress,
+          ioe.getMessage());
+      // Throw StandbyException so that client can retry
+      StandbyException se = new StandbyException(ioe.getMessage());
+      se.initCause(ioe);
+      throw se;
+    } else if (ioe instanceof NoNamenodesAvailableException) {
+      IOException cause = (IOException) ioe.getCause();
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpNoNamenodes(nsId);
+      }
+      LOG.error("Cannot get available namenode for {} {} error: {}",
+          nsId, rpcAddress, ioe.getMessage());
+      // Rotate cache so that client can retry the next namenode in the cache
+      if (shouldRotateCache(cause)) {
+        this.namenodeResolver.rotateCache(nsId, namenode, useObserver);
+      }
+      // Throw RetriableException so that client can retry
+      throw new RetriableException(ioe);
+    } else {
+      // Other communication error, this is a failure
+      // Communication retries are handled by the retry policy
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpFailureCommunicate(nsId);
+        this.rpcMonitor.proxyOpComplete(false, nsId, namenode.getState());
+      }
+      throw ioe;
+    }
+}
+
+  /**
+   * Get the exception to report when no namenode could serve a call.
+   *
+   * @param method Method that was invoked.
+   * @param params Parameters of the method.
+   * @param namenodes Namenodes that were tried.
+   * @param ioes Exceptions of the namenodes.
+   * @return ConnectException if no namenode can be reached, otherwise
+   *         StandbyException.
+   */
+  private IOException getNoNamenodeAvailableException(final Method method,
+      final Object[] params,
+      final List<? extends FederationNamenodeContext> namenodes,
+      final Map<FederationNamenodeContext, IOException> ioes) {
     if (this.rpcMonitor != null) {
       this.rpcMonitor.proxyOpComplete(false, null, null);
     }
@@ -652,12 +734,246 @@ public Object invokeMethod(
       }
     }
     if (exConnect == ioes.size()) {
-      throw new ConnectException(msg);
+      return new ConnectException(msg);
     } else {
-      throw new StandbyException(msg);
+      return new StandbyException(msg);
+    }
+  }
+
+  /**
+   * Invokes a method against the ClientProtocol proxy server without waiting
+   * for the namenode. The call is sent with asynchronous IPC and the returned
+   * future completes when a namenode answers it. Retries and failover to the
+   * next namenode are sent from the executor as the previous attempt fails,
+   * with the same handling as {@link #invokeMethod}.
+   * <p>
+   * Only the ClientProtocol methods that support asynchronous IPC in
+   * {@link ClientNamenodeProtocolTranslatorPB#getAsyncReturnFuture()} can be
+   * invoked this way.
+   *
+   * @param ugi User group information.
+   * @param namenodes A prioritized list of namenodes within the same
+   *                  nameservice.
+   * @param useObserver Whether to use observer namenodes.
+   * @param protocol the protocol of the connection.
+   * @param method Remote ClientProtocol method to invoke.
+   * @param params Variable list of parameters matching the method.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the result of invoking the method.
+   */
+  private CompletableFuture<Object> invokeMethodAsync(
+      final UserGroupInformation ugi,
+      final List<? extends FederationNamenodeContext> namenodes,
+      boolean useObserver, final Class<?> protocol, final Method method,
+      final Object[] params, final Executor executor) {
+    if (namenodes == null || namenodes.isEmpty()) {
+      return failedFuture(new IOException("No namenodes to invoke " +
+          method.getName() + " with params " + Arrays.deepToString(params) +
+          " from " + router.getRouterId()));
+    }
+
+    addClientInfoToCallerContext(ugi);
+    if (rpcMonitor != null) {
+      rpcMonitor.proxyOp();
+    }
+    AsyncInvocation invocation = new AsyncInvocation(ugi, namenodes,
+        useObserver, protocol, method, params, executor);
+    invocation.sendNext(0);
+    return invocation.result;
+  }
+
+  /**
+   * An invocation of a method across the namenodes of a nameservice with
+   * asynchronous IPC.
+   */
+  private final class AsyncInvocation {
+    private final UserGroupInformation ugi;
+    private final List<? extends FederationNamenodeContext> namenodes;
+    private final boolean useObserver;
+    private final Class<?> protocol;
+    private final Method method;
+    private final Object[] params;
+    private final Executor executor;
+    /** Caller context sent to the namenodes. */
+    private final CallerContext callerContext;
+    private final InvocationState state;
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+    private AsyncInvocation(UserGroupInformation ugi,
+        List<? extends FederationNamenodeContext> namenodes,
+        boolean useObserver, Class<?> protocol, Method method,
+        Object[] params, Executor executor) {
+      this.ugi = ugi;
+      this.namenodes = namenodes;
+      this.useObserver = useObserver;
+      this.protocol = protocol;
+      this.method = method;
+      this.params = params;
+      this.executor = executor;
+      this.callerContext = CallerContext.getCurrent();
+      this.state = new InvocationState(useObserver);
+    }
+
+    /**
+     * Send the call to the first namenode that can take it, starting at the
+     * given index.
+     */
+    private void sendNext(int index) {
+      for (int i = index; i < namenodes.size(); i++) {
+        if (state.shouldUseObserver || namenodes.get(i).getState() !=
+            FederationNamenodeServiceState.OBSERVER) {
+          send(i, 0);
+          return;
+        }
+      }
+      result.completeExceptionally(getNoNamenodeAvailableException(
+          method, params, namenodes, state.ioes));
+    }
+
+    /**
+     * Send the call to a namenode.
+     */
+    private void send(final int index, final int retryCount) {
+      final FederationNamenodeContext namenode = namenodes.get(index);
+      final String nsId = namenode.getNameserviceId();
+      final ConnectionContext connection;
+      try {
+        connection = getConnection(
+            ugi, nsId, namenode.getRpcAddress(), protocol);
+      } catch (IOException ioe) {
+        onFailure(index, retryCount, ioe, false);
+        return;
+      }
+      final ProxyAndInfo<?> client = connection.getClient();
+      final CompletableFuture<Object> call;
+      try {
+        call = sendAsync(client.getProxy());
+      } catch (AsyncCallLimitExceededException e) {
+        connection.release();
+        if (rpcMonitor != null) {
+          rpcMonitor.proxyOpFailureClientOverloaded();
+        }
+        String msg = "Too many asynchronous calls to the namenodes: " +
+            e.getMessage();
+        LOG.error(msg);
+        result.completeExceptionally(new StandbyException(
+            "Router " + router.getRouterId() + " is overloaded: " + msg));
+        return;
+      } catch (IOException ioe) {
+        connection.release();
+        onFailure(index, retryCount, ioe, true);
+        return;
+      }
+      call.whenCompleteAsync((ret, t) -> {
+        connection.release();
+        if (t != null) {
+          onFailure(index, retryCount, unwrapAsyncException(t), true);
+          return;
+        }
+        try {
+          onInvokeSuccess(state, namenode, client.getAddress(), method);
+          if (rpcMonitor != null) {
+            rpcMonitor.proxyOpComplete(true, nsId, namenode.getState());
+          }
+          result.complete(ret);
+        } catch (IOException ioe) {
+          result.completeExceptionally(ioe);
+        }
+      }, executor);
+    }
+
+    /**
+     * Send the call with asynchronous IPC.
+     */
+    private CompletableFuture<Object> sendAsync(Object proxy)
+        throws IOException {
+      CallerContext.setCurrent(callerContext);
+      boolean asyncMode = Client.isAsynchronousMode();
+      Client.setAsynchronousMode(true);
+      try {
+        method.invoke(proxy, params);
+      } catch (IllegalAccessException | IllegalArgumentException e) {
+        LOG.error("Unexpected exception while proxying API", e);
+        throw new IOException(e);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      } finally {
+        Client.setAsynchronousMode(asyncMode);
+      }
+      CompletableFuture<Object> call =
+          ClientNamenodeProtocolTranslatorPB.getAsyncReturnFuture();
+      if (call == null) {
+        throw new IOException(
+            method.getName() + " cannot be invoked asynchronously");
+      }
+      return call;
+    }
+
+    /**
+     * Handle the failure of the call to a namenode: retry it, send it to the
+     * next namenode or fail the invocation.
+     *
+     * @param index Index of the namenode that failed the call.
+     * @param retryCount Current retry times.
+     * @param ioe Exception of the call.
+     * @param sent If the call was sent to the namenode.
+     */
+    private void onFailure(int index, int retryCount, IOException ioe,
+        boolean sent) {
+      FederationNamenodeContext namenode = namenodes.get(index);
+      IOException failure = ioe;
+      if (sent) {
+        try {
+          failure = getRetryException(ioe, retryCount,
+              namenode.getNameserviceId(), namenode, useObserver);
+        } catch (IOException e) {
+          failure = e;
+        }
+        if (failure == null) {
+          send(index, retryCount + 1);
+          return;
+        }
+      }
+      try {
+        handleInvokeFailure(failure, namenode, useObserver, state);
+      } catch (IOException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      sendNext(index + 1);
     }
   }
 
+  /**
+   * Get the IOException that failed an asynchronous invocation.
+   *
+   * @param t Throwable that completed a future exceptionally.
+   * @return The IOException that caused the failure.
+   */
+  static IOException unwrapAsyncException(Throwable t) {
+    Throwable cause = t;
+    while ((cause instanceof CompletionException ||
+        cause instanceof ExecutionException ||
+        cause instanceof UncheckedIOException) && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+    return new IOException("Unhandled exception while proxying API: " +
+        cause.getMessage(), cause);
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(t);
+    return future;
+  }
+
   /**
    * For tracking some information about the actual client.
    * It adds trace info "clientIp:ip", "clientPort:port",
@@ -726,35 +1042,55 @@ private Object invoke(
     } catch (InvocationTargetException e) {
       Throwable cause = e.getCause();
       if (cause instanceof IOException) {
-        IOException ioe = (IOException) cause;
-
         // Check if we should retry.
-        RetryDecision decision = shouldRetry(ioe, retryCount, nsId, namenode, listObserverFirst);
-        if (decision == RetryDecision.RETRY) {
-          if (this.rpcMonitor != null) {
-            this.rpcMonitor.proxyOpRetries();
-          }
-
+        IOException ioe = getRetryException((IOException) cause, retryCount,
+            nsId, namenode, listObserverFirst);
+        if (ioe == null) {
           // retry
           return invoke(nsId, namenode, listObserverFirst, ++retryCount, method, obj, params);
-        } else if (decision == RetryDecision.FAILOVER_AND_RETRY) {
-          // failover, invoker looks for standby exceptions for failover.
-          if (ioe instanceof StandbyException) {
-            throw ioe;
-          } else if (isUnavailableException(ioe)) {
-            throw ioe;
-          } else {
-            throw new StandbyException(ioe.getMessage());
-          }
-        } else {
-          throw ioe;
         }
+        throw ioe;
       } else {
         throw new IOException(e);
       }
     }
   }
 
+  /**
+   * Apply the retry policy to the failure of a call to a namenode.
+   *
+   * @param ioe Exception of the call.
+   * @param retryCount Current retry times.
+   * @param nsId Identifier for the namespace.
+   * @param namenode Namenode that failed the call.
+   * @param listObserverFirst Observer read case, observer NN will be ranked first.
+   * @return Null if the call should be retried on the same namenode,
+   *         otherwise the exception to handle; a StandbyException or an
+   *         unavailable exception indicates a failover.
+   * @throws IOException If no more retries are allowed.
+   */
+  private IOException getRetryException(IOException ioe, int retryCount,
+      String nsId, FederationNamenodeContext namenode,
+      boolean listObserverFirst) throws IOException {
+    RetryDecision decision = shouldRetry(ioe, retryCount, nsId, namenode, listObserverFirst);
+    if (decision == RetryDecision.RETRY) {
+      if (this.rpcMonitor != null) {
+        this.rpcMonitor.proxyOpRetries();
+      }
+      return null;
+    } else if (decision == RetryDecision.FAILOVER_AND_RETRY) {
+      // failover, invoker looks for standby exceptions for failover.
+      if (ioe instanceof StandbyException) {
+        return ioe;
+      } else if (isUnavailableException(ioe)) {
+        return ioe;
+      } else {
+        return new StandbyException(ioe.getMessage());
+      }
+    }
+    return ioe;
+  }
+
   /**
    * Check if the exception comes from an unavailable subcluster.
    * @param ioe IOException to check.
@@ -1161,23 +1497,136 @@ public <R extends RemoteLocationContext, T> RemoteResult invokeSequential(
     }
 
     if (!thrownExceptions.isEmpty()) {
-      // An unavailable subcluster may be the actual cause
-      // We cannot surface other exceptions (e.g., FileNotFoundException)
-      for (int i = 0; i < thrownExceptions.size(); i++) {
-        IOException ioe = thrownExceptions.get(i);
-        if (isUnavailableException(ioe)) {
-          throw ioe;
-        }
-      }
-
-      // re-throw the first exception thrown for compatibility
-      throw thrownExceptions.get(0);
+      throw getSequentialException(thrownExceptions);
     }
     // Return the first result, whether it is the value or not
     @SuppressWarnings("unchecked") T ret = (T) firstResult;
     return new RemoteResult<>(locations.get(0), ret);
   }
 
+  /**
+   * Asynchronous version of {@link #invokeSequential(List, RemoteMethod,
+   * Class, Object)}. The call to the next location is sent from the executor
+   * once the call to the previous one completes without the expected result.
+   * The executor has to carry the RPC call and caller context of the client.
+   *
+   * @param <T> The type of the remote method return.
+   * @param locations List of locations/nameservices to call sequentially.
+   * @param remoteMethod The remote method and parameters to invoke.
+   * @param expectedResultClass In order to be considered a positive result, the
+   *          return type must be of this class.
+   * @param expectedResultValue In order to be considered a positive result, the
+   *          return value must equal the value of this object.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the result of the first successful call, or if no
+   *         calls are successful, the result of the first RPC call executed.
+   *         It fails with the first remote exception generated if the success
+   *         condition is not met.
+   * @throws IOException If the remote user cannot be found.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> invokeSequentialAsync(
+      final List<? extends RemoteLocationContext> locations,
+      final RemoteMethod remoteMethod, Class<T> expectedResultClass,
+      Object expectedResultValue, Executor executor) throws IOException {
+    final UserGroupInformation ugi = RouterRpcServer.getRemoteUser();
+    return invokeSequentialAsync(ugi, remoteMethod, locations, 0,
+        expectedResultClass, expectedResultValue, null, new ArrayList<>(),
+        executor).thenApply(ret -> (T) ret);
+  }
+
+  /**
+   * Invoke a method in a location and, if it does not give the expected
+   * result, in the locations after it.
+   *
+   * @param ugi User group information.
+   * @param remoteMethod The remote method and parameters to invoke.
+   * @param locations List of locations/nameservices to call sequentially.
+   * @param index Index of the location to call.
+   * @param expectedResultClass Return type of a positive result.
+   * @param expectedResultValue Return value of a positive result.
+   * @param firstResult Result of the first call, if any.
+   * @param thrownExceptions Exceptions of the previous calls.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the result of the invocation.
+   */
+  private CompletableFuture<Object> invokeSequentialAsync(
+      final UserGroupInformation ugi, final RemoteMethod remoteMethod,
+      final List<? extends RemoteLocationContext> locations, final int index,
+      final Class<?> expectedResultClass, final Object expectedResultValue,
+      final Object firstResult, final List<IOException> thrownExceptions,
+      final Executor executor) {
+    if (index == locations.size()) {
+      if (!thrownExceptions.isEmpty()) {
+        return failedFuture(getSequentialException(thrownExceptions));
+      }
+      // Return the first result, whether it is the value or not
+      return CompletableFuture.completedFuture(firstResult);
+    }
+
+    final RouterRpcFairnessPolicyController controller =
+        getRouterRpcFairnessPolicyController();
+    final RemoteLocationContext loc = locations.get(index);
+    final String ns = loc.getNameserviceId();
+    final Method m;
+    final boolean isObserverRead;
+    final List<? extends FederationNamenodeContext> namenodes;
+    try {
+      m = remoteMethod.getMethod();
+      isObserverRead = isObserverReadEligible(ns, m);
+      namenodes = getOrderedNamenodes(ns, isObserverRead);
+      acquirePermit(ns, ugi, remoteMethod, controller);
+    } catch (IOException ioe) {
+      return failedFuture(ioe);
+    }
+    return invokeMethodAsync(ugi, namenodes, isObserverRead,
+        remoteMethod.getProtocol(), m, remoteMethod.getParams(loc), executor)
+        .handleAsync((result, t) -> {
+          releasePermit(ns, ugi, remoteMethod, controller);
+          Object first = firstResult;
+          if (t == null) {
+            // Check if the result is what we expected
+            if (isExpectedClass(expectedResultClass, result) &&
+                isExpectedValue(expectedResultValue, result)) {
+              // Valid result, stop here
+              return CompletableFuture.completedFuture(result);
+            }
+            if (first == null) {
+              first = result;
+            }
+          } else {
+            // Localize the exception, record it and move on
+            thrownExceptions.add(
+                processException(unwrapAsyncException(t), loc));
+          }
+          return invokeSequentialAsync(ugi, remoteMethod, locations,
+              index + 1, expectedResultClass, expectedResultValue, first,
+              thrownExceptions, executor);
+        }, executor)
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Get the exception to report for sequential calls that all failed.
+   *
+   * @param thrownExceptions Exceptions of the calls.
+   * @return The exception to report.
+   */
+  private static IOException getSequentialException(
+      List<IOException> thrownExceptions) {
+    // An unavailable subcluster may be the actual cause
+    // We cannot surface other exceptions (e.g., FileNotFoundException)
+    for (int i = 0; i < thrownExceptions.size(); i++) {
+      IOException ioe = thrownExceptions.get(i);
+      if (isUnavailableException(ioe)) {
+        return ioe;
+      }
+    }
+
+    // re-throw the first exception thrown for compatibility
+    return thrownExceptions.get(0);
+  }
+
   /**
    * Exception messages might contain local subcluster paths. This method
    * generates a new exception with the proper message.
@@ -1414,39 +1863,7 @@ public <T extends RemoteLocationContext, R> Map<T, R> invokeConcurrent(
           throws IOException {
     final List<RemoteResult<T, R>> results = invokeConcurrent(
         locations, method, standby, timeOutMs, clazz);
-
-    // Go over the results and exceptions
-    final Map<T, R> ret = new TreeMap<>();
-    final List<IOException> thrownExceptions = new ArrayList<>();
-    IOException firstUnavailableException = null;
-    for (final RemoteResult<T, R> result : results) {
-      if (result.hasException()) {
-        IOException ioe = result.getException();
-        thrownExceptions.add(ioe);
-        // Track unavailable exceptions to throw them first
-        if (isUnavailableException(ioe)) {
-          firstUnavailableException = ioe;
-        }
-      }
-      if (result.hasResult()) {
-        ret.put(result.getLocation(), result.getResult());
-      }
-    }
-
-    // Throw exceptions if needed
-    if (!thrownExceptions.isEmpty()) {
-      // Throw if response from all servers required or no results
-      if (requireResponse || ret.isEmpty()) {
-        // Throw unavailable exceptions first
-        if (firstUnavailableException != null) {
-          throw firstUnavailableException;
-        } else {
-          throw thrownExceptions.get(0);
-        }
-      }
-    }
-
-    return ret;
+    return getConcurrentResults(results, requireResponse);
   }
 
   /**
@@ -1616,6 +2033,159 @@ public <T extends RemoteLocationContext, R> Map<T, R> invokeConcurrent(
     }
   }
 
+  /**
+   * Asynchronous version of {@link #invokeConcurrent(Collection, RemoteMethod,
+   * boolean, long, Class)} for the active namenodes and without time out. The
+   * calls to all the locations are sent from the current thread and the
+   * future completes once all of them complete. The executor has to carry
+   * the RPC call and caller context of the client.
+   *
+   * @param <T> The type of the remote location.
+   * @param <R> The type of the remote method return.
+   * @param locations List of remote locations to call concurrently.
+   * @param method The remote method and parameters to invoke.
+   * @param clazz Type of the remote return type.
+   * @param executor Executor to handle the responses of the namenodes.
+   * @return Future with the result of invoking the method per subcluster
+   *         (list of results). This includes the exception for each remote
+   *         location.
+   * @throws IOException If there are errors invoking the method.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends RemoteLocationContext, R>
+      CompletableFuture<List<RemoteResult<T, R>>> invokeConcurrentAsync(
+          final Collection<T> locations, final RemoteMethod method,
+          Class<R> clazz, final Executor executor) throws IOException {
+
+    final UserGroupInformation ugi = RouterRpcServer.getRemoteUser();
+    final Method m = method.getMethod();
+    final Class<?> proto = method.getProtocol();
+    final RouterRpcFairnessPolicyController controller =
+        getRouterRpcFairnessPolicyController();
+
+    if (locations.isEmpty()) {
+      throw new IOException("No remote locations available");
+    } else if (locations.size() == 1) {
+      // Shortcut, just one call
+      final T location = locations.iterator().next();
+      final String ns = location.getNameserviceId();
+      boolean isObserverRead = isObserverReadEligible(ns, m);
+      final List<? extends FederationNamenodeContext> namenodes =
+          getOrderedNamenodes(ns, isObserverRead);
+      acquirePermit(ns, ugi, method, controller);
+      return invokeMethodAsync(ugi, namenodes, isObserverRead, proto, m,
+          method.getParams(location), executor).handle((result, t) -> {
+            releasePermit(ns, ugi, method, controller);
+            if (t != null) {
+              // Localize the exception
+              throw new CompletionException(
+                  processException(unwrapAsyncException(t), location));
+            }
+            RemoteResult<T, R> remoteResult =
+                new RemoteResult<>(location, (R) result);
+            return Collections.singletonList(remoteResult);
+          });
+    }
+
+    final List<T> orderedLocations = new ArrayList<>(locations);
+    final List<Boolean> observerReads = new ArrayList<>();
+    final List<List<? extends FederationNamenodeContext>> namenodes =
+        new ArrayList<>();
+    for (final T location : orderedLocations) {
+      String nsId = location.getNameserviceId();
+      boolean isObserverRead = isObserverReadEligible(nsId, m);
+      observerReads.add(isObserverRead);
+      namenodes.add(getOrderedNamenodes(nsId, isObserverRead));
+    }
+
+    if (rpcMonitor != null) {
+      rpcMonitor.proxyOp();
+    }
+    if (this.router.getRouterClientMetrics() != null) {
+      this.router.getRouterClientMetrics().incInvokedConcurrent(m);
+    }
+
+    acquirePermit(CONCURRENT_NS, ugi, method, controller);
+    final List<CompletableFuture<RemoteResult<T, R>>> futures =
+        new ArrayList<>();
+    for (int i = 0; i < orderedLocations.size(); i++) {
+      final T location = orderedLocations.get(i);
+      futures.add(invokeMethodAsync(ugi, namenodes.get(i),
+          observerReads.get(i), proto, m, method.getParams(location), executor)
+          .handle((result, t) -> {
+            if (t == null) {
+              return new RemoteResult<>(location, (R) result);
+            }
+            IOException ioe = unwrapAsyncException(t);
+            LOG.debug("Cannot execute {} in {}: {}",
+                m.getName(), location, ioe.getMessage());
+            return new RemoteResult<>(location, ioe);
+          }));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+        .handle((v, t) -> {
+          releasePermit(CONCURRENT_NS, ugi, method, controller);
+          if (rpcMonitor != null) {
+            rpcMonitor.proxyOpComplete(true, CONCURRENT, null);
+          }
+          List<RemoteResult<T, R>> results = new ArrayList<>();
+          for (CompletableFuture<RemoteResult<T, R>> future : futures) {
+            results.add(future.join());
+          }
+          return results;
+        });
+  }
+
+  /**
+   * Get the results of concurrent calls by location.
+   *
+   * @param <T> The type of the remote location.
+   * @param <R> The type of the remote method return.
+   * @param results Result of the calls per subcluster.
+   * @param requireResponse If true an exception will be thrown if all calls do
+   *          not complete. If false exceptions are ignored and all data results
+   *          successfully received are returned.
+   * @return Result of the calls per subcluster: nsId to result.
+   * @throws IOException If requiredResponse=true and any of the calls threw an
+   *           exception, or if all the calls threw an exception.
+   */
+  static <T extends RemoteLocationContext, R> Map<T, R> getConcurrentResults(
+      final List<RemoteResult<T, R>> results, boolean requireResponse)
+      throws IOException {
+    // Go over the results and exceptions
+    final Map<T, R> ret = new TreeMap<>();
+    final List<IOException> thrownExceptions = new ArrayList<>();
+    IOException firstUnavailableException = null;
+    for (final RemoteResult<T, R> result : results) {
+      if (result.hasException()) {
+        IOException ioe = result.getException();
+        thrownExceptions.add(ioe);
+        // Track unavailable exceptions to throw them first
+        if (isUnavailableException(ioe)) {
+          firstUnavailableException = ioe;
+        }
+      }
+      if (result.hasResult()) {
+        ret.put(result.getLocation(), result.getResult());
+      }
+    }
+
+    // Throw exceptions if needed
+    if (!thrownExceptions.isEmpty()) {
+      // Throw if response from all servers required or no results
+      if (requireResponse || ret.isEmpty()) {
+        // Throw unavailable exceptions first
+        if (firstUnavailableException != null) {
+          throw firstUnavailableException;
+        } else {
+          throw thrownExceptions.get(0);
+        }
+      }
+    }
+
+    return ret;
+  }
+
   /**
    * Transfer origin thread local context which is necessary to current
    * worker thread when invoking method concurrently by executor service.
@@ -221,6 +221,10 @@ public class RouterRpcServer extends AbstractService implements ClientProtocol,
   /** Monitor metrics for the RPC calls. */
   private final RouterRpcMonitor rpcMonitor;
 
+  /** Translator forwarding client reads from async handlers, if enabled. */
+  private final RouterAsyncClientProtocolTranslatorPB
+      asyncClientProtocolTranslator;
+
   /** If we use authentication for the connections. */
   private final boolean serviceAuthEnabled;
 
@@ -296,8 +300,22 @@ public RouterRpcServer(Configuration conf, Router router,
         ProtobufRpcEngine2.class);
 
     ClientNamenodeProtocolServerSideTranslatorPB
-        clientProtocolServerTranslator =
-            new ClientNamenodeProtocolServerSideTranslatorPB(this);
+        clientProtocolServerTranslator;
+    if (this.conf.getBoolean(RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_ENABLE_KEY,
+        RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_ENABLE_DEFAULT)) {
+      int asyncHandlerCount = this.conf.getInt(
+          RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_HANDLER_COUNT_KEY,
+          RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_HANDLER_COUNT_DEFAULT);
+      LOG.info("Forwarding read calls asynchronously with {} async handlers",
+          asyncHandlerCount);
+      this.asyncClientProtocolTranslator =
+          new RouterAsyncClientProtocolTranslatorPB(this, asyncHandlerCount);
+      clientProtocolServerTranslator = this.asyncClientProtocolTranslator;
+    } else {
+      this.asyncClientProtocolTranslator = null;
+      clientProtocolServerTranslator =
+          new ClientNamenodeProtocolServerSideTranslatorPB(this);
+    }
     BlockingService clientNNPbService = ClientNamenodeProtocol
         .newReflectiveBlockingService(clientProtocolServerTranslator);
 
@@ -530,6 +548,9 @@ protected void serviceStop() throws Exception {
     if (this.rpcServer != null) {
       this.rpcServer.stop();
     }
+    if (this.asyncClientProtocolTranslator != null) {
+      this.asyncClientProtocolTranslator.shutdown();
+    }
     if (rpcMonitor != null) {
       this.rpcMonitor.close();
     }
@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.federation.router;
+
+import static org.apache.hadoop.hdfs.server.federation.FederationTestUtils.simulateSlowNamenode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.federation.MiniRouterDFSCluster.NamenodeContext;
+import org.apache.hadoop.hdfs.server.federation.MiniRouterDFSCluster.RouterContext;
+import org.apache.hadoop.hdfs.server.federation.RouterConfigBuilder;
+import org.apache.hadoop.hdfs.server.federation.StateStoreDFSCluster;
+import org.apache.hadoop.hdfs.server.federation.resolver.MultipleDestinationMountTableResolver;
+import org.apache.hadoop.hdfs.server.federation.resolver.order.DestinationOrder;
+import org.apache.hadoop.hdfs.server.federation.store.protocol.AddMountTableEntryRequest;
+import org.apache.hadoop.hdfs.server.federation.store.records.MountTable;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.apache.hadoop.util.Time;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test the Router forwarding read calls with asynchronous IPC. This feature
+ * is managed by {@link RBFConfigKeys#DFS_ROUTER_ASYNC_RPC_ENABLE_KEY}.
+ */
+public class TestRouterAsyncRpc {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(TestRouterAsyncRpc.class);
+
+  /** Mount point in all the namespaces. */
+  private static final String TEST_DIR = "/all";
+  /** Number of concurrent client calls. */
+  private static final int NUM_CALLS = 4;
+  /** Time the namenodes take to check an operation. */
+  private static final int NAMENODE_DELAY_SECONDS = 1;
+
+  private StateStoreDFSCluster cluster;
+  private RouterContext routerContext;
+
+  /**
+   * Start 2 namespaces and a Router with a single RPC handler and a single
+   * async handler, with {@link #TEST_DIR} in both namespaces.
+   */
+  private void startCluster(boolean async) throws Exception {
+    cluster = new StateStoreDFSCluster(
+        false, 2, MultipleDestinationMountTableResolver.class);
+    Configuration routerConf = new RouterConfigBuilder()
+        .stateStore()
+        .metrics()
+        .admin()
+        .rpc()
+        .build();
+    routerConf.setInt(RBFConfigKeys.DFS_ROUTER_HANDLER_COUNT_KEY, 1);
+    routerConf.setBoolean(RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_ENABLE_KEY, async);
+    routerConf.setInt(RBFConfigKeys.DFS_ROUTER_ASYNC_RPC_HANDLER_COUNT_KEY, 1);
+
+    cluster.setNumDatanodesPerNameservice(0);
+    cluster.addRouterOverrides(routerConf);
+    cluster.startCluster();
+    cluster.startRouters();
+    cluster.registerNamenodes();
+    cluster.waitNamenodeRegistration();
+    routerContext = cluster.getRandomRouter();
+
+    Map<String, String> destMap = new HashMap<>();
+    for (String nsId : cluster.getNameservices()) {
+      destMap.put(nsId, TEST_DIR);
+      for (NamenodeContext nn : cluster.getNamenodes(nsId)) {
+        FileSystem nnFs = nn.getFileSystem();
+        nnFs.mkdirs(new Path(TEST_DIR));
+      }
+    }
+    MountTable entry = MountTable.newInstance(TEST_DIR, destMap);
+    entry.setDestOrder(DestinationOrder.HASH_ALL);
+    assertTrue(routerContext.getAdminClient().getMountTableManager()
+        .addMountTableEntry(AddMountTableEntryRequest.newInstance(entry))
+        .getStatus());
+    routerContext.getRouter().getStateStore().refreshCaches(true);
+  }
+
+  @After
+  public void cleanup() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testResponsesAndErrors() throws Exception {
+    startCluster(true);
+    ClientProtocol routerProtocol = routerContext.getClient().getNamenode();
+
+    // Sequential call to one namespace
+    assertNotNull(routerProtocol.getFileInfo("/"));
+    assertNull(routerProtocol.getFileInfo("/does-not-exist"));
+    // Concurrent calls to all the namespaces
+    HdfsFileStatus status = routerProtocol.getFileInfo(TEST_DIR);
+    assertTrue(status.isDirectory());
+    ContentSummary summary = routerProtocol.getContentSummary(TEST_DIR);
+    assertEquals(2, summary.getDirectoryCount());
+    // Subcluster listing merged with the mount points
+    DirectoryListing listing =
+        routerProtocol.getListing("/", HdfsFileStatus.EMPTY_NAME, false);
+    assertEquals(TEST_DIR.substring(1),
+        listing.getPartialListing()[0].getLocalName());
+
+    // Exceptions from the namenodes are sent back as with sync forwarding
+    RemoteException re = LambdaTestUtils.intercept(RemoteException.class,
+        () -> routerProtocol.getBlockLocations("/does-not-exist", 0, 1));
+    assertEquals(FileNotFoundException.class.getName(), re.getClassName());
+  }
+
+  @Test
+  public void testHandlerLatency() throws Exception {
+    long[] sync = measureCalls(false);
+    long[] async = measureCalls(true);
+    LOG.info("getFileInfo with 1 Router handler and slow namenodes: " +
+        "1 call in {} ms and {} concurrent calls in {} ms with sync " +
+        "forwarding, 1 call in {} ms and {} concurrent calls in {} ms with " +
+        "async forwarding", sync[0], NUM_CALLS, sync[1], async[0], NUM_CALLS,
+        async[1]);
+
+    // The handler waits on the namenodes for each call in turn
+    assertTrue("Sync calls took " + sync[1] + " ms",
+        sync[1] >= (NUM_CALLS - 1) * sync[0]);
+    // The handler only sends the calls, they all wait at the same time
+    assertTrue("Async calls took " + async[1] + " ms",
+        async[1] < 2 * async[0]);
+  }
+
+  /**
+   * Measure the latency of a call to the Router and the time until
+   * {@link #NUM_CALLS} concurrent calls complete, with namenodes that take
+   * {@link #NAMENODE_DELAY_SECONDS} to check each operation.
+   *
+   * @return The latency of one call and of the concurrent calls.
+   */
+  private long[] measureCalls(boolean async) throws Exception {
+    startCluster(async);
+    ClientProtocol routerProtocol = routerContext.getClient().getNamenode();
+    // Open the connections to the namenodes
+    assertNotNull(routerProtocol.getFileInfo(TEST_DIR));
+    for (int i = 0; i < cluster.getCluster().getNumNameNodes(); i++) {
+      NameNode nn = cluster.getCluster().getNameNode(i);
+      simulateSlowNamenode(nn, NAMENODE_DELAY_SECONDS);
+    }
+
+    ExecutorService exec = Executors.newFixedThreadPool(NUM_CALLS);
+    try {
+      long start = Time.monotonicNow();
+      assertNotNull(routerProtocol.getFileInfo(TEST_DIR));
+      long single = Time.monotonicNow() - start;
+
+      start = Time.monotonicNow();
+      List<Future<HdfsFileStatus>> futures = new ArrayList<>();
+      for (int i = 0; i < NUM_CALLS; i++) {
+        futures.add(exec.submit(() -> routerProtocol.getFileInfo(TEST_DIR)));
+      }
+      for (Future<HdfsFileStatus> future : futures) {
+        assertNotNull(future.get());
+      }
+      return new long[] {single, Time.monotonicNow() - start};
+    } finally {
+      exec.shutdownNow();
+      cleanup();
+    }
+  }
+}
@@ -339,6 +339,19 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       = "dfs.namenode.blockreport.queue.size";
   public static final int    DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT
       = 1024;
+  public static final String DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY
+      = "dfs.namenode.blockreport.diff.threads";
+  public static final int    DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT
+      = 0;
+  public static final String DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_ENABLED_KEY
+      = "dfs.namenode.block-locations.checkpoint.enabled";
+  public static final boolean
+      DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_MAX_AGE_KEY
+      = "dfs.namenode.block-locations.checkpoint.max-age";
+  public static final long
+      DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_MAX_AGE_DEFAULT =
+      TimeUnit.HOURS.toMillis(6);
   public static final String DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME
       = "dfs.namenode.blockreport.max.lock.hold.time";
   public static final long
@@ -428,6 +441,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.edits.asynclogging.pending.queue.size";
   public static final int
       DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT = 4096;
+  public static final String DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED =
+      "dfs.namenode.edits.asynclogging.pipelined";
+  public static final boolean
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_DEFAULT = false;
 
   public static final String DFS_NAMENODE_PROVIDED_ENABLED = "dfs.namenode.provided.enabled";
   public static final boolean DFS_NAMENODE_PROVIDED_ENABLED_DEFAULT = false;
@@ -538,6 +555,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       DFS_NAMENODE_SNAPSHOT_DIFF_ALLOW_SNAP_ROOT_DESCENDANT_DEFAULT =
       true;
 
+  public static final String
+      DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES =
+      "dfs.namenode.snapshotdiff.skip-unchanged-subtrees";
+  public static final boolean
+      DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES_DEFAULT = true;
+
   public static final String
       DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT  =
       "dfs.namenode.snapshotdiff.listing.limit";
@@ -643,6 +666,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_FSLOCK_FAIR_KEY =
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
+  public static final String DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_KEY =
+      "dfs.namenode.lock.model.provider.class";
+  public static final String DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_DEFAULT =
+      "org.apache.hadoop.hdfs.server.namenode.GlobalFSNamesystemLock";
 
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
@@ -764,6 +791,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_KEY = "dfs.namenode.audit.log.token.tracking.id";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST = "dfs.namenode.audit.log.debug.cmdlist";
+  public static final String  DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY =
+      "dfs.namenode.audit.log.ring.buffer.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_RING_BLOCKING_KEY =
+      "dfs.namenode.audit.log.ring.blocking";
+  public static final boolean DFS_NAMENODE_AUDIT_LOG_RING_BLOCKING_DEFAULT = true;
   public static final String  DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_KEY =
       "dfs.namenode.metrics.logger.period.seconds";
   public static final int     DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_DEFAULT =
@@ -978,6 +1011,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY;
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY =
+      "dfs.datanode.xceiver.event-loop.enabled";
+  public static final boolean DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_XCEIVER_EVENT_LOOP_THREADS_KEY =
+      "dfs.datanode.xceiver.event-loop.threads";
+  public static final int     DFS_DATANODE_XCEIVER_EVENT_LOOP_THREADS_DEFAULT = 4;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
@@ -996,6 +1036,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       false;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_ASYNC_READ_THREADS_KEY =
+      "dfs.datanode.async-read.threads";
+  public static final int     DFS_DATANODE_ASYNC_READ_THREADS_DEFAULT = 0;
+  public static final String  DFS_DATANODE_ASYNC_READ_QUEUE_DEPTH_KEY =
+      "dfs.datanode.async-read.queue-depth";
+  public static final int     DFS_DATANODE_ASYNC_READ_QUEUE_DEPTH_DEFAULT = 4;
+  public static final String  DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_KEY =
+      "dfs.datanode.write.direct-buffers.enabled";
+  public static final boolean DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_DEFAULT =
+      false;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY =
@@ -1201,6 +1251,22 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_STARTUP_KEY = "dfs.namenode.startup";
   public static final String  DFS_NAMENODE_OBSERVER_ENABLED_KEY = "dfs.namenode.observer.enabled";
   public static final boolean DFS_NAMENODE_OBSERVER_ENABLED_DEFAULT = false;
+  public static final String  DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_ENABLED_KEY =
+      "dfs.namenode.observer.namespace-cache.enabled";
+  public static final boolean DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_MAX_ENTRIES_KEY =
+      "dfs.namenode.observer.namespace-cache.max-entries";
+  public static final int     DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_MAX_ENTRIES_DEFAULT =
+      100000;
+  public static final String  DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TXID_WINDOW_KEY =
+      "dfs.namenode.observer.namespace-cache.txid-window";
+  public static final long    DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TXID_WINDOW_DEFAULT =
+      100000L;
+  public static final String  DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TTL_KEY =
+      "dfs.namenode.observer.namespace-cache.ttl";
+  public static final long    DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TTL_DEFAULT =
+      TimeUnit.MINUTES.toMillis(1);
   public static final String  DFS_DATANODE_KEYTAB_FILE_KEY = "dfs.datanode.keytab.file";
   public static final String  DFS_DATANODE_KERBEROS_PRINCIPAL_KEY =
       HdfsClientConfigKeys.DFS_DATANODE_KERBEROS_PRINCIPAL_KEY;
@@ -1297,6 +1363,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean
       DFS_NAMENODE_BLOCKPLACEMENTPOLICY_EXCLUDE_SLOW_NODES_ENABLED_DEFAULT =
       false;
+  public static final String
+      DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_ENABLED_KEY =
+      "dfs.namenode.block-placement-policy.weighted-index.enabled";
+  public static final boolean
+      DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_ENABLED_DEFAULT = false;
+  public static final String
+      DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_REFRESH_INTERVAL_KEY =
+      "dfs.namenode.block-placement-policy.weighted-index.refresh.interval";
+  public static final long
+      DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_REFRESH_INTERVAL_DEFAULT =
+      1000; // 1s
 
   public static final String DFS_NAMENODE_BLOCKPLACEMENTPOLICY_MIN_BLOCKS_FOR_WRITE_KEY =
       "dfs.namenode.block-placement.min-blocks-for.write";
@@ -1355,6 +1432,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_KEY =
       "dfs.ha.tail-edits.rolledits.timeout";
   public static final int DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_DEFAULT = 60; // 1m
+  public static final String DFS_HA_TAILEDITS_DECODE_AHEAD_OPS_KEY =
+      "dfs.ha.tail-edits.decode-ahead.ops";
+  public static final int DFS_HA_TAILEDITS_DECODE_AHEAD_OPS_DEFAULT = 0;
   public static final String DFS_HA_LOGROLL_RPC_TIMEOUT_KEY = "dfs.ha.log-roll.rpc.timeout";
   public static final int DFS_HA_LOGROLL_RPC_TIMEOUT_DEFAULT = 20000; // 20s
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
@@ -1605,6 +1685,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String NNTOP_WINDOWS_MINUTES_KEY =
       "dfs.namenode.top.windows.minutes";
   public static final String[] NNTOP_WINDOWS_MINUTES_DEFAULT = {"1", "5", "25"};
+  // maximum number of users tracked per op and bucket, 0 to track all users
+  public static final String NNTOP_MAX_TRACKED_USERS_KEY =
+      "dfs.namenode.top.max.tracked.users";
+  public static final int NNTOP_MAX_TRACKED_USERS_DEFAULT = 0;
   public static final String DFS_PIPELINE_ECN_ENABLED = "dfs.pipeline.ecn";
   public static final boolean DFS_PIPELINE_ECN_ENABLED_DEFAULT = false;
   public static final String DFS_PIPELINE_SLOWNODE_ENABLED = "dfs.pipeline.slownode";
@@ -25,6 +25,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
+import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStorageInfo;
 import org.apache.hadoop.net.NetworkTopology;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.net.NodeBase;
@@ -32,6 +33,7 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Random;
 
 /**
@@ -45,6 +47,9 @@ public class DFSNetworkTopology extends NetworkTopology {
 
   private static final Random RANDOM = new Random();
 
+  /** Per-storage-type view of the current snapshot; rebuilt lazily. */
+  private volatile StorageTypeIndex storageTypeIndex;
+
   public static DFSNetworkTopology getInstance(Configuration conf) {
 
     DFSNetworkTopology nt = ReflectionUtils.newInstance(conf.getClass(
@@ -68,17 +73,12 @@ public static DFSNetworkTopology getInstance(Configuration conf) {
    */
   public Node chooseRandomWithStorageType(final String scope,
       final Collection<Node> excludedNodes, StorageType type) {
-    netlock.readLock().lock();
-    try {
-      if (scope.startsWith("~")) {
-        return chooseRandomWithStorageType(
-            NodeBase.ROOT, scope.substring(1), excludedNodes, type);
-      } else {
-        return chooseRandomWithStorageType(
-            scope, null, excludedNodes, type);
-      }
-    } finally {
-      netlock.readLock().unlock();
+    if (scope.startsWith("~")) {
+      return chooseRandomWithStorageTypeFromSnapshot(
+          NodeBase.ROOT, scope.substring(1), excludedNodes, type);
+    } else {
+      return chooseRandomWithStorageTypeFromSnapshot(
+          scope, null, excludedNodes, type);
     }
   }
 
@@ -106,45 +106,150 @@ public Node chooseRandomWithStorageType(final String scope,
    */
   public Node chooseRandomWithStorageTypeTwoTrial(final String scope,
       final Collection<Node> excludedNodes, StorageType type) {
-    netlock.readLock().lock();
-    try {
-      String searchScope;
-      String excludedScope;
-      if (scope.startsWith("~")) {
-        searchScope = NodeBase.ROOT;
-        excludedScope = scope.substring(1);
-      } else {
-        searchScope = scope;
-        excludedScope = null;
+    String searchScope;
+    String excludedScope;
+    if (scope.startsWith("~")) {
+      searchScope = NodeBase.ROOT;
+      excludedScope = scope.substring(1);
+    } else {
+      searchScope = scope;
+      excludedScope = null;
+    }
+    // next do a two-trial search
+    // first trial, call the old method, inherited from NetworkTopology
+    Node n = chooseRandom(searchScope, excludedScope, excludedNodes);
+    if (n == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("No node to choose.");
       }
-      // next do a two-trial search
-      // first trial, call the old method, inherited from NetworkTopology
-      Node n = chooseRandom(searchScope, excludedScope, excludedNodes);
-      if (n == null) {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("No node to choose.");
-        }
-        // this means there is simply no node to choose from
+      // this means there is simply no node to choose from
+      return null;
+    }
+    Preconditions.checkArgument(n instanceof DatanodeDescriptor);
+    DatanodeDescriptor dnDescriptor = (DatanodeDescriptor)n;
+
+    if (dnDescriptor.hasStorageType(type)) {
+      // the first trial succeeded, just return
+      return dnDescriptor;
+    } else {
+      // otherwise, make the second trial by calling the new method
+      LOG.debug("First trial failed, node has no type {}, " +
+          "making second trial carrying this type", type);
+      return chooseRandomWithStorageTypeFromSnapshot(searchScope,
+          excludedScope, excludedNodes, type);
+    }
+  }
+
+  /**
+   * Choose a random node with the given storage type from the per-storage-type
+   * view of the current snapshot, without taking the topology lock. Falls
+   * back to {@link #chooseRandomWithStorageType(String, String, Collection,
+   * StorageType)} under the read lock if the snapshot cannot resolve the
+   * request.
+   */
+  private Node chooseRandomWithStorageTypeFromSnapshot(final String scope,
+      final String excludedScope, final Collection<Node> excludedNodes,
+      StorageType type) {
+    StorageTypeIndex index = getStorageTypeIndex();
+    if (index != null) {
+      int i = index.snapshot.chooseRandom(scope, excludedScope,
+          excludedNodes, RANDOM, index.prefix[type.ordinal()]);
+      // choose again from the tree if a node was removed or lost a storage
+      // type while choosing
+      if (!isCurrent(index)) {
+        i = Snapshot.UNRESOLVED;
+      }
+      if (i == Snapshot.NONE) {
+        LOG.debug("chooseRandom returning null");
         return null;
       }
-      Preconditions.checkArgument(n instanceof DatanodeDescriptor);
-      DatanodeDescriptor dnDescriptor = (DatanodeDescriptor)n;
-
-      if (dnDescriptor.hasStorageType(type)) {
-        // the first trial succeeded, just return
-        return dnDescriptor;
-      } else {
-        // otherwise, make the second trial by calling the new method
-        LOG.debug("First trial failed, node has no type {}, " +
-            "making second trial carrying this type", type);
-        return chooseRandomWithStorageType(searchScope, excludedScope,
-            excludedNodes, type);
+      if (i >= 0) {
+        Node chosen = index.leaves[type.ordinal()][i];
+        if (excludedNodes == null || !excludedNodes.contains(chosen)) {
+          LOG.debug("chooseRandom returning {}", chosen);
+          return chosen;
+        }
       }
+    }
+    netlock.readLock().lock();
+    try {
+      return chooseRandomWithStorageType(scope, excludedScope, excludedNodes,
+          type);
     } finally {
       netlock.readLock().unlock();
     }
   }
 
+  /**
+   * @return the per-storage-type view of the current snapshot, or null if
+   * the topology was not built from {@link DFSTopologyNodeImpl}s.
+   */
+  private StorageTypeIndex getStorageTypeIndex() {
+    Snapshot s = getSnapshot();
+    if (!(s.getRoot() instanceof DFSTopologyNodeImpl)) {
+      return null;
+    }
+    // read the version first so that a concurrent change makes the new
+    // index stale rather than being missed
+    long version = ((DFSTopologyNodeImpl) s.getRoot()).getStorageVersion();
+    StorageTypeIndex index = storageTypeIndex;
+    if (index == null || index.snapshot != s
+        || index.storageVersion != version) {
+      index = new StorageTypeIndex(s, version);
+      storageTypeIndex = index;
+    }
+    return index;
+  }
+
+  private boolean isCurrent(StorageTypeIndex index) {
+    return isCurrent(index.snapshot) && index.storageVersion ==
+        ((DFSTopologyNodeImpl) index.snapshot.getRoot()).getStorageVersion();
+  }
+
+  /**
+   * The leaves of a snapshot that have each storage type, in snapshot order,
+   * together with prefix counts mapping snapshot ranges onto them.
+   */
+  private static final class StorageTypeIndex {
+    private final Snapshot snapshot;
+    private final long storageVersion;
+    private final Node[][] leaves;
+    private final int[][] prefix;
+
+    StorageTypeIndex(Snapshot snapshot, long storageVersion) {
+      this.snapshot = snapshot;
+      this.storageVersion = storageVersion;
+      int numOfLeaves = snapshot.getNumOfLeaves();
+      StorageType[] types = StorageType.values();
+      this.prefix = new int[types.length][numOfLeaves + 1];
+      EnumSet<StorageType> leafTypes = EnumSet.noneOf(StorageType.class);
+      for (int i = 0; i < numOfLeaves; i++) {
+        leafTypes.clear();
+        Node leaf = snapshot.getLeaf(i);
+        if (leaf instanceof DatanodeDescriptor) {
+          for (DatanodeStorageInfo storage :
+              ((DatanodeDescriptor) leaf).getStorageInfos()) {
+            leafTypes.add(storage.getStorageType());
+          }
+        }
+        for (StorageType type : types) {
+          int t = type.ordinal();
+          prefix[t][i + 1] = prefix[t][i] + (leafTypes.contains(type) ? 1 : 0);
+        }
+      }
+      this.leaves = new Node[types.length][];
+      for (StorageType type : types) {
+        int t = type.ordinal();
+        leaves[t] = new Node[prefix[t][numOfLeaves]];
+        for (int i = 0; i < numOfLeaves; i++) {
+          if (prefix[t][i + 1] > prefix[t][i]) {
+            leaves[t][prefix[t][i]] = snapshot.getLeaf(i);
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Choose a random node based on given scope, excludedScope and excludedNodes
    * set. Although in general the topology has at most three layers, this class
@@ -88,6 +88,13 @@ public InnerNodeImpl newInnerNode(String path) {
    */
   private final EnumMap<StorageType, Integer> storageTypeCounts;
 
+  /**
+   * Bumped whenever a storage type is added to or removed from the subtree
+   * after the datanode was added, so readers caching per-storage-type views
+   * of the subtree can tell they are stale.
+   */
+  private volatile long storageVersion;
+
   DFSTopologyNodeImpl(String path) {
     super(path);
     childrenStorageInfo = new HashMap<>();
@@ -101,6 +108,10 @@ public InnerNodeImpl newInnerNode(String path) {
     storageTypeCounts = new EnumMap<>(StorageType.class);
   }
 
+  public long getStorageVersion() {
+    return storageVersion;
+  }
+
   public int getSubtreeStorageCount(StorageType type) {
     if (storageTypeCounts.containsKey(type)) {
       return storageTypeCounts.get(type);
@@ -399,6 +410,7 @@ public synchronized void childAddStorage(
     } else {
       storageTypeCounts.put(type, 1);
     }
+    storageVersion++;
     if (getParent() != null) {
       ((DFSTopologyNodeImpl)getParent()).childAddStorage(getName(), type);
     }
@@ -428,6 +440,7 @@ public synchronized void childRemoveStorage(
     } else {
       storageTypeCounts.remove(type);
     }
+    storageVersion++;
     if (getParent() != null) {
       ((DFSTopologyNodeImpl)getParent()).childRemoveStorage(getName(), type);
     }
@@ -101,6 +101,23 @@ public SaslDataTransferServer(DNConf dnConf,
     this.dnConf = dnConf;
   }
 
+  /**
+   * Returns whether {@link #receive} hands back the underlying streams
+   * without any negotiation with the peer.
+   *
+   * @param xferPort data transfer port of DataNode accepting connection
+   * @return true if the connections are not protected by SASL
+   */
+  public boolean isHandshakeSkipped(int xferPort) {
+    if (dnConf.getEncryptDataTransfer()) {
+      return false;
+    }
+    return !UserGroupInformation.isSecurityEnabled()
+        || SecurityUtil.isPrivilegedPort(xferPort)
+        || (dnConf.getSaslPropsResolver() == null
+            && dnConf.getIgnoreSecurePortsForTesting());
+  }
+
   /**
    * Receives SASL negotiation from a peer on behalf of a server.
    *
@@ -429,6 +429,8 @@ synchronized void journal(RequestInfo reqInfo,
       LOG.trace("Writing txid " + firstTxnId + "-" + lastTxnId +
           " ; journal id: " + journalId);
     }
+    StopWatch batchSw = new StopWatch();
+    batchSw.start();
     if (cache != null) {
       cache.storeEdits(records, firstTxnId, lastTxnId, curSegmentLayoutVersion);
     }
@@ -466,6 +468,9 @@ synchronized void journal(RequestInfo reqInfo,
     metrics.batchesWritten.incr(1);
     metrics.bytesWritten.incr(records.length);
     metrics.txnsWritten.incr(numTxns);
+    batchSw.stop();
+    metrics.addBatch(numTxns,
+        TimeUnit.MICROSECONDS.convert(batchSw.now(), TimeUnit.NANOSECONDS));
     
     updateHighestWrittenTxId(lastTxnId);
     nextTxId = lastTxnId + 1;
@@ -70,6 +70,10 @@ class JournalMetrics {
   };
   
   final MutableQuantiles[] syncsQuantiles;
+
+  final MutableQuantiles[] batchWriteQuantiles;
+
+  final MutableQuantiles[] batchTxnsQuantiles;
   
   private final Journal journal;
 
@@ -83,6 +87,19 @@ class JournalMetrics {
           "syncs" + interval + "s",
           "Journal sync time", "ops", "latencyMicros", interval);
     }
+    batchWriteQuantiles = new MutableQuantiles[QUANTILE_INTERVALS.length];
+    batchTxnsQuantiles = new MutableQuantiles[QUANTILE_INTERVALS.length];
+    for (int i = 0; i < QUANTILE_INTERVALS.length; i++) {
+      int interval = QUANTILE_INTERVALS[i];
+      batchWriteQuantiles[i] = registry.newQuantiles(
+          "batchWrites" + interval + "s",
+          "Time to write and sync one batch of edits", "ops",
+          "latencyMicros", interval);
+      batchTxnsQuantiles[i] = registry.newQuantiles(
+          "batchTxns" + interval + "s",
+          "Number of transactions in one batch of edits", "ops",
+          "txns", interval);
+    }
     rpcRequestCacheMissAmount = registry
         .newStat("RpcRequestCacheMissAmount", "Number of RPC requests unable to be " +
                 "served due to lack of availability in cache, and how many " +
@@ -148,6 +165,15 @@ void addSync(long us) {
     }
   }
 
+  void addBatch(long numTxns, long us) {
+    for (MutableQuantiles q : batchWriteQuantiles) {
+      q.add(us);
+    }
+    for (MutableQuantiles q : batchTxnsQuantiles) {
+      q.add(numTxns);
+    }
+  }
+
   public MutableCounterLong getNumEditLogsSynced() {
     return numEditLogsSynced;
   }
@@ -406,6 +406,7 @@ public void convertToBlockUnderConstruction(BlockUCState s,
       uc.setBlockUCState(s);
       uc.setExpectedLocations(this, targets, this.getBlockType());
     }
+    storagesChanged();
   }
 
   /**
@@ -415,6 +416,7 @@ void convertToCompleteBlock() {
     assert getBlockUCState() != BlockUCState.COMPLETE :
         "Trying to convert a COMPLETE block";
     uc = null;
+    storagesChanged();
   }
 
   /**
@@ -428,10 +430,21 @@ public List<ReplicaUnderConstruction> setGenerationStampAndVerifyReplicas(
     Preconditions.checkState(uc != null && !isComplete());
     // Set the generation stamp for the block.
     setGenerationStamp(genStamp);
+    storagesChanged();
 
     return uc.getStaleReplicas(genStamp);
   }
 
+  /** Tell the storages of the block that its state changed. */
+  private void storagesChanged() {
+    for (int i = 0; i < getCapacity(); i++) {
+      DatanodeStorageInfo storage = getStorageInfo(i);
+      if (storage != null) {
+        storage.blockChanged();
+      }
+    }
+  }
+
   /**
    * Commit block's length and generation stamp as reported by the client.
    * Set block state to {@link BlockUCState#COMMITTED}.
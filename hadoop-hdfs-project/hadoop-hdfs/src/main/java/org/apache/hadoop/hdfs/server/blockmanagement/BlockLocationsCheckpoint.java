@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
+import org.apache.hadoop.hdfs.server.namenode.Namesystem;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
+import org.apache.hadoop.hdfs.util.AtomicFileOutputStream;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.WritableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The replica locations of the blocks map, saved alongside the fsimage.
+ * <p>
+ * A restarted NameNode does not know where the replicas of its blocks are
+ * until every DataNode has sent a full block report, so it stays in safe mode
+ * for as long as that takes. When the locations were saved before the
+ * restart, the replicas of a storage are added provisionally as soon as its
+ * DataNode sends the first heartbeat, which lets the NameNode leave safe mode
+ * long before the block reports are in. The block contents of the storage
+ * stay stale, so no replica is deleted because of a provisional location, and
+ * its first block report is diffed against the provisional replicas to
+ * validate or invalidate them.
+ * <p>
+ * Only the complete replicas of the storages which have sent a block report
+ * are saved, and a saved replica is only added if its block is still
+ * complete, with the same generation stamp and length. The file is:
+ * <pre>
+ * int    layout version
+ * long   txid of the image
+ * long   time of the checkpoint in milliseconds since the epoch
+ * for each storage:
+ *   boolean true
+ *   UTF     datanode UUID
+ *   UTF     storage ID
+ *   int     number of replicas
+ *   int     length of the replicas
+ *   vlong   block ID, generation stamp and length of each replica
+ * boolean false
+ * </pre>
+ */
+class BlockLocationsCheckpoint implements Closeable {
+  static final Logger LOG =
+      LoggerFactory.getLogger(BlockLocationsCheckpoint.class);
+
+  static final int LAYOUT_VERSION = 1;
+
+  /** The saved replicas of a storage. */
+  static class StorageEntry {
+    private final String storageId;
+    private final long offset;
+    private final int numReplicas;
+    private final int length;
+
+    StorageEntry(String storageId, long offset, int numReplicas,
+        int length) {
+      this.storageId = storageId;
+      this.offset = offset;
+      this.numReplicas = numReplicas;
+      this.length = length;
+    }
+
+    String getStorageId() {
+      return storageId;
+    }
+
+    int getNumReplicas() {
+      return numReplicas;
+    }
+  }
+
+  private final File file;
+  private final RandomAccessFile raf;
+  private final long txid;
+  private final long time;
+  /** The storages which have not been applied yet, by datanode UUID. */
+  private final Map<String, List<StorageEntry>> entries =
+      new ConcurrentHashMap<>();
+  private long numReplicas;
+
+  private BlockLocationsCheckpoint(File file) throws IOException {
+    this.file = file;
+    this.raf = new RandomAccessFile(file, "r");
+    boolean success = false;
+    try {
+      final int version = raf.readInt();
+      if (version != LAYOUT_VERSION) {
+        throw new IOException("Unsupported layout version " + version);
+      }
+      txid = raf.readLong();
+      time = raf.readLong();
+      while (raf.readBoolean()) {
+        final String datanodeUuid = raf.readUTF();
+        final String storageId = raf.readUTF();
+        final int replicas = raf.readInt();
+        final int length = raf.readInt();
+        final long offset = raf.getFilePointer();
+        if (replicas < 0 || length < 0 || offset + length > raf.length()) {
+          throw new EOFException("Truncated replicas of " + storageId);
+        }
+        raf.seek(offset + length);
+        entries.computeIfAbsent(datanodeUuid, k -> new ArrayList<>())
+            .add(new StorageEntry(storageId, offset, replicas, length));
+        numReplicas += replicas;
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        IOUtils.closeStream(raf);
+      }
+    }
+  }
+
+  long getTxId() {
+    return txid;
+  }
+
+  long getTime() {
+    return time;
+  }
+
+  /** @return the number of saved replicas. */
+  long getNumReplicas() {
+    return numReplicas;
+  }
+
+  /**
+   * Load the newest of the given files which is not older than maxAge.
+   *
+   * @return the checkpoint, or null if there is no usable file.
+   */
+  static BlockLocationsCheckpoint load(List<File> files, long maxAge,
+      long now) {
+    BlockLocationsCheckpoint newest = null;
+    for (File f : files) {
+      if (!f.exists()) {
+        continue;
+      }
+      final BlockLocationsCheckpoint c;
+      try {
+        c = new BlockLocationsCheckpoint(f);
+      } catch (IOException e) {
+        LOG.warn("Ignoring unreadable block locations {}", f, e);
+        continue;
+      }
+      if (maxAge > 0 && now - c.getTime() > maxAge) {
+        LOG.info("Ignoring block locations {} saved {} ms ago", f,
+            now - c.getTime());
+        c.close();
+      } else if (newest == null || c.getTime() > newest.getTime()) {
+        IOUtils.closeStream(newest);
+        newest = c;
+      } else {
+        c.close();
+      }
+    }
+    if (newest != null) {
+      LOG.info("Loaded {} replica locations of {} datanodes from {}, saved"
+          + " at txid {}", newest.getNumReplicas(), newest.entries.size(),
+          newest.file, newest.getTxId());
+    }
+    return newest;
+  }
+
+  /**
+   * Take the saved storages of a datanode, so that they are applied once.
+   *
+   * @return the storages, or an empty list.
+   */
+  List<StorageEntry> take(String datanodeUuid) {
+    final List<StorageEntry> taken = entries.remove(datanodeUuid);
+    return taken == null ? Collections.emptyList() : taken;
+  }
+
+  boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * Read the saved replicas of a storage.
+   *
+   * @return the block ID, generation stamp and length of each replica.
+   */
+  long[] read(StorageEntry entry) throws IOException {
+    final byte[] buf = new byte[entry.length];
+    synchronized (raf) {
+      raf.seek(entry.offset);
+      raf.readFully(buf);
+    }
+    final DataInputBuffer in = new DataInputBuffer();
+    in.reset(buf, buf.length);
+    final long[] replicas = new long[entry.numReplicas * 3];
+    for (int i = 0; i < replicas.length; i++) {
+      replicas[i] = WritableUtils.readVLong(in);
+    }
+    return replicas;
+  }
+
+  @Override
+  public void close() {
+    entries.clear();
+    IOUtils.closeStream(raf);
+  }
+
+  /**
+   * Save the replica locations of the blocks map to each of the given files.
+   * Each storage is read under its own read lock, so the saved locations are
+   * not a point-in-time view, which is fine as they are checked again when
+   * they are applied.
+   *
+   * @return the number of saved replicas, or -1 if no storage has sent a
+   *         block report yet and the files were left untouched.
+   */
+  static long save(Namesystem namesystem, DatanodeManager datanodeManager,
+      List<File> files, long txid, long now) throws IOException {
+    final List<DatanodeDescriptor> nodes =
+        datanodeManager.getDatanodeListForReport(DatanodeReportType.ALL);
+    if (!hasReportedStorage(namesystem, nodes)) {
+      return -1;
+    }
+    final List<AtomicFileOutputStream> streams = new ArrayList<>();
+    final List<DataOutputStream> outs = new ArrayList<>();
+    long saved = 0;
+    boolean success = false;
+    try {
+      for (File f : files) {
+        final AtomicFileOutputStream s = new AtomicFileOutputStream(f);
+        streams.add(s);
+        outs.add(new DataOutputStream(new BufferedOutputStream(s)));
+      }
+      for (DataOutputStream out : outs) {
+        out.writeInt(LAYOUT_VERSION);
+        out.writeLong(txid);
+        out.writeLong(now);
+      }
+      final DataOutputBuffer buf = new DataOutputBuffer();
+      long[] replicas = new long[3 * 1024];
+      for (DatanodeDescriptor node : nodes) {
+        for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+          int n = 0;
+          namesystem.readLock();
+          try {
+            if (!isSaved(storage)) {
+              continue;
+            }
+            final Iterator<BlockInfo> it = storage.getBlockIterator();
+            while (it.hasNext()) {
+              final BlockInfo b = it.next();
+              if (!b.isComplete() || b.isDeleted()) {
+                continue;
+              }
+              if (3 * n == replicas.length) {
+                replicas = Arrays.copyOf(replicas, replicas.length * 2);
+              }
+              long id = b.getBlockId();
+              if (b.isStriped()) {
+                id += ((BlockInfoStriped) b).getStorageBlockIndex(storage);
+              }
+              replicas[3 * n] = id;
+              replicas[3 * n + 1] = b.getGenerationStamp();
+              replicas[3 * n + 2] = b.getNumBytes();
+              n++;
+            }
+          } finally {
+            namesystem.readUnlock("saveBlockLocations");
+          }
+          buf.reset();
+          for (int i = 0; i < 3 * n; i++) {
+            WritableUtils.writeVLong(buf, replicas[i]);
+          }
+          for (DataOutputStream out : outs) {
+            out.writeBoolean(true);
+            out.writeUTF(node.getDatanodeUuid());
+            out.writeUTF(storage.getStorageID());
+            out.writeInt(n);
+            out.writeInt(buf.getLength());
+            out.write(buf.getData(), 0, buf.getLength());
+          }
+          saved += n;
+        }
+      }
+      for (DataOutputStream out : outs) {
+        out.writeBoolean(false);
+        out.close();
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (AtomicFileOutputStream s : streams) {
+          s.abort();
+        }
+      }
+    }
+    return saved;
+  }
+
+  private static boolean hasReportedStorage(Namesystem namesystem,
+      List<DatanodeDescriptor> nodes) {
+    namesystem.readLock();
+    try {
+      for (DatanodeDescriptor node : nodes) {
+        for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+          if (isSaved(storage)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    } finally {
+      namesystem.readUnlock("saveBlockLocations");
+    }
+  }
+
+  /**
+   * Only the storages whose replicas were confirmed by a block report are
+   * saved, provisional replicas are not carried over to the next restart.
+   */
+  private static boolean isSaved(DatanodeStorageInfo storage) {
+    return storage.getBlockReportCount() > 0
+        && storage.getState() == State.NORMAL
+        && !StorageType.PROVIDED.equals(storage.getStorageType())
+        && storage.getDatanodeDescriptor().isAlive();
+  }
+}
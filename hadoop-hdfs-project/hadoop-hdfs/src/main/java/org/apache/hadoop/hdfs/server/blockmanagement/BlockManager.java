@@ -23,7 +23,9 @@
 import static org.apache.hadoop.util.ExitUtil.terminate;
 import static org.apache.hadoop.util.Time.now;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,12 +47,17 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import javax.management.ObjectName;
 
@@ -110,6 +117,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
@@ -120,6 +128,7 @@
 import static org.apache.hadoop.hdfs.util.StripedBlockUtil.getInternalBlockLength;
 
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.metrics2.util.MBeans;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -131,6 +140,7 @@
 import org.apache.hadoop.util.Time;
 
 import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.util.Preconditions;
 
 import org.slf4j.Logger;
@@ -423,6 +433,18 @@ public int getPendingSPSPaths() {
 
   // Max write lock hold time for BlockReportProcessingThread(ms).
   private final long maxLockHoldTime;
+  /** Diffs full block reports under the read lock, or null. */
+  private final ExecutorService reportDiffExecutor;
+
+  /** Whether the replica locations are saved alongside the image. */
+  private final boolean blockLocationsCheckpointEnabled;
+  private final long blockLocationsCheckpointMaxAge;
+  /** The saved replica locations not applied yet, or null. */
+  private final AtomicReference<BlockLocationsCheckpoint> savedBlockLocations =
+      new AtomicReference<>();
+  private final LongAdder provisionalReplicasAdded = new LongAdder();
+  private final LongAdder provisionalReplicasValidated = new LongAdder();
+  private final LongAdder provisionalReplicasInvalidated = new LongAdder();
 
   /**
    * When running inside a Standby node, the node may receive block reports
@@ -598,6 +620,25 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
         DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT);
     this.blockReportThread = new BlockReportProcessingThread(queueSize);
+    int reportDiffThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT);
+    if (reportDiffThreads > 0) {
+      this.reportDiffExecutor = Executors.newFixedThreadPool(
+          reportDiffThreads, new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Block report diff %d").build());
+      LOG.info("Diffing block reports under the read lock with {} threads",
+          reportDiffThreads);
+    } else {
+      this.reportDiffExecutor = null;
+    }
+    this.blockLocationsCheckpointEnabled = conf.getBoolean(
+        DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_ENABLED_KEY,
+        DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_ENABLED_DEFAULT);
+    this.blockLocationsCheckpointMaxAge = conf.getTimeDuration(
+        DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_MAX_AGE_KEY,
+        DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_MAX_AGE_DEFAULT,
+        TimeUnit.MILLISECONDS);
 
     this.deleteCorruptReplicaImmediately =
         conf.getBoolean(DFS_NAMENODE_CORRUPT_BLOCK_DELETE_IMMEDIATELY_ENABLED,
@@ -820,6 +861,9 @@ public void close() {
       redundancyThread.interrupt();
       blockReportThread.interrupt();
       markedDeleteBlockScrubberThread.interrupt();
+      if (reportDiffExecutor != null) {
+        reportDiffExecutor.shutdownNow();
+      }
       redundancyThread.join(3000);
       blockReportThread.join(3000);
       markedDeleteBlockScrubberThread.join(3000);
@@ -828,6 +872,7 @@ public void close() {
     datanodeManager.close();
     pendingReconstruction.stop();
     blocksMap.close();
+    discardSavedBlockLocations();
   }
 
   /** @return the datanodeManager */
@@ -1514,7 +1559,7 @@ private LocatedBlock createLocatedBlock(LocatedBlockBuilder locatedBlocks,
           blk, numCorruptNodes, numCorruptReplicas);
     }
 
-    final int numNodes = blocksMap.numNodes(blk);
+    final int numNodes = blk.numNodes();
     final boolean isCorrupt;
     if (blk.isStriped()) {
       BlockInfoStriped sblk = (BlockInfoStriped) blk;
@@ -1530,8 +1575,10 @@ private LocatedBlock createLocatedBlock(LocatedBlockBuilder locatedBlocks,
     int j = 0, i = 0;
     if (numMachines > 0) {
       final boolean noCorrupt = (numCorruptReplicas == 0);
-      for(DatanodeStorageInfo storage : blocksMap.getStorages(blk)) {
-        if (storage.getState() != State.FAILED) {
+      // Walk the storages by index to not allocate an iterator per block.
+      for (int idx = 0; idx < blk.getCapacity(); idx++) {
+        final DatanodeStorageInfo storage = blk.getStorageInfo(idx);
+        if (storage != null && storage.getState() != State.FAILED) {
           final DatanodeDescriptor d = storage.getDatanodeDescriptor();
           // Don't pick IN_MAINTENANCE or dead ENTERING_MAINTENANCE states.
           if (d.isInMaintenance()
@@ -2867,6 +2914,35 @@ private static class BlockInfoToAdd {
     }
   }
 
+  /**
+   * The part of a storage block report that needs the write lock, computed
+   * by {@link #computeReportDiff} under the read lock.
+   */
+  public static final class ReportDiff {
+    private final DatanodeStorageInfo storageInfo;
+    /** The modification count of the storage when it was diffed. */
+    private final long modCount;
+    /** Reported replicas that are not in sync with the blocks map. */
+    private final List<BlockReportReplica> toProcess = new ArrayList<>();
+    /** Stored blocks that were not reported. */
+    private final List<BlockInfo> toRemove = new ArrayList<>();
+
+    private ReportDiff(DatanodeStorageInfo storageInfo) {
+      this.storageInfo = storageInfo;
+      this.modCount = storageInfo.getModCount();
+    }
+
+    @VisibleForTesting
+    int getNumToProcess() {
+      return toProcess.size();
+    }
+
+    @VisibleForTesting
+    int getNumToRemove() {
+      return toRemove.size();
+    }
+  }
+
   /**
    * Check block report lease.
    * @return true if lease exist and not expire
@@ -2897,6 +2973,24 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport,
       BlockReportContext context) throws IOException {
+    return processReport(nodeID, storage, newReport, context, null);
+  }
+
+  /**
+   * The given storage is reporting all its blocks.
+   * Update the (storage{@literal -->}block list) and
+   * (block{@literal -->}storage list) maps.
+   *
+   * @param diff the diff of the report computed by
+   *        {@link #computeReportDiffs}, or null to diff the whole report
+   *        under the write lock.
+   * @return true if all known storages of the given DN have finished reporting.
+   * @throws IOException
+   */
+  public boolean processReport(final DatanodeID nodeID,
+      final DatanodeStorage storage,
+      final BlockListAsLongs newReport,
+      BlockReportContext context, ReportDiff diff) throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
@@ -2949,7 +3043,20 @@ public boolean processReport(final DatanodeID nodeID,
         // Block reports for provided storage are not
         // maintained by DN heartbeats
         if (!StorageType.PROVIDED.equals(storageInfo.getStorageType())) {
-          invalidatedBlocks = processReport(storageInfo, newReport);
+          // A diff is only valid for the storage it was computed against,
+          // as long as neither the storage nor its blocks changed since and
+          // no replica has to be postponed.
+          if (diff != null && diff.storageInfo == storageInfo
+              && diff.modCount == storageInfo.getModCount()
+              && !shouldPostponeBlocksFromFuture) {
+            invalidatedBlocks = applyReportDiff(diff);
+          } else {
+            if (diff != null) {
+              LOG.debug("Storage {} changed since its report was diffed,"
+                  + " processing the whole report", storageInfo);
+            }
+            invalidatedBlocks = processReport(storageInfo, newReport);
+          }
         }
       }
       storageInfo.receivedBlockReport();
@@ -2980,6 +3087,119 @@ public boolean processReport(final DatanodeID nodeID,
     return !node.hasStaleStorages();
   }
 
+  /**
+   * Diff the storage reports of a full block report against the blocks map
+   * under the read lock, so that {@link #processReport} only has to apply
+   * their deltas under the write lock. Storages are diffed in parallel.
+   *
+   * @return the diff of each report, with null for the reports that have to
+   *         be processed entirely under the write lock, or null if diffing
+   *         outside of the write lock is disabled.
+   */
+  public ReportDiff[] computeReportDiffs(final DatanodeID nodeID,
+      final StorageBlockReport[] reports) throws IOException {
+    if (reportDiffExecutor == null) {
+      return null;
+    }
+    final ReportDiff[] diffs = new ReportDiff[reports.length];
+    final List<Future<ReportDiff>> futures = new ArrayList<>(reports.length);
+    for (StorageBlockReport report : reports) {
+      futures.add(reportDiffExecutor.submit(
+          () -> computeReportDiff(nodeID, report)));
+    }
+    for (int i = 0; i < reports.length; i++) {
+      try {
+        diffs[i] = futures.get(i).get();
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to diff block report of storage {} from {}, it will"
+            + " be processed under the write lock", reports[i].getStorage(),
+            nodeID, e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while diffing block report from " + nodeID);
+      }
+    }
+    return diffs;
+  }
+
+  /**
+   * Diff a storage report against the blocks map. Only the read lock is
+   * held, so nothing is changed: the replicas that need processing and the
+   * stored blocks that were not reported are collected to be applied later.
+   * Both are checked again against the state at that time.
+   *
+   * @return the diff, or null if the report has to be processed entirely
+   *         under the write lock.
+   */
+  private ReportDiff computeReportDiff(final DatanodeID nodeID,
+      final StorageBlockReport report) throws IOException {
+    final BlockListAsLongs blocks = report.getBlocks();
+    if (StorageType.PROVIDED.equals(report.getStorage().getStorageType())) {
+      return null;
+    }
+    ReportDiff diff = null;
+    namesystem.readLock();
+    final long startTime = Time.monotonicNow();
+    try {
+      final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isRegistered()
+          || shouldPostponeBlocksFromFuture
+          || namesystem.isInStartupSafeMode()) {
+        return null;
+      }
+      final DatanodeStorageInfo storageInfo =
+          node.getStorageInfo(report.getStorage().getStorageID());
+      if (storageInfo == null || !storageInfo.hasReceivedBlockReport()) {
+        return null;
+      }
+
+      diff = new ReportDiff(storageInfo);
+      final Collection<BlockInfoToAdd> toAdd = new ArrayList<>(1);
+      final Collection<Block> toInvalidate = new ArrayList<>(1);
+      final Collection<BlockToMarkCorrupt> toCorrupt = new ArrayList<>(1);
+      final Collection<StatefulBlockInfo> toUC = new ArrayList<>(1);
+      // ids of the stored blocks kept for the reported replicas, to find the
+      // stored blocks that were not reported
+      long[] reported = new long[blocks.getNumberOfBlocks()];
+      int numReported = 0;
+      for (BlockReportReplica iblk : blocks) {
+        BlockInfo storedBlock = processReportedBlock(storageInfo,
+            iblk, iblk.getState(), toAdd, toInvalidate, toCorrupt, toUC);
+        if (!toAdd.isEmpty() || !toInvalidate.isEmpty()
+            || !toCorrupt.isEmpty() || !toUC.isEmpty()) {
+          diff.toProcess.add(new BlockReportReplica(iblk));
+          toAdd.clear();
+          toInvalidate.clear();
+          toCorrupt.clear();
+          toUC.clear();
+        }
+        if (storedBlock != null) {
+          if (numReported == reported.length) {
+            reported = Arrays.copyOf(reported, reported.length * 2 + 1);
+          }
+          reported[numReported++] = storedBlock.getBlockId();
+        }
+      }
+      Arrays.sort(reported, 0, numReported);
+      Iterator<BlockInfo> it = storageInfo.getBlockIterator();
+      while (it.hasNext()) {
+        BlockInfo b = it.next();
+        if (Arrays.binarySearch(reported, 0, numReported, b.getBlockId()) < 0) {
+          diff.toRemove.add(b);
+        }
+      }
+      return diff;
+    } finally {
+      final long endTime = Time.monotonicNow();
+      namesystem.readUnlock("computeReportDiff");
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (diff != null && metrics != null) {
+        metrics.addBlockReportDiff(endTime - startTime);
+      }
+    }
+  }
+
   /**
    * Remove the DN lease only when we have received block reports,
    * for all storages for a particular DN.
@@ -3172,8 +3392,59 @@ Collection<Block> processReport(
     Collection<StatefulBlockInfo> toUC = new ArrayList<>();
     reportDiff(storageInfo, report,
                  toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+    return applyReportDiff(storageInfo,
+        toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+  }
+
+  /**
+   * Apply a report diff computed by {@link #computeReportDiff} outside of
+   * the write lock, once it is known that the storage did not change since.
+   * The replicas that needed processing are still processed again against
+   * the current genstamp, length and state of their blocks, and only the
+   * unreported blocks that are still stored on the storage are removed.
+   */
+  private Collection<Block> applyReportDiff(ReportDiff diff)
+      throws IOException {
+    final DatanodeStorageInfo storageInfo = diff.storageInfo;
+    Collection<BlockInfoToAdd> toAdd = new ArrayList<>();
+    Collection<BlockInfo> toRemove = new ArrayList<>(diff.toRemove.size());
+    Collection<Block> toInvalidate = new ArrayList<>();
+    Collection<BlockToMarkCorrupt> toCorrupt = new ArrayList<>();
+    Collection<StatefulBlockInfo> toUC = new ArrayList<>();
+    for (BlockReportReplica replica : diff.toProcess) {
+      processReportedBlock(storageInfo, replica, replica.getState(),
+          toAdd, toInvalidate, toCorrupt, toUC);
+    }
+    for (BlockInfo b : diff.toRemove) {
+      if (!b.isDeleted() && getStoredBlock(b) == b
+          && b.findStorageInfo(storageInfo) >= 0) {
+        toRemove.add(b);
+      }
+    }
+    return applyReportDiff(storageInfo,
+        toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+  }
 
+  private Collection<Block> applyReportDiff(
+      final DatanodeStorageInfo storageInfo,
+      Collection<BlockInfoToAdd> toAdd,
+      Collection<BlockInfo> toRemove,
+      Collection<Block> toInvalidate,
+      Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    final int provisional = storageInfo.getProvisionalReplicas();
+    if (provisional > 0) {
+      // The replicas removed by the first block report of the storage are
+      // the provisional ones it did not confirm.
+      final int invalidated = Math.min(provisional, toRemove.size());
+      provisionalReplicasValidated.add(provisional - invalidated);
+      provisionalReplicasInvalidated.add(invalidated);
+      storageInfo.setProvisionalReplicas(0);
+      blockLog.info("BLOCK* processReport: {} of {} provisional replicas"
+          + " on storage {} node {} were not reported", invalidated,
+          provisional, storageInfo.getStorageID(), node);
+    }
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
       addStoredBlockUnderConstruction(b, storageInfo);
@@ -4943,7 +5214,7 @@ public int getTotalBlocks() {
   }
 
   public void removeBlock(BlockInfo block) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     // No need to ACK blocks that are being removed entirely
     // from the namespace, since the removal of the associated
     // file already removes them from the block map below.
@@ -4966,14 +5237,14 @@ public BlockInfo getStoredBlock(Block block) {
     }
     if (!hasNonEcBlockUsingStripedID) {
       return blocksMap.getStoredBlock(
-          new Block(BlockIdManager.convertToStripedID(block.getBlockId())));
+          BlockIdManager.convertToStripedID(block.getBlockId()));
     }
     BlockInfo info = blocksMap.getStoredBlock(block);
     if (info != null) {
       return info;
     }
     return blocksMap.getStoredBlock(
-        new Block(BlockIdManager.convertToStripedID(block.getBlockId())));
+        BlockIdManager.convertToStripedID(block.getBlockId()));
   }
 
   public void updateLastBlock(BlockInfo lastBlock, ExtendedBlock newBlock) {
@@ -5285,7 +5556,9 @@ private class MarkedDeleteBlockScrubber implements Runnable {
 
     private void remove(long time) {
       if (checkToDeleteIterator()) {
-        namesystem.writeLock();
+        // The blocks are already detached from the namespace, so only the
+        // block manager state needs to be locked.
+        namesystem.writeLock(RwLockMode.BM);
         try {
           while (toDeleteIterator.hasNext()) {
             removeBlock(toDeleteIterator.next());
@@ -5296,7 +5569,8 @@ private void remove(long time) {
             }
           }
         } finally {
-          namesystem.writeUnlock("markedDeleteBlockScrubberThread");
+          namesystem.writeUnlock(RwLockMode.BM,
+              "markedDeleteBlockScrubberThread");
         }
       }
     }
@@ -5547,6 +5821,167 @@ boolean getShouldPostponeBlocksFromFuture() {
     return shouldPostponeBlocksFromFuture;
   }
 
+  public boolean isBlockLocationsCheckpointEnabled() {
+    return blockLocationsCheckpointEnabled;
+  }
+
+  /**
+   * Save the replica locations of the blocks map to each of the given files,
+   * unless no storage has sent a block report yet. A failure is logged, as
+   * the locations are only an optimization of the startup.
+   */
+  public void saveBlockLocations(List<File> files, long txid) {
+    if (!blockLocationsCheckpointEnabled) {
+      return;
+    }
+    final long start = Time.monotonicNow();
+    try {
+      final long saved = BlockLocationsCheckpoint.save(namesystem,
+          datanodeManager, files, txid, Time.now());
+      if (saved < 0) {
+        LOG.info("Not saving block locations at txid {}, no storage has sent"
+            + " a block report", txid);
+      } else {
+        LOG.info("Saved {} replica locations at txid {} to {} in {} ms",
+            saved, txid, files, Time.monotonicNow() - start);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to save block locations at txid {}", txid, e);
+    }
+  }
+
+  /**
+   * Load the newest of the block locations saved to the given files, to add
+   * the replicas of each storage provisionally on the first heartbeat of its
+   * datanode while in startup safe mode.
+   */
+  public void loadBlockLocations(List<File> files) {
+    if (!blockLocationsCheckpointEnabled) {
+      return;
+    }
+    discardSavedBlockLocations();
+    savedBlockLocations.set(BlockLocationsCheckpoint.load(files,
+        blockLocationsCheckpointMaxAge, Time.now()));
+  }
+
+  private void discardSavedBlockLocations() {
+    final BlockLocationsCheckpoint saved = savedBlockLocations.getAndSet(null);
+    if (saved != null) {
+      saved.close();
+    }
+  }
+
+  /**
+   * Queue the saved replicas of the storages of a datanode to be added
+   * provisionally, the first time it sends a heartbeat. Must be called
+   * without the namesystem lock, as the queue may be full.
+   */
+  public void addSavedBlockLocations(final DatanodeID nodeID)
+      throws IOException {
+    final BlockLocationsCheckpoint saved = savedBlockLocations.get();
+    if (saved == null) {
+      return;
+    }
+    if (!namesystem.isInStartupSafeMode()) {
+      // The block reports will do from now on.
+      discardSavedBlockLocations();
+      return;
+    }
+    final DatanodeDescriptor node =
+        datanodeManager.getDatanode(nodeID.getDatanodeUuid());
+    if (node == null || !node.isRegistered()
+        || node.getStorageInfos().length == 0) {
+      // Wait for a heartbeat with the storages of the registered datanode.
+      return;
+    }
+    for (BlockLocationsCheckpoint.StorageEntry entry :
+        saved.take(nodeID.getDatanodeUuid())) {
+      final long[] replicas;
+      try {
+        replicas = saved.read(entry);
+      } catch (IOException e) {
+        LOG.warn("Failed to read the saved replicas of storage {}",
+            entry.getStorageId(), e);
+        continue;
+      }
+      enqueueBlockOp(() -> addProvisionalReplicas(nodeID.getDatanodeUuid(),
+          entry.getStorageId(), replicas));
+    }
+    if (saved.isEmpty()) {
+      savedBlockLocations.compareAndSet(saved, null);
+      saved.close();
+    }
+  }
+
+  /**
+   * Add the saved replicas of a storage which has not sent a block report
+   * yet. A replica is only added if its block is still complete, with the
+   * saved generation stamp and length.
+   *
+   * @param replicas the block ID, generation stamp and length of each replica.
+   */
+  private void addProvisionalReplicas(String datanodeUuid, String storageID,
+      long[] replicas) {
+    assert namesystem.hasWriteLock();
+    if (!namesystem.isInStartupSafeMode()) {
+      return;
+    }
+    final DatanodeDescriptor node = datanodeManager.getDatanode(datanodeUuid);
+    final DatanodeStorageInfo storage =
+        node == null || !node.isRegistered() ? null
+            : node.getStorageInfo(storageID);
+    if (storage == null || storage.hasReceivedBlockReport()
+        || storage.getState() != State.NORMAL) {
+      return;
+    }
+    int added = 0;
+    try {
+      for (int i = 0; i < replicas.length; i += 3) {
+        final Block reported =
+            new Block(replicas[i], replicas[i + 2], replicas[i + 1]);
+        final BlockInfo stored = getStoredBlock(reported);
+        if (stored == null || !stored.isComplete() || stored.isDeleted()
+            || stored.getGenerationStamp() != reported.getGenerationStamp()
+            || stored.getNumBytes() != reported.getNumBytes()
+            || stored.findStorageInfo(storage) >= 0) {
+          continue;
+        }
+        addStoredBlockImmediate(stored, reported, storage);
+        added++;
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to add the saved replicas of storage {} on {}",
+          storageID, node, e);
+    }
+    if (added > 0) {
+      storage.setProvisionalReplicas(added);
+      provisionalReplicasAdded.add(added);
+    }
+    blockLog.info("BLOCK* Added {} of {} saved replicas of storage {} on {}"
+        + " provisionally", added, replicas.length / 3, storageID, node);
+  }
+
+  /** @return the number of replicas added from the saved block locations. */
+  public long getProvisionalReplicasAdded() {
+    return provisionalReplicasAdded.sum();
+  }
+
+  /**
+   * @return the number of provisional replicas confirmed by the first block
+   *         report of their storage.
+   */
+  public long getProvisionalReplicasValidated() {
+    return provisionalReplicasValidated.sum();
+  }
+
+  /**
+   * @return the number of provisional replicas removed because the first
+   *         block report of their storage did not contain them.
+   */
+  public long getProvisionalReplicasInvalidated() {
+    return provisionalReplicasInvalidated.sum();
+  }
+
   // async processing of an action, used for IBRs.
   public void enqueueBlockOp(final Runnable action) throws IOException {
     try {
@@ -26,6 +26,7 @@
 import static org.apache.hadoop.util.Time.monotonicNow;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.util.Preconditions;
@@ -111,6 +112,7 @@ private String getText() {
   protected NetworkTopology clusterMap;
   protected Host2NodesMap host2datanodeMap;
   private FSClusterStats stats;
+  private WeightedTargetIndex weightedTargetIndex;
   protected long heartbeatInterval;   // interval for DataNode heartbeats
   private long staleInterval;   // interval used to identify stale DataNodes
   private volatile int minBlocksForWrite; // minimum number of blocks required for write operations.
@@ -141,6 +143,8 @@ public void initialize(Configuration conf,  FSClusterStats stats,
         DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_CONSIDERLOADBYVOLUME_DEFAULT
     );
     this.stats = stats;
+    this.weightedTargetIndex =
+        stats == null ? null : stats.getWeightedTargetIndex();
     this.clusterMap = clusterMap;
     this.host2datanodeMap = host2datanodeMap;
     this.heartbeatInterval = conf.getTimeDuration(
@@ -941,11 +945,19 @@ protected DatanodeDescriptor chooseDataNode(final String scope,
 
   /**
    * Choose a datanode from the given <i>scope</i> with specified
-   * storage type.
+   * storage type. The weighted target index is used when it is enabled,
+   * with the topology as a fallback when the index cannot serve the scope.
    * @return the chosen node, if there is any.
    */
   protected DatanodeDescriptor chooseDataNode(final String scope,
       final Collection<Node> excludedNodes, StorageType type) {
+    if (weightedTargetIndex != null) {
+      DatanodeDescriptor node = weightedTargetIndex.chooseDatanode(scope,
+          excludedNodes, type, ThreadLocalRandom.current());
+      if (node != null) {
+        return node;
+      }
+    }
     return (DatanodeDescriptor) ((DFSNetworkTopology) clusterMap)
         .chooseRandomWithStorageTypeTwoTrial(scope, excludedNodes, type);
   }
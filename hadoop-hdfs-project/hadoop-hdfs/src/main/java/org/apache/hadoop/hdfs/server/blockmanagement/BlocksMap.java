@@ -22,7 +22,6 @@
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
-import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
 /**
@@ -63,10 +62,47 @@ public void remove()  {
     }
   }
 
+  /**
+   * The {@link LightWeightGSet} storing the blocks, which can also be looked
+   * up by the block id without allocating a key {@link Block}.
+   */
+  private static final class BlockInfoGSet
+      extends LightWeightGSet<Block, BlockInfo> {
+
+    BlockInfoGSet(int capacity) {
+      super(capacity);
+    }
+
+    BlockInfo get(long blockId) {
+      // Same hash as Block#hashCode()
+      final int index = Long.hashCode(blockId) & hash_mask;
+      for (LinkedElement e = entries[index]; e != null; e = e.getNext()) {
+        final BlockInfo b = convert(e);
+        if (b.getBlockId() == blockId) {
+          return b;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Iterator<BlockInfo> iterator() {
+      SetIterator iterator = new SetIterator();
+      /*
+       * Not tracking any modifications to set. As this set will be used
+       * always under FSNameSystem lock, modifications will not cause any
+       * ConcurrentModificationExceptions. But there is a chance of missing
+       * newly added elements during iteration.
+       */
+      iterator.setTrackModification(false);
+      return iterator;
+    }
+  }
+
   /** Constant {@link LightWeightGSet} capacity. */
   private final int capacity;
   
-  private GSet<Block, BlockInfo> blocks;
+  private BlockInfoGSet blocks;
 
   private final LongAdder totalReplicatedBlocks = new LongAdder();
   private final LongAdder totalECBlockGroups = new LongAdder();
@@ -74,20 +110,7 @@ public void remove()  {
   BlocksMap(int capacity) {
     // Use 2% of total memory to size the GSet capacity
     this.capacity = capacity;
-    this.blocks = new LightWeightGSet<Block, BlockInfo>(capacity) {
-      @Override
-      public Iterator<BlockInfo> iterator() {
-        SetIterator iterator = new SetIterator();
-        /*
-         * Not tracking any modifications to set. As this set will be used
-         * always under FSNameSystem lock, modifications will not cause any
-         * ConcurrentModificationExceptions. But there is a chance of missing
-         * newly added elements during iteration.
-         */
-        iterator.setTrackModification(false);
-        return iterator;
-      }
-    };
+    this.blocks = new BlockInfoGSet(capacity);
   }
 
 
@@ -146,6 +169,11 @@ BlockInfo getStoredBlock(Block b) {
     return blocks.get(b);
   }
 
+  /** Returns the block object with the given id if it exists in the map. */
+  BlockInfo getStoredBlock(long blockId) {
+    return blocks.get(blockId);
+  }
+
   /**
    * Searches for the block in the BlocksMap and 
    * returns {@link Iterable} of the storages the block belongs to.
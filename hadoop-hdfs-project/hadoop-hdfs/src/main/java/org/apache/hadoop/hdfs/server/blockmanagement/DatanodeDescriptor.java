@@ -527,12 +527,13 @@ void injectStorage(DatanodeStorageInfo s) {
           parent = (DFSTopologyNodeImpl) getParent();
         }
         StorageType type = s.getStorageType();
-        if (!hasStorageType(type) && parent != null) {
-          // we are about to add a type this node currently does not have,
+        boolean newType = !hasStorageType(type);
+        storageMap.put(s.getStorageID(), s);
+        if (newType && parent != null) {
+          // we have added a type this node did not have before,
           // inform the parent that a new type is added to this datanode
           parent.childAddStorage(getName(), type);
         }
-        storageMap.put(s.getStorageID(), s);
       } else {
         assert storage == s : "found " + storage + " expected " + s;
       }
@@ -1065,13 +1066,14 @@ DatanodeStorageInfo updateStorage(DatanodeStorage s) {
         LOG.info("Adding new storage ID {} for DN {}", s.getStorageID(),
             getXferAddr());
         StorageType type = s.getStorageType();
-        if (!hasStorageType(type) && parent != null) {
-          // we are about to add a type this node currently does not have,
+        boolean newType = !hasStorageType(type);
+        storage = new DatanodeStorageInfo(this, s);
+        storageMap.put(s.getStorageID(), storage);
+        if (newType && parent != null) {
+          // we have added a type this node did not have before,
           // inform the parent that a new type is added to this datanode
           parent.childAddStorage(getName(), s.getStorageType());
         }
-        storage = new DatanodeStorageInfo(this, s);
-        storageMap.put(s.getStorageID(), storage);
       } else if (storage.getState() != s.getState() ||
                  storage.getStorageType() != s.getStorageType()) {
         // For backwards compatibility, make sure that the type and
@@ -1079,14 +1081,15 @@ DatanodeStorageInfo updateStorage(DatanodeStorage s) {
         // not include these fields so we may have assumed defaults.
         StorageType oldType = storage.getStorageType();
         StorageType newType = s.getStorageType();
-        if (oldType != newType && !hasStorageType(newType) && parent != null) {
-          // we are about to add a type this node currently does not have
+        boolean addsType = oldType != newType && !hasStorageType(newType);
+        storage.updateFromStorage(s);
+        storageMap.put(storage.getStorageID(), storage);
+        if (addsType && parent != null) {
+          // we have added a type this node did not have before
           // inform the parent that a new type is added to this datanode
           // if old == new, nothing's changed. don't bother
           parent.childAddStorage(getName(), newType);
         }
-        storage.updateFromStorage(s);
-        storageMap.put(storage.getStorageID(), storage);
         if (oldType != newType && !hasStorageType(oldType) && parent != null) {
           // there is no more old type storage on this datanode, inform parent
           // about this change.
@@ -2164,6 +2164,11 @@ public double getInServiceXceiverAverageForVolume() {
       public Map<StorageType, StorageTypeStats> getStorageTypeStats() {
         return heartbeatManager.getStorageTypeStats();
       }
+
+      @Override
+      public WeightedTargetIndex getWeightedTargetIndex() {
+        return heartbeatManager.getWeightedTargetIndex();
+      }
     };
   }
 
@@ -124,6 +124,12 @@ public void remove() {
 
   private volatile BlockInfo blockList = null;
   private int numBlocks = 0;
+  /**
+   * Incremented whenever a block is added to or removed from the storage, or
+   * a block on it changes, so that a report diffed against the storage can
+   * tell whether it is still current.
+   */
+  private long modCount = 0;
 
   /** The number of block reports received */
   private int blockReportCount = 0;
@@ -148,6 +154,12 @@ public void remove() {
    */
   private boolean blockContentsStale = true;
 
+  /**
+   * The number of replicas added from the saved block locations which have
+   * not been validated by a block report yet.
+   */
+  private int provisionalReplicas = 0;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this(dn, s.getStorageID(), s.getStorageType(), s.getState());
   }
@@ -199,6 +211,21 @@ void receivedBlockReport() {
     hasReceivedBlockReport = true;
   }
 
+  int getProvisionalReplicas() {
+    return provisionalReplicas;
+  }
+
+  /**
+   * Record the replicas added from the saved block locations. The next block
+   * report is then diffed against them, the way a second block report is,
+   * but it is still processed in startup safe mode and the block contents
+   * stay stale until it is received.
+   */
+  void setProvisionalReplicas(int replicas) {
+    provisionalReplicas = replicas;
+    hasReceivedBlockReport = true;
+  }
+
   @VisibleForTesting
   public void setUtilizationForTesting(long capacity, long dfsUsed,
                       long remaining, long blockPoolUsed) {
@@ -284,11 +311,13 @@ AddBlockResult addBlock(BlockInfo b) {
   public void insertToList(BlockInfo b) {
     blockList = b.listInsert(blockList, this);
     numBlocks++;
+    modCount++;
   }
   boolean removeBlock(BlockInfo b) {
     blockList = b.listRemove(blockList, this);
     if (b.removeStorage(this)) {
       numBlocks--;
+      modCount++;
       return true;
     } else {
       return false;
@@ -299,6 +328,15 @@ int numBlocks() {
     return numBlocks;
   }
 
+  long getModCount() {
+    return modCount;
+  }
+
+  /** Called when the state of a block on this storage changes. */
+  void blockChanged() {
+    modCount++;
+  }
+
   Iterator<BlockInfo> getBlockIterator() {
     return new BlockIterator(blockList);
   }
@@ -76,4 +76,10 @@ public interface FSClusterStats {
    * @return storage statistics per storage type.
    */
   Map<StorageType, StorageTypeStats> getStorageTypeStats();
+
+  /**
+   * Indicates the index of storages eligible as block placement targets.
+   * @return the weighted target index, or null if it is disabled.
+   */
+  WeightedTargetIndex getWeightedTargetIndex();
 }
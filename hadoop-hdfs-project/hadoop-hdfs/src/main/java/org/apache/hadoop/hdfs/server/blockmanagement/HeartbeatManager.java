@@ -81,6 +81,9 @@ class HeartbeatManager implements DatanodeStatistics {
   /** reports for stale datanodes. */
   private final Set<DatanodeDescriptor> staleDataNodes = new HashSet<>();
 
+  /** Index of block placement targets, or null if it is disabled. */
+  private final WeightedTargetIndex targetIndex;
+
   HeartbeatManager(final Namesystem namesystem,
       final BlockManager blockManager, final Configuration conf) {
     this.namesystem = namesystem;
@@ -100,6 +103,10 @@ class HeartbeatManager implements DatanodeStatistics {
     this.numOfDeadDatanodesRemove = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_REMOVE_DEAD_DATANODE_BATCHNUM_KEY,
         DFSConfigKeys.DFS_NAMENODE_REMOVE_BAD_BATCH_NUM_DEFAULT);
+    this.targetIndex = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_ENABLED_DEFAULT)
+        ? new WeightedTargetIndex(conf) : null;
 
     if (avoidStaleDataNodesForWrite && staleInterval < recheckInterval) {
       this.heartbeatRecheckInterval = staleInterval;
@@ -125,6 +132,17 @@ void close() {
     }
   }
   
+  WeightedTargetIndex getWeightedTargetIndex() {
+    return targetIndex;
+  }
+
+  /** Reindex the storages of a node after its state or usage changed. */
+  private void updateTargetIndex(final DatanodeDescriptor node) {
+    if (targetIndex != null) {
+      targetIndex.update(node);
+    }
+  }
+
   synchronized int getLiveDatanodeCount() {
     return datanodes.size();
   }
@@ -234,6 +252,7 @@ synchronized void register(final DatanodeDescriptor d) {
       //update its timestamp
       d.updateHeartbeatState(StorageReport.EMPTY_ARRAY, 0L, 0L, 0, 0, null);
       stats.add(d);
+      updateTargetIndex(d);
     }
   }
 
@@ -249,12 +268,16 @@ synchronized void addDatanode(final DatanodeDescriptor d) {
 
   void updateDnStat(final DatanodeDescriptor d){
     stats.add(d);
+    updateTargetIndex(d);
   }
 
   synchronized void removeDatanode(DatanodeDescriptor node) {
     if (node.isAlive()) {
       stats.subtract(node);
       datanodes.remove(node);
+      if (targetIndex != null) {
+        targetIndex.remove(node);
+      }
       removeNodeFromStaleList(node);
       node.setAlive(false);
     }
@@ -270,6 +293,7 @@ synchronized void updateHeartbeat(final DatanodeDescriptor node,
           xceiverCount, failedVolumes, volumeFailureSummary);
     } finally {
       stats.add(node);
+      updateTargetIndex(node);
     }
   }
 
@@ -287,6 +311,7 @@ synchronized void updateLifeline(final DatanodeDescriptor node,
           xceiverCount, failedVolumes, volumeFailureSummary);
     } finally {
       stats.add(node);
+      updateTargetIndex(node);
     }
   }
 
@@ -298,6 +323,7 @@ synchronized void startDecommission(final DatanodeDescriptor node) {
       stats.subtract(node);
       node.startDecommission();
       stats.add(node);
+      updateTargetIndex(node);
     }
   }
 
@@ -319,6 +345,7 @@ synchronized void startMaintenance(final DatanodeDescriptor node) {
         node.startMaintenance();
       }
       stats.add(node);
+      updateTargetIndex(node);
     }
   }
 
@@ -331,6 +358,7 @@ synchronized void stopMaintenance(final DatanodeDescriptor node) {
       stats.subtract(node);
       node.stopMaintenance();
       stats.add(node);
+      updateTargetIndex(node);
     }
   }
 
@@ -343,6 +371,7 @@ synchronized void stopDecommission(final DatanodeDescriptor node) {
       stats.subtract(node);
       node.stopDecommission();
       stats.add(node);
+      updateTargetIndex(node);
     }
   }
 
@@ -478,6 +507,7 @@ void heartbeatCheck() {
               if (staleDataNodes.add(d)) {
                 // the node is n
                 staleNodes.add(d);
+                updateTargetIndex(d);
               }
             } else {
               // remove the node if it is no longer stale
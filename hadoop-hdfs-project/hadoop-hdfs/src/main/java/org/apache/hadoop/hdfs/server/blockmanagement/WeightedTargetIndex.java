@@ -0,0 +1,380 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
+import org.apache.hadoop.net.Node;
+import org.apache.hadoop.net.NodeBase;
+import org.apache.hadoop.util.Time;
+
+/**
+ * An index of the storages that can take new replicas, grouped by storage
+ * type both cluster-wide and per rack. It is maintained incrementally by the
+ * {@link HeartbeatManager} and lets the block placement policy sample a
+ * target in constant time, with probability proportional to the remaining
+ * space of a storage scaled down by the xceiver load of its datanode.
+ * <p>
+ * A storage is indexed if its datanode is in service and not stale, and the
+ * storage is {@link State#NORMAL} with room for the configured minimum number
+ * of blocks of the default block size. The policy still verifies every target
+ * it gets from the index, so the index only has to be a good approximation.
+ * <p>
+ * Each group keeps an alias table (Vose's variant of Walker's method). A
+ * table is rebuilt on the next sample after a storage joined or left the
+ * group, and at most once per refresh interval when only weights changed.
+ */
+@InterfaceAudience.Private
+public class WeightedTargetIndex {
+  /** Number of samples to reject before handing a request back. */
+  static final int MAX_ATTEMPTS = 16;
+
+  private final long staleInterval;
+  private final boolean avoidStaleDataNodesForWrite;
+  private final long minRemaining;
+  private final long refreshIntervalMs;
+
+  /** The indexed storages of each datanode, guarded by this. */
+  private final Map<DatanodeDescriptor, Map<DatanodeStorageInfo, Entry>>
+      nodes = new HashMap<>();
+  private final Map<StorageType, Group> clusterGroups =
+      new EnumMap<>(StorageType.class);
+  private final Map<StorageType, Map<String, Group>> rackGroups =
+      new EnumMap<>(StorageType.class);
+
+  WeightedTargetIndex(Configuration conf) {
+    this(conf.getLong(
+            DFSConfigKeys.DFS_NAMENODE_STALE_DATANODE_INTERVAL_KEY,
+            DFSConfigKeys.DFS_NAMENODE_STALE_DATANODE_INTERVAL_DEFAULT),
+        conf.getBoolean(
+            DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY,
+            DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_DEFAULT),
+        conf.getLongBytes(DFSConfigKeys.DFS_BLOCK_SIZE_KEY,
+            DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT) * conf.getInt(
+            DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_MIN_BLOCKS_FOR_WRITE_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_MIN_BLOCKS_FOR_WRITE_DEFAULT),
+        conf.getTimeDuration(
+            DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_REFRESH_INTERVAL_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_REFRESH_INTERVAL_DEFAULT,
+            TimeUnit.MILLISECONDS));
+  }
+
+  @VisibleForTesting
+  WeightedTargetIndex(long staleInterval, boolean avoidStaleDataNodesForWrite,
+      long minRemaining, long refreshIntervalMs) {
+    this.staleInterval = staleInterval;
+    this.avoidStaleDataNodesForWrite = avoidStaleDataNodesForWrite;
+    this.minRemaining = minRemaining;
+    this.refreshIntervalMs = refreshIntervalMs;
+    for (StorageType type : StorageType.values()) {
+      clusterGroups.put(type, new Group());
+      rackGroups.put(type, new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * Reindex the storages of a live datanode after its state, storages or
+   * usage changed.
+   */
+  synchronized void update(DatanodeDescriptor node) {
+    final Map<DatanodeStorageInfo, Entry> current = getEntries(node);
+    final Map<DatanodeStorageInfo, Entry> previous = current.isEmpty() ?
+        nodes.remove(node) : nodes.put(node, current);
+    if (previous != null) {
+      for (Entry old : previous.values()) {
+        Entry e = current.get(old.storage);
+        if (e == null || !e.rack.equals(old.rack)) {
+          remove(old);
+        }
+      }
+    }
+    for (Entry e : current.values()) {
+      Entry old = previous == null ? null : previous.get(e.storage);
+      if (old == null || !old.rack.equals(e.rack)) {
+        add(e);
+      } else if (old.remaining != e.remaining || old.xceivers != e.xceivers) {
+        replace(e);
+      }
+    }
+  }
+
+  /** Remove a datanode which is dead or no longer registered. */
+  synchronized void remove(DatanodeDescriptor node) {
+    final Map<DatanodeStorageInfo, Entry> previous = nodes.remove(node);
+    if (previous != null) {
+      for (Entry old : previous.values()) {
+        remove(old);
+      }
+    }
+  }
+
+  private Map<DatanodeStorageInfo, Entry> getEntries(DatanodeDescriptor node) {
+    if (!node.isInService() || (avoidStaleDataNodesForWrite
+        && node.isStale(staleInterval))) {
+      return Collections.emptyMap();
+    }
+    final String rack = node.getNetworkLocation();
+    final int xceivers = node.getXceiverCount();
+    final Map<DatanodeStorageInfo, Entry> entries = new HashMap<>();
+    for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+      final long remaining = storage.getRemaining();
+      if (storage.getState() == State.NORMAL && remaining >= minRemaining) {
+        entries.put(storage, new Entry(storage, rack, remaining, xceivers));
+      }
+    }
+    return entries;
+  }
+
+  private Group getRackGroup(StorageType type, String rack) {
+    return rackGroups.get(type).computeIfAbsent(rack, r -> new Group());
+  }
+
+  private void add(Entry e) {
+    final StorageType type = e.storage.getStorageType();
+    clusterGroups.get(type).add(e);
+    getRackGroup(type, e.rack).add(e);
+  }
+
+  private void replace(Entry e) {
+    final StorageType type = e.storage.getStorageType();
+    clusterGroups.get(type).replace(e);
+    getRackGroup(type, e.rack).replace(e);
+  }
+
+  private void remove(Entry e) {
+    final StorageType type = e.storage.getStorageType();
+    clusterGroups.get(type).remove(e);
+    getRackGroup(type, e.rack).remove(e);
+  }
+
+  /**
+   * Choose a datanode with a storage of the given type, with probability
+   * proportional to the weight of its indexed storages.
+   *
+   * @param scope the root, a rack, or a scope prefixed with "~" to choose
+   *              from outside of it
+   * @param excludedNodes the datanodes which must not be chosen
+   * @param type the storage type the datanode has to provide
+   * @return the chosen datanode, or null if the index cannot serve this
+   *         request and the caller should fall back to the topology.
+   */
+  DatanodeDescriptor chooseDatanode(String scope,
+      Collection<Node> excludedNodes, StorageType type, Random random) {
+    String excludedScope = null;
+    final Group group;
+    if (scope.startsWith("~")) {
+      excludedScope = scope.substring(1);
+      group = clusterGroups.get(type);
+    } else if (scope.equals(NodeBase.ROOT)) {
+      group = clusterGroups.get(type);
+    } else {
+      group = rackGroups.get(type).get(scope);
+    }
+    if (group == null) {
+      return null;
+    }
+    final AliasTable table = getTable(group);
+    if (table.size() == 0) {
+      return null;
+    }
+    for (int i = 0; i < MAX_ATTEMPTS; i++) {
+      final DatanodeDescriptor node =
+          table.sample(random).getDatanodeDescriptor();
+      if ((excludedNodes == null || !excludedNodes.contains(node))
+          && (excludedScope == null
+              || !isInScope(node.getNetworkLocation(), excludedScope))) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isInScope(String location, String scope) {
+    return location.equals(scope)
+        || location.startsWith(scope + NodeBase.PATH_SEPARATOR_STR);
+  }
+
+  private AliasTable getTable(Group group) {
+    AliasTable table = group.table;
+    if (table == null || needsRefresh(group, table)) {
+      synchronized (this) {
+        table = group.table;
+        if (table == null || needsRefresh(group, table)) {
+          group.weightsChanged = false;
+          table = new AliasTable(group.members.values());
+          group.table = table;
+        }
+      }
+    }
+    return table;
+  }
+
+  private boolean needsRefresh(Group group, AliasTable table) {
+    return group.weightsChanged
+        && Time.monotonicNow() - table.buildTime >= refreshIntervalMs;
+  }
+
+  /**
+   * @return the number of indexed storages of the given type in the given
+   *         rack, or in the whole cluster if the rack is null.
+   */
+  @VisibleForTesting
+  synchronized int getNumStorages(StorageType type, String rack) {
+    final Group group = rack == null ? clusterGroups.get(type)
+        : rackGroups.get(type).get(rack);
+    return group == null ? 0 : group.members.size();
+  }
+
+  /** An indexed storage and the usage it was indexed with. */
+  private static final class Entry {
+    private final DatanodeStorageInfo storage;
+    private final String rack;
+    private final long remaining;
+    private final int xceivers;
+
+    private Entry(DatanodeStorageInfo storage, String rack, long remaining,
+        int xceivers) {
+      this.storage = storage;
+      this.rack = rack;
+      this.remaining = remaining;
+      this.xceivers = xceivers;
+    }
+  }
+
+  /** The indexed storages of one storage type in one scope. */
+  private static final class Group {
+    /** Guarded by the index lock. */
+    private final Map<DatanodeStorageInfo, Entry> members = new HashMap<>();
+    /** The sampling table, or null if the members changed since built. */
+    private volatile AliasTable table;
+    /** Whether the weight of a member changed since the table was built. */
+    private volatile boolean weightsChanged;
+
+    private void add(Entry e) {
+      members.put(e.storage, e);
+      table = null;
+    }
+
+    private void replace(Entry e) {
+      members.put(e.storage, e);
+      weightsChanged = true;
+    }
+
+    private void remove(Entry e) {
+      if (members.remove(e.storage) != null) {
+        table = null;
+      }
+    }
+  }
+
+  /** An immutable alias table over the members of a group. */
+  private static final class AliasTable {
+    private final DatanodeStorageInfo[] storages;
+    private final double[] probability;
+    private final int[] alias;
+    private final long buildTime = Time.monotonicNow();
+
+    private AliasTable(Collection<Entry> entries) {
+      final int n = entries.size();
+      storages = new DatanodeStorageInfo[n];
+      probability = new double[n];
+      alias = new int[n];
+      if (n == 0) {
+        return;
+      }
+
+      // Scale remaining space down on nodes busier than the group average.
+      long totalXceivers = 0;
+      for (Entry e : entries) {
+        totalXceivers += e.xceivers;
+      }
+      final double avgLoad = (double) totalXceivers / n;
+      final double[] scaled = new double[n];
+      double totalWeight = 0;
+      int i = 0;
+      for (Entry e : entries) {
+        storages[i] = e.storage;
+        scaled[i] = e.remaining
+            * Math.min(1.0, (avgLoad + 1) / (e.xceivers + 1));
+        totalWeight += scaled[i];
+        i++;
+      }
+      for (i = 0; i < n; i++) {
+        scaled[i] = totalWeight > 0 ? scaled[i] * n / totalWeight : 1.0;
+      }
+
+      final int[] small = new int[n];
+      final int[] large = new int[n];
+      int numSmall = 0;
+      int numLarge = 0;
+      for (i = 0; i < n; i++) {
+        if (scaled[i] < 1.0) {
+          small[numSmall++] = i;
+        } else {
+          large[numLarge++] = i;
+        }
+      }
+      while (numSmall > 0 && numLarge > 0) {
+        final int s = small[--numSmall];
+        final int l = large[--numLarge];
+        probability[s] = scaled[s];
+        alias[s] = l;
+        scaled[l] = scaled[l] + scaled[s] - 1.0;
+        if (scaled[l] < 1.0) {
+          small[numSmall++] = l;
+        } else {
+          large[numLarge++] = l;
+        }
+      }
+      // Whatever is left over is full up to rounding errors.
+      while (numLarge > 0) {
+        final int l = large[--numLarge];
+        probability[l] = 1.0;
+        alias[l] = l;
+      }
+      while (numSmall > 0) {
+        final int s = small[--numSmall];
+        probability[s] = 1.0;
+        alias[s] = s;
+      }
+    }
+
+    private int size() {
+      return storages.length;
+    }
+
+    private DatanodeStorageInfo sample(Random random) {
+      final int i = random.nextInt(storages.length);
+      return random.nextDouble() < probability[i] ? storages[i]
+          : storages[alias[i]];
+    }
+  }
+}
@@ -395,6 +395,9 @@ enum BlockUCState {
 
   String XATTR_SATISFY_STORAGE_POLICY = "user.hdfs.sps";
 
+  /** Set on a directory to track the usage of its subtree without a quota. */
+  String XATTR_QUOTA_USAGE_TRACKED = "trusted.hdfs.quota.usage.tracked";
+
   Path MOVER_ID_PATH = new Path("/system/mover.id");
 
   long BLOCK_GROUP_INDEX_MASK = 15;
@@ -25,10 +25,13 @@
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.Arrays;
@@ -94,7 +97,10 @@ class BlockReceiver implements Closeable {
   private final int bytesPerChecksum;
   private final int checksumSize;
   
-  private final PacketReceiver packetReceiver = new PacketReceiver(false);
+  private PacketReceiver packetReceiver = new PacketReceiver(false);
+  /** Set by {@link #setPacketChannels} to receive into direct buffers. */
+  private ReadableByteChannel packetChannel;
+  private WritableByteChannel mirrorChannel;
   
   protected final String inAddr;
   protected final String myAddr;
@@ -545,13 +551,72 @@ private boolean shouldVerifyChecksum() {
     return (mirrorOut == null || isDatanode || needsChecksumTranslation);
   }
 
+  /**
+   * Receive the packets into pooled direct buffers from the channel of the
+   * socket under {@link #in}, and mirror them to the channel of the socket
+   * under the mirror stream if it is not null, so that neither the packets
+   * nor the data written to disk are copied to the heap. Must be called
+   * before {@link #receiveBlock}, and only when the streams are not wrapped.
+   */
+  void setPacketChannels(ReadableByteChannel inChannel,
+      WritableByteChannel mirrorOutChannel) {
+    packetReceiver.close();
+    packetReceiver = new PacketReceiver(true);
+    packetChannel = new BufferedPacketChannel(in, inChannel);
+    mirrorChannel = mirrorOutChannel;
+  }
+
+  /**
+   * A channel which first returns the bytes that the stream the op was read
+   * from has buffered, and then reads from the channel of the socket.
+   */
+  private static final class BufferedPacketChannel
+      implements ReadableByteChannel {
+    private final InputStream buffered;
+    private final ReadableByteChannel channel;
+
+    private BufferedPacketChannel(InputStream buffered,
+        ReadableByteChannel channel) {
+      this.buffered = buffered;
+      this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      // The socket stream reports nothing available, so this is the number
+      // of bytes in the buffer of the stream.
+      final int n = Math.min(buffered.available(), dst.remaining());
+      if (n <= 0) {
+        return channel.read(dst);
+      }
+      final byte[] bytes = new byte[n];
+      IOUtils.readFully(buffered, bytes, 0, n);
+      dst.put(bytes);
+      return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+      // the socket is closed by the DataXceiver
+    }
+  }
+
   /** 
    * Receives and processes a packet. It can contain many chunks.
    * returns the number of data bytes that the packet has.
    */
   private int receivePacket() throws IOException {
     // read the next packet
-    packetReceiver.receiveNextPacket(in);
+    if (packetChannel != null) {
+      packetReceiver.receiveNextPacket(packetChannel);
+    } else {
+      packetReceiver.receiveNextPacket(in);
+    }
 
     PacketHeader header = packetReceiver.getHeader();
     long seqno = header.getSeqno();
@@ -612,8 +677,13 @@ private int receivePacket() throws IOException {
         long begin = Time.monotonicNow();
         // For testing. Normally no-op.
         DataNodeFaultInjector.get().stopSendingPacketDownstream(mirrorAddr);
-        packetReceiver.mirrorPacketTo(mirrorOut);
-        mirrorOut.flush();
+        if (mirrorChannel != null) {
+          mirrorOut.flush();
+          packetReceiver.mirrorPacketTo(mirrorChannel);
+        } else {
+          packetReceiver.mirrorPacketTo(mirrorOut);
+          mirrorOut.flush();
+        }
         long now = Time.monotonicNow();
         this.lastSentTime.set(now);
         long duration = now - begin;
@@ -683,9 +753,19 @@ private int receivePacket() throws IOException {
 
       if (checksumReceivedLen == 0 && !streams.isTransientStorage()) {
         // checksum is missing, need to calculate it
-        checksumBuf = ByteBuffer.allocate(checksumLen);
+        checksumBuf = dataBuf.isDirect() ?
+            ByteBuffer.allocateDirect(checksumLen) :
+            ByteBuffer.allocate(checksumLen);
         diskChecksum.calculateChunkedSums(dataBuf, checksumBuf);
       }
+      if (checksumBuf.isDirect()) {
+        // The checksums are small, copy them to be written with the stream
+        // of the meta file.
+        final ByteBuffer heapChecksums =
+            ByteBuffer.allocate(checksumBuf.remaining());
+        heapChecksums.put(checksumBuf.duplicate()).flip();
+        checksumBuf = heapChecksums;
+      }
       
       // by this point, the data in the buffer uses the disk checksum
 
@@ -749,16 +829,16 @@ private int receivePacket() throws IOException {
           // The data buffer position where write will begin. If the packet
           // data and on-disk data have no overlap, this will not be at the
           // beginning of the buffer.
-          int startByteToDisk = (int)(onDiskLen-firstByteInBlock) 
-              + dataBuf.arrayOffset() + dataBuf.position();
+          final ByteBuffer dataToDisk = dataBuf.duplicate();
+          dataToDisk.position(
+              dataBuf.position() + (int)(onDiskLen-firstByteInBlock));
 
           // Actual number of data bytes to write.
           int numBytesToDisk = (int)(offsetInBlock-onDiskLen);
           
           // Write data to disk.
           long begin = Time.monotonicNow();
-          streams.writeDataToDisk(dataBuf.array(),
-              startByteToDisk, numBytesToDisk);
+          streams.writeDataToDisk(dataToDisk.duplicate());
           // no-op in prod
           DataNodeFaultInjector.get().delayWriteToDisk();
           long duration = Time.monotonicNow() - begin;
@@ -799,8 +879,9 @@ duration, datanodeSlowLogThresholdMs, getVolumeBaseUri(),
                 bytesToReadForRecalc = numBytesToDisk;
               }
 
-              partialCrc.update(dataBuf.array(), startByteToDisk,
-                  bytesToReadForRecalc);
+              final byte[] recalcBytes = new byte[bytesToReadForRecalc];
+              dataToDisk.get(recalcBytes);
+              partialCrc.update(recalcBytes, 0, bytesToReadForRecalc);
               byte[] buf = FSOutputSummer.convertToByteStream(partialCrc,
                   checksumSize);
               crcBytes = copyLastChunkChecksum(buf, checksumSize, buf.length);
@@ -20,16 +20,22 @@
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.fs.ChecksumException;
@@ -169,6 +175,39 @@ class BlockSender implements java.io.Closeable {
   
   private long lastCacheDropOffset;
   private final FileIoProvider fileIoProvider;
+
+  // State of the packets sent by sendPackets()
+  private ByteBuffer nbPktBuf;
+  private int nbMaxChunksPerPacket;
+  private boolean nbTransferTo;
+  /** Length of the data of the packet being sent, -1 if there is none. */
+  private int nbDataLen = -1;
+  /** Data of the packet being sent which is left to transfer. */
+  private long nbDataLeft;
+  private long nbTotalRead;
+  private long nbStartTime;
+
+  /**
+   * Outstanding reads of the data of the next packets, in packet order,
+   * when the data is read with {@link FileIoProvider#readAsync}.
+   */
+  private ArrayDeque<AsyncPacketRead> asyncReads;
+  private FileChannel asyncReadChannel;
+  /** Position in the file of the block data at offset 0. */
+  private long asyncReadBase;
+  /** Offset in the block of the data which is not being read yet. */
+  private long asyncReadOffset;
+
+  /** An outstanding read of the data of a packet. */
+  private static class AsyncPacketRead {
+    private final ByteBuffer buf;
+    private final CompletableFuture<Integer> future;
+
+    AsyncPacketRead(ByteBuffer buf, CompletableFuture<Integer> future) {
+      this.buf = buf;
+      this.future = future;
+    }
+  }
   
   @VisibleForTesting
   static long CACHE_DROP_INTERVAL_BYTES = 1024 * 1024; // 1MB
@@ -550,6 +589,53 @@ private int numberOfChunks(long datalen) {
    */
   private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
       boolean transferTo, DataTransferThrottler throttler) throws IOException {
+    int dataLen = preparePacket(pkt, maxChunks, transferTo);
+    int packetLen = dataLen + numberOfChunks(dataLen) * checksumSize + 4;
+    byte[] buf = pkt.array();
+    
+    try {
+      if (transferTo) {
+        SocketOutputStream sockOut = (SocketOutputStream)out;
+        // First write header and checksums
+        sockOut.write(buf, pkt.position(), pkt.remaining());
+
+        // no need to flush since we know out is not a buffered stream
+        FileChannel fileCh = ((FileInputStream)ris.getDataIn()).getChannel();
+        LongWritable waitTime = new LongWritable();
+        LongWritable transferTime = new LongWritable();
+        fileIoProvider.transferToSocketFully(
+            ris.getVolumeRef().getVolume(), sockOut, fileCh, blockInPosition,
+            dataLen, waitTime, transferTime);
+        datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
+        datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
+        blockInPosition += dataLen;
+      } else {
+        // normal transfer
+        out.write(buf, pkt.position(), pkt.remaining());
+      }
+    } catch (IOException e) {
+      throw handleSendException(e);
+    }
+
+    if (throttler != null) { // rebalancing so throttle
+      throttler.throttle(packetLen);
+    }
+
+    return dataLen;
+  }
+
+  /**
+   * Fills a buffer with the next packet of up to maxChunks chunks of data.
+   * The position and limit of the buffer are set around the packet, which
+   * leaves out the data when it is sent with transferTo.
+   *
+   * @param pkt buffer used for writing packet data
+   * @param maxChunks maximum number of chunks to send
+   * @param transferTo the data is sent with transferTo
+   * @return the length of the data in the packet
+   */
+  private int preparePacket(ByteBuffer pkt, int maxChunks,
+      boolean transferTo) throws IOException {
     int dataLen = (int) Math.min(endOffset - offset,
                              (chunkSize * (long) maxChunks));
     
@@ -593,9 +679,14 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int dataOff = checksumOff + checksumDataLen;
     if (!transferTo) { // normal transfer
       try {
-        ris.readDataFully(buf, dataOff, dataLen);
+        if (asyncReads != null) {
+          readAsyncData(buf, dataOff, dataLen);
+        } else {
+          ris.readDataFully(buf, dataOff, dataLen);
+        }
       } catch (IOException ioe) {
-        if (ioe.getMessage().startsWith(EIO_ERROR)) {
+        if (ioe.getMessage() != null
+            && ioe.getMessage().startsWith(EIO_ERROR)) {
           throw new DiskFileCorruptException("A disk IO error occurred", ioe);
         }
         throw ioe;
@@ -605,77 +696,127 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
       }
     }
-    
-    try {
-      if (transferTo) {
-        SocketOutputStream sockOut = (SocketOutputStream)out;
-        // First write header and checksums
-        sockOut.write(buf, headerOff, dataOff - headerOff);
 
-        // no need to flush since we know out is not a buffered stream
-        FileChannel fileCh = ((FileInputStream)ris.getDataIn()).getChannel();
-        LongWritable waitTime = new LongWritable();
-        LongWritable transferTime = new LongWritable();
-        fileIoProvider.transferToSocketFully(
-            ris.getVolumeRef().getVolume(), sockOut, fileCh, blockInPosition,
-            dataLen, waitTime, transferTime);
-        datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
-        datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
-        blockInPosition += dataLen;
-      } else {
-        // normal transfer
-        out.write(buf, headerOff, dataOff + dataLen - headerOff);
+    pkt.limit(transferTo ? dataOff : dataOff + dataLen);
+    pkt.position(headerOff);
+    return dataLen;
+  }
+
+  /**
+   * Start reading the data of the first packets asynchronously, keeping up
+   * to {@link DNConf#asyncReadQueueDepth} packet reads outstanding.
+   */
+  private void startAsyncReads(int maxChunksPerPacket) throws IOException {
+    asyncReadChannel = ((FileInputStream)ris.getDataIn()).getChannel();
+    asyncReadBase = asyncReadChannel.position() - offset;
+    asyncReadOffset = offset;
+    final int depth = datanode.getDnConf().asyncReadQueueDepth;
+    asyncReads = new ArrayDeque<>(depth);
+    for (int i = 0; i < depth; i++) {
+      if (!submitAsyncRead(
+          ByteBuffer.allocate(chunkSize * maxChunksPerPacket))) {
+        break;
       }
-    } catch (IOException e) {
-      if (e instanceof SocketTimeoutException) {
+    }
+  }
+
+  /**
+   * Read the data of the next packet which is not being read yet into buf.
+   * @return false if all the data is already being read.
+   */
+  private boolean submitAsyncRead(ByteBuffer buf) {
+    int len = (int) Math.min(endOffset - asyncReadOffset, buf.capacity());
+    if (len <= 0) {
+      return false;
+    }
+    buf.clear();
+    buf.limit(len);
+    asyncReads.add(new AsyncPacketRead(buf, fileIoProvider.readAsync(
+        ris.getVolumeRef().getVolume(), asyncReadChannel, buf,
+        asyncReadBase + asyncReadOffset)));
+    asyncReadOffset += len;
+    return true;
+  }
+
+  /**
+   * Wait for the read of the data of the current packet, copy the data into
+   * the packet and reuse the buffer for the read of a later packet.
+   */
+  private void readAsyncData(byte[] buf, int off, int len)
+      throws IOException {
+    if (len == 0) {
+      return;
+    }
+    final AsyncPacketRead read = asyncReads.poll();
+    Preconditions.checkState(read != null && read.buf.limit() == len,
+        "No read outstanding for %s bytes at offset %s", len, offset);
+    final int numRead;
+    try {
+      numRead = read.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted while reading " + block + " at offset " + offset);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    if (numRead < len) {
+      throw new EOFException("Premature EOF from inputStream");
+    }
+    read.buf.flip();
+    read.buf.get(buf, off, len);
+    submitAsyncRead(read.buf);
+  }
+
+  /**
+   * @return the exception to throw for a failure to send a packet.
+   */
+  private IOException handleSendException(IOException e) {
+    if (e instanceof SocketTimeoutException) {
+      /*
+       * writing to client timed out.  This happens if the client reads
+       * part of a block and then decides not to read the rest (but leaves
+       * the socket open).
+       * 
+       * Reporting of this case is done in DataXceiver#run
+       */
+      LOG.warn("Sending packets timed out.", e);
+    } else {
+      /* Exception while writing to the client. Connection closure from
+       * the other end is mostly the case and we do not care much about
+       * it. But other things can go wrong, especially in transferTo(),
+       * which we do not want to ignore.
+       *
+       * The message parsing below should not be considered as a good
+       * coding example. NEVER do it to drive a program logic. NEVER.
+       * It was done here because the NIO throws an IOException for EPIPE.
+       */
+      String ioem = e.getMessage();
+      if (ioem != null) {
         /*
-         * writing to client timed out.  This happens if the client reads
-         * part of a block and then decides not to read the rest (but leaves
-         * the socket open).
-         * 
-         * Reporting of this case is done in DataXceiver#run
-         */
-        LOG.warn("Sending packets timed out.", e);
-      } else {
-        /* Exception while writing to the client. Connection closure from
-         * the other end is mostly the case and we do not care much about
-         * it. But other things can go wrong, especially in transferTo(),
-         * which we do not want to ignore.
-         *
-         * The message parsing below should not be considered as a good
-         * coding example. NEVER do it to drive a program logic. NEVER.
-         * It was done here because the NIO throws an IOException for EPIPE.
+         * If we got an EIO when reading files or transferTo the client
+         * socket, it's very likely caused by bad disk track or other file
+         * corruptions.
          */
-        String ioem = e.getMessage();
-        if (ioem != null) {
-          /*
-           * If we got an EIO when reading files or transferTo the client
-           * socket, it's very likely caused by bad disk track or other file
-           * corruptions.
-           */
-          if (ioem.startsWith(EIO_ERROR)) {
-            throw new DiskFileCorruptException("A disk IO error occurred", e);
-          }
-          String causeMessage = e.getCause() != null ? e.getCause().getMessage() : "";
-          causeMessage = causeMessage != null ? causeMessage : "";
-          if (!ioem.startsWith("Broken pipe")
-              && !ioem.startsWith("Connection reset")
-              && !causeMessage.startsWith("Broken pipe")
-              && !causeMessage.startsWith("Connection reset")) {
-            LOG.error("BlockSender.sendChunks() exception: ", e);
-            datanode.getBlockScanner().markSuspectBlock(
-                ris.getVolumeRef().getVolume().getStorageID(), block);
-          }
+        if (ioem.startsWith(EIO_ERROR)) {
+          return new DiskFileCorruptException("A disk IO error occurred", e);
+        }
+        String causeMessage = e.getCause() != null ? e.getCause().getMessage() : "";
+        causeMessage = causeMessage != null ? causeMessage : "";
+        if (!ioem.startsWith("Broken pipe")
+            && !ioem.startsWith("Connection reset")
+            && !causeMessage.startsWith("Broken pipe")
+            && !causeMessage.startsWith("Connection reset")) {
+          LOG.error("BlockSender.sendChunks() exception: ", e);
+          datanode.getBlockScanner().markSuspectBlock(
+              ris.getVolumeRef().getVolume().getStorageID(), block);
         }
       }
-      throw ioeToSocketException(e);
     }
-
-    if (throttler != null) { // rebalancing so throttle
-      throttler.throttle(packetLen);
-    }
-
-    return dataLen;
+    return ioeToSocketException(e);
   }
   
   /**
@@ -791,9 +932,11 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
 
     final long startTime = CLIENT_TRACE_LOG.isDebugEnabled() ? System.nanoTime() : 0;
     try {
-      int maxChunksPerPacket;
-      int pktBufSize = PacketHeader.PKT_MAX_HEADER_LEN;
-      boolean transferTo = transferToAllowed && !verifyChecksum
+      // The asynchronous reads replace the reads done by transferTo, which
+      // would block this thread on the disk once per packet.
+      boolean asyncRead = fileIoProvider.isAsyncReadEnabled()
+          && ris.getDataIn() instanceof FileInputStream;
+      boolean transferTo = !asyncRead && transferToAllowed && !verifyChecksum
           && baseStream instanceof SocketOutputStream
           && ris.getDataIn() instanceof FileInputStream;
       if (transferTo) {
@@ -801,18 +944,12 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
             ((FileInputStream)ris.getDataIn()).getChannel();
         blockInPosition = fileChannel.position();
         streamForSendChunks = baseStream;
-        maxChunksPerPacket = numberOfChunks(TRANSFERTO_BUFFER_SIZE);
-        
-        // Smaller packet size to only hold checksum when doing transferTo
-        pktBufSize += checksumSize * maxChunksPerPacket;
-      } else {
-        maxChunksPerPacket = Math.max(1,
-            numberOfChunks(IO_FILE_BUFFER_SIZE));
-        // Packet size includes both checksum and data
-        pktBufSize += (chunkSize + checksumSize) * maxChunksPerPacket;
       }
-
-      ByteBuffer pktBuf = ByteBuffer.allocate(pktBufSize);
+      int maxChunksPerPacket = getMaxChunksPerPacket(transferTo);
+      ByteBuffer pktBuf = allocatePacketBuffer(transferTo, maxChunksPerPacket);
+      if (asyncRead) {
+        startAsyncReads(maxChunksPerPacket);
+      }
 
       while (endOffset > offset && !Thread.currentThread().isInterrupted()) {
         manageOsCache();
@@ -846,6 +983,127 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
     return totalRead;
   }
 
+  private int getMaxChunksPerPacket(boolean transferTo) {
+    if (transferTo) {
+      return numberOfChunks(TRANSFERTO_BUFFER_SIZE);
+    }
+    return Math.max(1, numberOfChunks(IO_FILE_BUFFER_SIZE));
+  }
+
+  private ByteBuffer allocatePacketBuffer(boolean transferTo,
+      int maxChunksPerPacket) {
+    int pktBufSize = PacketHeader.PKT_MAX_HEADER_LEN;
+    if (transferTo) {
+      // Smaller packet size to only hold checksum when doing transferTo
+      pktBufSize += checksumSize * maxChunksPerPacket;
+    } else {
+      // Packet size includes both checksum and data
+      pktBufSize += (chunkSize + checksumSize) * maxChunksPerPacket;
+    }
+    return ByteBuffer.allocate(pktBufSize);
+  }
+
+  /**
+   * Prepares to send the block to a non-blocking channel with
+   * {@link #sendPackets(WritableByteChannel, int)}, which sends the same
+   * packets as {@link #sendBlock} without ever waiting for the channel.
+   *
+   * @param transferToChannel the channel accepts data from
+   *        {@link FileChannel#transferTo}.
+   */
+  void startSendPackets(boolean transferToChannel) throws IOException {
+    initialOffset = offset;
+    lastCacheDropOffset = initialOffset;
+    if (isLongRead() && ris.getDataInFd() != null) {
+      ris.dropCacheBehindReads(block.getBlockName(), 0, 0,
+          POSIX_FADV_SEQUENTIAL);
+    }
+    nbTransferTo = transferToChannel && transferToAllowed && !verifyChecksum
+        && ris.getDataIn() instanceof FileInputStream;
+    if (nbTransferTo) {
+      blockInPosition =
+          ((FileInputStream)ris.getDataIn()).getChannel().position();
+    }
+    nbMaxChunksPerPacket = getMaxChunksPerPacket(nbTransferTo);
+    nbPktBuf = allocatePacketBuffer(nbTransferTo, nbMaxChunksPerPacket);
+    nbStartTime = System.nanoTime();
+  }
+
+  /**
+   * Sends packets of the block to a non-blocking channel, as long as the
+   * channel takes them and up to maxPackets of them, so that the caller can
+   * serve other channels in between. A packet which does not fit in the
+   * channel is continued by the next call.
+   *
+   * @param ch non-blocking channel to send the packets to
+   * @param maxPackets maximum number of packets to complete
+   * @return true once the whole byte range, and the empty packet which marks
+   *         its end, has been sent.
+   */
+  boolean sendPackets(WritableByteChannel ch, int maxPackets)
+      throws IOException {
+    Preconditions.checkState(nbPktBuf != null,
+        "startSendPackets was not called");
+    for (int completed = 0; completed < maxPackets;) {
+      if (nbDataLen < 0) {
+        if (sentEntireByteRange) {
+          return true;
+        }
+        manageOsCache();
+        nbDataLen = preparePacket(nbPktBuf, nbMaxChunksPerPacket,
+            nbTransferTo);
+        nbDataLeft = nbTransferTo ? nbDataLen : 0;
+      }
+      try {
+        if (nbPktBuf.hasRemaining()) {
+          ch.write(nbPktBuf);
+          if (nbPktBuf.hasRemaining()) {
+            return false;
+          }
+        }
+        if (nbDataLeft > 0) {
+          FileChannel fileCh = ((FileInputStream)ris.getDataIn()).getChannel();
+          long begin = System.nanoTime();
+          long n = fileIoProvider.transferTo(ris.getVolumeRef().getVolume(),
+              fileCh, blockInPosition, nbDataLeft, ch);
+          datanode.metrics.addSendDataPacketTransferNanos(
+              System.nanoTime() - begin);
+          blockInPosition += n;
+          nbDataLeft -= n;
+          if (nbDataLeft > 0) {
+            return false;
+          }
+        }
+      } catch (IOException e) {
+        throw handleSendException(e);
+      }
+      if (nbDataLen == 0) {
+        // the empty packet marking the end of the block
+        nbDataLen = -1;
+        sentEntireByteRange = true;
+        if ((clientTraceFmt != null) && CLIENT_TRACE_LOG.isDebugEnabled()) {
+          CLIENT_TRACE_LOG.debug(String.format(clientTraceFmt, nbTotalRead,
+              initialOffset, System.nanoTime() - nbStartTime));
+        }
+        return true;
+      }
+      offset += nbDataLen;
+      nbTotalRead += nbDataLen + (numberOfChunks(nbDataLen) * checksumSize);
+      seqno++;
+      nbDataLen = -1;
+      completed++;
+    }
+    return false;
+  }
+
+  /**
+   * @return total bytes sent by {@link #sendPackets}, including checksum
+   *         data.
+   */
+  long getPacketBytesSent() {
+    return nbTotalRead;
+  }
+
   /**
    * Manage the OS buffer cache by performing read-ahead
    * and drop-behind.
@@ -94,6 +94,8 @@ public class DNConf {
   private final boolean tcpNoDelay;
 
   final boolean transferToAllowed;
+  final int asyncReadQueueDepth;
+  final boolean writeDirectBuffersEnabled;
   final boolean dropCacheBehindWrites;
   final boolean syncBehindWrites;
   final boolean syncBehindWritesInBackground;
@@ -168,6 +170,15 @@ public DNConf(final Configurable dn) {
     transferToAllowed = getConf().getBoolean(
         DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
         DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT);
+    asyncReadQueueDepth = getConf().getInt(
+        DFSConfigKeys.DFS_DATANODE_ASYNC_READ_QUEUE_DEPTH_KEY,
+        DFSConfigKeys.DFS_DATANODE_ASYNC_READ_QUEUE_DEPTH_DEFAULT);
+    Preconditions.checkArgument(asyncReadQueueDepth >= 1,
+        DFSConfigKeys.DFS_DATANODE_ASYNC_READ_QUEUE_DEPTH_KEY
+            + " must be at least 1");
+    writeDirectBuffersEnabled = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_DEFAULT);
 
     readaheadLength = getConf().getLong(
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_KEY,
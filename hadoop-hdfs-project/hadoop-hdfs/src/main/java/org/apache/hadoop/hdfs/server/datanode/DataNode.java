@@ -2673,6 +2673,7 @@ public void shutdown() {
     if (data != null) {
       data.shutdown();
     }
+    fileIoProvider.shutdown();
     if (metrics != null) {
       metrics.shutdown();
     }
@@ -72,6 +72,7 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -81,11 +82,14 @@
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
@@ -118,6 +122,11 @@ class DataXceiver extends Receiver implements Runnable {
   private long opStartTime; //the start time of receiving an Op
   private final InputStream socketIn;
   private OutputStream socketOut;
+  /**
+   * The channel of the socket if the input is not wrapped by SASL, used to
+   * receive packets into direct buffers.
+   */
+  private ReadableByteChannel socketInChannel;
   private BlockReceiver blockReceiver = null;
   private final int ioFileBufferSize;
   private final int smallBufferSize;
@@ -131,15 +140,33 @@ class DataXceiver extends Receiver implements Runnable {
   
   public static DataXceiver create(Peer peer, DataNode dn,
       DataXceiverServer dataXceiverServer) throws IOException {
-    return new DataXceiver(peer, dn, dataXceiverServer);
+    return new DataXceiver(peer, dn, dataXceiverServer, null);
+  }
+
+  /**
+   * Create a DataXceiver for a peer handed over by the
+   * {@link DataXceiverEventLoop}.
+   *
+   * @param received the bytes the event loop already read from the peer
+   */
+  static DataXceiver create(Peer peer, DataNode dn,
+      DataXceiverServer dataXceiverServer, byte[] received)
+      throws IOException {
+    return new DataXceiver(peer, dn, dataXceiverServer, received);
   }
   
   private DataXceiver(Peer peer, DataNode datanode,
-      DataXceiverServer dataXceiverServer) throws IOException {
+      DataXceiverServer dataXceiverServer, byte[] received)
+      throws IOException {
     super(FsTracer.get(null));
     this.peer = peer;
     this.dnConf = datanode.getDnConf();
-    this.socketIn = peer.getInputStream();
+    if (received == null || received.length == 0) {
+      this.socketIn = peer.getInputStream();
+    } else {
+      this.socketIn = new SequenceInputStream(
+          new ByteArrayInputStream(received), peer.getInputStream());
+    }
     this.socketOut = peer.getOutputStream();
     this.datanode = datanode;
     this.dataXceiverServer = dataXceiverServer;
@@ -239,6 +266,10 @@ public void run() {
         input = new BufferedInputStream(saslStreams.in,
             smallBufferSize);
         socketOut = saslStreams.out;
+        if (saslStreams.in == peer.getInputStream() &&
+            saslStreams.in == peer.getInputStreamChannel()) {
+          socketInChannel = peer.getInputStreamChannel();
+        }
       } catch (InvalidMagicNumberException imne) {
         if (imne.isHandshake4Encryption()) {
           LOG.info("Failed to read expected encryption handshake from client " +
@@ -762,6 +793,7 @@ public void writeBlock(final ExtendedBlock block,
     DataOutputStream mirrorOut = null;  // stream to next target
     DataInputStream mirrorIn = null;    // reply from next target
     Socket mirrorSock = null;           // socket to next target
+    WritableByteChannel mirrorChannel = null; // unwrapped channel of mirrorSock
     String mirrorNode = null;           // the name:port of next target
     String firstBadLink = "";           // first datanode that failed in connection setup
     Status mirrorInStatus = SUCCESS;
@@ -828,6 +860,10 @@ public void writeBlock(final ExtendedBlock block,
           IOStreamPair saslStreams = datanode.saslClient.socketSend(
               mirrorSock, unbufMirrorOut, unbufMirrorIn, keyFactory,
               blockToken, targets[0], secretKey);
+          if (saslStreams.out == unbufMirrorOut &&
+              unbufMirrorOut instanceof WritableByteChannel) {
+            mirrorChannel = (WritableByteChannel) unbufMirrorOut;
+          }
           unbufMirrorOut = saslStreams.out;
           unbufMirrorIn = saslStreams.in;
           mirrorOut = new DataOutputStream(new BufferedOutputStream(unbufMirrorOut,
@@ -917,6 +953,11 @@ public void writeBlock(final ExtendedBlock block,
       // receive the block and mirror to the next target
       if (blockReceiver != null) {
         String mirrorAddr = (mirrorSock == null) ? null : mirrorNode;
+        if (dnConf.writeDirectBuffersEnabled && socketInChannel != null &&
+            (mirrorOut == null || mirrorChannel != null)) {
+          blockReceiver.setPacketChannels(socketInChannel,
+              mirrorOut == null ? null : mirrorChannel);
+        }
         blockReceiver.receiveBlock(mirrorOut, mirrorIn, replyOut, mirrorAddr,
             dataXceiverServer.getWriteThrottler(), targets, false);
 
@@ -0,0 +1,833 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status.ERROR;
+import static org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status.ERROR_ACCESS_TOKEN;
+import static org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status.SUCCESS;
+import static org.apache.hadoop.hdfs.server.datanode.DataNode.DN_CLIENTTRACE_FORMAT;
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.protocol.BlockChecksumOptions;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtoUtil;
+import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtocol;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Op;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.CachingStrategyProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ClientReadStatusProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockChecksumProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockChecksumResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReadBlockProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ReadOpChecksumInfoProto;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
+import org.apache.hadoop.hdfs.server.datanode.BlockChecksumHelper.BlockChecksumComputer;
+import org.apache.hadoop.hdfs.server.datanode.BlockChecksumHelper.ReplicatedBlockChecksumComputer;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.net.SocketInputStream;
+import org.apache.hadoop.security.token.SecretManager.InvalidToken;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.thirdparty.protobuf.ByteString;
+import org.apache.hadoop.thirdparty.protobuf.Message;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+
+/**
+ * Serves {@link Op#READ_BLOCK} and {@link Op#BLOCK_CHECKSUM} on a few
+ * selector threads, instead of a {@link DataXceiver} thread per connection.
+ * <p>
+ * Each connection accepted by the {@link DataXceiverServer} is registered
+ * with one of the selector threads, which reads the requests without
+ * blocking and sends the blocks with the same {@link BlockSender} packets,
+ * and transferTo, as the DataXceiver. A packet is only sent when the socket
+ * is writable, so a slow reader does not hold up the other connections of
+ * its thread, and an idle keepalive connection costs a selection key rather
+ * than a thread.
+ * <p>
+ * Any other op, such as a block write, is handed over to a DataXceiver
+ * thread together with the bytes already read, and the connection stays on
+ * that thread. So is a read when a read bandwidth limit is set, as the
+ * throttler sleeps, or when the block pool is not registered yet. The block
+ * and checksum files are read on the selector threads.
+ */
+class DataXceiverEventLoop implements Closeable {
+  static final Logger LOG = DataNode.LOG;
+
+  /** Packets sent to a connection before the others get their turn. */
+  private static final int MAX_PACKETS_PER_TURN = 4;
+  /** Requests larger than this are handed over to a DataXceiver. */
+  private static final int MAX_REQUEST_SIZE = 64 * 1024;
+  private static final int INITIAL_BUFFER_SIZE = 512;
+  /** Interval of the checks for the connections which timed out. */
+  private static final long TIMEOUT_CHECK_INTERVAL_MS = 1000;
+
+  private final DataNode datanode;
+  private final DNConf dnConf;
+  private final DataXceiverServer dataXceiverServer;
+  private final SelectorThread[] selectorThreads;
+  private final AtomicInteger nextThread = new AtomicInteger();
+  private final AtomicInteger numConnections = new AtomicInteger();
+  private final AtomicLong numHandedOver = new AtomicLong();
+  private volatile boolean running = true;
+
+  DataXceiverEventLoop(DataNode datanode, DataXceiverServer dataXceiverServer,
+      int numThreads) throws IOException {
+    this.datanode = datanode;
+    this.dnConf = datanode.getDnConf();
+    this.dataXceiverServer = dataXceiverServer;
+    this.selectorThreads = new SelectorThread[numThreads];
+    try {
+      for (int i = 0; i < numThreads; i++) {
+        selectorThreads[i] = new SelectorThread(Selector.open());
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  void start() {
+    for (int i = 0; i < selectorThreads.length; i++) {
+      Daemon d = new Daemon(datanode.threadGroup, selectorThreads[i]);
+      d.setName("DataXceiverEventLoop-" + i);
+      selectorThreads[i].thread = d;
+      d.start();
+    }
+  }
+
+  /**
+   * Register a connection with one of the selector threads.
+   *
+   * @return false if the connection cannot be served by the event loop.
+   */
+  boolean register(Peer peer) {
+    if (!running) {
+      return false;
+    }
+    final SocketChannel channel = getSocketChannel(peer);
+    if (channel == null) {
+      return false;
+    }
+    final SelectorThread t = selectorThreads[Math.floorMod(
+        nextThread.getAndIncrement(), selectorThreads.length)];
+    numConnections.incrementAndGet();
+    datanode.metrics.incrDataNodeActiveXceiversCount();
+    t.registrations.add(new Connection(peer, channel, t));
+    t.selector.wakeup();
+    return true;
+  }
+
+  /**
+   * @return the socket channel of a peer, or null if it does not have one.
+   */
+  private static SocketChannel getSocketChannel(Peer peer) {
+    if (peer.getDomainSocket() != null) {
+      return null;
+    }
+    final ReadableByteChannel in = peer.getInputStreamChannel();
+    if (in instanceof SocketInputStream) {
+      final ReadableByteChannel channel = ((SocketInputStream) in).getChannel();
+      if (channel instanceof SocketChannel) {
+        return (SocketChannel) channel;
+      }
+    }
+    return null;
+  }
+
+  /** @return the number of connections served by the event loop. */
+  int getNumConnections() {
+    return numConnections.get();
+  }
+
+  /** @return the number of connections handed over to a DataXceiver. */
+  long getNumHandedOver() {
+    return numHandedOver.get();
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  /** Stop the selector threads and close their connections. */
+  @Override
+  public void close() {
+    running = false;
+    for (SelectorThread t : selectorThreads) {
+      if (t == null) {
+        continue;
+      }
+      if (t.thread == null) {
+        IOUtils.closeStream(t.selector);
+        continue;
+      }
+      t.selector.wakeup();
+      try {
+        t.thread.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the length of the varint prefixed message at pos, including the
+   *         prefix, 0 if it is not complete, or -1 if it is too large.
+   */
+  private static int frameLength(ByteBuffer buf, int pos) {
+    int len = 0;
+    for (int shift = 0, i = pos; shift < 32; shift += 7, i++) {
+      if (i >= buf.limit()) {
+        return 0;
+      }
+      final byte b = buf.get(i);
+      len |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        final long total = (long) i + 1 - pos + len;
+        if (len < 0 || total > MAX_REQUEST_SIZE) {
+          return -1;
+        }
+        return pos + total > buf.limit() ? 0 : (int) total;
+      }
+    }
+    return -1;
+  }
+
+  private static CachingStrategy getCachingStrategy(
+      CachingStrategyProto strategy) {
+    Boolean dropBehind = strategy.hasDropBehind() ?
+        strategy.getDropBehind() : null;
+    Long readahead = strategy.hasReadahead() ?
+        strategy.getReadahead() : null;
+    return new CachingStrategy(dropBehind, readahead);
+  }
+
+  /** A thread multiplexing connections over a selector. */
+  private final class SelectorThread implements Runnable {
+    private final Selector selector;
+    private final Queue<Connection> registrations =
+        new ConcurrentLinkedQueue<>();
+    /** The connections of the thread, only accessed by the thread. */
+    private final Set<Connection> connections = new HashSet<>();
+    private Thread thread;
+    private long lastTimeoutCheck = monotonicNow();
+
+    SelectorThread(Selector selector) {
+      this.selector = selector;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          selector.select(TIMEOUT_CHECK_INTERVAL_MS);
+          registerConnections();
+          final Iterator<SelectionKey> it =
+              selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            final SelectionKey key = it.next();
+            it.remove();
+            ((Connection) key.attachment()).handle(key);
+          }
+          closeTimedOutConnections();
+        }
+      } catch (Throwable t) {
+        if (running) {
+          LOG.error("{}:DataXceiverEventLoop: Exiting. New connections will"
+              + " be served on a thread each.", datanode.getDisplayName(), t);
+          running = false;
+        }
+      } finally {
+        for (Connection c : new ArrayList<>(connections)) {
+          c.close();
+        }
+        Connection c;
+        while ((c = registrations.poll()) != null) {
+          c.close();
+        }
+        IOUtils.closeStream(selector);
+      }
+    }
+
+    private void registerConnections() {
+      Connection c;
+      while ((c = registrations.poll()) != null) {
+        try {
+          c.key = c.channel.register(selector, SelectionKey.OP_READ, c);
+          connections.add(c);
+          c.resetDeadline(dnConf.socketTimeout);
+        } catch (IOException e) {
+          LOG.warn("{}:DataXceiverEventLoop: failed to register {}",
+              datanode.getDisplayName(), c.peer, e);
+          c.close();
+        }
+      }
+    }
+
+    private void closeTimedOutConnections() {
+      final long now = monotonicNow();
+      if (now - lastTimeoutCheck < TIMEOUT_CHECK_INTERVAL_MS) {
+        return;
+      }
+      lastTimeoutCheck = now;
+      List<Connection> timedOut = null;
+      for (Connection c : connections) {
+        if (c.deadline <= now) {
+          if (timedOut == null) {
+            timedOut = new ArrayList<>();
+          }
+          timedOut.add(c);
+        }
+      }
+      if (timedOut != null) {
+        for (Connection c : timedOut) {
+          c.timedOut();
+        }
+      }
+    }
+  }
+
+  private enum State {
+    /** Waiting for the next op. */
+    WAIT_OP,
+    /** Sending a block. */
+    SENDING,
+    /** Waiting for the status of the client after sending a block. */
+    WAIT_STATUS
+  }
+
+  /** A connection served by a selector thread. */
+  private final class Connection {
+    private final Peer peer;
+    private final SocketChannel channel;
+    private final SelectorThread selectorThread;
+    private final String remoteAddress;
+    private final String remoteAddressWithoutPort;
+    private final String localAddress;
+    private SelectionKey key;
+    /** Bytes read from the channel, in write mode between the events. */
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    /** Response which is left to write. */
+    private ByteBuffer out;
+    private State state = State.WAIT_OP;
+    private boolean closeAfterResponse;
+    /** The connection was closed or handed over. */
+    private boolean closed;
+    private long deadline = Long.MAX_VALUE;
+    private int opsProcessed;
+    private Op firstOp;
+    private Op op;
+    private long opStartTime;
+
+    // The block being sent
+    private BlockSender blockSender;
+    private ExtendedBlock block;
+    private DatanodeRegistration dnR;
+    private long beginReadInNS;
+
+    Connection(Peer peer, SocketChannel channel,
+        SelectorThread selectorThread) {
+      this.peer = peer;
+      this.channel = channel;
+      this.selectorThread = selectorThread;
+      this.remoteAddress = peer.getRemoteAddressString();
+      final int colonIdx = remoteAddress.indexOf(':');
+      this.remoteAddressWithoutPort =
+          (colonIdx < 0) ? remoteAddress : remoteAddress.substring(0, colonIdx);
+      this.localAddress = peer.getLocalAddressString();
+    }
+
+    void handle(SelectionKey k) {
+      try {
+        if (k.isValid() && k.isReadable()) {
+          onReadable();
+        }
+        if (!closed && k.isValid() && k.isWritable()) {
+          onWritable();
+        }
+      } catch (Throwable t) {
+        if (t instanceof InvalidToken || t.getCause() instanceof InvalidToken) {
+          LOG.trace("{}", errorMessage(), t);
+        } else {
+          LOG.error("{}", errorMessage(), t);
+        }
+        close();
+      }
+    }
+
+    private String errorMessage() {
+      return datanode.getDisplayName() + ":DataXceiver error processing "
+          + ((op == null) ? "unknown" : op.name()) + " operation "
+          + " src: " + remoteAddress + " dst: " + localAddress;
+    }
+
+    private void resetDeadline(int timeout) {
+      deadline = timeout > 0 ? monotonicNow() + timeout : Long.MAX_VALUE;
+    }
+
+    private int getReadTimeout() {
+      return state == State.WAIT_OP && opsProcessed > 0 ?
+          dnConf.socketKeepaliveTimeout : dnConf.socketTimeout;
+    }
+
+    private void setInterest(int ops) {
+      if (key.interestOps() != ops) {
+        key.interestOps(ops);
+      }
+    }
+
+    private void onReadable() throws IOException {
+      if (!in.hasRemaining()) {
+        if (in.capacity() >= MAX_REQUEST_SIZE + 8) {
+          in.flip();
+          handOver();
+          return;
+        }
+        final ByteBuffer bigger = ByteBuffer.allocate(
+            Math.min(in.capacity() * 2, MAX_REQUEST_SIZE + 8));
+        in.flip();
+        bigger.put(in);
+        in = bigger;
+      }
+      final int n;
+      try {
+        n = channel.read(in);
+      } catch (IOException ioe) {
+        incrDatanodeNetworkErrors();
+        if (state == State.WAIT_STATUS) {
+          LOG.debug("Error reading client status response. Will close"
+              + " connection to {}.", remoteAddress, ioe);
+          close();
+          return;
+        }
+        throw ioe;
+      }
+      if (n < 0) {
+        if (state == State.WAIT_STATUS) {
+          LOG.debug("Error reading client status response. Will close"
+              + " connection to {}.", remoteAddress);
+          incrDatanodeNetworkErrors();
+        } else {
+          // Since we optimistically expect the next op, it's quite normal to
+          // get EOF here.
+          LOG.debug("Cached {} closing after {} ops.  " +
+              "This message is usually benign.", peer, opsProcessed);
+        }
+        close();
+        return;
+      }
+      if (n > 0) {
+        resetDeadline(getReadTimeout());
+      }
+      processInput();
+    }
+
+    /** Process the complete requests which were read. */
+    private void processInput() throws IOException {
+      in.flip();
+      try {
+        while (!closed && !closeAfterResponse
+            && (state == State.WAIT_OP || state == State.WAIT_STATUS)) {
+          final int pos = in.position();
+          if (state == State.WAIT_STATUS) {
+            final int len = frameLength(in, pos);
+            if (len == 0) {
+              break;
+            }
+            final ClientReadStatusProto stat = len < 0 ? null :
+                ClientReadStatusProto.parseDelimitedFrom(
+                    new ByteArrayInputStream(in.array(), pos, len));
+            if (stat == null || !stat.hasStatus()) {
+              LOG.warn("Client {} did not send a valid status code " +
+                  "after reading. Will close connection.", remoteAddress);
+              close();
+              return;
+            }
+            in.position(pos + len);
+            opDone();
+            continue;
+          }
+
+          if (in.remaining() < 3) {
+            break;
+          }
+          final short version = in.getShort(pos);
+          final byte code = in.get(pos + 2);
+          if (version != DataTransferProtocol.DATA_TRANSFER_VERSION
+              || (code != Op.READ_BLOCK.code
+                  && code != Op.BLOCK_CHECKSUM.code)) {
+            handOver();
+            return;
+          }
+          final int len = frameLength(in, pos + 3);
+          if (len == 0) {
+            break;
+          } else if (len < 0) {
+            handOver();
+            return;
+          }
+          final InputStream request =
+              new ByteArrayInputStream(in.array(), pos + 3, len);
+          final boolean served;
+          if (code == Op.READ_BLOCK.code) {
+            served = readBlock(OpReadBlockProto.parseDelimitedFrom(request));
+          } else {
+            served = blockChecksum(
+                OpBlockChecksumProto.parseDelimitedFrom(request));
+          }
+          if (!served) {
+            handOver();
+            return;
+          }
+          in.position(pos + 3 + len);
+        }
+      } finally {
+        if (!closed) {
+          in.compact();
+        }
+      }
+      if (!closed && (out != null || state == State.SENDING)) {
+        onWritable();
+      }
+    }
+
+    private void onWritable() throws IOException {
+      if (out != null) {
+        if (channel.write(out) > 0) {
+          resetDeadline(dnConf.socketWriteTimeout);
+        }
+        if (out.hasRemaining()) {
+          setInterest(SelectionKey.OP_WRITE);
+          return;
+        }
+        out = null;
+      }
+      if (closeAfterResponse) {
+        close();
+        return;
+      }
+      if (state == State.SENDING) {
+        resetDeadline(dnConf.socketWriteTimeout);
+        final boolean done;
+        try {
+          done = blockSender.sendPackets(channel, MAX_PACKETS_PER_TURN);
+        } catch (IOException ioe) {
+          readBlockFailed(ioe);
+          return;
+        }
+        if (!done) {
+          setInterest(SelectionKey.OP_WRITE);
+          return;
+        }
+        readBlockDone();
+      }
+      setInterest(SelectionKey.OP_READ);
+      if (in.position() > 0) {
+        processInput();
+      }
+    }
+
+    /** Queue a response, which is written before anything else. */
+    private void respond(Message response) throws IOException {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      response.writeDelimitedTo(bytes);
+      out = ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private void startOp(Op newOp) {
+      op = newOp;
+      opStartTime = monotonicNow();
+      if (firstOp == null) {
+        firstOp = newOp;
+        if (Op.READ_BLOCK.equals(newOp)) {
+          datanode.getMetrics().incrDataNodeReadActiveXceiversCount();
+        }
+      }
+    }
+
+    private void opDone() {
+      opsProcessed++;
+      if (dnConf.socketKeepaliveTimeout <= 0) {
+        close();
+        return;
+      }
+      state = State.WAIT_OP;
+      resetDeadline(dnConf.socketKeepaliveTimeout);
+    }
+
+    private long elapsed() {
+      return monotonicNow() - opStartTime;
+    }
+
+    /**
+     * @return false if the block pool is not registered yet, in which case
+     *         the DataXceiver waits for it.
+     */
+    private boolean isRegistered(ExtendedBlock blk) {
+      try {
+        datanode.getDNRegistrationForBP(blk.getBlockPoolId());
+        return true;
+      } catch (IOException ioe) {
+        return false;
+      }
+    }
+
+    /**
+     * @return false if the access was denied, after queueing the response.
+     */
+    private boolean checkAccess(ExtendedBlock blk,
+        Token<BlockTokenIdentifier> t, Op accessOp) throws IOException {
+      if (datanode.isBlockTokenEnabled) {
+        LOG.debug("Checking block access token for block '{}' with mode '{}'",
+            blk.getBlockId(), BlockTokenIdentifier.AccessMode.READ);
+        try {
+          datanode.blockPoolTokenSecretManager.checkAccess(t, null, blk,
+              BlockTokenIdentifier.AccessMode.READ, null, null);
+        } catch (InvalidToken e) {
+          respond(BlockOpResponseProto.newBuilder()
+              .setStatus(ERROR_ACCESS_TOKEN).build());
+          closeAfterResponse = true;
+          LOG.warn("Block token verification failed: op={}, " +
+                  "remoteAddress={}, message={}",
+              accessOp, remoteAddress, e.getLocalizedMessage());
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Start sending a block, as {@link DataXceiver#readBlock} does.
+     *
+     * @return false if the request is to be handed over.
+     */
+    private boolean readBlock(OpReadBlockProto proto) throws IOException {
+      final ExtendedBlock blk = PBHelperClient.convert(
+          proto.getHeader().getBaseHeader().getBlock());
+      if (dataXceiverServer.getReadThrottler() != null || !isRegistered(blk)) {
+        return false;
+      }
+      startOp(Op.READ_BLOCK);
+      if (!checkAccess(blk, PBHelperClient.convert(
+          proto.getHeader().getBaseHeader().getToken()), Op.READ_BLOCK)) {
+        return true;
+      }
+      final String clientName = proto.getHeader().getClientName();
+      final CachingStrategy cachingStrategy = proto.hasCachingStrategy() ?
+          getCachingStrategy(proto.getCachingStrategy()) :
+          CachingStrategy.newDefaultStrategy();
+      block = blk;
+      dnR = datanode.getDNRegistrationForBP(blk.getBlockPoolId());
+      final String clientTraceFmt = clientName.length() > 0
+          && DataNode.CLIENT_TRACE_LOG.isInfoEnabled() ?
+          String.format(DN_CLIENTTRACE_FORMAT, localAddress, remoteAddress,
+              "", "%d", "HDFS_READ", clientName, "%d", dnR.getDatanodeUuid(),
+              blk, "%d") :
+          dnR + " Served block " + blk + " to " + remoteAddress;
+      try {
+        blockSender = new BlockSender(blk, proto.getOffset(), proto.getLen(),
+            true, false, proto.getSendChecksums(), datanode, clientTraceFmt,
+            cachingStrategy);
+      } catch (IOException e) {
+        final String msg = "opReadBlock " + blk + " received exception " + e;
+        LOG.info(msg);
+        respond(BlockOpResponseProto.newBuilder()
+            .setStatus(ERROR).setMessage(msg).build());
+        closeAfterResponse = true;
+        return true;
+      }
+      respond(BlockOpResponseProto.newBuilder()
+          .setStatus(SUCCESS)
+          .setReadOpChecksumInfo(ReadOpChecksumInfoProto.newBuilder()
+              .setChecksum(DataTransferProtoUtil.toProto(
+                  blockSender.getChecksum()))
+              .setChunkOffset(blockSender.getOffset()))
+          .build());
+      try {
+        blockSender.startSendPackets(true);
+      } catch (IOException ioe) {
+        readBlockFailed(ioe);
+        return true;
+      }
+      beginReadInNS = Time.monotonicNowNanos();
+      state = State.SENDING;
+      setInterest(SelectionKey.OP_WRITE);
+      return true;
+    }
+
+    private void readBlockDone() {
+      final long read = blockSender.getPacketBytesSent();
+      final long durationInNS = Time.monotonicNowNanos() - beginReadInNS;
+      IOUtils.closeStream(blockSender);
+      blockSender = null;
+      datanode.metrics.incrBytesRead((int) read);
+      datanode.metrics.incrBlocksRead();
+      datanode.metrics.incrTotalReadTime(
+          TimeUnit.NANOSECONDS.toMillis(durationInNS));
+      DFSUtil.addTransferRateMetric(datanode.metrics, read, durationInNS);
+      datanode.metrics.addReadBlockOp(elapsed());
+      datanode.metrics.incrReadsFromClient(peer.isLocal(), read);
+      // The whole range was sent, so the client responds with a status.
+      state = State.WAIT_STATUS;
+      resetDeadline(dnConf.socketTimeout);
+    }
+
+    private void readBlockFailed(IOException ioe) {
+      if (ioe instanceof SocketException) {
+        LOG.trace("{}:Ignoring exception while serving {} to {}",
+            dnR, block, remoteAddress, ioe);
+        // Its ok for remote side to close the connection anytime.
+        datanode.metrics.incrBlocksRead();
+      } else {
+        LOG.warn("{}:Got exception while serving {} to {}",
+            dnR, block, remoteAddress, ioe);
+        incrDatanodeNetworkErrors();
+        datanode.handleBadBlock(block, ioe, false);
+      }
+      close();
+    }
+
+    /**
+     * Compute the checksum of a block, as {@link DataXceiver#blockChecksum}
+     * does.
+     *
+     * @return false if the request is to be handed over.
+     */
+    private boolean blockChecksum(OpBlockChecksumProto proto)
+        throws IOException {
+      final ExtendedBlock blk =
+          PBHelperClient.convert(proto.getHeader().getBlock());
+      if (!isRegistered(blk)) {
+        return false;
+      }
+      startOp(Op.BLOCK_CHECKSUM);
+      // The DataXceiver closes the connection after the checksum.
+      closeAfterResponse = true;
+      if (!checkAccess(blk, PBHelperClient.convert(
+          proto.getHeader().getToken()), Op.BLOCK_CHECKSUM)) {
+        return true;
+      }
+      final BlockChecksumOptions options =
+          PBHelperClient.convert(proto.getBlockChecksumOptions());
+      final BlockChecksumComputer maker =
+          new ReplicatedBlockChecksumComputer(datanode, blk, options);
+      try {
+        maker.compute();
+      } catch (IOException ioe) {
+        LOG.info("blockChecksum {} received exception {}",
+            blk, ioe.toString());
+        incrDatanodeNetworkErrors();
+        close();
+        return true;
+      }
+      respond(BlockOpResponseProto.newBuilder()
+          .setStatus(SUCCESS)
+          .setChecksumResponse(OpBlockChecksumResponseProto.newBuilder()
+              .setBytesPerCrc(maker.getBytesPerCRC())
+              .setCrcPerBlock(maker.getCrcPerBlock())
+              .setBlockChecksum(ByteString.copyFrom(maker.getOutBytes()))
+              .setCrcType(PBHelperClient.convert(maker.getCrcType()))
+              .setBlockChecksumOptions(PBHelperClient.convert(options)))
+          .build());
+      datanode.metrics.addBlockChecksumOp(elapsed());
+      return true;
+    }
+
+    private void incrDatanodeNetworkErrors() {
+      datanode.incrDatanodeNetworkErrors(remoteAddressWithoutPort);
+    }
+
+    void timedOut() {
+      if (state == State.SENDING || out != null) {
+        LOG.info("Likely the client has stopped reading, disconnecting it"
+            + " ({})", errorMessage());
+      } else if (state == State.WAIT_STATUS) {
+        LOG.debug("Timed out reading client status response from {}. Will"
+            + " close connection.", remoteAddress);
+        incrDatanodeNetworkErrors();
+      }
+      close();
+    }
+
+    /**
+     * Hand the connection over to a DataXceiver thread, with the bytes read
+     * from the position of the input buffer.
+     */
+    private void handOver() {
+      final byte[] received = new byte[in.remaining()];
+      in.get(received);
+      detach();
+      numHandedOver.incrementAndGet();
+      LOG.debug("Handing {} over to a DataXceiver after {} ops", peer,
+          opsProcessed);
+      dataXceiverServer.startXceiver(peer, received);
+    }
+
+    /** Close the connection. */
+    void close() {
+      if (closed) {
+        return;
+      }
+      detach();
+      IOUtils.closeStream(blockSender);
+      blockSender = null;
+      IOUtils.closeStream(peer);
+    }
+
+    /** Remove the connection from the event loop. */
+    private void detach() {
+      closed = true;
+      if (key != null) {
+        key.cancel();
+      }
+      selectorThread.connections.remove(this);
+      numConnections.decrementAndGet();
+      datanode.metrics.decrDataNodeActiveXceiversCount();
+      if (Op.READ_BLOCK.equals(firstOp)) {
+        datanode.getMetrics().decrDataNodeReadActiveXceiversCount();
+      }
+    }
+  }
+}
@@ -31,6 +31,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -70,6 +71,12 @@ class DataXceiverServer implements Runnable {
    */
   volatile int maxXceiverCount;
 
+  /** Number of selector threads serving the reads, 0 if disabled. */
+  private final int eventLoopThreads;
+
+  /** Serves the reads without a thread per connection, if enabled. */
+  private volatile DataXceiverEventLoop eventLoop;
+
   /**
    * A manager to make sure that cluster balancing does not take too much
    * resources.
@@ -196,6 +203,19 @@ void release() {
     this.estimateBlockSize = conf.getLongBytes(DFSConfigKeys.DFS_BLOCK_SIZE_KEY,
         DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT);
 
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_DEFAULT)) {
+      this.eventLoopThreads = conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_THREADS_KEY,
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_THREADS_DEFAULT);
+      Preconditions.checkArgument(this.eventLoopThreads >= 1,
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_THREADS_KEY +
+          " should not be less than 1.");
+    } else {
+      this.eventLoopThreads = 0;
+    }
+
     //set up parameter for cluster balancing
     this.balanceThrottler = new BlockBalanceThrottler(
         conf.getLongBytes(DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_KEY,
@@ -236,19 +256,19 @@ private void initBandwidthPerSec(Configuration conf) {
 
   @Override
   public void run() {
+    startEventLoop();
     Peer peer = null;
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
         peer = peerServer.accept();
 
-        // Make sure the xceiver count is not exceeded
-        int curXceiverCount = datanode.getXceiverCount();
-        if (curXceiverCount > maxXceiverCount) {
-          throw new IOException("Xceiver count " + curXceiverCount
-              + " exceeds the limit of concurrent xceivers: "
-              + maxXceiverCount);
+        if (registerWithEventLoop(peer)) {
+          continue;
         }
 
+        // Make sure the xceiver count is not exceeded
+        checkXceiverCount();
+
         new Daemon(datanode.threadGroup,
             DataXceiver.create(peer, datanode, this))
             .start();
@@ -281,6 +301,10 @@ public void run() {
       }
     }
 
+    if (eventLoop != null) {
+      eventLoop.close();
+    }
+
     // Close the server to stop reception of more requests.
     lock.lock();
     try {
@@ -309,6 +333,74 @@ public void run() {
     closeAllPeers();
   }
 
+  private void startEventLoop() {
+    if (eventLoopThreads <= 0 || !(peerServer instanceof TcpPeerServer)) {
+      return;
+    }
+    try {
+      DataXceiverEventLoop loop =
+          new DataXceiverEventLoop(datanode, this, eventLoopThreads);
+      loop.start();
+      eventLoop = loop;
+      LOG.info("Serving block reads on {} selector threads", eventLoopThreads);
+    } catch (IOException ioe) {
+      LOG.warn("{}:DataXceiverServer: failed to start the event loop, block"
+          + " reads are served on a thread each", datanode.getDisplayName(),
+          ioe);
+    }
+  }
+
+  /**
+   * Register a peer with the event loop, unless SASL protects the
+   * connections, which is negotiated by the DataXceiver.
+   *
+   * @return true if the peer is served by the event loop
+   */
+  private boolean registerWithEventLoop(Peer peer) {
+    DataXceiverEventLoop loop = eventLoop;
+    return loop != null
+        && datanode.saslServer.isHandshakeSkipped(
+            datanode.getXferAddress().getPort())
+        && loop.register(peer);
+  }
+
+  private void checkXceiverCount() throws IOException {
+    int curXceiverCount = datanode.getXceiverCount();
+    // The connections of the event loop do not hold a thread.
+    DataXceiverEventLoop loop = eventLoop;
+    if (loop != null) {
+      curXceiverCount -= loop.getNumConnections();
+    }
+    if (curXceiverCount > maxXceiverCount) {
+      throw new IOException("Xceiver count " + curXceiverCount
+          + " exceeds the limit of concurrent xceivers: "
+          + maxXceiverCount);
+    }
+  }
+
+  /**
+   * Serve a peer handed over by the event loop on a DataXceiver thread.
+   *
+   * @param peer The peer
+   * @param received The bytes the event loop already read from the peer
+   */
+  void startXceiver(Peer peer, byte[] received) {
+    try {
+      checkXceiverCount();
+      new Daemon(datanode.threadGroup,
+          DataXceiver.create(peer, datanode, this, received))
+          .start();
+    } catch (IOException ie) {
+      IOUtils.closeStream(peer);
+      LOG.warn("{}:DataXceiverServer", datanode.getDisplayName(), ie);
+    }
+  }
+
+  @VisibleForTesting
+  DataXceiverEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
   void kill() {
     assert (datanode.shouldRun == false || datanode.shutdownForUpgrade) :
       "shoudRun should be set to false or restarting should be true"
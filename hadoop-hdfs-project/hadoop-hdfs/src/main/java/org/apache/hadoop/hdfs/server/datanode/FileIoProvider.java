@@ -33,6 +33,8 @@
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.io.nativeio.NativeIOException;
 import org.apache.hadoop.net.SocketOutputStream;
+import org.apache.hadoop.util.concurrent.HadoopExecutors;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,11 +49,18 @@
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.hadoop.hdfs.server.datanode.FileIoProvider.OPERATION.*;
 
@@ -82,6 +91,8 @@ public class FileIoProvider {
   private final ProfilingFileIoEvents profilingEventHook;
   private final FaultInjectorFileIoEvents faultInjectorEventHook;
   private final DataNode datanode;
+  /** Serves {@link #readAsync}, null if the asynchronous reads are off. */
+  private final ExecutorService asyncReadExecutor;
 
   private static final int LEN_INT = 4;
 
@@ -96,6 +107,16 @@ public FileIoProvider(@Nullable Configuration conf,
     profilingEventHook = new ProfilingFileIoEvents(conf);
     faultInjectorEventHook = new FaultInjectorFileIoEvents(conf);
     this.datanode = datanode;
+    final int asyncReadThreads = conf == null ? 0 : conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_ASYNC_READ_THREADS_KEY,
+        DFSConfigKeys.DFS_DATANODE_ASYNC_READ_THREADS_DEFAULT);
+    if (asyncReadThreads > 0) {
+      asyncReadExecutor = HadoopExecutors.newFixedThreadPool(asyncReadThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("AsyncFileRead-%d").build());
+    } else {
+      asyncReadExecutor = null;
+    }
   }
 
   /**
@@ -116,7 +137,8 @@ public enum OPERATION {
     READ,
     WRITE,
     FLUSH,
-    NATIVE_COPY
+    NATIVE_COPY,
+    ASYNC_READ
   }
 
   /**
@@ -292,6 +314,138 @@ public void transferToSocketFully(
     }
   }
 
+  /**
+   * Transfer data from a FileChannel to a non-blocking channel, without
+   * waiting for the channel to become writable.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param fileCh  FileChannel from which to read data.
+   * @param position  position within the channel where the transfer begins.
+   * @param count  maximum number of bytes to transfer.
+   * @param target  non-blocking channel to write the data.
+   * @return  the number of bytes transferred, possibly zero.
+   * @throws IOException
+   */
+  public long transferTo(
+      @Nullable FsVolumeSpi volume, FileChannel fileCh, long position,
+      long count, WritableByteChannel target) throws IOException {
+    final long begin = profilingEventHook.beforeFileIo(volume, TRANSFER, count);
+    try {
+      faultInjectorEventHook.beforeFileIo(volume, TRANSFER, count);
+      long transferred = fileCh.transferTo(position, count, target);
+      profilingEventHook.afterFileIo(volume, TRANSFER, begin, transferred);
+      return transferred;
+    } catch (Exception e) {
+      String em = e.getMessage();
+      if (em != null) {
+        if (!em.startsWith("Broken pipe")
+            && !em.startsWith("Connection reset")) {
+          onFailure(volume, begin);
+        }
+      } else {
+        onFailure(volume, begin);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Write the remaining bytes of a buffer, which may be direct, to the
+   * channel of a FileOutputStream at the current position of the stream.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param fos  FileOutputStream to write the data.
+   * @param src  the data to write.
+   * @throws IOException
+   */
+  public void write(
+      @Nullable FsVolumeSpi volume, FileOutputStream fos, ByteBuffer src)
+      throws IOException {
+    final int len = src.remaining();
+    final long begin = profilingEventHook.beforeFileIo(volume, WRITE, len);
+    try {
+      faultInjectorEventHook.beforeFileIo(volume, WRITE, len);
+      final FileChannel ch = fos.getChannel();
+      while (src.hasRemaining()) {
+        ch.write(src);
+      }
+      profilingEventHook.afterFileIo(volume, WRITE, begin, len);
+    } catch (Exception e) {
+      onFailure(volume, begin);
+      throw e;
+    }
+  }
+
+  /**
+   * @return true if {@link #readAsync} may be used.
+   */
+  public boolean isAsyncReadEnabled() {
+    return asyncReadExecutor != null;
+  }
+
+  /**
+   * Read from a FileChannel at a given position on one of the asynchronous
+   * read threads, until the buffer is full or the end of the file is
+   * reached. The latency is measured from the submission of the read, so
+   * it includes the time the read waited for a thread.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param fileCh  FileChannel from which to read data.
+   * @param dst  buffer to read the data into.
+   * @param position  position within the channel where the read begins.
+   * @return  a future of the number of bytes read, which is less than the
+   *          remaining bytes of the buffer only at the end of the file.
+   */
+  public CompletableFuture<Integer> readAsync(
+      @Nullable FsVolumeSpi volume, FileChannel fileCh, ByteBuffer dst,
+      long position) {
+    final CompletableFuture<Integer> result = new CompletableFuture<>();
+    if (asyncReadExecutor == null) {
+      result.completeExceptionally(
+          new IOException("Asynchronous reads are disabled"));
+      return result;
+    }
+    final int len = dst.remaining();
+    final long begin = profilingEventHook.beforeFileIo(volume, ASYNC_READ, len);
+    try {
+      asyncReadExecutor.execute(() -> {
+        try {
+          faultInjectorEventHook.beforeFileIo(volume, ASYNC_READ, len);
+          int numRead = 0;
+          while (dst.hasRemaining()) {
+            int n = fileCh.read(dst, position + numRead);
+            if (n < 0) {
+              break;
+            }
+            numRead += n;
+          }
+          profilingEventHook.afterFileIo(volume, ASYNC_READ, begin, numRead);
+          result.complete(numRead);
+        } catch (Exception e) {
+          // The reader closes the file while reads are outstanding when it
+          // fails or stops early, which says nothing about the volume.
+          if (!(e instanceof ClosedChannelException)) {
+            onFailure(volume, begin);
+          }
+          result.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(
+          new IOException("Asynchronous reads are shut down", e));
+    }
+    return result;
+  }
+
+  /**
+   * Stop the asynchronous read threads.
+   */
+  public void shutdown() {
+    if (asyncReadExecutor != null) {
+      HadoopExecutors.shutdown(asyncReadExecutor, LOG, 10, TimeUnit.SECONDS);
+    }
+  }
+
   /**
    * Create a file.
    * @param volume  target volume. null if unavailable.
@@ -115,6 +115,9 @@ public void afterFileIo(@Nullable FsVolumeSpi volume,
         case NATIVE_COPY:
           metrics.addNativeCopyIoLatency(latency);
           break;
+        case ASYNC_READ:
+          metrics.addAsyncReadIoLatency(latency);
+          break;
         default:
         }
       }
@@ -79,6 +79,10 @@ public class DataNodeVolumeMetrics {
   private MutableRate nativeCopyIoRate;
   private MutableQuantiles[] nativeCopyIoLatencyQuantiles;
 
+  @Metric("file io asyncRead rate")
+  private MutableRate asyncReadIoRate;
+  private MutableQuantiles[] asyncReadIoLatencyQuantiles;
+
   @Metric("number of file io errors")
   private MutableCounterLong totalFileIoErrors;
   @Metric("file io error rate")
@@ -204,6 +208,23 @@ public MutableQuantiles[] getNativeCopyIoQuantiles() {
     return nativeCopyIoLatencyQuantiles;
   }
 
+  // Based on asyncReadIoRate
+  public long getAsyncReadIoSampleCount() {
+    return asyncReadIoRate.lastStat().numSamples();
+  }
+
+  public double getAsyncReadIoMean() {
+    return asyncReadIoRate.lastStat().mean();
+  }
+
+  public double getAsyncReadIoStdDev() {
+    return asyncReadIoRate.lastStat().stddev();
+  }
+
+  public MutableQuantiles[] getAsyncReadIoQuantiles() {
+    return asyncReadIoLatencyQuantiles;
+  }
+
   public long getTotalFileIoErrors() {
     return totalFileIoErrors.value();
   }
@@ -237,6 +258,7 @@ public DataNodeVolumeMetrics(final MetricsSystem metricsSystem,
     writeIoLatencyQuantiles = new MutableQuantiles[len];
     transferIoLatencyQuantiles = new MutableQuantiles[len];
     nativeCopyIoLatencyQuantiles = new MutableQuantiles[len];
+    asyncReadIoLatencyQuantiles = new MutableQuantiles[len];
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
       metadataOperationLatencyQuantiles[i] = registry.newQuantiles(
@@ -263,6 +285,9 @@ public DataNodeVolumeMetrics(final MetricsSystem metricsSystem,
       nativeCopyIoLatencyQuantiles[i] = registry.newQuantiles(
           "nativeCopyIoLatency" + interval + "s",
           "Data nativeCopy Io Latency in ms", "ops", "latency", interval);
+      asyncReadIoLatencyQuantiles[i] = registry.newQuantiles(
+          "asyncReadIoLatency" + interval + "s",
+          "Data asyncRead Io Latency in ms", "ops", "latency", interval);
     }
   }
 
@@ -346,6 +371,13 @@ public void addNativeCopyIoLatency(final long latency) {
     }
   }
 
+  public void addAsyncReadIoLatency(final long latency) {
+    asyncReadIoRate.add(latency);
+    for (MutableQuantiles q: asyncReadIoLatencyQuantiles) {
+      q.add(latency);
+    }
+  }
+
   public void addFileIoError(final long latency) {
     totalFileIoErrors.incr();
     fileIoErrorRate.add(latency);
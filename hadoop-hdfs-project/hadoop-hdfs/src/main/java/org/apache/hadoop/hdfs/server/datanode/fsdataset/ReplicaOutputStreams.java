@@ -22,6 +22,7 @@
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
@@ -148,6 +149,24 @@ public void writeDataToDisk(byte[] b, int off, int len)
     dataOut.write(b, off, len);
   }
 
+  /**
+   * Write the remaining bytes of a buffer, which may be direct, without
+   * copying them to the heap if the data stream is a FileOutputStream.
+   */
+  public void writeDataToDisk(ByteBuffer b) throws IOException {
+    if (b.hasArray()) {
+      writeDataToDisk(b.array(), b.arrayOffset() + b.position(),
+          b.remaining());
+      b.position(b.limit());
+    } else if (dataOut instanceof FileOutputStream) {
+      fileIoProvider.write(volume, (FileOutputStream) dataOut, b);
+    } else {
+      final byte[] bytes = new byte[b.remaining()];
+      b.get(bytes);
+      dataOut.write(bytes);
+    }
+  }
+
   public void syncFileRangeIfPossible(long offset, long nbytes,
       int flags) throws NativeIOException {
     fileIoProvider.syncFileRange(
@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded ring of preallocated audit events, written by the RPC handlers
+ * and drained by a single background thread.
+ * <p>
+ * A handler claims a sequence number with a CAS on {@link #claimed}, copies
+ * the references describing the operation into the slot of that sequence and
+ * publishes the slot by storing the sequence into {@link #published}. The
+ * writer thread hands the slots to the sink in sequence order, so the events
+ * are logged in the order they were claimed. No lock is taken and nothing is
+ * allocated on the handler side.
+ * <p>
+ * When the ring is full a handler either waits for the writer to free a slot
+ * (blocking mode) or drops the event. Both cases are counted.
+ * <p>
+ * If the sink fails, the ring is closed as having failed: the events which
+ * were not written yet are lost and the handlers have to write any further
+ * event themselves.
+ */
+class AuditEventRing {
+  static final Logger LOG = LoggerFactory.getLogger(AuditEventRing.class);
+
+  /** How long the writer sleeps when there is nothing to write. */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  /** How long a blocked handler sleeps before checking for space again. */
+  private static final long FULL_PARK_NANOS =
+      TimeUnit.MICROSECONDS.toNanos(50);
+  /** How many events the writer writes before releasing their slots. */
+  private static final int RELEASE_INTERVAL = 64;
+  /** Set in {@link #claimed} when the ring is closed. */
+  private static final long CLOSED = 1L << 62;
+
+  /** A slot of the ring, reused for every event that goes through it. */
+  static final class Event {
+    private boolean succeeded;
+    private String userName;
+    private InetAddress addr;
+    private String cmd;
+    private String src;
+    private String dst;
+    private FileStatus status;
+    private CallerContext callerContext;
+    private UserGroupInformation ugi;
+    private DelegationTokenSecretManager dtSecretManager;
+    private String protocol;
+
+    boolean isSucceeded() {
+      return succeeded;
+    }
+
+    String getUserName() {
+      return userName;
+    }
+
+    InetAddress getAddr() {
+      return addr;
+    }
+
+    String getCmd() {
+      return cmd;
+    }
+
+    String getSrc() {
+      return src;
+    }
+
+    String getDst() {
+      return dst;
+    }
+
+    FileStatus getStatus() {
+      return status;
+    }
+
+    CallerContext getCallerContext() {
+      return callerContext;
+    }
+
+    UserGroupInformation getUgi() {
+      return ugi;
+    }
+
+    DelegationTokenSecretManager getDtSecretManager() {
+      return dtSecretManager;
+    }
+
+    String getProtocol() {
+      return protocol;
+    }
+
+    /** Drop the references so that the slot does not pin them. */
+    private void clear() {
+      userName = null;
+      addr = null;
+      cmd = null;
+      src = null;
+      dst = null;
+      status = null;
+      callerContext = null;
+      ugi = null;
+      dtSecretManager = null;
+      protocol = null;
+    }
+  }
+
+  private final Event[] events;
+  /** The sequence last published in each slot. */
+  private final AtomicLongArray published;
+  private final int mask;
+  private final boolean blocking;
+  private final Consumer<Event> sink;
+
+  /**
+   * The next sequence to be claimed by a handler, or'ed with
+   * {@link #CLOSED} once no more sequences may be claimed.
+   */
+  private final AtomicLong claimed = new AtomicLong();
+  /** The next sequence to be written; only updated by the writer. */
+  private volatile long consumed;
+  /** The sequence after the last one claimed before the ring was closed. */
+  private volatile long end = Long.MAX_VALUE;
+  private volatile boolean running = true;
+  private volatile boolean failed;
+
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder blocked = new LongAdder();
+  private final Thread writer;
+
+  /**
+   * @param capacity the number of slots, rounded up to a power of two.
+   * @param blocking whether handlers wait for space when the ring is full,
+   *                 rather than dropping the event.
+   * @param sink writes an event; it is only called from the writer thread.
+   */
+  AuditEventRing(int capacity, boolean blocking, Consumer<Event> sink) {
+    final int size =
+        capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    this.events = new Event[size];
+    this.published = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      events[i] = new Event();
+      published.set(i, -1);
+    }
+    this.mask = size - 1;
+    this.blocking = blocking;
+    this.sink = sink;
+    this.writer = new Thread(this::writeEvents, "AuditLogWriter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  int getCapacity() {
+    return events.length;
+  }
+
+  /**
+   * Add an event to the ring.
+   *
+   * @return false if the event was not added, because the ring is full and
+   *         not blocking, or because it has been closed.
+   */
+  boolean publish(boolean succeeded, String userName, InetAddress addr,
+      String cmd, String src, String dst, FileStatus status,
+      CallerContext callerContext, UserGroupInformation ugi,
+      DelegationTokenSecretManager dtSecretManager, String protocol) {
+    boolean waited = false;
+    long seq;
+    while (true) {
+      seq = claimed.get();
+      if ((seq & CLOSED) != 0) {
+        return false;
+      }
+      if (seq - consumed >= events.length) {
+        if (!blocking) {
+          dropped.increment();
+          return false;
+        }
+        if (!waited) {
+          waited = true;
+          blocked.increment();
+        }
+        LockSupport.parkNanos(this, FULL_PARK_NANOS);
+      } else if (claimed.compareAndSet(seq, seq + 1)) {
+        break;
+      }
+    }
+    final int index = (int) seq & mask;
+    final Event e = events[index];
+    e.succeeded = succeeded;
+    e.userName = userName;
+    e.addr = addr;
+    e.cmd = cmd;
+    e.src = src;
+    e.dst = dst;
+    e.status = status;
+    e.callerContext = callerContext;
+    e.ugi = ugi;
+    e.dtSecretManager = dtSecretManager;
+    e.protocol = protocol;
+    published.set(index, seq);
+    return true;
+  }
+
+  private void writeEvents() {
+    long next = consumed;
+    while (running || next < end) {
+      int written = 0;
+      int index = (int) next & mask;
+      while (published.get(index) == next) {
+        final Event e = events[index];
+        try {
+          sink.accept(e);
+        } catch (Throwable t) {
+          fail(next, t);
+          return;
+        }
+        e.clear();
+        next++;
+        if (++written % RELEASE_INTERVAL == 0) {
+          consumed = next;
+        }
+        index = (int) next & mask;
+      }
+      consumed = next;
+      if (written == 0) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Close the ring after the sink failed to write the event of the given
+   * sequence, so that no handler waits for the writer any more.
+   */
+  private void fail(long seq, Throwable t) {
+    final long last = closeClaims();
+    failed = true;
+    running = false;
+    consumed = seq;
+    LOG.error("Failed to write audit event {}, {} audit events are lost and"
+        + " the following ones are written by the handlers", seq, last - seq,
+        t);
+  }
+
+  /**
+   * Stop handing out sequences.
+   * @return the sequence after the last one claimed.
+   */
+  private long closeClaims() {
+    // A handler which has not claimed its sequence yet fails its CAS.
+    return claimed.getAndUpdate(seq -> seq | CLOSED) & ~CLOSED;
+  }
+
+  /** @return the number of events dropped because the ring was full. */
+  long getDroppedEvents() {
+    return dropped.sum();
+  }
+
+  /** @return the number of events which had to wait for a free slot. */
+  long getBlockedEvents() {
+    return blocked.sum();
+  }
+
+  /** @return the number of events waiting to be written. */
+  long getPendingEvents() {
+    return Math.max(0, (claimed.get() & ~CLOSED) - consumed);
+  }
+
+  /** @return whether the ring still accepts events. */
+  boolean isRunning() {
+    return running;
+  }
+
+  /** @return whether the ring was closed because the sink failed. */
+  boolean isFailed() {
+    return failed;
+  }
+
+  /**
+   * Stop accepting events and wait for the writer to write the events which
+   * have already been added.
+   */
+  void close() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    end = closeClaims();
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join();
+  }
+}
@@ -29,6 +29,11 @@
 
 /**
  * Quota feature for {@link INodeDirectory}. 
+ * <p>
+ * The feature caches the quota usage of the subtree of the directory. Besides
+ * the directories with a quota, it is also kept on the directories whose
+ * quota usage is tracked without a quota, so that their quota usage is known
+ * without walking the subtree.
  */
 public final class DirectoryWithQuotaFeature implements INode.Feature {
   public static final long DEFAULT_NAMESPACE_QUOTA = Long.MAX_VALUE;
@@ -36,10 +41,12 @@ public final class DirectoryWithQuotaFeature implements INode.Feature {
 
   private QuotaCounts quota;
   private QuotaCounts usage;
+  private boolean quotaUsageTracked;
 
   public static class Builder {
     private QuotaCounts quota;
     private QuotaCounts usage;
+    private boolean quotaUsageTracked;
 
     public Builder() {
       this.quota = new QuotaCounts.Builder().nameSpace(DEFAULT_NAMESPACE_QUOTA).
@@ -68,6 +75,11 @@ public Builder typeQuota(StorageType type, long quota) {
       return this;
     }
 
+    public Builder quotaUsageTracked(boolean tracked) {
+      this.quotaUsageTracked = tracked;
+      return this;
+    }
+
     public DirectoryWithQuotaFeature build() {
       return new DirectoryWithQuotaFeature(this);
     }
@@ -76,6 +88,7 @@ public DirectoryWithQuotaFeature build() {
   private DirectoryWithQuotaFeature(Builder builder) {
     this.quota = builder.quota;
     this.usage = builder.usage;
+    this.quotaUsageTracked = builder.quotaUsageTracked;
   }
 
   /** @return the quota set or -1 if it is not set. */
@@ -218,6 +231,20 @@ boolean isQuotaSet() {
         quota.anyTypeSpaceCountGreaterOrEqual(0);
   }
 
+  /** @return true if a quota is set or the quota usage is tracked. */
+  boolean hasCachedUsage() {
+    return isQuotaSet() || quotaUsageTracked;
+  }
+
+  /** @return true if the quota usage is tracked even if no quota is set. */
+  boolean isQuotaUsageTracked() {
+    return quotaUsageTracked;
+  }
+
+  void setQuotaUsageTracked(boolean tracked) {
+    this.quotaUsageTracked = tracked;
+  }
+
   boolean isQuotaByStorageTypeSet() {
     return quota.anyTypeSpaceCountGreaterOrEqual(0);
   }
@@ -248,6 +275,7 @@ private String typeSpaceString() {
   @Override
   public String toString() {
     return "Quota[" + namespaceString() + ", " + storagespaceString() +
-        ", " + typeSpaceString() + "]";
+        ", " + typeSpaceString() +
+        (quotaUsageTracked ? ", quota usage tracked" : "") + "]";
   }
 }
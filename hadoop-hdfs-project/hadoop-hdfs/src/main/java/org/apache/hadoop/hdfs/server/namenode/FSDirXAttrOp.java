@@ -48,6 +48,7 @@
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.CRYPTO_XATTR_FILE_ENCRYPTION_INFO;
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.XATTR_SNAPSHOT_DELETED;
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.CRYPTO_XATTR_ENCRYPTION_ZONE;
+import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.XATTR_QUOTA_USAGE_TRACKED;
 
 public class FSDirXAttrOp {
   private static final XAttr KEYID_XATTR =
@@ -210,6 +211,12 @@ static List<XAttr> unprotectedRemoveXAttrs(
                                               removedXAttrs);
     if (existingXAttrs.size() != newXAttrs.size()) {
       XAttrStorage.updateINodeXAttrs(inode, newXAttrs, snapshotId);
+      for (XAttr xattr : removedXAttrs) {
+        if (XATTR_QUOTA_USAGE_TRACKED.equals(XAttrHelper.getPrefixedName(xattr))) {
+          inode.asDirectory().setQuotaUsageTracked(
+              fsd.getBlockStoragePolicySuite(), false);
+        }
+      }
       return removedXAttrs;
     }
     return null;
@@ -275,6 +282,7 @@ public static INode unprotectedSetXAttrs(
     List<XAttr> existingXAttrs = XAttrStorage.readINodeXAttrs(inode);
     List<XAttr> newXAttrs = setINodeXAttrs(fsd, existingXAttrs, xAttrs, flag);
     final boolean isFile = inode.isFile();
+    boolean trackUsage = false;
 
     for (XAttr xattr : newXAttrs) {
       final String xaName = XAttrHelper.getPrefixedName(xattr);
@@ -333,9 +341,21 @@ public static INode unprotectedSetXAttrs(
         throw new IOException("Can only set '" +
             XATTR_SNAPSHOT_DELETED + "' on a snapshot root.");
       }
+
+      if (XATTR_QUOTA_USAGE_TRACKED.equals(xaName)) {
+        if (!inode.isDirectory()) {
+          throw new IOException("Can only set '" +
+              XATTR_QUOTA_USAGE_TRACKED + "' on a directory.");
+        }
+        trackUsage = true;
+      }
     }
 
     XAttrStorage.updateINodeXAttrs(inode, newXAttrs, iip.getLatestSnapshotId());
+    if (trackUsage && !inode.isQuotaUsageTracked()) {
+      inode.asDirectory().setQuotaUsageTracked(fsd.getBlockStoragePolicySuite(),
+          true);
+    }
     return inode;
   }
 
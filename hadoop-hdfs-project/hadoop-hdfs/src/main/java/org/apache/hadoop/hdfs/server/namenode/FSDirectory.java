@@ -63,6 +63,7 @@
 import org.apache.hadoop.hdfs.util.ByteArray;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.util.Time;
@@ -97,6 +98,7 @@
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.CRYPTO_XATTR_ENCRYPTION_ZONE;
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.SECURITY_XATTR_UNREADABLE_BY_SUPERUSER;
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.XATTR_SATISFY_STORAGE_POLICY;
+import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.XATTR_QUOTA_USAGE_TRACKED;
 import static org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot.CURRENT_STATE_ID;
 
 /**
@@ -259,30 +261,35 @@ public void setINodeAttributeProvider(
    * The directory lock dirLock provided redundant locking.
    * It has been used whenever namesystem.fsLock was used.
    * dirLock is now removed and utility methods to acquire and release dirLock
-   * remain as placeholders only
+   * remain as placeholders only. The FSDirectory state is guarded by the
+   * {@link RwLockMode#FS} part of the namesystem lock.
    */
   void readLock() {
-    assert namesystem.hasReadLock() : "Should hold namesystem read lock";
+    assert namesystem.hasReadLock(RwLockMode.FS) :
+        "Should hold namesystem read lock";
   }
 
   void readUnlock() {
-    assert namesystem.hasReadLock() : "Should hold namesystem read lock";
+    assert namesystem.hasReadLock(RwLockMode.FS) :
+        "Should hold namesystem read lock";
   }
 
   void writeLock() {
-    assert namesystem.hasWriteLock() : "Should hold namesystem write lock";
+    assert namesystem.hasWriteLock(RwLockMode.FS) :
+        "Should hold namesystem write lock";
   }
 
   void writeUnlock() {
-    assert namesystem.hasWriteLock() : "Should hold namesystem write lock";
+    assert namesystem.hasWriteLock(RwLockMode.FS) :
+        "Should hold namesystem write lock";
   }
 
   boolean hasWriteLock() {
-    return namesystem.hasWriteLock();
+    return namesystem.hasWriteLock(RwLockMode.FS);
   }
 
   boolean hasReadLock() {
-    return namesystem.hasReadLock();
+    return namesystem.hasReadLock(RwLockMode.FS);
   }
 
   @Deprecated // dirLock is obsolete, use namesystem.fsLock instead
@@ -836,10 +843,20 @@ boolean isValidToCreate(String src, INodesInPath iip)
    * replication factor among all snapshots.
    */
   void updateReplicationFactor(Collection<UpdatedReplicationInfo> blocks) {
+    if (blocks.isEmpty()) {
+      return;
+    }
     BlockManager bm = getBlockManager();
-    for (UpdatedReplicationInfo e : blocks) {
-      BlockInfo b = e.block();
-      bm.setReplication(b.getReplication(), e.targetReplication(), b);
+    // Callers may only hold the namespace lock, the replication of the
+    // blocks is guarded by the block manager lock.
+    namesystem.writeLock(RwLockMode.BM);
+    try {
+      for (UpdatedReplicationInfo e : blocks) {
+        BlockInfo b = e.block();
+        bm.setReplication(b.getReplication(), e.targetReplication(), b);
+      }
+    } finally {
+      namesystem.writeUnlock(RwLockMode.BM, "updateReplicationFactor");
     }
   }
 
@@ -949,11 +966,14 @@ public void compute() {
                 + typeQuota + " < consumed " + typeSpace);
           }
         }
+      }
+      if (dir.hasCachedUsage()) {
         if (LOG.isDebugEnabled()) {
           LOG.debug("Setting quota for " + dir + "\n" + myCounts);
         }
-        dir.getDirectoryWithQuotaFeature().setSpaceConsumed(nsConsumed,
-            ssConsumed, tsConsumed);
+        dir.getDirectoryWithQuotaFeature().setSpaceConsumed(
+            myCounts.getNameSpace(), myCounts.getStorageSpace(),
+            myCounts.getTypeSpaces());
       }
 
       synchronized(counts) {
@@ -1095,7 +1115,8 @@ void updateCountNoQuotaCheck(INodesInPath inodesInPath,
   static void unprotectedUpdateCount(INodesInPath inodesInPath,
       int numOfINodes, QuotaCounts counts) {
     for(int i=0; i < numOfINodes; i++) {
-      if (inodesInPath.getINode(i).isQuotaSet()) { // a directory with quota
+      // a directory with quota or with tracked quota usage
+      if (inodesInPath.getINode(i).hasCachedUsage()) {
         inodesInPath.getINode(i).asDirectory().getDirectoryWithQuotaFeature()
             .addSpaceConsumed2Cache(counts);
       }
@@ -1504,6 +1525,13 @@ public final void addToInodeMap(INode inode) {
         if (spsManager != null && spsManager.isEnabled()) {
           addStoragePolicySatisfier((INodeWithAdditionalFields) inode, xaf);
         }
+        if (inode.isDirectory() && xaf != null
+            && xaf.getXAttr(XATTR_QUOTA_USAGE_TRACKED) != null) {
+          // When loading the fsimage the children are not there yet, the
+          // usage is then counted by updateCountForQuota.
+          inode.asDirectory().setQuotaUsageTracked(getBlockStoragePolicySuite(),
+              true);
+        }
       }
     }
   }
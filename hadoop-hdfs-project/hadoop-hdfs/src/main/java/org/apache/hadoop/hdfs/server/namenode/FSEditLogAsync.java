@@ -25,6 +25,7 @@
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -53,7 +54,19 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // only accessed by syncing thread so no synchronization required.
   // queue is unbounded because it's effectively limited by the size
   // of the edit log buffer - ie. a sync will eventually be forced.
-  private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
+  private Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
+
+  // when pipelined, the syncing thread hands each batch to the flush thread
+  // and keeps writing the next batch into the other half of the double
+  // buffer while the previous one is in flight to the journals.  holding a
+  // single batch bounds the edits outstanding to the one being flushed, the
+  // one queued and the one being written.
+  private final boolean pipelined;
+  private final BlockingQueue<Deque<Edit>> flushQ =
+      new ArrayBlockingQueue<>(1);
+  private Thread flushThread;
+  // tells the flush thread to exit once the queued batches are flushed.
+  private AtomicBoolean stopFlushing;
 
   private long lastFull = 0;
 
@@ -67,6 +80,9 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
             DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT);
 
     editPendingQ = new ArrayBlockingQueue<>(editPendingQSize);
+    pipelined = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_DEFAULT);
   }
 
   private boolean isSyncThreadAlive() {
@@ -80,6 +96,13 @@ private void startSyncThread() {
       if (!isSyncThreadAlive()) {
         syncThread = new Thread(this, this.getClass().getSimpleName());
         syncThread.start();
+        if (pipelined) {
+          final AtomicBoolean stop = new AtomicBoolean();
+          stopFlushing = stop;
+          flushThread = new Thread(() -> flushBatches(stop),
+              this.getClass().getSimpleName() + "Flusher");
+          flushThread.start();
+        }
       }
     }
   }
@@ -96,9 +119,43 @@ private void stopSyncThread() {
           syncThread = null;
         }
       }
+      if (flushThread != null) {
+        try {
+          stopFlushThread();
+        } catch (InterruptedException e) {
+          // we're quitting anyway.  the flush thread still exits once the
+          // queued batches are flushed.
+        } finally {
+          stopFlushing.set(true);
+          flushThread = null;
+          stopFlushing = null;
+        }
+      }
     }
   }
 
+  // the flush thread is not interrupted since that would abort a flush to
+  // the journals.  the batch left by the sync thread is handed over and the
+  // flush thread exits once every queued batch is flushed, so every deferred
+  // call gets a response.
+  private void stopFlushThread() throws InterruptedException {
+    while (!syncWaitQ.isEmpty() && flushThread.isAlive()) {
+      if (flushQ.offer(syncWaitQ, 100, TimeUnit.MILLISECONDS)) {
+        syncWaitQ = new ArrayDeque<Edit>();
+      }
+    }
+    stopFlushing.set(true);
+    flushThread.join();
+    // only left behind if the flush thread died.
+    final RuntimeException ex = new IllegalStateException(
+        "Edit log flush thread stopped before syncing the edits");
+    Deque<Edit> batch;
+    while ((batch = flushQ.poll()) != null) {
+      notifyBatch(batch, ex);
+    }
+    notifyBatch(syncWaitQ, ex);
+  }
+
   @VisibleForTesting
   @Override
   public void restart() {
@@ -259,16 +316,12 @@ public void run() {
           metrics.setPendingEditsCount(0);
         }
         if (doSync) {
-          // normally edit log exceptions cause the NN to terminate, but tests
-          // relying on ExitUtil.terminate need to see the exception.
-          RuntimeException syncEx = null;
-          try {
-            logSync(getLastWrittenTxId());
-          } catch (RuntimeException ex) {
-            syncEx = ex;
-          }
-          while ((edit = syncWaitQ.poll()) != null) {
-            edit.logSyncNotify(syncEx);
+          if (pipelined) {
+            // blocks only while another batch is already waiting to flush.
+            flushQ.put(syncWaitQ);
+            syncWaitQ = new ArrayDeque<Edit>();
+          } else {
+            syncAndNotify(syncWaitQ);
           }
         }
       }
@@ -279,6 +332,43 @@ public void run() {
     }
   }
 
+  private void flushBatches(AtomicBoolean stop) {
+    try {
+      while (!stop.get() || !flushQ.isEmpty()) {
+        Deque<Edit> batch = flushQ.poll(100, TimeUnit.MILLISECONDS);
+        if (batch != null) {
+          syncAndNotify(batch);
+        }
+      }
+      LOG.info(Thread.currentThread().getName() + " was stopped, exiting");
+    } catch (InterruptedException ie) {
+      LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
+    } catch (Throwable t) {
+      terminate(t);
+    }
+  }
+
+  // every edit in the batch was written before the batch was handed over,
+  // so syncing up to the last written txid makes all of them durable.
+  private void syncAndNotify(Deque<Edit> batch) {
+    // normally edit log exceptions cause the NN to terminate, but tests
+    // relying on ExitUtil.terminate need to see the exception.
+    RuntimeException syncEx = null;
+    try {
+      logSync(getLastWrittenTxId());
+    } catch (RuntimeException ex) {
+      syncEx = ex;
+    }
+    notifyBatch(batch, syncEx);
+  }
+
+  private static void notifyBatch(Deque<Edit> batch, RuntimeException ex) {
+    Edit edit;
+    while ((edit = batch.poll()) != null) {
+      edit.logSyncNotify(ex);
+    }
+  }
+
   private void terminate(Throwable t) {
     String message = "Exception while edit logging: "+t.getMessage();
     LOG.error(message, t);
@@ -235,6 +235,8 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     Counter counter = prog.getCounter(Phase.LOADING_EDITS, step);
     long lastLogTime = timer.monotonicNow();
     long lastInodeId = fsNamesys.dir.getLastInodeId();
+    final ObserverNamespaceCache namespaceCache =
+        fsNamesys.getNamespaceCache();
     
     try {
       while (true) {
@@ -302,6 +304,11 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
              "apply edit log operation " + op + ": error " +
              e.getMessage(), recovery, "applying edits");
           }
+          // Drop cached results the op may have changed before its txid
+          // becomes visible to clients reading from an observer.
+          if (namespaceCache != null) {
+            namespaceCache.invalidate(op);
+          }
           // Now that the operation has been successfully decoded and
           // applied, update our bookkeeping.
           incrOpCount(op.opCode, opCounts, step, counter);
@@ -182,13 +182,22 @@ void disableCache() {
       useCache = false;
     }
 
+    /**
+     * Make every reader on the calling thread decode into a new op instance,
+     * so that decoded ops can be handed over to another thread.
+     */
+    static void disableThreadLocalCache() {
+      CACHE.set(null);
+    }
+
     public OpInstanceCache get() {
       return this;
     }
 
     @SuppressWarnings("unchecked")
     public <T extends FSEditLogOp> T get(FSEditLogOpCodes opCode) {
-      return useCache ? (T)CACHE.get().get(opCode) : (T)newInstance(opCode);
+      final OpInstanceCacheMap map = useCache ? CACHE.get() : null;
+      return map != null ? (T)map.get(opCode) : (T)newInstance(opCode);
     }
 
     private static FSEditLogOp newInstance(FSEditLogOpCodes opCode) {
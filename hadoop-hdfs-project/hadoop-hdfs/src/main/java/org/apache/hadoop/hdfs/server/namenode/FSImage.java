@@ -48,6 +48,7 @@
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.HAUtil;
 import org.apache.hadoop.hdfs.protocol.LayoutVersion;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.RollingUpgradeStartupOption;
@@ -1266,6 +1267,9 @@ private synchronized void saveFSImageInAllDirs(FSNamesystem source,
       }
   
       renameCheckpoint(txid, NameNodeFile.IMAGE_NEW, nnf, false);
+      if (nnf == NameNodeFile.IMAGE) {
+        saveBlockLocations(source, txid);
+      }
   
       // Since we now have a new checkpoint, we can clean up some
       // old edit logs and checkpoints.
@@ -1283,6 +1287,29 @@ private synchronized void saveFSImageInAllDirs(FSNamesystem source,
     prog.endPhase(Phase.SAVING_CHECKPOINT);
   }
 
+  /**
+   * Save the replica locations of the blocks map to each image directory,
+   * if enabled.
+   */
+  private void saveBlockLocations(FSNamesystem source, long txid) {
+    final BlockManager bm = source.getBlockManager();
+    if (bm != null && bm.isBlockLocationsCheckpointEnabled()) {
+      bm.saveBlockLocations(getBlockLocationsFiles(), txid);
+    }
+  }
+
+  /**
+   * @return the files the replica locations are saved to, one in each image
+   *         directory.
+   */
+  public List<File> getBlockLocationsFiles() {
+    final List<File> files = new ArrayList<>();
+    for (StorageDirectory sd : storage.dirIterable(NameNodeDirType.IMAGE)) {
+      files.add(NNStorage.getStorageFile(sd, NameNodeFile.BLOCK_LOCATIONS));
+    }
+    return files;
+  }
+
   /**
    * Purge any files in the storage directories that are no longer
    * necessary.
@@ -426,6 +426,9 @@ public void load(File curFile) throws IOException {
         }
 
         loadFilesUnderConstruction(in, supportSnapshot, counter);
+        if (supportSnapshot) {
+          namesystem.getSnapshotManager().initLatestSubtreeDiffIds();
+        }
         prog.endStep(Phase.LOADING_FSIMAGE, step);
         // Now that the step is finished, set counter equal to total to adjust
         // for possible under-counting due to reference inodes.
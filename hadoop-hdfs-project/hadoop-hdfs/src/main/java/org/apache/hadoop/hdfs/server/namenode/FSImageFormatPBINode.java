@@ -73,6 +73,7 @@
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 
 import org.apache.hadoop.util.Preconditions;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.thirdparty.com.google.common.collect.ImmutableList;
 import org.apache.hadoop.thirdparty.protobuf.ByteString;
 
@@ -433,9 +434,13 @@ void loadINodeSectionInParallel(ExecutorService service,
         }
         service.submit(() -> {
           try {
-            totalLoaded.addAndGet(loadINodesInSection(ins, null));
+            long start = Time.monotonicNow();
+            int loaded = loadINodesInSection(ins, null);
+            totalLoaded.addAndGet(loaded);
             prog.setCount(Phase.LOADING_FSIMAGE, currentStep,
                 totalLoaded.get());
+            logSubSectionThroughput("inodes", s, loaded,
+                Time.monotonicNow() - start);
           } catch (Exception e) {
             LOG.error("An exception occurred loading INodes in parallel", e);
             exceptions.add(new IOException(e));
@@ -467,6 +472,19 @@ void loadINodeSectionInParallel(ExecutorService service,
           totalLoaded.get());
     }
 
+    /**
+     * Log how many entries a loader thread decoded from one sub-section and
+     * at what rate, so that slow or skewed sub-sections can be spotted.
+     */
+    public static void logSubSectionThroughput(String what,
+        FileSummary.Section section, long count, long elapsedMs) {
+      LOG.info("Thread {} loaded {} {} from the sub-section at offset {} " +
+          "({} bytes) in {} ms ({} per second)",
+          Thread.currentThread().getName(), count, what, section.getOffset(),
+          section.getLength(), elapsedMs,
+          count * 1000 / Math.max(1, elapsedMs));
+    }
+
     /**
      * Load the under-construction files section, and update the lease map
      */
@@ -463,8 +463,19 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case SNAPSHOT:
           snapshotLoader.loadSnapshotSection(in);
           break;
-        case SNAPSHOT_DIFF:
-          snapshotLoader.loadSnapshotDiffSection(in);
+        case SNAPSHOT_DIFF: {
+          Step step = new Step(StepType.SNAPSHOT_DIFFS);
+          prog.beginStep(Phase.LOADING_FSIMAGE, step);
+          stageSubSections = getSubSectionsOfName(
+              subSections, SectionName.SNAPSHOT_DIFF_SUB);
+          if (loadInParallel && stageSubSections.size() > 0) {
+            snapshotLoader.loadSnapshotDiffSectionInParallel(executorService,
+                stageSubSections, summary.getCodec(), prog, step);
+          } else {
+            snapshotLoader.loadSnapshotDiffSection(in, prog, step);
+          }
+          prog.endStep(Phase.LOADING_FSIMAGE, step);
+        }
           break;
         case SECRET_MANAGER: {
           prog.endStep(Phase.LOADING_FSIMAGE, currentStep);
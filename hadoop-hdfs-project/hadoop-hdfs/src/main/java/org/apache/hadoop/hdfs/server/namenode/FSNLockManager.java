@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.function.Supplier;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.hdfs.util.RwLockMode;
+
+/**
+ * The lock manager guarding the FSNamesystem state. Every request names the
+ * {@link RwLockMode} it is interested in; it is up to the implementation
+ * whether different modes are backed by different locks. An implementation
+ * is selected through
+ * {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_KEY}
+ * and must provide a constructor taking a
+ * {@link org.apache.hadoop.conf.Configuration} and a
+ * {@link org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation}.
+ * <p>
+ * A thread holding a {@link RwLockMode#BM} lock must not try to acquire a
+ * {@link RwLockMode#FS} or {@link RwLockMode#GLOBAL} lock, otherwise it may
+ * deadlock with the fine-grained implementation.
+ */
+interface FSNLockManager {
+
+  void readLock(RwLockMode lockMode);
+
+  void readLockInterruptibly(RwLockMode lockMode)
+      throws InterruptedException;
+
+  void readUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier);
+
+  void writeLock(RwLockMode lockMode);
+
+  void writeLockInterruptibly(RwLockMode lockMode)
+      throws InterruptedException;
+
+  void writeUnlock(RwLockMode lockMode, String opName,
+      boolean suppressWriteLockReport, Supplier<String> lockReportInfoSupplier);
+
+  /**
+   * @return true if the current thread holds the read or the write lock
+   *         of the given mode.
+   */
+  boolean hasReadLock(RwLockMode lockMode);
+
+  /**
+   * @return true if the current thread holds the write lock of the given
+   *         mode.
+   */
+  boolean hasWriteLock(RwLockMode lockMode);
+
+  int getReadHoldCount(RwLockMode lockMode);
+
+  int getWriteHoldCount(RwLockMode lockMode);
+
+  /**
+   * @return the number of threads waiting on the locks of the given mode.
+   */
+  int getQueueLength(RwLockMode lockMode);
+
+  long getNumOfReadLockLongHold(RwLockMode lockMode);
+
+  long getNumOfWriteLockLongHold(RwLockMode lockMode);
+
+  void setMetricsEnabled(boolean metricsEnabled);
+
+  boolean isMetricsEnabled();
+
+  void setReadLockReportingThresholdMs(long readLockReportingThresholdMs);
+
+  long getReadLockReportingThresholdMs();
+
+  void setWriteLockReportingThresholdMs(long writeLockReportingThresholdMs);
+
+  long getWriteLockReportingThresholdMs();
+
+  /**
+   * @return the underlying lock which guards the given mode. For
+   *         {@link RwLockMode#GLOBAL} the first lock to be acquired is
+   *         returned.
+   */
+  @VisibleForTesting
+  FSNamesystemLock getLockForTests(RwLockMode lockMode);
+}
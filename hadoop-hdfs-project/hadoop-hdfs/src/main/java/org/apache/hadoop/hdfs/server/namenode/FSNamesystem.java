@@ -137,6 +137,7 @@
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.VersionInfo;
+import org.apache.hadoop.util.Timer;
 
 import static org.apache.hadoop.util.Time.now;
 import static org.apache.hadoop.util.Time.monotonicNow;
@@ -152,6 +153,7 @@
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
@@ -315,6 +317,7 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.hdfs.web.JsonUtil;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
@@ -623,7 +626,7 @@ private boolean isFromProxyUser(CallerContext ctx) {
   private final int numCommittedAllowed;
 
   /** Lock to protect FSNamesystem. */
-  private final FSNamesystemLock fsLock;
+  private final FSNLockManager fsLock;
 
   /** 
    * Checkpoint lock to protect FSNamesystem modification on standby NNs.
@@ -671,6 +674,9 @@ private boolean isFromProxyUser(CallerContext ctx) {
 
   private INodeAttributeProvider inodeAttributeProvider;
 
+  /** Cache of getFileInfo results used in observer state, or null. */
+  private final ObserverNamespaceCache namespaceCache;
+
   /**
    * If the NN is in safemode, and not due to manual / low resources, we
    * assume it must be because of startup. If the NN had low resources during
@@ -873,7 +879,7 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     this.contextFieldSeparator =
         conf.get(HADOOP_CALLER_CONTEXT_SEPARATOR_KEY,
             HADOOP_CALLER_CONTEXT_SEPARATOR_DEFAULT);
-    fsLock = new FSNamesystemLock(conf, detailedLockHoldTimeMetrics);
+    fsLock = createLockManager(conf, detailedLockHoldTimeMetrics);
     cpLock = new ReentrantLock();
 
     this.fsImage = fsImage;
@@ -1056,6 +1062,25 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
         inodeAttributeProvider = ReflectionUtils.newInstance(klass, conf);
         LOG.info("Using INode attribute provider: " + klass.getName());
       }
+      if (conf.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_ENABLED_KEY,
+          DFSConfigKeys.DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_ENABLED_DEFAULT)
+          && inodeAttributeProvider == null) {
+        this.namespaceCache = new ObserverNamespaceCache(
+            conf.getInt(DFSConfigKeys
+                    .DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_MAX_ENTRIES_KEY,
+                DFSConfigKeys
+                    .DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_MAX_ENTRIES_DEFAULT),
+            conf.getLong(DFSConfigKeys
+                    .DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TXID_WINDOW_KEY,
+                DFSConfigKeys
+                    .DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TXID_WINDOW_DEFAULT),
+            getNamespaceCacheTtl(conf),
+            () -> getFSImage().getLastAppliedOrWrittenTxId(), new Timer());
+        LOG.info("Observer namespace cache is enabled");
+      } else {
+        this.namespaceCache = null;
+      }
       this.maxListOpenFilesResponses = conf.getInt(
           DFSConfigKeys.DFS_NAMENODE_LIST_OPENFILES_NUM_RESPONSES,
           DFSConfigKeys.DFS_NAMENODE_LIST_OPENFILES_NUM_RESPONSES_DEFAULT
@@ -1082,6 +1107,30 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
   }
 
+  /**
+   * Create the lock manager configured by
+   * {@link DFSConfigKeys#DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_KEY}.
+   */
+  private static FSNLockManager createLockManager(Configuration conf,
+      MutableRatesWithAggregation detailedHoldTimeMetrics) {
+    String className = conf.getTrimmed(
+        DFSConfigKeys.DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_DEFAULT);
+    LOG.info("FSNamesystem lock model: {}", className);
+    try {
+      Class<? extends FSNLockManager> clazz = conf.getClassByName(className)
+          .asSubclass(FSNLockManager.class);
+      Constructor<? extends FSNLockManager> constructor =
+          clazz.getDeclaredConstructor(Configuration.class,
+              MutableRatesWithAggregation.class);
+      constructor.setAccessible(true);
+      return constructor.newInstance(conf, detailedHoldTimeMetrics);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Failed to create the lock model "
+          + className, e);
+    }
+  }
+
   private static void checkForAsyncLogEnabledByOldConfigs(Configuration conf) {
     // dfs.namenode.audit.log.async is no longer in use. Use log4j properties instead.
     if (conf.getBoolean("dfs.namenode.audit.log.async", false)) {
@@ -1274,6 +1323,7 @@ void loadFSImage(StartupOption startOpt) throws IOException {
       MetaRecoveryContext recovery = startOpt.createRecoveryContext();
       final boolean staleImage
           = fsImage.recoverTransitionRead(startOpt, this, recovery);
+      blockManager.loadBlockLocations(fsImage.getBlockLocationsFiles());
       if (RollingUpgradeStartupOption.ROLLBACK.matches(startOpt)) {
         rollingUpgradeInfo = null;
       }
@@ -1393,6 +1443,9 @@ void startActiveServices() throws IOException {
     LOG.info("Starting services required for active state");
     writeLock();
     try {
+      if (namespaceCache != null) {
+        namespaceCache.clear();
+      }
       FSEditLog editLog = getFSImage().getEditLog();
       
       if (!editLog.isOpenForWrite()) {
@@ -1575,6 +1628,9 @@ void startStandbyServices(final Configuration conf, boolean isObserver)
       getFSImage().editLog.initSharedJournalsForRead();
     }
     blockManager.setPostponeBlocksFromFuture(true);
+    if (namespaceCache != null) {
+      namespaceCache.clear();
+    }
 
     // Disable quota checks while in standby.
     dir.disableQuotaChecks();
@@ -1794,73 +1850,115 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
 
   @Override
   public void readLock() {
-    this.fsLock.readLock();
+    readLock(RwLockMode.GLOBAL);
+  }
+
+  @Override
+  public void readLock(RwLockMode lockMode) {
+    this.fsLock.readLock(lockMode);
   }
 
   @Override
   public void readLockInterruptibly() throws InterruptedException {
-    this.fsLock.readLockInterruptibly();
+    this.fsLock.readLockInterruptibly(RwLockMode.GLOBAL);
   }
 
   @Override
   public void readUnlock() {
-    this.fsLock.readUnlock();
+    readUnlock(RwLockMode.GLOBAL, FSNamesystemLock.OP_NAME_OTHER);
   }
 
   @Override
   public void readUnlock(String opName) {
-    this.fsLock.readUnlock(opName);
+    readUnlock(RwLockMode.GLOBAL, opName);
+  }
+
+  @Override
+  public void readUnlock(RwLockMode lockMode, String opName) {
+    this.fsLock.readUnlock(lockMode, opName, null);
   }
 
   public void readUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
-    this.fsLock.readUnlock(opName, lockReportInfoSupplier);
+    readUnlock(RwLockMode.GLOBAL, opName, lockReportInfoSupplier);
+  }
+
+  public void readUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    this.fsLock.readUnlock(lockMode, opName, lockReportInfoSupplier);
   }
 
   @Override
   public void writeLock() {
-    this.fsLock.writeLock();
+    writeLock(RwLockMode.GLOBAL);
+  }
+
+  @Override
+  public void writeLock(RwLockMode lockMode) {
+    this.fsLock.writeLock(lockMode);
   }
 
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
-    this.fsLock.writeLockInterruptibly();
+    this.fsLock.writeLockInterruptibly(RwLockMode.GLOBAL);
   }
 
   @Override
   public void writeUnlock() {
-    this.fsLock.writeUnlock();
+    writeUnlock(RwLockMode.GLOBAL, FSNamesystemLock.OP_NAME_OTHER);
   }
 
   @Override
   public void writeUnlock(String opName) {
-    this.fsLock.writeUnlock(opName);
+    writeUnlock(RwLockMode.GLOBAL, opName);
+  }
+
+  @Override
+  public void writeUnlock(RwLockMode lockMode, String opName) {
+    this.fsLock.writeUnlock(lockMode, opName, false, null);
   }
 
   public void writeUnlock(String opName, boolean suppressWriteLockReport) {
-    this.fsLock.writeUnlock(opName, suppressWriteLockReport);
+    this.fsLock.writeUnlock(RwLockMode.GLOBAL, opName,
+        suppressWriteLockReport, null);
   }
 
   public void writeUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
-    this.fsLock.writeUnlock(opName, lockReportInfoSupplier);
+    writeUnlock(RwLockMode.GLOBAL, opName, lockReportInfoSupplier);
+  }
+
+  public void writeUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    this.fsLock.writeUnlock(lockMode, opName, false, lockReportInfoSupplier);
   }
 
   @Override
   public boolean hasWriteLock() {
-    return this.fsLock.isWriteLockedByCurrentThread();
+    return hasWriteLock(RwLockMode.GLOBAL);
+  }
+
+  @Override
+  public boolean hasWriteLock(RwLockMode lockMode) {
+    return this.fsLock.hasWriteLock(lockMode);
   }
+
   @Override
   public boolean hasReadLock() {
-    return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
+    return hasReadLock(RwLockMode.GLOBAL);
+  }
+
+  @Override
+  public boolean hasReadLock(RwLockMode lockMode) {
+    return this.fsLock.hasReadLock(lockMode);
   }
 
   public int getReadHoldCount() {
-    return this.fsLock.getReadHoldCount();
+    return this.fsLock.getReadHoldCount(RwLockMode.GLOBAL);
   }
 
   public int getWriteHoldCount() {
-    return this.fsLock.getWriteHoldCount();
+    return this.fsLock.getWriteHoldCount(RwLockMode.GLOBAL);
   }
 
   /** Lock the checkpoint lock */
@@ -1925,10 +2023,33 @@ void close() {
       } finally {
         IOUtils.cleanupWithLogger(LOG, dir);
         IOUtils.cleanupWithLogger(LOG, fsImage);
+        closeAuditLoggers();
+      }
+    }
+  }
+
+  private void closeAuditLoggers() {
+    if (auditLoggers == null) {
+      return;
+    }
+    for (AuditLogger logger : auditLoggers) {
+      if (logger instanceof FSNamesystemAuditLogger) {
+        ((FSNamesystemAuditLogger) logger).close();
       }
     }
   }
 
+  private AuditEventRing getAuditEventRing() {
+    if (auditLoggers != null) {
+      for (AuditLogger logger : auditLoggers) {
+        if (logger instanceof FSNamesystemAuditLogger) {
+          return ((FSNamesystemAuditLogger) logger).getRing();
+        }
+      }
+    }
+    return null;
+  }
+
   @Override
   public boolean isRunning() {
     return fsRunning;
@@ -2774,7 +2895,9 @@ private HdfsFileStatus startFileInt(String src,
 
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    // The block manager lock is only taken to recover the lease of an
+    // existing file.
+    writeLock(RwLockMode.FS);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create file" + src);
@@ -2836,7 +2959,8 @@ private HdfsFileStatus startFileInt(String src,
         dir.writeUnlock();
       }
     } finally {
-      writeUnlock("create", getLockReportInfoSupplier(src, null, stat));
+      writeUnlock(RwLockMode.FS, "create",
+          getLockReportInfoSupplier(src, null, stat));
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -3319,14 +3443,14 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
     try {
-      writeLock();
+      writeLock(RwLockMode.FS);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot rename " + src);
         ret = FSDirRenameOp.renameToInt(dir, pc, src, dst, logRetryCache);
       } finally {
         FileStatus status = ret != null ? ret.auditStat : null;
-        writeUnlock(operationName,
+        writeUnlock(RwLockMode.FS, operationName,
             getLockReportInfoSupplier(src, dst, status));
       }
     } catch (AccessControlException e)  {
@@ -3351,7 +3475,7 @@ void renameTo(final String src, final String dst,
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
     try {
-      writeLock();
+      writeLock(RwLockMode.FS);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot rename " + src);
@@ -3359,7 +3483,7 @@ void renameTo(final String src, final String dst,
             options);
       } finally {
         FileStatus status = res != null ? res.auditStat : null;
-        writeUnlock(operationName,
+        writeUnlock(RwLockMode.FS, operationName,
             getLockReportInfoSupplier(src, dst, status));
       }
     } catch (AccessControlException e) {
@@ -3394,7 +3518,9 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
     FSPermissionChecker.setOperationType(operationName);
     boolean ret = false;
     try {
-      writeLock();
+      // The blocks of the deleted files are removed from the block manager
+      // later by the MarkedDeleteBlockScrubber.
+      writeLock(RwLockMode.FS);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot delete " + src);
@@ -3402,7 +3528,8 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
             this, pc, src, recursive, logRetryCache);
         ret = toRemovedBlocks != null;
       } finally {
-        writeUnlock(operationName, getLockReportInfoSupplier(src));
+        writeUnlock(RwLockMode.FS, operationName,
+            getLockReportInfoSupplier(src));
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
@@ -3432,7 +3559,7 @@ FSPermissionChecker getPermissionChecker()
   void removeLeasesAndINodes(List<Long> removedUCFiles,
       List<INode> removedINodes,
       final boolean acquireINodeMapLock) {
-    assert hasWriteLock();
+    assert hasWriteLock(RwLockMode.FS);
     for(long i : removedUCFiles) {
       leaseManager.removeLease(i);
     }
@@ -3478,12 +3605,27 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink,
     HdfsFileStatus stat = null;
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
+    final boolean useNamespaceCache = namespaceCache != null
+        && !needLocation && !needBlockToken && isObserver()
+        && ObserverNamespaceCache.isCacheable(src);
+    if (useNamespaceCache) {
+      Optional<HdfsFileStatus> cached = namespaceCache.get(src, pc.getUser(),
+          pc.getGroups(), resolveLink);
+      if (cached != null) {
+        logAuditEvent(true, operationName, src);
+        return cached.orElse(null);
+      }
+    }
     try {
       readLock();
       try {
         checkOperation(OperationCategory.READ);
         stat = FSDirStatAndListingOp.getFileInfo(
             dir, pc, src, resolveLink, needLocation, needBlockToken);
+        if (useNamespaceCache && isObserver()) {
+          namespaceCache.put(src, pc.getUser(), pc.getGroups(), resolveLink,
+              stat);
+        }
       } finally {
         readUnlock(operationName, getLockReportInfoSupplier(src));
       }
@@ -4441,6 +4583,7 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
       @Nonnull SlowPeerReports slowPeers,
       @Nonnull SlowDiskReports slowDisks)
           throws IOException {
+    final HeartbeatResponse response;
     readLock();
     try {
       //get datanode commands
@@ -4461,11 +4604,13 @@ nodeReg, reports, getBlockPoolId(), cacheCapacity, cacheUsed,
       Set<String> slownodes = DatanodeManager.getSlowNodesUuidSet();
       boolean isSlownode = slownodes.contains(nodeReg.getDatanodeUuid());
 
-      return new HeartbeatResponse(cmds, haState, rollingUpgradeInfo,
+      response = new HeartbeatResponse(cmds, haState, rollingUpgradeInfo,
           blockReportLeaseId, isSlownode);
     } finally {
       readUnlock("handleHeartbeat");
     }
+    blockManager.addSavedBlockLocations(nodeReg);
+    return response;
   }
 
   /**
@@ -4726,6 +4871,50 @@ private NNStorage getNNStorage() {
     return getFSImage().getStorage();
   }
 
+  @Metric(value = {"AuditEventsDropped",
+      "Number of audit events dropped because the audit ring was full"},
+      type = Metric.Type.COUNTER)
+  public long getAuditEventsDropped() {
+    final AuditEventRing ring = getAuditEventRing();
+    return ring == null ? 0 : ring.getDroppedEvents();
+  }
+
+  @Metric(value = {"AuditEventsBlocked",
+      "Number of audit events which waited for space in the audit ring"},
+      type = Metric.Type.COUNTER)
+  public long getAuditEventsBlocked() {
+    final AuditEventRing ring = getAuditEventRing();
+    return ring == null ? 0 : ring.getBlockedEvents();
+  }
+
+  @Metric({"AuditEventsPending",
+      "Number of audit events in the audit ring waiting to be written"})
+  public long getAuditEventsPending() {
+    final AuditEventRing ring = getAuditEventRing();
+    return ring == null ? 0 : ring.getPendingEvents();
+  }
+
+  @Metric(value = {"ProvisionalReplicasAdded",
+      "Number of replicas added from the saved block locations at startup"},
+      type = Metric.Type.COUNTER)
+  public long getProvisionalReplicasAdded() {
+    return blockManager.getProvisionalReplicasAdded();
+  }
+
+  @Metric(value = {"ProvisionalReplicasValidated",
+      "Number of provisional replicas confirmed by a block report"},
+      type = Metric.Type.COUNTER)
+  public long getProvisionalReplicasValidated() {
+    return blockManager.getProvisionalReplicasValidated();
+  }
+
+  @Metric(value = {"ProvisionalReplicasInvalidated",
+      "Number of provisional replicas not confirmed by a block report"},
+      type = Metric.Type.COUNTER)
+  public long getProvisionalReplicasInvalidated() {
+    return blockManager.getProvisionalReplicasInvalidated();
+  }
+
   @Metric({"MissingBlocks", "Number of missing blocks"})
   public long getMissingBlocksCount() {
     // not locking
@@ -4949,21 +5138,21 @@ public float getReconstructionQueuesInitProgress() {
   @Metric({"LockQueueLength", "Number of threads waiting to " +
       "acquire FSNameSystemLock"})
   public int getFsLockQueueLength() {
-    return fsLock.getQueueLength();
+    return fsLock.getQueueLength(RwLockMode.GLOBAL);
   }
 
   @Metric(value = {"ReadLockLongHoldCount", "The number of time " +
           "the read lock has been held for longer than the threshold"},
           type = Metric.Type.COUNTER)
   public long getNumOfReadLockLongHold() {
-    return fsLock.getNumOfReadLockLongHold();
+    return fsLock.getNumOfReadLockLongHold(RwLockMode.GLOBAL);
   }
 
   @Metric(value = {"WriteLockLongHoldCount", "The number of time " +
           "the write lock has been held for longer than the threshold"},
           type = Metric.Type.COUNTER)
   public long getNumOfWriteLockLongHold() {
-    return fsLock.getNumOfWriteLockLongHold();
+    return fsLock.getNumOfWriteLockLongHold(RwLockMode.GLOBAL);
   }
 
   int getNumberOfDatanodes(DatanodeReportType type) {
@@ -7115,12 +7304,12 @@ public void setEditLogTailerForTests(EditLogTailer tailer) {
   
   @VisibleForTesting
   void setFsLockForTests(ReentrantReadWriteLock lock) {
-    this.fsLock.coarseLock = lock;
+    this.fsLock.getLockForTests(RwLockMode.GLOBAL).coarseLock = lock;
   }
   
   @VisibleForTesting
   public ReentrantReadWriteLock getFsLockForTests() {
-    return fsLock.coarseLock;
+    return fsLock.getLockForTests(RwLockMode.GLOBAL).coarseLock;
   }
   
   @VisibleForTesting
@@ -8865,6 +9054,9 @@ private Supplier<String> getLockReportInfoSupplier(String src, String dst,
   @VisibleForTesting
   static class FSNamesystemAuditLogger extends DefaultAuditLogger {
 
+    /** Hands the events to a writer thread; null if they are written here. */
+    private volatile AuditEventRing ring;
+
     @Override
     public void initialize(Configuration conf) {
       isCallerContextEnabled = conf.getBoolean(
@@ -8882,6 +9074,21 @@ public void initialize(Configuration conf) {
 
       debugCmdSet.addAll(Arrays.asList(conf.getTrimmedStrings(
           DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST)));
+
+      final int ringSize = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_DEFAULT);
+      if (ringSize > 0 && ring == null) {
+        ring = new AuditEventRing(ringSize, conf.getBoolean(
+            DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BLOCKING_KEY,
+            DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BLOCKING_DEFAULT),
+            e -> formatAuditEvent(e.isSucceeded(), e.getUserName(),
+                e.getAddr(), e.getCmd(), e.getSrc(), e.getDst(), e.getStatus(),
+                e.getCallerContext(), e.getUgi(), e.getDtSecretManager(),
+                e.getProtocol()));
+        LOG.info("Audit events are written through a ring of {} events",
+            ring.getCapacity());
+      }
     }
 
     @Override
@@ -8892,63 +9099,82 @@ public void logAuditEvent(boolean succeeded, String userName,
 
       if (AUDIT_LOG.isDebugEnabled() ||
           (AUDIT_LOG.isInfoEnabled() && !debugCmdSet.contains(cmd))) {
-        final StringBuilder sb = STRING_BUILDER.get();
-        src = escapeJava(src);
-        dst = escapeJava(dst);
-        sb.setLength(0);
-        String ipAddr = addr != null ? "/" + addr.getHostAddress() : "null";
-        sb.append("allowed=").append(succeeded).append("\t")
-            .append("ugi=").append(userName).append("\t")
-            .append("ip=").append(ipAddr).append("\t")
-            .append("cmd=").append(cmd).append("\t")
-            .append("src=").append(src).append("\t")
-            .append("dst=").append(dst).append("\t");
-        if (null == status) {
-          sb.append("perm=null");
-        } else {
-          sb.append("perm=")
-              .append(status.getOwner()).append(":")
-              .append(status.getGroup()).append(":")
-              .append(status.getPermission());
+        // The protocol is only known on the handler thread.
+        final String protocol = Server.getProtocol();
+        final AuditEventRing r = ring;
+        // An event which does not fit in the ring is dropped; once the ring
+        // has been closed or has failed the events are written by the handler
+        // again.
+        if (r != null && (r.publish(succeeded, userName, addr, cmd, src, dst,
+            status, callerContext, ugi, dtSecretManager, protocol)
+            || r.isRunning())) {
+          return;
         }
-        if (logTokenTrackingId) {
-          sb.append("\t").append("trackingId=");
-          String trackingId = null;
-          if (ugi != null && dtSecretManager != null
-              && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
-            for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
-              if (tid instanceof DelegationTokenIdentifier) {
-                DelegationTokenIdentifier dtid =
-                    (DelegationTokenIdentifier)tid;
-                trackingId = dtSecretManager.getTokenTrackingId(dtid);
-                break;
-              }
+        formatAuditEvent(succeeded, userName, addr, cmd, src, dst, status,
+            callerContext, ugi, dtSecretManager, protocol);
+      }
+    }
+
+    private void formatAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager, String protocol) {
+      final StringBuilder sb = STRING_BUILDER.get();
+      src = escapeJava(src);
+      dst = escapeJava(dst);
+      sb.setLength(0);
+      String ipAddr = addr != null ? "/" + addr.getHostAddress() : "null";
+      sb.append("allowed=").append(succeeded).append("\t")
+          .append("ugi=").append(userName).append("\t")
+          .append("ip=").append(ipAddr).append("\t")
+          .append("cmd=").append(cmd).append("\t")
+          .append("src=").append(src).append("\t")
+          .append("dst=").append(dst).append("\t");
+      if (null == status) {
+        sb.append("perm=null");
+      } else {
+        sb.append("perm=")
+            .append(status.getOwner()).append(":")
+            .append(status.getGroup()).append(":")
+            .append(status.getPermission());
+      }
+      if (logTokenTrackingId) {
+        sb.append("\t").append("trackingId=");
+        String trackingId = null;
+        if (ugi != null && dtSecretManager != null
+            && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
+          for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
+            if (tid instanceof DelegationTokenIdentifier) {
+              DelegationTokenIdentifier dtid =
+                  (DelegationTokenIdentifier)tid;
+              trackingId = dtSecretManager.getTokenTrackingId(dtid);
+              break;
             }
           }
-          sb.append(trackingId);
         }
-        sb.append("\t").append("proto=")
-            .append(Server.getProtocol());
-        if (isCallerContextEnabled &&
-            callerContext != null &&
-            callerContext.isContextValid()) {
-          sb.append("\t").append("callerContext=");
-          String context = escapeJava(callerContext.getContext());
-          if (context.length() > callerContextMaxLen) {
-            sb.append(context, 0, callerContextMaxLen);
-          } else {
-            sb.append(context);
-          }
-          if (callerContext.getSignature() != null &&
-              callerContext.getSignature().length > 0 &&
-              callerContext.getSignature().length <= callerSignatureMaxLen) {
-            sb.append(":")
-                .append(escapeJava(new String(callerContext.getSignature(),
-                CallerContext.SIGNATURE_ENCODING)));
-          }
+        sb.append(trackingId);
+      }
+      sb.append("\t").append("proto=")
+          .append(protocol);
+      if (isCallerContextEnabled &&
+          callerContext != null &&
+          callerContext.isContextValid()) {
+        sb.append("\t").append("callerContext=");
+        String context = escapeJava(callerContext.getContext());
+        if (context.length() > callerContextMaxLen) {
+          sb.append(context, 0, callerContextMaxLen);
+        } else {
+          sb.append(context);
+        }
+        if (callerContext.getSignature() != null &&
+            callerContext.getSignature().length > 0 &&
+            callerContext.getSignature().length <= callerSignatureMaxLen) {
+          sb.append(":")
+              .append(escapeJava(new String(callerContext.getSignature(),
+              CallerContext.SIGNATURE_ENCODING)));
         }
-        logAuditMessage(sb.toString());
       }
+      logAuditMessage(sb.toString());
     }
 
     @Override
@@ -8963,6 +9189,26 @@ public void logAuditEvent(boolean succeeded, String userName,
     public void logAuditMessage(String message) {
       AUDIT_LOG.info(message);
     }
+
+    @VisibleForTesting
+    AuditEventRing getRing() {
+      return ring;
+    }
+
+    /**
+     * Write the events which are still in the ring and write any further
+     * event on the calling thread.
+     */
+    void close() {
+      final AuditEventRing r = ring;
+      if (r != null) {
+        try {
+          r.close();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
   }
 
   /**
@@ -9111,6 +9357,37 @@ public void checkErasureCodingSupported(String operationName)
     }
   }
 
+  @VisibleForTesting
+  ObserverNamespaceCache getNamespaceCache() {
+    return namespaceCache;
+  }
+
+  /**
+   * @return the time to live of the Observer namespace cache entries, which
+   * is at most the expiry of the cached groups of the users.
+   */
+  private static long getNamespaceCacheTtl(Configuration conf) {
+    final long ttlMs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TTL_KEY,
+        DFSConfigKeys.DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_TTL_DEFAULT,
+        TimeUnit.MILLISECONDS);
+    final long groupsCacheMs = TimeUnit.SECONDS.toMillis(conf.getLong(
+        CommonConfigurationKeysPublic.HADOOP_SECURITY_GROUPS_CACHE_SECS,
+        CommonConfigurationKeysPublic
+            .HADOOP_SECURITY_GROUPS_CACHE_SECS_DEFAULT));
+    return Math.min(ttlMs, groupsCacheMs);
+  }
+
+  /**
+   * Drop the cached file status of the Observer namespace cache, as the
+   * groups of the users or the proxy users may have changed.
+   */
+  void clearNamespaceCache() {
+    if (namespaceCache != null) {
+      namespaceCache.clear();
+    }
+  }
+
   private boolean isObserver() {
     return haEnabled && haContext != null && haContext.getState().getServiceState() == OBSERVER;
   }
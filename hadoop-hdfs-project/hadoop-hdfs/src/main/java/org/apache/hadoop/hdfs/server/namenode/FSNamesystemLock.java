@@ -123,25 +123,41 @@ public Long initialValue() {
 
   @VisibleForTesting
   static final String OP_NAME_OTHER = "OTHER";
-  private static final String READ_LOCK_METRIC_PREFIX = "FSNReadLock";
-  private static final String WRITE_LOCK_METRIC_PREFIX = "FSNWriteLock";
+  static final String FSN_LOCK_NAME = "FSN";
+  private static final String READ_LOCK_METRIC_SUFFIX = "ReadLock";
+  private static final String WRITE_LOCK_METRIC_SUFFIX = "WriteLock";
   private static final String LOCK_METRIC_SUFFIX = "Nanos";
 
+  /** Prefixes of the detailed hold time metrics, e.g. FSNReadLock. */
+  private final String readLockMetricPrefix;
+  private final String writeLockMetricPrefix;
+
   private static final String OVERALL_METRIC_NAME = "Overall";
 
   FSNamesystemLock(Configuration conf,
       MutableRatesWithAggregation detailedHoldTimeMetrics) {
-    this(conf, detailedHoldTimeMetrics, new Timer());
+    this(conf, FSN_LOCK_NAME, detailedHoldTimeMetrics, new Timer());
   }
 
   @VisibleForTesting
   FSNamesystemLock(Configuration conf,
       MutableRatesWithAggregation detailedHoldTimeMetrics, Timer timer) {
+    this(conf, FSN_LOCK_NAME, detailedHoldTimeMetrics, timer);
+  }
+
+  /**
+   * @param lockName Name of the lock, used as the prefix of the detailed
+   *                 hold time metrics.
+   */
+  FSNamesystemLock(Configuration conf, String lockName,
+      MutableRatesWithAggregation detailedHoldTimeMetrics, Timer timer) {
     boolean fair = conf.getBoolean(DFS_NAMENODE_FSLOCK_FAIR_KEY,
         DFS_NAMENODE_FSLOCK_FAIR_DEFAULT);
-    FSNamesystem.LOG.info("fsLock is fair: " + fair);
+    FSNamesystem.LOG.info("{} lock is fair: {}", lockName, fair);
     this.coarseLock = new ReentrantReadWriteLock(fair);
     this.timer = timer;
+    this.readLockMetricPrefix = lockName + READ_LOCK_METRIC_SUFFIX;
+    this.writeLockMetricPrefix = lockName + WRITE_LOCK_METRIC_SUFFIX;
 
     this.writeLockReportingThresholdMs = conf.getLong(
         DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY,
@@ -297,7 +313,7 @@ public void writeUnlock(String opName, boolean suppressWriteLockReport) {
    * for long time will be logged in logs and metrics.
    * @param lockReportInfoSupplier The info shown in the lock report
    */
-  private void writeUnlock(String opName, boolean suppressWriteLockReport,
+  void writeUnlock(String opName, boolean suppressWriteLockReport,
       Supplier<String> lockReportInfoSupplier) {
     final boolean needReport = !suppressWriteLockReport && coarseLock
         .getWriteHoldCount() == 1 && coarseLock.isWriteLockedByCurrentThread();
@@ -456,8 +472,8 @@ private static void updateProcessingDetails(Timing type, long deltaNanos) {
     }
   }
 
-  private static String getMetricName(String operationName, boolean isWrite) {
-    return (isWrite ? WRITE_LOCK_METRIC_PREFIX : READ_LOCK_METRIC_PREFIX) +
+  private String getMetricName(String operationName, boolean isWrite) {
+    return (isWrite ? writeLockMetricPrefix : readLockMetricPrefix) +
         org.apache.commons.lang3.StringUtils.capitalize(operationName) +
         LOCK_METRIC_SUFFIX;
   }
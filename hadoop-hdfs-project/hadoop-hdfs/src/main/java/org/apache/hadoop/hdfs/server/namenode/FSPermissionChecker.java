@@ -170,6 +170,10 @@ public String getUser() {
     return user;
   }
 
+  public Collection<String> getGroups() {
+    return groups;
+  }
+
   public boolean isSuperUser() {
     return isSuper;
   }
@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.function.Supplier;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.util.RwLockMode;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+import org.apache.hadoop.util.Timer;
+
+/**
+ * A lock model which splits the global FSNamesystem lock into a namespace
+ * (FSDirectory) lock and a block manager lock.
+ * <ul>
+ *   <li>{@link RwLockMode#FS} only takes the namespace lock.</li>
+ *   <li>{@link RwLockMode#BM} only takes the block manager lock.</li>
+ *   <li>{@link RwLockMode#GLOBAL} takes the namespace lock and then the block
+ *   manager lock, and releases them in the reverse order.</li>
+ * </ul>
+ * An operation holding only one of the locks does not block operations
+ * which only need the other one. The detailed hold time metrics of the two
+ * locks are reported as FSN(Read|Write)Lock* and BM(Read|Write)Lock*.
+ */
+class FineGrainedFSNamesystemLock implements FSNLockManager {
+
+  static final String BM_LOCK_NAME = "BM";
+
+  private final FSNamesystemLock fsLock;
+  private final FSNamesystemLock bmLock;
+
+  FineGrainedFSNamesystemLock(Configuration conf,
+      MutableRatesWithAggregation detailedHoldTimeMetrics) {
+    this(conf, detailedHoldTimeMetrics, new Timer());
+  }
+
+  @VisibleForTesting
+  FineGrainedFSNamesystemLock(Configuration conf,
+      MutableRatesWithAggregation detailedHoldTimeMetrics, Timer timer) {
+    this.fsLock = new FSNamesystemLock(conf, FSNamesystemLock.FSN_LOCK_NAME,
+        detailedHoldTimeMetrics, timer);
+    this.bmLock = new FSNamesystemLock(conf, BM_LOCK_NAME,
+        detailedHoldTimeMetrics, timer);
+  }
+
+  @Override
+  public void readLock(RwLockMode lockMode) {
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.FS) {
+      checkLockOrder();
+      fsLock.readLock();
+    }
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.BM) {
+      bmLock.readLock();
+    }
+  }
+
+  @Override
+  public void readLockInterruptibly(RwLockMode lockMode)
+      throws InterruptedException {
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.FS) {
+      checkLockOrder();
+      fsLock.readLockInterruptibly();
+    }
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.BM) {
+      try {
+        bmLock.readLockInterruptibly();
+      } catch (InterruptedException e) {
+        if (lockMode == RwLockMode.GLOBAL) {
+          fsLock.readUnlock();
+        }
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public void readUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.BM) {
+      bmLock.readUnlock(opName, lockReportInfoSupplier);
+    }
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.FS) {
+      fsLock.readUnlock(opName, lockReportInfoSupplier);
+    }
+  }
+
+  @Override
+  public void writeLock(RwLockMode lockMode) {
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.FS) {
+      checkLockOrder();
+      fsLock.writeLock();
+    }
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.BM) {
+      bmLock.writeLock();
+    }
+  }
+
+  @Override
+  public void writeLockInterruptibly(RwLockMode lockMode)
+      throws InterruptedException {
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.FS) {
+      checkLockOrder();
+      fsLock.writeLockInterruptibly();
+    }
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.BM) {
+      try {
+        bmLock.writeLockInterruptibly();
+      } catch (InterruptedException e) {
+        if (lockMode == RwLockMode.GLOBAL) {
+          fsLock.writeUnlock();
+        }
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public void writeUnlock(RwLockMode lockMode, String opName,
+      boolean suppressWriteLockReport,
+      Supplier<String> lockReportInfoSupplier) {
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.BM) {
+      bmLock.writeUnlock(opName, suppressWriteLockReport,
+          lockReportInfoSupplier);
+    }
+    if (lockMode == RwLockMode.GLOBAL || lockMode == RwLockMode.FS) {
+      fsLock.writeUnlock(opName, suppressWriteLockReport,
+          lockReportInfoSupplier);
+    }
+  }
+
+  @Override
+  public boolean hasReadLock(RwLockMode lockMode) {
+    switch (lockMode) {
+    case FS:
+      return hasReadLock(fsLock);
+    case BM:
+      return hasReadLock(bmLock);
+    default:
+      return hasReadLock(fsLock) && hasReadLock(bmLock);
+    }
+  }
+
+  @Override
+  public boolean hasWriteLock(RwLockMode lockMode) {
+    switch (lockMode) {
+    case FS:
+      return fsLock.isWriteLockedByCurrentThread();
+    case BM:
+      return bmLock.isWriteLockedByCurrentThread();
+    default:
+      return fsLock.isWriteLockedByCurrentThread()
+          && bmLock.isWriteLockedByCurrentThread();
+    }
+  }
+
+  @Override
+  public int getReadHoldCount(RwLockMode lockMode) {
+    return lockMode == RwLockMode.BM ?
+        bmLock.getReadHoldCount() : fsLock.getReadHoldCount();
+  }
+
+  @Override
+  public int getWriteHoldCount(RwLockMode lockMode) {
+    return lockMode == RwLockMode.BM ?
+        bmLock.getWriteHoldCount() : fsLock.getWriteHoldCount();
+  }
+
+  @Override
+  public int getQueueLength(RwLockMode lockMode) {
+    switch (lockMode) {
+    case FS:
+      return fsLock.getQueueLength();
+    case BM:
+      return bmLock.getQueueLength();
+    default:
+      return fsLock.getQueueLength() + bmLock.getQueueLength();
+    }
+  }
+
+  @Override
+  public long getNumOfReadLockLongHold(RwLockMode lockMode) {
+    switch (lockMode) {
+    case FS:
+      return fsLock.getNumOfReadLockLongHold();
+    case BM:
+      return bmLock.getNumOfReadLockLongHold();
+    default:
+      return fsLock.getNumOfReadLockLongHold()
+          + bmLock.getNumOfReadLockLongHold();
+    }
+  }
+
+  @Override
+  public long getNumOfWriteLockLongHold(RwLockMode lockMode) {
+    switch (lockMode) {
+    case FS:
+      return fsLock.getNumOfWriteLockLongHold();
+    case BM:
+      return bmLock.getNumOfWriteLockLongHold();
+    default:
+      return fsLock.getNumOfWriteLockLongHold()
+          + bmLock.getNumOfWriteLockLongHold();
+    }
+  }
+
+  @Override
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    fsLock.setMetricsEnabled(metricsEnabled);
+    bmLock.setMetricsEnabled(metricsEnabled);
+  }
+
+  @Override
+  public boolean isMetricsEnabled() {
+    return fsLock.isMetricsEnabled();
+  }
+
+  @Override
+  public void setReadLockReportingThresholdMs(
+      long readLockReportingThresholdMs) {
+    fsLock.setReadLockReportingThresholdMs(readLockReportingThresholdMs);
+    bmLock.setReadLockReportingThresholdMs(readLockReportingThresholdMs);
+  }
+
+  @Override
+  public long getReadLockReportingThresholdMs() {
+    return fsLock.getReadLockReportingThresholdMs();
+  }
+
+  @Override
+  public void setWriteLockReportingThresholdMs(
+      long writeLockReportingThresholdMs) {
+    fsLock.setWriteLockReportingThresholdMs(writeLockReportingThresholdMs);
+    bmLock.setWriteLockReportingThresholdMs(writeLockReportingThresholdMs);
+  }
+
+  @Override
+  public long getWriteLockReportingThresholdMs() {
+    return fsLock.getWriteLockReportingThresholdMs();
+  }
+
+  @Override
+  @VisibleForTesting
+  public FSNamesystemLock getLockForTests(RwLockMode lockMode) {
+    return lockMode == RwLockMode.BM ? bmLock : fsLock;
+  }
+
+  private static boolean hasReadLock(FSNamesystemLock lock) {
+    return lock.getReadHoldCount() > 0 || lock.isWriteLockedByCurrentThread();
+  }
+
+  /**
+   * The namespace lock is always acquired before the block manager lock, so
+   * a thread which only holds the block manager lock must not go on to take
+   * the namespace lock.
+   */
+  private void checkLockOrder() {
+    assert !hasReadLock(bmLock) || hasReadLock(fsLock) :
+        "Cannot acquire the namespace lock while only holding the block"
+            + " manager lock";
+  }
+}
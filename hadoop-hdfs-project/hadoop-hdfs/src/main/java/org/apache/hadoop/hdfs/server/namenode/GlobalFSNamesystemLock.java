@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.function.Supplier;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.util.RwLockMode;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+
+/**
+ * The default lock model: a single {@link FSNamesystemLock} guards both the
+ * namespace and the block manager state, so the requested
+ * {@link RwLockMode} is ignored.
+ */
+class GlobalFSNamesystemLock implements FSNLockManager {
+
+  private final FSNamesystemLock lock;
+
+  GlobalFSNamesystemLock(Configuration conf,
+      MutableRatesWithAggregation detailedHoldTimeMetrics) {
+    this.lock = new FSNamesystemLock(conf, detailedHoldTimeMetrics);
+  }
+
+  @Override
+  public void readLock(RwLockMode lockMode) {
+    lock.readLock();
+  }
+
+  @Override
+  public void readLockInterruptibly(RwLockMode lockMode)
+      throws InterruptedException {
+    lock.readLockInterruptibly();
+  }
+
+  @Override
+  public void readUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    lock.readUnlock(opName, lockReportInfoSupplier);
+  }
+
+  @Override
+  public void writeLock(RwLockMode lockMode) {
+    lock.writeLock();
+  }
+
+  @Override
+  public void writeLockInterruptibly(RwLockMode lockMode)
+      throws InterruptedException {
+    lock.writeLockInterruptibly();
+  }
+
+  @Override
+  public void writeUnlock(RwLockMode lockMode, String opName,
+      boolean suppressWriteLockReport,
+      Supplier<String> lockReportInfoSupplier) {
+    lock.writeUnlock(opName, suppressWriteLockReport, lockReportInfoSupplier);
+  }
+
+  @Override
+  public boolean hasReadLock(RwLockMode lockMode) {
+    return lock.getReadHoldCount() > 0 || lock.isWriteLockedByCurrentThread();
+  }
+
+  @Override
+  public boolean hasWriteLock(RwLockMode lockMode) {
+    return lock.isWriteLockedByCurrentThread();
+  }
+
+  @Override
+  public int getReadHoldCount(RwLockMode lockMode) {
+    return lock.getReadHoldCount();
+  }
+
+  @Override
+  public int getWriteHoldCount(RwLockMode lockMode) {
+    return lock.getWriteHoldCount();
+  }
+
+  @Override
+  public int getQueueLength(RwLockMode lockMode) {
+    return lock.getQueueLength();
+  }
+
+  @Override
+  public long getNumOfReadLockLongHold(RwLockMode lockMode) {
+    return lock.getNumOfReadLockLongHold();
+  }
+
+  @Override
+  public long getNumOfWriteLockLongHold(RwLockMode lockMode) {
+    return lock.getNumOfWriteLockLongHold();
+  }
+
+  @Override
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    lock.setMetricsEnabled(metricsEnabled);
+  }
+
+  @Override
+  public boolean isMetricsEnabled() {
+    return lock.isMetricsEnabled();
+  }
+
+  @Override
+  public void setReadLockReportingThresholdMs(
+      long readLockReportingThresholdMs) {
+    lock.setReadLockReportingThresholdMs(readLockReportingThresholdMs);
+  }
+
+  @Override
+  public long getReadLockReportingThresholdMs() {
+    return lock.getReadLockReportingThresholdMs();
+  }
+
+  @Override
+  public void setWriteLockReportingThresholdMs(
+      long writeLockReportingThresholdMs) {
+    lock.setWriteLockReportingThresholdMs(writeLockReportingThresholdMs);
+  }
+
+  @Override
+  public long getWriteLockReportingThresholdMs() {
+    return lock.getWriteLockReportingThresholdMs();
+  }
+
+  @Override
+  @VisibleForTesting
+  public FSNamesystemLock getLockForTests(RwLockMode lockMode) {
+    return lock;
+  }
+}
@@ -526,6 +526,22 @@ public final boolean isQuotaSet() {
     return qc.anyNsSsCountGreaterOrEqual(0) || qc.anyTypeSpaceCountGreaterOrEqual(0);
   }
 
+  /**
+   * @return true if the quota usage of the subtree is cached in this inode,
+   * i.e. a quota is set or the quota usage is tracked.
+   */
+  public final boolean hasCachedUsage() {
+    return isQuotaSet() || isQuotaUsageTracked();
+  }
+
+  /**
+   * @return true if the quota usage of the subtree is tracked even though no
+   * quota is set.
+   */
+  public boolean isQuotaUsageTracked() {
+    return false;
+  }
+
   /**
    * Count subtree {@link Quota#NAMESPACE} and {@link Quota#STORAGESPACE} usages.
    * Entry point for FSDirectory where blockStoragePolicyId is given its initial
@@ -968,7 +984,7 @@ public void addUpdatePath(INodeReference inode, QuotaCounts update) {
     }
 
     public void addQuotaDirUpdate(INodeDirectory dir, QuotaCounts update) {
-      Preconditions.checkState(dir.isQuotaSet());
+      Preconditions.checkState(dir.hasCachedUsage());
       QuotaCounts c = quotaDirMap.get(dir);
       if (c == null) {
         quotaDirMap.put(dir, update);
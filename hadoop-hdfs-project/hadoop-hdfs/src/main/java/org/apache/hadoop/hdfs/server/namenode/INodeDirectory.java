@@ -31,6 +31,7 @@
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.namenode.INodeReference.WithCount;
@@ -74,6 +75,13 @@ public static INodeDirectory valueOf(INode inode, Object path
   static final byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
   private List<INode> children = null;
+
+  /**
+   * The id of the latest snapshot for which a snapshot diff has been recorded
+   * on this directory or on any inode below it. Snapshot diff reports skip
+   * the subtrees which have not changed since their starting snapshot.
+   */
+  private int latestSubtreeDiffId = Snapshot.NO_SNAPSHOT_ID;
   
   /** constructor */
   public INodeDirectory(long id, byte[] name, PermissionStatus permissions,
@@ -93,6 +101,7 @@ public INodeDirectory(INodeDirectory other, boolean adopt,
       Feature... featuresToCopy) {
     super(other);
     this.children = other.children;
+    this.latestSubtreeDiffId = other.latestSubtreeDiffId;
     if (adopt && this.children != null) {
       for (INode child : children) {
         child.setParent(this);
@@ -107,6 +116,32 @@ public INodeDirectory(INodeDirectory other, boolean adopt,
     }
   }
 
+  /**
+   * @return the id of the latest snapshot for which a snapshot diff has been
+   *         recorded in the subtree of this directory, or
+   *         {@link Snapshot#NO_SNAPSHOT_ID} if there is none.
+   */
+  public int getLatestSubtreeDiffId() {
+    return latestSubtreeDiffId;
+  }
+
+  /**
+   * Record that a snapshot diff for the given snapshot has been added to the
+   * given inode, by raising the latest subtree diff id of the inode (if it is
+   * a directory) and of all its ancestors.
+   */
+  public static void recordSubtreeDiff(INode inode, int snapshotId) {
+    INodeDirectory dir = inode.isDirectory() ? inode.asDirectory()
+        : inode.getParent();
+    // Walk all the way up: a subtree moved in by a rename may carry a larger
+    // id than its new ancestors, so stopping early is not safe.
+    for (; dir != null; dir = dir.getParent()) {
+      if (dir.latestSubtreeDiffId < snapshotId) {
+        dir.latestSubtreeDiffId = snapshotId;
+      }
+    }
+  }
+
   /** @return true unconditionally. */
   @Override
   public final boolean isDirectory() {
@@ -149,7 +184,7 @@ void setQuota(BlockStoragePolicySuite bsps, long nsQuota, long ssQuota, StorageT
       } else {
         quota.setQuota(nsQuota, ssQuota);
       }
-      if (!isQuotaSet() && !isRoot()) {
+      if (!hasCachedUsage() && !isRoot()) {
         removeFeature(quota);
       }
     } else {
@@ -165,18 +200,42 @@ void setQuota(BlockStoragePolicySuite bsps, long nsQuota, long ssQuota, StorageT
     }
   }
 
+  /**
+   * Start or stop tracking the quota usage of the subtree without a quota.
+   */
+  void setQuotaUsageTracked(BlockStoragePolicySuite bsps, boolean tracked) {
+    DirectoryWithQuotaFeature quota = getDirectoryWithQuotaFeature();
+    if (quota != null) {
+      quota.setQuotaUsageTracked(tracked);
+      if (!hasCachedUsage() && !isRoot()) {
+        removeFeature(quota);
+      }
+    } else if (tracked) {
+      final QuotaCounts c = computeQuotaUsage(bsps);
+      addDirectoryWithQuotaFeature(new DirectoryWithQuotaFeature.Builder()
+          .nameSpaceQuota(HdfsConstants.QUOTA_RESET).quotaUsageTracked(true)
+          .build()).setSpaceConsumed(c);
+    }
+  }
+
   @Override
   public QuotaCounts getQuotaCounts() {
     final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
     return q != null? q.getQuota(): super.getQuotaCounts();
   }
 
+  @Override
+  public boolean isQuotaUsageTracked() {
+    final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
+    return q != null && q.isQuotaUsageTracked();
+  }
+
   @Override
   public void addSpaceConsumed(QuotaCounts counts) {
     super.addSpaceConsumed(counts);
 
     final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
-    if (q != null && isQuotaSet()) {
+    if (q != null && hasCachedUsage()) {
       q.addSpaceConsumed2Cache(counts);
     }
   }
@@ -633,7 +692,7 @@ public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
     // computation only includes files/directories that exist at the time of the
     // given snapshot
     if (sf != null && lastSnapshotId != Snapshot.CURRENT_STATE_ID
-        && !(useCache && isQuotaSet())) {
+        && !(useCache && hasCachedUsage())) {
       ReadOnlyList<INode> childrenList = getChildrenList(lastSnapshotId);
       for (INode child : childrenList) {
         final byte childPolicyId = child.getStoragePolicyIDForQuota(
@@ -647,10 +706,10 @@ public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
     
     // compute the quota usage in the scope of the current directory tree
     final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
-    if (useCache && q != null && q.isQuotaSet()) { // use the cached quota
+    if (useCache && q != null && q.hasCachedUsage()) { // use the cached quota
       return q.AddCurrentSpaceUsage(counts);
     } else {
-      useCache = q != null && !q.isQuotaSet() ? false : useCache;
+      useCache = q != null && !q.hasCachedUsage() ? false : useCache;
       return computeDirectoryQuotaUsage(bsps, blockStoragePolicyId, counts,
           useCache, lastSnapshotId);
     }
@@ -878,7 +937,7 @@ public void cleanSubtree(ReclaimContext reclaimContext, final int snapshotId,
             null);
         QuotaCounts current = reclaimContext.quotaDelta().getCountsCopy();
         current.subtract(old);
-        if (isQuotaSet()) {
+        if (hasCachedUsage()) {
           reclaimContext.quotaDelta().addQuotaDirUpdate(this, current);
         }
       }
@@ -19,11 +19,6 @@
 
 import java.util.Iterator;
 
-import org.apache.hadoop.fs.permission.FsPermission;
-import org.apache.hadoop.fs.permission.PermissionStatus;
-import org.apache.hadoop.hdfs.protocol.HdfsConstants;
-import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
-import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
 import org.apache.hadoop.util.Preconditions;
@@ -37,20 +32,43 @@ public class INodeMap {
   static INodeMap newInstance(INodeDirectory rootDir) {
     // Compute the map capacity by allocating 1% of total memory
     int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
-    GSet<INode, INodeWithAdditionalFields> map =
-        new LightWeightGSet<>(capacity);
+    INodeGSet map = new INodeGSet(capacity);
     map.put(rootDir);
     return new INodeMap(map);
   }
 
+  /**
+   * A {@link LightWeightGSet} which can also be looked up by the INode id,
+   * so that {@link #get(long)} does not need to allocate a key INode.
+   */
+  private static final class INodeGSet
+      extends LightWeightGSet<INode, INodeWithAdditionalFields> {
+
+    INodeGSet(int capacity) {
+      super(capacity);
+    }
+
+    INodeWithAdditionalFields get(long id) {
+      // Same hash as INode#hashCode()
+      final int index = (int) (id ^ (id >>> 32)) & hash_mask;
+      for (LinkedElement e = entries[index]; e != null; e = e.getNext()) {
+        final INodeWithAdditionalFields inode = convert(e);
+        if (inode.getId() == id) {
+          return inode;
+        }
+      }
+      return null;
+    }
+  }
+
   /** Synchronized by external lock. */
-  private final GSet<INode, INodeWithAdditionalFields> map;
+  private final INodeGSet map;
   
   public Iterator<INodeWithAdditionalFields> getMapIterator() {
     return map.iterator();
   }
 
-  private INodeMap(GSet<INode, INodeWithAdditionalFields> map) {
+  private INodeMap(INodeGSet map) {
     Preconditions.checkArgument(map != null);
     this.map = map;
   }
@@ -88,48 +106,7 @@ public int size() {
    *         such {@link INode} in the map.
    */
   public INode get(long id) {
-    INode inode = new INodeWithAdditionalFields(id, null, new PermissionStatus(
-        "", "", new FsPermission((short) 0)), 0, 0) {
-      
-      @Override
-      void recordModification(int latestSnapshotId) {
-      }
-      
-      @Override
-      public void destroyAndCollectBlocks(ReclaimContext reclaimContext) {
-        // Nothing to do
-      }
-
-      @Override
-      public QuotaCounts computeQuotaUsage(
-          BlockStoragePolicySuite bsps, byte blockStoragePolicyId,
-          boolean useCache, int lastSnapshotId) {
-        return null;
-      }
-
-      @Override
-      public ContentSummaryComputationContext computeContentSummary(
-          int snapshotId, ContentSummaryComputationContext summary) {
-        return null;
-      }
-      
-      @Override
-      public void cleanSubtree(
-          ReclaimContext reclaimContext, int snapshotId, int priorSnapshotId) {
-      }
-
-      @Override
-      public byte getStoragePolicyID(){
-        return HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED;
-      }
-
-      @Override
-      public byte getLocalStoragePolicyID() {
-        return HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED;
-      }
-    };
-      
-    return map.get(inode);
+    return map.get(id);
   }
   
   /**
@@ -360,6 +360,11 @@ public QuotaCounts getQuotaCounts() {
     return referred.getQuotaCounts();
   }
 
+  @Override
+  public boolean isQuotaUsageTracked() {
+    return referred.isQuotaUsageTracked();
+  }
+
   @Override
   public final void clear() {
     super.clear();
@@ -20,9 +20,11 @@
 import static org.apache.hadoop.util.Time.monotonicNow;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -46,9 +48,12 @@
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.util.TimingWheel;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Lists;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Timer;
 
 import org.apache.hadoop.classification.VisibleForTesting;
 import org.apache.hadoop.util.Preconditions;
@@ -87,6 +92,8 @@ public class LeaseManager {
   private long hardLimit;
   static final int INODE_FILTER_WORKER_COUNT_MAX = 4;
   static final int INODE_FILTER_WORKER_TASK_MIN = 512;
+  /** The resolution at which lease expiries are tracked. */
+  static final long LEASE_EXPIRY_TICK_MS = 100;
   private long lastHolderUpdateTime;
   private String internalLeaseHolder;
 
@@ -97,13 +104,26 @@ public class LeaseManager {
   private final HashMap<String, Lease> leases = new HashMap<>();
   // INodeID -> Lease
   private final TreeMap<Long, Lease> leasesById = new TreeMap<>();
+  // Leases by the time their hard limit expires. Renewing a lease does not
+  // move it, it is rescheduled when its old expiry time comes up instead.
+  private final TimingWheel<Lease> leaseExpiries;
+  /** The clock the leases expire by. */
+  private final Timer timer;
 
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
 
   LeaseManager(FSNamesystem fsnamesystem) {
+    this(fsnamesystem, new Timer());
+  }
+
+  @VisibleForTesting
+  LeaseManager(FSNamesystem fsnamesystem, Timer timer) {
     Configuration conf = new Configuration();
     this.fsnamesystem = fsnamesystem;
+    this.timer = timer;
+    this.leaseExpiries =
+        new TimingWheel<>(LEASE_EXPIRY_TICK_MS, timer.monotonicNow());
     this.hardLimit = conf.getLong(DFSConfigKeys.DFS_LEASE_HARDLIMIT_KEY,
         DFSConfigKeys.DFS_LEASE_HARDLIMIT_DEFAULT) * 1000;
     updateInternalLeaseHolder();
@@ -353,6 +373,7 @@ synchronized Lease addLease(String holder, long inodeId) {
     if (lease == null) {
       lease = new Lease(holder);
       leases.put(holder, lease);
+      leaseExpiries.add(lease, lease.getHardLimitExpiry());
     } else {
       renewLease(lease);
     }
@@ -400,6 +421,7 @@ synchronized void removeLease(String holder, INodeFile src) {
   synchronized void removeAllLeases() {
     leasesById.clear();
     leases.clear();
+    leaseExpiries.clear();
   }
 
   /**
@@ -455,21 +477,26 @@ private Lease(String h) {
     }
     /** Only LeaseManager object can renew a lease */
     private void renew() {
-      this.lastUpdate = monotonicNow();
+      this.lastUpdate = timer.monotonicNow();
     }
 
     /** @return true if the Hard Limit Timer has expired */
     public boolean expiredHardLimit() {
-      return monotonicNow() - lastUpdate > hardLimit;
+      return timer.monotonicNow() - lastUpdate > hardLimit;
     }
 
     public boolean expiredHardLimit(long now) {
       return now - lastUpdate > hardLimit;
     }
 
+    /** @return the first time at which the hard limit has expired. */
+    private long getHardLimitExpiry() {
+      return lastUpdate + hardLimit + 1;
+    }
+
     /** @return true if the Soft Limit Timer has expired */
     public boolean expiredSoftLimit() {
-      return monotonicNow() - lastUpdate > softLimit;
+      return timer.monotonicNow() - lastUpdate > softLimit;
     }
 
     /** Does this lease contain any path? */
@@ -504,18 +531,59 @@ long getLastUpdate() {
     }
   }
 
-  public void setLeasePeriod(long softLimit, long hardLimit) {
+  public synchronized void setLeasePeriod(long softLimit, long hardLimit) {
     this.softLimit = softLimit;
-    this.hardLimit = hardLimit; 
+    this.hardLimit = hardLimit;
+    leaseExpiries.clear();
+    for (Lease lease : leases.values()) {
+      leaseExpiries.add(lease, lease.getHardLimitExpiry());
+    }
   }
 
+  /**
+   * Take the leases whose expiry time has come up from the timing wheel.
+   * Leases which are still held are put back at their current expiry time,
+   * so that expired leases which could not be released are checked again.
+   * @return the leases which have expired their hard limit.
+   */
   private synchronized Collection<Lease> getExpiredCandidateLeases() {
-    final long now = Time.monotonicNow();
-    Collection<Lease> expired = new HashSet<>();
-    for (Lease lease : leases.values()) {
+    final long now = timer.monotonicNow();
+    final List<Lease> due = new ArrayList<>();
+    leaseExpiries.advance(now, due::add);
+    final List<Lease> expired = new ArrayList<>();
+    for (Lease lease : due) {
+      if (leases.get(lease.holder) != lease) {
+        // The lease has been removed.
+        continue;
+      }
       if (lease.expiredHardLimit(now)) {
         expired.add(lease);
       }
+      leaseExpiries.add(lease, lease.getHardLimitExpiry());
+    }
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addLeasesScanned(due.size());
+    }
+    return expired;
+  }
+
+  /** The files of an expired lease which have not been released yet. */
+  private static final class ExpiredLease {
+    private final Lease lease;
+    private Long[] files;
+    private int next;
+
+    private ExpiredLease(Lease lease) {
+      this.lease = lease;
+    }
+  }
+
+  private static Deque<ExpiredLease> toExpiredLeases(
+      Collection<Lease> leases) {
+    final Deque<ExpiredLease> expired = new ArrayDeque<>(leases.size());
+    for (Lease lease : leases) {
+      expired.add(new ExpiredLease(lease));
     }
     return expired;
   }
@@ -537,21 +605,29 @@ public void run() {
           Thread.sleep(fsnamesystem.getLeaseRecheckIntervalMs());
 
           // pre-filter the leases w/o the fsn lock.
-          Collection<Lease> candidates = getExpiredCandidateLeases();
-          if (candidates.isEmpty()) {
-            continue;
-          }
-
-          fsnamesystem.writeLockInterruptibly();
-          try {
-            if (!fsnamesystem.isInSafeMode()) {
+          final Deque<ExpiredLease> candidates =
+              toExpiredLeases(getExpiredCandidateLeases());
+
+          // Release the leases in batches, releasing the fsn lock in between
+          // so that a large number of expired leases does not hold it up.
+          while (!candidates.isEmpty() && shouldRunMonitor) {
+            fsnamesystem.writeLockInterruptibly();
+            try {
+              if (fsnamesystem.isInSafeMode()) {
+                break;
+              }
               needSync = checkLeases(candidates);
+            } finally {
+              fsnamesystem.writeUnlock("leaseManager");
+              // lease reassignments should to be sync'ed.
+              if (needSync) {
+                fsnamesystem.getEditLog().logSync();
+                needSync = false;
+              }
             }
-          } finally {
-            fsnamesystem.writeUnlock("leaseManager");
-            // lease reassignments should to be sync'ed.
-            if (needSync) {
-              fsnamesystem.getEditLog().logSync();
+            final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+            if (metrics != null) {
+              metrics.incrLeaseRecoveryBatches();
             }
           }
         } catch(InterruptedException ie) {
@@ -563,38 +639,53 @@ public void run() {
     }
   }
 
-  /** Check the leases beginning from the oldest.
+  /** Check the leases which have expired their hard limit.
    *  @return true is sync is needed.
    */
   @VisibleForTesting
   synchronized boolean checkLeases() {
-    return checkLeases(getExpiredCandidateLeases());
+    return checkLeases(toExpiredLeases(getExpiredCandidateLeases()));
   }
 
-  private synchronized boolean checkLeases(Collection<Lease> leasesToCheck) {
+  /**
+   * Release a batch of expired leases, until the maximum lock hold time to
+   * release leases is reached.
+   * @param leasesToCheck the expired leases. The leases which have been
+   *                      checked are removed, a lease whose files have not
+   *                      all been released yet is left at its head.
+   * @return true is sync is needed.
+   */
+  private synchronized boolean checkLeases(
+      Deque<ExpiredLease> leasesToCheck) {
     boolean needSync = false;
     assert fsnamesystem.hasWriteLock();
 
     long start = monotonicNow();
-    for (Lease leaseToCheck : leasesToCheck) {
-      if (isMaxLockHoldToReleaseLease(start)) {
-        break;
-      }
-      if (!leaseToCheck.expiredHardLimit(Time.monotonicNow())) {
-        continue;
+    while (!leasesToCheck.isEmpty()) {
+      final ExpiredLease expired = leasesToCheck.peekFirst();
+      final Lease leaseToCheck = expired.lease;
+      if (expired.files == null) {
+        if (!leaseToCheck.expiredHardLimit(timer.monotonicNow())) {
+          leasesToCheck.removeFirst();
+          continue;
+        }
+        LOG.info("{} has expired hard limit", leaseToCheck);
+        // need to create a copy of the oldest lease files, because
+        // internalReleaseLease() removes files corresponding to empty files,
+        // i.e. it needs to modify the collection being iterated over
+        // causing ConcurrentModificationException
+        Collection<Long> files = leaseToCheck.getFiles();
+        expired.files = files.toArray(new Long[files.size()]);
       }
-      LOG.info("{} has expired hard limit", leaseToCheck);
-      final List<Long> removing = new ArrayList<>();
-      // need to create a copy of the oldest lease files, because
-      // internalReleaseLease() removes files corresponding to empty files,
-      // i.e. it needs to modify the collection being iterated over
-      // causing ConcurrentModificationException
-      Collection<Long> files = leaseToCheck.getFiles();
-      Long[] leaseINodeIds = files.toArray(new Long[files.size()]);
       FSDirectory fsd = fsnamesystem.getFSDirectory();
       String p = null;
       String newHolder = getInternalLeaseHolder();
-      for(Long id : leaseINodeIds) {
+      while (expired.next < expired.files.length) {
+        final Long id = expired.files[expired.next++];
+        if (leasesById.get(id) != leaseToCheck) {
+          // The file has been closed since the previous batch.
+          continue;
+        }
         try {
           INodesInPath iip = INodesInPath.fromINode(fsd.getInode(id));
           p = iip.getPath();
@@ -632,7 +723,7 @@ private synchronized boolean checkLeases(Collection<Lease> leasesToCheck) {
         } catch (IOException e) {
           LOG.warn("Removing lease with an invalid path: {},{}", p,
               leaseToCheck, e);
-          removing.add(id);
+          removeLease(leaseToCheck, id);
         }
         if (isMaxLockHoldToReleaseLease(start)) {
           LOG.debug("Breaking out of checkLeases after {} ms.",
@@ -640,9 +731,11 @@ private synchronized boolean checkLeases(Collection<Lease> leasesToCheck) {
           break;
         }
       }
-
-      for(Long id : removing) {
-        removeLease(leaseToCheck, id);
+      if (expired.next == expired.files.length) {
+        leasesToCheck.removeFirst();
+      }
+      if (isMaxLockHoldToReleaseLease(start)) {
+        break;
       }
     }
     return needSync;
@@ -84,7 +84,8 @@ public enum NameNodeFile {
     EDITS_NEW ("edits.new"), // from "old" pre-HDFS-1073 format
     EDITS_INPROGRESS ("edits_inprogress"),
     EDITS_TMP ("edits_tmp"),
-    IMAGE_LEGACY_OIV ("fsimage_legacy_oiv");  // For pre-PB format
+    IMAGE_LEGACY_OIV ("fsimage_legacy_oiv"),  // For pre-PB format
+    BLOCK_LOCATIONS ("blocklocations");
 
     private String fileName = null;
     NameNodeFile(String name) {
@@ -1651,8 +1651,11 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
     boolean noStaleStorages = false;
     try {
       if (bm.checkBlockReportLease(context, nodeReg)) {
+        final BlockManager.ReportDiff[] diffs =
+            bm.computeReportDiffs(nodeReg, reports);
         for (int r = 0; r < reports.length; r++) {
           final BlockListAsLongs blocks = reports[r].getBlocks();
+          final BlockManager.ReportDiff diff = diffs != null ? diffs[r] : null;
           //
           // BlockManager.processReport accumulates information of prior calls
           // for the same node and storage, so the value returned by the last
@@ -1661,7 +1664,7 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
           final int index = r;
           noStaleStorages = bm.runBlockOp(() ->
             bm.processReport(nodeReg, reports[index].getStorage(),
-                blocks, context));
+                blocks, context, diff));
         }
       } else {
         throw new InvalidBlockReportLeaseException(context.getReportId(), context.getLeaseId());
@@ -1802,6 +1805,7 @@ public void refreshUserToGroupsMappings() throws IOException {
     LOG.info("Refreshing all user-to-groups mappings. Requested by user: " +
         getRemoteUser().getShortUserName());
     Groups.getUserToGroupsMappingService().refresh();
+    namesystem.clearNamespaceCache();
     namesystem.logAuditEvent(true, "refreshUserToGroupsMappings", null);
   }
 
@@ -1810,6 +1814,7 @@ public void refreshSuperUserGroupsConfiguration() throws IOException {
     LOG.info("Refreshing SuperUser proxy group mapping list ");
 
     ProxyUsers.refreshSuperUserGroupsConfiguration();
+    namesystem.clearNamespaceCache();
     namesystem.logAuditEvent(true, "refreshSuperUserGroupsConfiguration", null);
   }
 
@@ -0,0 +1,388 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AddCloseOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AddBlockOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AllowSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AppendOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.ClearNSQuotaOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.ConcatDeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.CreateSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DisallowSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.MkdirOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.ReassignLeaseOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RemoveXAttrOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameOldOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetAclOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetNSQuotaOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetOwnerOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetPermissionsOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetQuotaByStorageTypeOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetQuotaOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetReplicationOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetStoragePolicyOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetXAttrOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SymlinkOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.TimesOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.TruncateOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.UpdateBlocksOp;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.util.Timer;
+
+/**
+ * Cache of {@code getFileInfo} results served by an Observer NameNode.
+ * <p>
+ * Entries are keyed by path, calling user and whether the last component is
+ * resolved as a link, and remember the last applied transaction id at the
+ * time they were computed. An entry is only served while fewer than the
+ * configured number of transactions have been applied since then, and for
+ * at most the configured time.
+ * <p>
+ * The permission checks of a cached result depend on the groups of the user,
+ * which are not recorded in edits. An entry also remembers the groups of the
+ * user it was computed for and is only served to a caller with the same
+ * groups, so that a changed group membership is seen as soon as the groups
+ * mapping returns it. The cache is also cleared when the groups mappings are
+ * refreshed.
+ * <p>
+ * Entries are added while the caller holds the namesystem read lock and are
+ * invalidated by {@link FSEditLogLoader} while the edit log tailer holds the
+ * write lock, before the applied transaction id becomes visible to clients.
+ * This lets lookups be answered without taking the namesystem lock at all.
+ * Each applied op invalidates the subtrees of the paths it touches and the
+ * entries of their parents; ops whose effect cannot be bounded to a set of
+ * paths clear the whole cache.
+ */
+class ObserverNamespaceCache {
+  /**
+   * Separates the path from the rest of the key. It sorts before
+   * {@link org.apache.hadoop.fs.Path#SEPARATOR_CHAR} so that all the entries
+   * of one path form a contiguous range.
+   */
+  private static final char KEY_SEPARATOR = '\0';
+  private static final String SNAPSHOT_COMPONENT =
+      "/" + HdfsConstants.DOT_SNAPSHOT_DIR;
+
+  private final ConcurrentSkipListMap<String, Entry> entries =
+      new ConcurrentSkipListMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final int maxEntries;
+  private final long txIdWindow;
+  private final long ttlMs;
+  private final LongSupplier lastAppliedTxId;
+  private final Timer timer;
+
+  private static final class Entry {
+    private final HdfsFileStatus status;
+    private final Collection<String> groups;
+    private final long txId;
+    private final long time;
+
+    private Entry(HdfsFileStatus status, Collection<String> groups,
+        long txId, long time) {
+      this.status = status;
+      this.groups = groups;
+      this.txId = txId;
+      this.time = time;
+    }
+  }
+
+  ObserverNamespaceCache(int maxEntries, long txIdWindow, long ttlMs,
+      LongSupplier lastAppliedTxId, Timer timer) {
+    this.maxEntries = maxEntries;
+    this.txIdWindow = txIdWindow;
+    this.ttlMs = ttlMs;
+    this.lastAppliedTxId = lastAppliedTxId;
+    this.timer = timer;
+  }
+
+  /**
+   * @return whether results for the given path may be cached. Only
+   * normalized absolute paths outside of the reserved and snapshot
+   * namespaces are cached, so that the paths recorded in edits match the
+   * cache keys.
+   */
+  static boolean isCacheable(String src) {
+    if (src.length() > 1 && src.charAt(src.length() - 1) == '/') {
+      return false;
+    }
+    return !src.startsWith(FSDirectory.DOT_RESERVED_PATH_PREFIX)
+        && !src.contains(SNAPSHOT_COMPONENT)
+        && DFSUtil.isValidName(src);
+  }
+
+  /**
+   * Look up a cached result.
+   * @return null if nothing is cached, an empty optional if the path was
+   * cached as not existing, otherwise the cached status.
+   */
+  Optional<HdfsFileStatus> get(String src, String user,
+      Collection<String> groups, boolean resolveLink) {
+    final String key = key(src, user, resolveLink);
+    final Entry entry = entries.get(key);
+    if (entry != null) {
+      if (lastAppliedTxId.getAsLong() - entry.txId < txIdWindow
+          && timer.monotonicNow() - entry.time < ttlMs
+          && entry.groups.equals(groups)) {
+        incrHits();
+        return Optional.ofNullable(entry.status);
+      }
+      if (entries.remove(key, entry)) {
+        size.decrementAndGet();
+      }
+    }
+    incrMisses();
+    return null;
+  }
+
+  /**
+   * Cache a result. The caller must hold the namesystem read lock so that
+   * no edit can be applied between computing the status and caching it.
+   * @param status the status, or null if the path does not exist
+   */
+  void put(String src, String user, Collection<String> groups,
+      boolean resolveLink, HdfsFileStatus status) {
+    if (size.get() >= maxEntries) {
+      clear();
+    }
+    final Entry entry = new Entry(status, groups,
+        lastAppliedTxId.getAsLong(), timer.monotonicNow());
+    if (entries.put(key(src, user, resolveLink), entry) == null) {
+      size.incrementAndGet();
+    }
+  }
+
+  /** Invalidate all the entries the given op may have changed. */
+  void invalidate(FSEditLogOp op) {
+    if (size.get() == 0) {
+      return;
+    }
+    switch (op.opCode) {
+    case OP_ADD:
+    case OP_CLOSE:
+      invalidatePath(((AddCloseOp) op).path);
+      break;
+    case OP_APPEND:
+      invalidatePath(((AppendOp) op).path);
+      break;
+    case OP_ADD_BLOCK:
+      invalidatePath(((AddBlockOp) op).getPath());
+      break;
+    case OP_UPDATE_BLOCKS:
+      invalidatePath(((UpdateBlocksOp) op).getPath());
+      break;
+    case OP_TRUNCATE:
+      invalidatePath(((TruncateOp) op).src);
+      break;
+    case OP_REASSIGN_LEASE:
+      invalidatePath(((ReassignLeaseOp) op).path);
+      break;
+    case OP_DELETE:
+      invalidatePath(((DeleteOp) op).path);
+      break;
+    case OP_MKDIR:
+      invalidatePath(((MkdirOp) op).path);
+      break;
+    case OP_SYMLINK:
+      invalidatePath(((SymlinkOp) op).path);
+      break;
+    case OP_RENAME_OLD:
+      invalidatePath(((RenameOldOp) op).src);
+      invalidatePath(((RenameOldOp) op).dst);
+      break;
+    case OP_RENAME:
+      invalidatePath(((RenameOp) op).src);
+      invalidatePath(((RenameOp) op).dst);
+      break;
+    case OP_CONCAT_DELETE:
+      ConcatDeleteOp concat = (ConcatDeleteOp) op;
+      invalidatePath(concat.trg);
+      if (concat.srcs == null) {
+        clear();
+        break;
+      }
+      for (String src : concat.srcs) {
+        invalidatePath(src);
+      }
+      break;
+    case OP_SET_REPLICATION:
+      invalidatePath(((SetReplicationOp) op).path);
+      break;
+    case OP_SET_PERMISSIONS:
+      invalidatePath(((SetPermissionsOp) op).src);
+      break;
+    case OP_SET_OWNER:
+      invalidatePath(((SetOwnerOp) op).src);
+      break;
+    case OP_TIMES:
+      invalidatePath(((TimesOp) op).path);
+      break;
+    case OP_SET_NS_QUOTA:
+      invalidatePath(((SetNSQuotaOp) op).src);
+      break;
+    case OP_CLEAR_NS_QUOTA:
+      invalidatePath(((ClearNSQuotaOp) op).src);
+      break;
+    case OP_SET_QUOTA:
+      invalidatePath(((SetQuotaOp) op).src);
+      break;
+    case OP_SET_QUOTA_BY_STORAGETYPE:
+      invalidatePath(((SetQuotaByStorageTypeOp) op).src);
+      break;
+    case OP_SET_ACL:
+      invalidatePath(((SetAclOp) op).src);
+      break;
+    case OP_SET_XATTR:
+      invalidatePath(((SetXAttrOp) op).src);
+      break;
+    case OP_REMOVE_XATTR:
+      invalidatePath(((RemoveXAttrOp) op).src);
+      break;
+    case OP_SET_STORAGE_POLICY:
+      invalidatePath(((SetStoragePolicyOp) op).path);
+      break;
+    case OP_ALLOW_SNAPSHOT:
+      invalidatePath(((AllowSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_DISALLOW_SNAPSHOT:
+      invalidatePath(((DisallowSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_CREATE_SNAPSHOT:
+      invalidatePath(((CreateSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_DELETE_SNAPSHOT:
+      invalidatePath(((DeleteSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_RENAME_SNAPSHOT:
+      invalidatePath(((RenameSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_SET_GENSTAMP_V1:
+    case OP_SET_GENSTAMP_V2:
+    case OP_ALLOCATE_BLOCK_ID:
+    case OP_GET_DELEGATION_TOKEN:
+    case OP_RENEW_DELEGATION_TOKEN:
+    case OP_CANCEL_DELEGATION_TOKEN:
+    case OP_UPDATE_MASTER_KEY:
+    case OP_START_LOG_SEGMENT:
+    case OP_END_LOG_SEGMENT:
+    case OP_ADD_CACHE_DIRECTIVE:
+    case OP_MODIFY_CACHE_DIRECTIVE:
+    case OP_REMOVE_CACHE_DIRECTIVE:
+    case OP_ADD_CACHE_POOL:
+    case OP_MODIFY_CACHE_POOL:
+    case OP_REMOVE_CACHE_POOL:
+    case OP_ADD_ERASURE_CODING_POLICY:
+    case OP_ENABLE_ERASURE_CODING_POLICY:
+    case OP_DISABLE_ERASURE_CODING_POLICY:
+    case OP_REMOVE_ERASURE_CODING_POLICY:
+    case OP_ROLLING_UPGRADE_START:
+    case OP_ROLLING_UPGRADE_FINALIZE:
+    case OP_INVALID:
+      // these do not change any file status
+      break;
+    default:
+      clear();
+      break;
+    }
+  }
+
+  /**
+   * Invalidate the entries of a path, of everything below it and of its
+   * parent, whose modification time and children count may have changed.
+   */
+  void invalidatePath(String path) {
+    if (path == null || path.isEmpty()
+        || path.equals(Path.SEPARATOR)) {
+      clear();
+      return;
+    }
+    removeRange(path + KEY_SEPARATOR, path + (char) (KEY_SEPARATOR + 1));
+    removeRange(path + Path.SEPARATOR_CHAR,
+        path + (char) (Path.SEPARATOR_CHAR + 1));
+    final int lastSlash = path.lastIndexOf(Path.SEPARATOR_CHAR);
+    final String parent = lastSlash <= 0 ?
+        Path.SEPARATOR : path.substring(0, lastSlash);
+    removeRange(parent + KEY_SEPARATOR, parent + (char) (KEY_SEPARATOR + 1));
+    incrInvalidations();
+  }
+
+  private void removeRange(String fromKey, String toKey) {
+    final ConcurrentNavigableMap<String, Entry> range =
+        entries.subMap(fromKey, toKey);
+    for (String key : range.keySet()) {
+      if (entries.remove(key) != null) {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  void clear() {
+    for (String key : entries.keySet()) {
+      if (entries.remove(key) != null) {
+        size.decrementAndGet();
+      }
+    }
+    incrInvalidations();
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  private static String key(String src, String user, boolean resolveLink) {
+    return src + KEY_SEPARATOR + user + KEY_SEPARATOR
+        + (resolveLink ? 'L' : 'N');
+  }
+
+  private static void incrHits() {
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.incrObserverNamespaceCacheHits();
+    }
+  }
+
+  private static void incrMisses() {
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.incrObserverNamespaceCacheMisses();
+    }
+  }
+
+  private static void incrInvalidations() {
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.incrObserverNamespaceCacheInvalidations();
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * An edit log input stream which reads and decodes the ops of another stream
+ * on an executor thread, up to a bounded number of ops ahead of its reader.
+ * The Standby and Observer NameNodes use it so that only applying the ops
+ * holds the namesystem write lock, while the next ops are being decoded.
+ *
+ * The ops are returned in the order of the underlying stream. Decoding stops
+ * at the first error, which is returned to the reader in place of the next op.
+ * Skipping over corrupt sections with {@link #resync()} is not supported.
+ */
+@InterfaceAudience.Private
+public class PipelinedEditLogInputStream extends EditLogInputStream {
+  private final EditLogInputStream in;
+  private final BlockingQueue<Decoded> decoded;
+  private final Future<?> decoder;
+  /** Set by the decoder when it starts, or by close() if it never did. */
+  private final AtomicBoolean decoderStarted = new AtomicBoolean();
+  private final CountDownLatch decoderStopped = new CountDownLatch(1);
+  private volatile boolean closed;
+
+  /** The state below is only accessed by the reader. */
+  private Decoded pending;
+  private boolean finished;
+  private long position;
+  private int version;
+  private IOException versionException;
+  private boolean hasVersion;
+
+  /**
+   * Start decoding a stream.
+   * @param in the stream to decode, which is closed with this stream
+   * @param capacity the maximum number of ops to decode ahead
+   * @param executor the executor to decode the stream on. Streams submitted
+   *                 to a single thread executor are decoded one at a time.
+   */
+  public PipelinedEditLogInputStream(EditLogInputStream in, int capacity,
+      ExecutorService executor) {
+    this.in = in;
+    this.decoded = new ArrayBlockingQueue<>(capacity);
+    this.decoder = executor.submit(this::decode);
+  }
+
+  private void decode() {
+    if (!decoderStarted.compareAndSet(false, true)) {
+      // The stream was closed before it was decoded.
+      return;
+    }
+    OpInstanceCache.disableThreadLocalCache();
+    try {
+      while (!closed) {
+        final FSEditLogOp op;
+        try {
+          op = in.readOp();
+        } catch (Throwable t) {
+          decoded.put(new Decoded(null, t));
+          return;
+        }
+        decoded.put(new Decoded(op, null));
+        if (op == null) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // The executor was shut down before the stream was read to the end.
+    } finally {
+      decoderStopped.countDown();
+    }
+  }
+
+  /** An op or the error which ended decoding, and the stream state after. */
+  private final class Decoded {
+    private final FSEditLogOp op;
+    private final Throwable error;
+    private final long position;
+    private int version;
+    private IOException versionException;
+
+    private Decoded(FSEditLogOp op, Throwable error) {
+      this.op = op;
+      this.error = error;
+      this.position = in.getPosition();
+      try {
+        this.version = in.getVersion(false);
+      } catch (IOException e) {
+        this.versionException = e;
+      }
+    }
+  }
+
+  private Decoded take() throws IOException {
+    Decoded d = pending;
+    if (d != null) {
+      pending = null;
+    } else {
+      try {
+        d = decoded.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for "
+            + "the next op from " + getName());
+      }
+    }
+    version = d.version;
+    versionException = d.versionException;
+    hasVersion = true;
+    return d;
+  }
+
+  @Override
+  protected FSEditLogOp nextOp() throws IOException {
+    if (finished) {
+      return null;
+    }
+    final Decoded d = take();
+    position = d.position;
+    if (d.error != null) {
+      finished = true;
+      if (d.error instanceof IOException) {
+        throw (IOException) d.error;
+      }
+      throw new IOException("Failed to decode " + getName(), d.error);
+    }
+    if (d.op == null) {
+      finished = true;
+    }
+    return d.op;
+  }
+
+  @Override
+  public int getVersion(boolean verifyVersion) throws IOException {
+    if (!hasVersion) {
+      // Wait for the decoder to open the stream.
+      pending = take();
+    }
+    if (versionException != null) {
+      throw versionException;
+    }
+    return version;
+  }
+
+  @Override
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (decoderStarted.compareAndSet(false, true)) {
+      decoder.cancel(false);
+    } else {
+      // The decoder may be reading from the stream: make room for the op it
+      // is decoding and wait for it to stop before closing the stream.
+      decoded.clear();
+      Uninterruptibles.awaitUninterruptibly(decoderStopped);
+    }
+    in.close();
+  }
+
+  @Override
+  public String getName() {
+    return in.getName();
+  }
+
+  @Override
+  public String getCurrentStreamName() {
+    return in.getCurrentStreamName();
+  }
+
+  @Override
+  public long getFirstTxId() {
+    return in.getFirstTxId();
+  }
+
+  @Override
+  public long getLastTxId() {
+    return in.getLastTxId();
+  }
+
+  @Override
+  public long length() throws IOException {
+    return in.length();
+  }
+
+  @Override
+  public boolean isInProgress() {
+    return in.isInProgress();
+  }
+
+  @Override
+  public void setMaxOpSize(int maxOpSize) {
+    in.setMaxOpSize(maxOpSize);
+  }
+
+  @Override
+  public boolean isLocalLog() {
+    return in.isLocalLog();
+  }
+}
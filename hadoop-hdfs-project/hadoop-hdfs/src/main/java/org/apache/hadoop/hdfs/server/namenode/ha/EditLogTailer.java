@@ -22,6 +22,7 @@
 import java.net.InetSocketAddress;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -52,7 +53,9 @@
 import org.apache.hadoop.hdfs.server.namenode.FSImage;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.PipelinedEditLogInputStream;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.SecurityUtil;
 
@@ -171,6 +174,13 @@ public class EditLogTailer {
    */
   private final long maxTxnsPerLock;
 
+  /**
+   * The number of ops to decode ahead of the op being applied, and the
+   * executor decoding them, which is null if decoding ahead is disabled.
+   */
+  private final int decodeAheadOps;
+  private final ExecutorService decodeExecutor;
+
   /**
    * Timer instance to be set only using constructor.
    * Only tests can reassign this by using setTimerForTests().
@@ -259,6 +269,13 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
         DFS_HA_TAILEDITS_MAX_TXNS_PER_LOCK_KEY,
         DFS_HA_TAILEDITS_MAX_TXNS_PER_LOCK_DEFAULT);
 
+    decodeAheadOps = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_DECODE_AHEAD_OPS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_DECODE_AHEAD_OPS_DEFAULT);
+    decodeExecutor = decodeAheadOps > 0 ? Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("Edit log decoder").build()) : null;
+
     nnCount = nns.size();
     // setup the iterator to endlessly loop the nns
     this.nnLookup = Iterators.cycle(nns);
@@ -279,6 +296,9 @@ public void stop() throws IOException {
       throw new IOException(e);
     } finally {
       rollEditsRpcExecutor.shutdown();
+      if (decodeExecutor != null) {
+        decodeExecutor.shutdownNow();
+      }
     }
   }
   
@@ -351,6 +371,16 @@ private long doTailEdits(boolean enableInProgress) throws IOException, Interrupt
       NameNode.getNameNodeMetrics().addEditLogFetchTime(
           timer.monotonicNow() - startTime);
     }
+    if (decodeExecutor != null) {
+      // Start decoding before waiting for the lock.
+      Collection<EditLogInputStream> pipelined =
+          new ArrayList<>(streams.size());
+      for (EditLogInputStream stream : streams) {
+        pipelined.add(new PipelinedEditLogInputStream(stream, decodeAheadOps,
+            decodeExecutor));
+      }
+      streams = pipelined;
+    }
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
@@ -361,6 +391,8 @@ private long doTailEdits(boolean enableInProgress) throws IOException, Interrupt
       if (lastTxnId != currentLastTxnId) {
         LOG.warn("The currentLastTxnId({}) is different from preLastTxtId({})",
             currentLastTxnId, lastTxnId);
+        IOUtils.cleanupWithLogger(LOG,
+            streams.toArray(new EditLogInputStream[0]));
         return 0;
       }
       LOG.debug("edit streams to load from: {}.", streams.size());
@@ -93,6 +93,17 @@ public class NameNodeMetrics {
   MutableGaugeInt deleteBlocksQueued;
   @Metric("Number of pending deletion blocks")
   MutableGaugeInt pendingDeleteBlocksCount;
+  @Metric("Number of getFileInfo calls answered by the observer namespace cache")
+  MutableCounterLong observerNamespaceCacheHits;
+  @Metric("Number of getFileInfo calls missing the observer namespace cache")
+  MutableCounterLong observerNamespaceCacheMisses;
+  @Metric("Number of observer namespace cache invalidations")
+  MutableCounterLong observerNamespaceCacheInvalidations;
+  @Metric(value = "Number of leases scanned by the lease monitor",
+      valueName = "Count")
+  MutableStat leasesScanned;
+  @Metric("Number of write lock holds releasing expired leases")
+  MutableCounterLong leaseRecoveryBatches;
 
   @Metric("Number of file system operations")
   public long totalFileOps(){
@@ -130,6 +141,9 @@ public long totalFileOps(){
   @Metric("Number of blockReports from individual storages")
   MutableRate storageBlockReport;
   final MutableQuantiles[] storageBlockReportQuantiles;
+  @Metric("Read lock hold time diffing a storage block report")
+  MutableRate blockReportDiff;
+  final MutableQuantiles[] blockReportDiffQuantiles;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
   @Metric("Generate EDEK time") private MutableRate generateEDEKTime;
@@ -176,6 +190,7 @@ public long totalFileOps(){
     syncsQuantiles = new MutableQuantiles[len];
     numTransactionsBatchedInSync = new MutableQuantiles[len];
     storageBlockReportQuantiles = new MutableQuantiles[len];
+    blockReportDiffQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     generateEDEKTimeQuantiles = new MutableQuantiles[len];
     warmUpEDEKTimeQuantiles = new MutableQuantiles[len];
@@ -197,6 +212,9 @@ public long totalFileOps(){
       storageBlockReportQuantiles[i] = registry.newQuantiles(
           "storageBlockReport" + interval + "s",
           "Storage block report", "ops", "latency", interval);
+      blockReportDiffQuantiles[i] = registry.newQuantiles(
+          "blockReportDiff" + interval + "s",
+          "Block report diff", "ops", "latency", interval);
       cacheReportQuantiles[i] = registry.newQuantiles(
           "cacheReport" + interval + "s",
           "Cache report", "ops", "latency", interval);
@@ -297,6 +315,18 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrObserverNamespaceCacheHits() {
+    observerNamespaceCacheHits.incr();
+  }
+
+  public void incrObserverNamespaceCacheMisses() {
+    observerNamespaceCacheMisses.incr();
+  }
+
+  public void incrObserverNamespaceCacheInvalidations() {
+    observerNamespaceCacheInvalidations.incr();
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -406,6 +436,13 @@ public void addStorageBlockReport(long latency) {
     }
   }
 
+  public void addBlockReportDiff(long latency) {
+    blockReportDiff.add(latency);
+    for (MutableQuantiles q : blockReportDiffQuantiles) {
+      q.add(latency);
+    }
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
@@ -468,6 +505,14 @@ public void addEditLogFetchTime(long elapsed) {
     }
   }
 
+  public void addLeasesScanned(long scanned) {
+    leasesScanned.add(scanned);
+  }
+
+  public void incrLeaseRecoveryBatches() {
+    leaseRecoveryBatches.incr();
+  }
+
   public void addNumEditLogLoaded(long loaded) {
     numEditLogLoaded.add(loaded);
     for (MutableQuantiles q : numEditLogLoadedQuantiles) {
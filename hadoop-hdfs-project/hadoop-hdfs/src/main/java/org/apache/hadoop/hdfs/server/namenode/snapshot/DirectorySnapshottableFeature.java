@@ -295,6 +295,8 @@ public void computeContentSummary4Snapshot(final BlockStoragePolicySuite bsps,
    * @param from The name of the start point of the comparison. Null indicating
    *          the current tree.
    * @param to The name of the end point. Null indicating the current tree.
+   * @param skipUnchanged Whether to skip the subtrees in which no snapshot
+   *          diff has been recorded since the earlier snapshot.
    * @return The difference between the start/end points.
    * @throws SnapshotException If there is no snapshot matching the starting
    *           point, or if endSnapshotName is not null but cannot be identified
@@ -302,7 +304,7 @@ public void computeContentSummary4Snapshot(final BlockStoragePolicySuite bsps,
    */
   SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
       final INodeDirectory snapshotDiffScopeDir, final String from,
-      final String to) throws SnapshotException {
+      final String to, boolean skipUnchanged) throws SnapshotException {
     Preconditions.checkArgument(snapshotDiffScopeDir
         .isDescendantOfSnapshotRoot(snapshotRootDir));
     Snapshot fromSnapshot = getSnapshotByName(snapshotRootDir, from);
@@ -317,7 +319,7 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
     // so that the file paths in the diff report are relative to the
     // snapshot scope dir.
     computeDiffRecursively(snapshotDiffScopeDir, snapshotDiffScopeDir,
-        new ArrayList<>(), diffs);
+        new ArrayList<>(), diffs, skipUnchanged);
     return diffs;
   }
 
@@ -341,6 +343,9 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
    *           as the no of entries exceeded the snapshotdiffentry limit. -1
    *           indicates, the snapshotdiff computation needs to start right
    *           from the startPath provided.
+   * @param skipUnchanged
+   *           whether to skip the subtrees in which no snapshot diff has been
+   *           recorded since the earlier snapshot.
    *
    * @return The difference between the start/end points.
    * @throws SnapshotException If there is no snapshot matching the starting
@@ -350,7 +355,8 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
   SnapshotDiffListingInfo computeDiff(final INodeDirectory snapshotRootDir,
       final INodeDirectory snapshotDiffScopeDir, final String from,
       final String to, byte[] startPath, int index,
-      int snapshotDiffReportEntriesLimit) throws SnapshotException {
+      int snapshotDiffReportEntriesLimit, boolean skipUnchanged)
+      throws SnapshotException {
     Preconditions.checkArgument(
         snapshotDiffScopeDir.isDescendantOfSnapshotRoot(snapshotRootDir));
     Snapshot fromSnapshot = getSnapshotByName(snapshotRootDir, from);
@@ -365,7 +371,8 @@ SnapshotDiffListingInfo computeDiff(final INodeDirectory snapshotRootDir,
             fromSnapshot, toSnapshot, snapshotDiffReportEntriesLimit);
     diffs.setLastIndex(index);
     computeDiffRecursively(snapshotDiffScopeDir, snapshotDiffScopeDir,
-        new ArrayList<byte[]>(), diffs, resumePath, 0, toProcess);
+        new ArrayList<byte[]>(), diffs, resumePath, 0, toProcess,
+        skipUnchanged);
     return diffs;
   }
 
@@ -402,9 +409,12 @@ public Snapshot getSnapshotByName(INodeDirectory snapshotRoot,
    * @param parentPath Relative path (corresponding to the snapshot root) of
    *                   the node's parent.
    * @param diffReport data structure used to store the diff.
+   * @param skipUnchanged Whether to skip the subtrees in which no snapshot
+   *                      diff has been recorded since the earlier snapshot.
    */
   private void computeDiffRecursively(final INodeDirectory snapshotDir,
-      INode node, List<byte[]> parentPath, SnapshotDiffInfo diffReport) {
+      INode node, List<byte[]> parentPath, SnapshotDiffInfo diffReport,
+      boolean skipUnchanged) {
     final Snapshot earlierSnapshot = diffReport.isFromEarlier() ?
         diffReport.getFrom() : diffReport.getTo();
     final Snapshot laterSnapshot = diffReport.isFromEarlier() ?
@@ -440,9 +450,14 @@ private void computeDiffRecursively(final INodeDirectory snapshotDir,
             diffReport.setRenameTarget(child.getId(), renameTargetPath);
           }
         }
+        if (toProcess && skipUnchanged
+            && isUnchangedSince(child, earlierSnapshot)) {
+          toProcess = false;
+        }
         if (toProcess) {
           parentPath.add(name);
-          computeDiffRecursively(snapshotDir, child, parentPath, diffReport);
+          computeDiffRecursively(snapshotDir, child, parentPath, diffReport,
+              skipUnchanged);
           parentPath.remove(parentPath.size() - 1);
         }
       }
@@ -473,10 +488,13 @@ private void computeDiffRecursively(final INodeDirectory snapshotDir,
    *                    snapshotRoot.
    * @param processFlag indicates that the dir/file where the snapshotdiff
    *                    computation has to start is processed or not.
+   * @param skipUnchanged whether to skip the subtrees in which no snapshot
+   *                    diff has been recorded since the earlier snapshot.
    */
   private boolean computeDiffRecursively(final INodeDirectory snapshotDir,
        INode node, List<byte[]> parentPath, SnapshotDiffListingInfo diffReport,
-       final byte[][] resume, int level, boolean processFlag) {
+       final byte[][] resume, int level, boolean processFlag,
+       boolean skipUnchanged) {
     final Snapshot earlier = diffReport.getEarlier();
     final Snapshot later = diffReport.getLater();
     byte[][] relativePath = parentPath.toArray(new byte[parentPath.size()][]);
@@ -518,10 +536,13 @@ private boolean computeDiffRecursively(final INodeDirectory snapshotDir,
             toProcess = true;
           }
         }
+        if (toProcess && skipUnchanged && isUnchangedSince(child, earlier)) {
+          toProcess = false;
+        }
         if (toProcess) {
           parentPath.add(name);
           processFlag = computeDiffRecursively(snapshotDir, child, parentPath,
-              diffReport, resume, level, processFlag);
+              diffReport, resume, level, processFlag, skipUnchanged);
           parentPath.remove(parentPath.size() - 1);
           if (!processFlag) {
             return false;
@@ -541,6 +562,20 @@ private boolean computeDiffRecursively(final INodeDirectory snapshotDir,
     return true;
   }
 
+  /**
+   * A diff created for a snapshot is tagged with the latest snapshot id at
+   * that time, and snapshot ids only grow, so a directory whose latest
+   * subtree diff id is less than the earlier snapshot id has no diff in the
+   * range being compared, neither on itself nor on any inode below it.
+   *
+   * @return true if the given node is a directory whose subtree cannot
+   *         contribute to a diff report starting at the given snapshot.
+   */
+  private static boolean isUnchangedSince(INode node, Snapshot earlier) {
+    return node.isDirectory()
+        && node.asDirectory().getLatestSubtreeDiffId() < earlier.getId();
+  }
+
   /**
    * We just found a deleted WithName node as the source of a rename operation.
    * However, we should include it in our snapshot diff report as rename only
@@ -781,7 +781,7 @@ public void cleanDirectory(INode.ReclaimContext reclaimContext,
 
     QuotaCounts current = reclaimContext.quotaDelta().getCountsCopy();
     current.subtract(old);
-    if (currentINode.isQuotaSet()) {
+    if (currentINode.hasCachedUsage()) {
       reclaimContext.quotaDelta().addQuotaDirUpdate(currentINode, current);
     }
   }
@@ -34,6 +34,9 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.thirdparty.com.google.common.collect.ImmutableList;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -79,10 +82,14 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature.DirectoryDiff;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature.DirectoryDiffList;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot.Root;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.Phase;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.server.namenode.XAttrFeature;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 
 import org.apache.hadoop.util.Preconditions;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.thirdparty.protobuf.ByteString;
 
 @InterfaceAudience.Private
@@ -95,6 +102,9 @@ public final static class Loader {
     private final FSDirectory fsDir;
     private final FSImageFormatProtobuf.Loader parent;
     private final Map<Integer, Snapshot> snapshotMap;
+    // Guards the blocks map, which is not thread safe, while the snapshot
+    // diff sub-sections are loaded in parallel.
+    private final Object blocksMapLock = new Object();
 
     public Loader(FSNamesystem fsn, FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
@@ -183,9 +193,88 @@ private void loadSnapshots(InputStream in, int size) throws IOException {
     /**
      * Load the snapshot diff section from fsimage.
      */
-    public void loadSnapshotDiffSection(InputStream in) throws IOException {
+    public void loadSnapshotDiffSection(InputStream in, StartupProgress prog,
+        Step currentStep) throws IOException {
+      int loaded = loadSnapshotDiffEntries(in);
+      setLoadedDiffEntries(prog, currentStep, loaded);
+      fsn.getSnapshotManager().initLatestSubtreeDiffIds();
+    }
+
+    /**
+     * Load the snapshot diff sub-sections using the given executor. Every
+     * DiffEntry belongs to a single inode, so the sub-sections only share the
+     * blocks map, which is updated under {@link #blocksMapLock}.
+     */
+    public void loadSnapshotDiffSectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, String compressionCodec,
+        StartupProgress prog, Step currentStep) throws IOException {
+      FSImage.LOG.info("Loading the SnapshotDiff section in parallel with {}" +
+          " sub-sections", sections.size());
+      CountDownLatch latch = new CountDownLatch(sections.size());
+      AtomicLong totalLoaded = new AtomicLong(0);
+      final List<IOException> exceptions =
+          Collections.synchronizedList(new ArrayList<>());
+      for (FileSummary.Section s : sections) {
+        service.submit(() -> {
+          InputStream ins = null;
+          try {
+            long start = Time.monotonicNow();
+            ins = parent.getInputStreamForSection(s, compressionCodec);
+            int loaded = loadSnapshotDiffEntries(ins);
+            synchronized (totalLoaded) {
+              setLoadedDiffEntries(prog, currentStep,
+                  totalLoaded.addAndGet(loaded));
+            }
+            FSImageFormatPBINode.Loader.logSubSectionThroughput(
+                "snapshot diff entries", s, loaded,
+                Time.monotonicNow() - start);
+          } catch (Exception e) {
+            FSImage.LOG.error("An exception occurred loading SnapshotDiffs " +
+                "in parallel", e);
+            exceptions.add(new IOException(e));
+          } finally {
+            latch.countDown();
+            try {
+              if (ins != null) {
+                ins.close();
+              }
+            } catch (IOException ioe) {
+              FSImage.LOG.warn("Failed to close the input stream, ignoring",
+                  ioe);
+            }
+          }
+        });
+      }
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        FSImage.LOG.error("Interrupted waiting for countdown latch", e);
+        throw new IOException(e);
+      }
+      if (exceptions.size() != 0) {
+        FSImage.LOG.error("{} exceptions occurred loading SnapshotDiffs",
+            exceptions.size());
+        throw exceptions.get(0);
+      }
+      FSImage.LOG.info("Completed loading all SnapshotDiff sub-sections. " +
+          "Loaded {} diff entries.", totalLoaded.get());
+      fsn.getSnapshotManager().initLatestSubtreeDiffIds();
+    }
+
+    /**
+     * Report the diff entries loaded so far. The section does not record how
+     * many entries it holds, so the total grows with the count.
+     */
+    private static void setLoadedDiffEntries(StartupProgress prog,
+        Step currentStep, long loaded) {
+      prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, loaded);
+      prog.setCount(Phase.LOADING_FSIMAGE, currentStep, loaded);
+    }
+
+    private int loadSnapshotDiffEntries(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      int count = 0;
       while (true) {
         SnapshotDiffSection.DiffEntry entry = SnapshotDiffSection.DiffEntry
             .parseDelimitedFrom(in);
@@ -204,7 +293,9 @@ public void loadSnapshotDiffSection(InputStream in) throws IOException {
               refList);
           break;
         }
+        count++;
       }
+      return count;
     }
 
     /** Load FileDiff list for a file with snapshot feature */
@@ -254,15 +345,17 @@ private void loadFileDiffList(InputStream in, INodeFile file, int size)
         List<BlockProto> bpl = pbf.getBlocksList();
         // in file diff there can only be contiguous blocks
         BlockInfo[] blocks = new BlockInfo[bpl.size()];
-        for(int j = 0, e = bpl.size(); j < e; ++j) {
-          Block blk = PBHelperClient.convert(bpl.get(j));
-          BlockInfo storedBlock = bm.getStoredBlock(blk);
-          if(storedBlock == null) {
-            storedBlock = (BlockInfoContiguous) fsn.getBlockManager()
-                .addBlockCollectionWithCheck(new BlockInfoContiguous(blk,
-                    copy.getFileReplication()), file);
+        synchronized (blocksMapLock) {
+          for(int j = 0, e = bpl.size(); j < e; ++j) {
+            Block blk = PBHelperClient.convert(bpl.get(j));
+            BlockInfo storedBlock = bm.getStoredBlock(blk);
+            if(storedBlock == null) {
+              storedBlock = (BlockInfoContiguous) fsn.getBlockManager()
+                  .addBlockCollectionWithCheck(new BlockInfoContiguous(blk,
+                      copy.getFileReplication()), file);
+            }
+            blocks[j] = storedBlock;
           }
-          blocks[j] = storedBlock;
         }
         if(blocks.length > 0) {
           diff.setBlocks(blocks);
@@ -271,9 +364,11 @@ private void loadFileDiffList(InputStream in, INodeFile file, int size)
       }
       file.loadSnapshotFeature(diffs);
       short repl = file.getPreferredBlockReplication();
-      for (BlockInfo b : file.getBlocks()) {
-        if (b.getReplication() < repl) {
-          bm.setReplication(b.getReplication(), repl, b);
+      synchronized (blocksMapLock) {
+        for (BlockInfo b : file.getBlocks()) {
+          if (b.getReplication() < repl) {
+            bm.setReplication(b.getReplication(), repl, b);
+          }
         }
       }
     }
@@ -294,7 +389,9 @@ private List<INode> loadCreatedList(InputStream in, INodeDirectory dir,
     private void addToDeletedList(INode dnode, INodeDirectory parent) {
       dnode.setParent(parent);
       if (dnode.isFile()) {
-        updateBlocksMap(dnode.asFile(), fsn.getBlockManager());
+        synchronized (blocksMapLock) {
+          updateBlocksMap(dnode.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
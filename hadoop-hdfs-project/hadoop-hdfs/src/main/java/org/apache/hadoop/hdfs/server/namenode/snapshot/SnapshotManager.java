@@ -29,6 +29,7 @@
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -125,6 +126,12 @@ public void initThreadLocals() {
    * directory.
    */
   private final boolean snapshotDiffAllowSnapRootDescendant;
+  /**
+   * If snapshotDiffSkipUnchangedSubtrees is set to true, snapshot diff
+   * operations do not descend into the directories in which no snapshot diff
+   * has been recorded since the earlier snapshot.
+   */
+  private final boolean snapshotDiffSkipUnchangedSubtrees;
 
   private final AtomicInteger numSnapshots = new AtomicInteger();
   private static final int SNAPSHOT_ID_BIT_WIDTH = 28;
@@ -152,6 +159,10 @@ public SnapshotManager(final Configuration conf, final FSDirectory fsdir)
         DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_ALLOW_SNAP_ROOT_DESCENDANT,
         DFSConfigKeys.
             DFS_NAMENODE_SNAPSHOT_DIFF_ALLOW_SNAP_ROOT_DESCENDANT_DEFAULT);
+    this.snapshotDiffSkipUnchangedSubtrees = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES,
+        DFSConfigKeys.
+            DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES_DEFAULT);
     this.maxSnapshotLimit = conf.getInt(
         DFSConfigKeys.
             DFS_NAMENODE_SNAPSHOT_MAX_LIMIT,
@@ -165,6 +176,8 @@ public SnapshotManager(final Configuration conf, final FSDirectory fsdir)
         + skipCaptureAccessTimeOnlyChange
         + ", snapshotDiffAllowSnapRootDescendant: "
         + snapshotDiffAllowSnapRootDescendant
+        + ", snapshotDiffSkipUnchangedSubtrees: "
+        + snapshotDiffSkipUnchangedSubtrees
         + ", maxSnapshotFSLimit: "
         + maxSnapshotFSLimit
         + ", maxSnapshotLimit: "
@@ -625,6 +638,36 @@ public Map<Integer, Snapshot> read(DataInput in, FSImageFormat.Loader loader
     }
     return snapshotMap;
   }
+
+  /**
+   * Rebuild the latest subtree diff ids of all the directories from the
+   * snapshot diffs loaded from an fsimage, since the loaders add the diffs
+   * directly instead of recording them as new diffs.
+   */
+  public void initLatestSubtreeDiffIds() {
+    final Iterator<INodeWithAdditionalFields> iter =
+        fsdir.getINodeMap().getMapIterator();
+    while (iter.hasNext()) {
+      final INode inode = iter.next();
+      int last = Snapshot.CURRENT_STATE_ID;
+      if (inode.isFile()) {
+        final FileWithSnapshotFeature sf =
+            inode.asFile().getFileWithSnapshotFeature();
+        if (sf != null) {
+          last = sf.getDiffs().getLastSnapshotId();
+        }
+      } else if (inode.isDirectory()) {
+        final DirectoryWithSnapshotFeature sf =
+            inode.asDirectory().getDirectoryWithSnapshotFeature();
+        if (sf != null) {
+          last = sf.getDiffs().getLastSnapshotId();
+        }
+      }
+      if (last != Snapshot.CURRENT_STATE_ID) {
+        INodeDirectory.recordSubtreeDiff(inode, last);
+      }
+    }
+  }
   
   /**
    * List all the snapshottable directories that are owned by the current user.
@@ -718,7 +761,8 @@ public SnapshotDiffReport diff(final INodesInPath iip,
     }
     final SnapshotDiffInfo diffs = snapshotRootDir
         .getDirectorySnapshottableFeature().computeDiff(
-            snapshotRootDir, snapshotDescendantDir, from, to);
+            snapshotRootDir, snapshotDescendantDir, from, to,
+            snapshotDiffSkipUnchangedSubtrees);
     return diffs != null ? diffs.generateReport() : new SnapshotDiffReport(
         snapshotPath, from, to, Collections.<DiffReportEntry> emptyList());
   }
@@ -745,7 +789,8 @@ public SnapshotDiffReportListing diff(final INodesInPath iip,
     final SnapshotDiffListingInfo diffs =
         snapshotRootDir.getDirectorySnapshottableFeature()
             .computeDiff(snapshotRootDir, snapshotDescendantDir, from, to,
-                startPath, index, snapshotDiffReportLimit);
+                startPath, index, snapshotDiffReportLimit,
+                snapshotDiffSkipUnchangedSubtrees);
     return diffs != null ? diffs.generateReport() :
         new SnapshotDiffReportListing();
   }
@@ -79,6 +79,8 @@ private static void logConf(Configuration conf) {
         " = " +  conf.get(DFSConfigKeys.NNTOP_NUM_USERS_KEY));
     LOG.info("NNTop conf: " + DFSConfigKeys.NNTOP_WINDOWS_MINUTES_KEY +
         " = " +  conf.get(DFSConfigKeys.NNTOP_WINDOWS_MINUTES_KEY));
+    LOG.info("NNTop conf: " + DFSConfigKeys.NNTOP_MAX_TRACKED_USERS_KEY +
+        " = " +  conf.get(DFSConfigKeys.NNTOP_MAX_TRACKED_USERS_KEY));
   }
 
   /**
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.top.window;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.util.HeavyHitters;
+
+/**
+ * A rolling window view on the users who cause the most events, which unlike
+ * a {@link RollingWindow} per user takes bounded memory however many users
+ * there are.
+ * <p>
+ * Each bucket of the window counts the users in a {@link HeavyHitters}
+ * summary of a fixed capacity. The count of a user in the window is the sum
+ * of its counts in the buckets. It may overestimate the number of events of
+ * the user by up to the number of events in the window divided by the
+ * capacity, so users with fewer events may appear in the place of each other.
+ * The total number of events in the window is exact.
+ * <p>
+ * The same assumptions as for {@link RollingWindow} apply.
+ */
+@InterfaceAudience.Private
+public class RollingHeavyHitters {
+  private final Bucket[] buckets;
+  private final int windowLenMs;
+
+  /**
+   * @param windowLenMs The period that is covered by the window
+   * @param numBuckets number of buckets in the window
+   * @param capacity the maximum number of users counted in each bucket
+   */
+  RollingHeavyHitters(int windowLenMs, int numBuckets, int capacity) {
+    this.windowLenMs = windowLenMs;
+    this.buckets = new Bucket[numBuckets];
+    for (int i = 0; i < numBuckets; i++) {
+      buckets[i] = new Bucket(capacity);
+    }
+  }
+
+  /**
+   * Record events of a user at the specified time.
+   *
+   * @param time the time at which the events occurred
+   * @param user the user who caused the events
+   * @param delta the number of events
+   */
+  public void incAt(long time, String user, long delta) {
+    int positionOnWindow = (int) (time % windowLenMs);
+    Bucket bucket = buckets[positionOnWindow * buckets.length / windowLenMs];
+    if (bucket.isStaleNow(time)) {
+      bucket.safeReset(time);
+    }
+    bucket.users.add(user, delta);
+  }
+
+  /**
+   * Get the number of events of each counted user in the window at the
+   * specified time.
+   *
+   * @param time the current time
+   * @return the users with their number of events
+   */
+  public Map<String, Long> getCounts(long time) {
+    Map<String, Long> counts = new HashMap<>();
+    for (Bucket bucket : buckets) {
+      if (!bucket.isStaleNow(time)) {
+        bucket.users.getCounts().forEach(
+            (user, count) -> counts.merge(user, count, Long::sum));
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Thread-safety is provided by synchronization when resetting the update
+   * time and by the {@link HeavyHitters} summary.
+   */
+  private class Bucket {
+    private final HeavyHitters<String> users;
+    private final AtomicLong updateTime = new AtomicLong(-1);
+
+    Bucket(int capacity) {
+      users = new HeavyHitters<>(capacity);
+    }
+
+    boolean isStaleNow(long time) {
+      long utime = updateTime.get();
+      return (utime == -1) || (time - utime >= windowLenMs);
+    }
+
+    void safeReset(long time) {
+      synchronized (this) {
+        if (isStaleNow(time)) {
+          users.clear();
+          updateTime.set(time);
+        }
+      }
+    }
+  }
+}
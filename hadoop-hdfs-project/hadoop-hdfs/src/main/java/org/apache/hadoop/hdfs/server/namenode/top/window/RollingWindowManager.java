@@ -52,6 +52,7 @@ public class RollingWindowManager {
   private final int windowLenMs;
   private final int bucketsPerWindow; // e.g., 10 buckets per minute
   private final int topUsersCnt; // e.g., report top 10 metrics
+  private final int maxTrackedUsers; // 0 to track every user of a metric
 
   static private class RollingWindowMap extends
       ConcurrentHashMap<String, RollingWindow> {
@@ -218,6 +219,14 @@ public long getTotal() {
   public ConcurrentHashMap<String, RollingWindowMap> metricMap =
       new ConcurrentHashMap<>();
 
+  /**
+   * A mapping from each reported metric to the {@link RollingHeavyHitters}
+   * of its users, used instead of {@link #metricMap} when the number of
+   * tracked users is bounded.
+   */
+  private final ConcurrentHashMap<String, RollingHeavyHitters> heavyHitters =
+      new ConcurrentHashMap<>();
+
   public RollingWindowManager(Configuration conf, int reportingPeriodMs) {
     
     windowLenMs = reportingPeriodMs;
@@ -236,6 +245,13 @@ public RollingWindowManager(Configuration conf, int reportingPeriodMs) {
             DFSConfigKeys.NNTOP_NUM_USERS_DEFAULT);
     Preconditions.checkArgument(topUsersCnt > 0,
         "the number of requested top users must be at least 1");
+    maxTrackedUsers =
+        conf.getInt(DFSConfigKeys.NNTOP_MAX_TRACKED_USERS_KEY,
+            DFSConfigKeys.NNTOP_MAX_TRACKED_USERS_DEFAULT);
+    Preconditions.checkArgument(maxTrackedUsers == 0
+            || maxTrackedUsers >= topUsersCnt,
+        "the number of tracked users must be 0 or at least the number of"
+            + " requested top users");
   }
 
   /**
@@ -249,6 +265,12 @@ public RollingWindowManager(Configuration conf, int reportingPeriodMs) {
    */
   public void recordMetric(long time, String command,
       String user, long delta) {
+    if (maxTrackedUsers > 0) {
+      heavyHitters.computeIfAbsent(command, c -> new RollingHeavyHitters(
+          windowLenMs, bucketsPerWindow, maxTrackedUsers))
+          .incAt(time, user, delta);
+      return;
+    }
     RollingWindow window = getRollingWindow(command, user);
     window.incAt(time, delta);
   }
@@ -275,6 +297,19 @@ public TopWindow snapshot(long time) {
         totalCounts.addAll(topN);
       }
     }
+    for (Map.Entry<String, RollingHeavyHitters> entry
+        : heavyHitters.entrySet()) {
+      UserCounts topN = new UserCounts(maxTrackedUsers);
+      entry.getValue().getCounts(time).forEach((user, count) -> {
+        if (count > 0) {
+          topN.add(new User(user, count));
+        }
+      });
+      if (!topN.isEmpty()) {
+        window.addOp(new Op(entry.getKey(), topN, topUsersCnt));
+        totalCounts.addAll(topN);
+      }
+    }
     // synthesize the overall total op count with the top users for every op.
     Set<User> topUsers = new HashSet<>();
     for (Op op : window.getOps()) {
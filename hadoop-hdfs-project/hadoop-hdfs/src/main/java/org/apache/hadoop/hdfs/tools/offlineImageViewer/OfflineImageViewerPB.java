@@ -83,6 +83,12 @@ public class OfflineImageViewerPB {
       + "    -ec print erasure coding policy, used by delimiter only.\n"
       + "    -m  defines multiThread to process sub-sections, \n"
       + "    used by delimiter only.\n"
+      + "    -partition writes the inodes of each sub-section to its own\n"
+      + "    file in the OUTPUTFILE directory, used by delimiter only.\n"
+      + "  * Histogram: Aggregate the files by their depth in the namespace\n"
+      + "    and output histograms of the file size, age in days and\n"
+      + "    replication at each depth, in a delimited format.\n"
+      + "    -m  defines multiThread to process sub-sections.\n"
       + "  * DetectCorruption: Detect potential corruption of the image by\n"
       + "    selectively loading parts of it and actively searching for\n"
       + "    inconsistencies. Outputs a summary of the found corruptions\n"
@@ -101,7 +107,8 @@ public class OfflineImageViewerPB {
       + "                       will also create an <outputFile>.md5 file.\n"
       + "-p,--processor <arg>   Select which type of processor to apply\n"
       + "                       against image file. (XML|FileDistribution|\n"
-      + "                       ReverseXML|Web|Delimited|DetectCorruption)\n"
+      + "                       ReverseXML|Web|Delimited|DetectCorruption|\n"
+      + "                       Histogram)\n"
       + "                       The default is Web.\n"
       + "-addr <arg>            Specify the address(host:port) to listen.\n"
       + "                       (localhost:5978 by default). This option is\n"
@@ -115,18 +122,22 @@ public class OfflineImageViewerPB {
       + "-format                Format the output result in a human-readable fashion rather\n"
       + "                       than a number of bytes. (false by default).\n"
       + "                       This option is used with FileDistribution processor.\n"
-      + "-delimiter <arg>       Delimiting string to use with Delimited or \n"
-      + "                       DetectCorruption processor. \n"
+      + "-delimiter <arg>       Delimiting string to use with Delimited,\n"
+      + "                       DetectCorruption or Histogram processor. \n"
       + "-sp                    Whether to print storage policy (default is false). \n"
       + "                       Is used by Delimited processor only. \n"
       + "-ec                    Whether to print erasure coding policy (default is false). \n"
       + "                       Is used by Delimited processor only. \n"
       + "-t,--temp <arg>        Use temporary dir to cache intermediate\n"
-      + "                       result to generate DetectCorruption or\n"
-      + "                       Delimited outputs. If not set, the processor\n"
-      + "                       constructs the namespace in memory \n"
-      + "                       before outputting text.\n"
+      + "                       result to generate DetectCorruption,\n"
+      + "                       Delimited or Histogram outputs. If not set,\n"
+      + "                       the processor constructs the namespace in\n"
+      + "                       memory before outputting text.\n"
       + "-m,--multiThread <arg> Use multiThread to process sub-sections.\n"
+      + "-partition             Write the output of each sub-section to its\n"
+      + "                       own file in the output directory instead of\n"
+      + "                       merging them. Is used by Delimited processor\n"
+      + "                       only.\n"
       + "-h,--help              Display usage information and exit\n";
 
   /**
@@ -152,6 +163,7 @@ private static Options buildOptions() {
     options.addOption("ec", false, "");
     options.addOption("t", "temp", true, "");
     options.addOption("m", "multiThread", true, "");
+    options.addOption("partition", false, "");
 
     return options;
   }
@@ -206,11 +218,18 @@ public static int run(String[] args) throws Exception {
         PBImageTextWriter.DEFAULT_DELIMITER);
     String tempPath = cmd.getOptionValue("t", "");
     int threads = Integer.parseInt(cmd.getOptionValue("m", "1"));
+    boolean partitioned = cmd.hasOption("partition");
+    if (partitioned && outputFile.equals("-")) {
+      System.err.println("-partition requires an output directory.");
+      printUsage();
+      return -1;
+    }
 
     Configuration conf = new Configuration();
     PrintStream out = null;
     try {
-      out = outputFile.equals("-") || "REVERSEXML".equalsIgnoreCase(processor) ?
+      out = outputFile.equals("-") || partitioned ||
+          "REVERSEXML".equalsIgnoreCase(processor) ?
         System.out : new PrintStream(outputFile, "UTF-8");
       switch (StringUtils.toUpperCase(processor)) {
       case "FILEDISTRIBUTION":
@@ -250,7 +269,14 @@ public static int run(String[] args) throws Exception {
         try (PBImageDelimitedTextWriter writer =
             new PBImageDelimitedTextWriter(out, delimiter,
                 tempPath, printStoragePolicy, printECPolicy, threads,
-                outputFile, conf)) {
+                outputFile, partitioned, conf)) {
+          writer.visit(inputFile);
+        }
+        break;
+      case "HISTOGRAM":
+        try (PBImageHistogramWriter writer =
+            new PBImageHistogramWriter(out, delimiter, tempPath, threads,
+                outputFile)) {
           writer.visit(inputFile);
         }
         break;
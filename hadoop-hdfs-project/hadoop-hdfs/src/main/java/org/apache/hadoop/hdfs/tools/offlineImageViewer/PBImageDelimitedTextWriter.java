@@ -176,7 +176,17 @@ public String build() {
                              boolean printECPolicy, int threads,
                              String parallelOut, Configuration conf)
       throws IOException {
-    super(out, delimiter, tempPath, threads, parallelOut);
+    this(out, delimiter, tempPath, printStoragePolicy, printECPolicy, threads,
+        parallelOut, false, conf);
+  }
+
+  PBImageDelimitedTextWriter(PrintStream out, String delimiter,
+                             String tempPath, boolean printStoragePolicy,
+                             boolean printECPolicy, int threads,
+                             String parallelOut, boolean partitioned,
+                             Configuration conf)
+      throws IOException {
+    super(out, delimiter, tempPath, threads, parallelOut, partitioned);
     this.printStoragePolicy = printStoragePolicy;
     if (printECPolicy && conf != null) {
       this.printECPolicy = true;
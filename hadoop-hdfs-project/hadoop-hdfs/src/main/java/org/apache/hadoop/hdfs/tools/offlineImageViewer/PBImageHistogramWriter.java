@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile;
+
+/**
+ * A PBImageHistogramWriter aggregates the files of the PB fsimage by their
+ * depth in the namespace, and outputs histograms of the file size, the age
+ * and the replication of the files at each depth. This answers the usual
+ * questions about an image without writing out every inode and aggregating
+ * them in a second pass.
+ * <p>
+ * Each line of the output is one non-empty bucket of a histogram:
+ * <pre>
+ * Depth  Histogram  Bucket  Files  Bytes
+ * </pre>
+ * A file directly under the root is at depth 1. The buckets of the size
+ * histogram are powers of two and the bucket of a file is the smallest one
+ * which is not less than its size in bytes. The age histogram works the same
+ * way on the days since the last modification of the file. The bucket of the
+ * replication histogram is the replication of the file, which is 0 for
+ * erasure coded files. Bytes is the total length of the files in the bucket.
+ */
+public class PBImageHistogramWriter extends PBImageTextWriter {
+  static final String SIZE = "Size";
+  static final String AGE = "AgeDays";
+  static final String REPLICATION = "Replication";
+
+  /** The histograms of the files at one depth. */
+  static class DepthHistograms {
+    /** Bucket i, for i &gt; 0, counts the values in (2^(i-2), 2^(i-1)]. */
+    private final long[] sizeFiles = new long[65];
+    private final long[] sizeBytes = new long[65];
+    private final long[] ageFiles = new long[65];
+    private final long[] ageBytes = new long[65];
+    private long[] replicationFiles = new long[4];
+    private long[] replicationBytes = new long[4];
+
+    static int log2Bucket(long value) {
+      return value <= 0 ? 0 : 65 - Long.numberOfLeadingZeros(value - 1);
+    }
+
+    static long log2BucketBound(int bucket) {
+      if (bucket == 0) {
+        return 0;
+      }
+      return bucket < 64 ? 1L << (bucket - 1) : Long.MAX_VALUE;
+    }
+
+    void add(long size, long ageDays, int replication) {
+      final int sizeBucket = log2Bucket(size);
+      sizeFiles[sizeBucket]++;
+      sizeBytes[sizeBucket] += size;
+      final int ageBucket = log2Bucket(ageDays);
+      ageFiles[ageBucket]++;
+      ageBytes[ageBucket] += size;
+      if (replication >= replicationFiles.length) {
+        final int length = Integer.highestOneBit(replication) << 1;
+        replicationFiles = Arrays.copyOf(replicationFiles, length);
+        replicationBytes = Arrays.copyOf(replicationBytes, length);
+      }
+      replicationFiles[replication]++;
+      replicationBytes[replication] += size;
+    }
+
+    void add(DepthHistograms other) {
+      for (int i = 0; i < sizeFiles.length; i++) {
+        sizeFiles[i] += other.sizeFiles[i];
+        sizeBytes[i] += other.sizeBytes[i];
+        ageFiles[i] += other.ageFiles[i];
+        ageBytes[i] += other.ageBytes[i];
+      }
+      if (other.replicationFiles.length > replicationFiles.length) {
+        replicationFiles =
+            Arrays.copyOf(replicationFiles, other.replicationFiles.length);
+        replicationBytes =
+            Arrays.copyOf(replicationBytes, other.replicationBytes.length);
+      }
+      for (int i = 0; i < other.replicationFiles.length; i++) {
+        replicationFiles[i] += other.replicationFiles[i];
+        replicationBytes[i] += other.replicationBytes[i];
+      }
+    }
+  }
+
+  /** The histograms of all depths, filled by a single thread. */
+  static class Histograms {
+    private final List<DepthHistograms> depths = new ArrayList<>();
+
+    DepthHistograms get(int depth) {
+      while (depths.size() <= depth) {
+        depths.add(new DepthHistograms());
+      }
+      return depths.get(depth);
+    }
+
+    void add(Histograms other) {
+      for (int depth = 0; depth < other.depths.size(); depth++) {
+        get(depth).add(other.depths.get(depth));
+      }
+    }
+  }
+
+  private final long now;
+  /** The histograms of every thread which has output inodes. */
+  private final Queue<Histograms> allHistograms =
+      new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Histograms> histograms =
+      ThreadLocal.withInitial(() -> {
+        Histograms h = new Histograms();
+        allHistograms.add(h);
+        return h;
+      });
+
+  PBImageHistogramWriter(PrintStream out, String delimiter, String tempPath,
+      int threads, String parallelOut) throws IOException {
+    this(out, delimiter, tempPath, threads, parallelOut,
+        System.currentTimeMillis());
+  }
+
+  /**
+   * @param now the time in milliseconds the age of the files is relative to.
+   */
+  PBImageHistogramWriter(PrintStream out, String delimiter, String tempPath,
+      int threads, String parallelOut, long now) throws IOException {
+    super(out, delimiter, tempPath, threads, parallelOut);
+    this.now = now;
+  }
+
+  /**
+   * @return the depth of a child of the given directory path.
+   */
+  static int getChildDepth(String parent) {
+    if (parent.isEmpty() || parent.equals("/")) {
+      return 1;
+    }
+    int depth = 1;
+    for (int i = 0; i < parent.length(); i++) {
+      if (parent.charAt(i) == '/') {
+        depth++;
+      }
+    }
+    return parent.endsWith("/") ? depth - 1 : depth;
+  }
+
+  @Override
+  protected String getEntry(String parent, INode inode) {
+    if (inode.getType() == INode.Type.FILE) {
+      final INodeFile file = inode.getFile();
+      final long ageDays = TimeUnit.MILLISECONDS.toDays(
+          Math.max(0, now - file.getModificationTime()));
+      histograms.get().get(getChildDepth(parent)).add(
+          FSImageLoader.getFileSize(file), ageDays, file.getReplication());
+    }
+    return "";
+  }
+
+  @Override
+  protected String getHeader() {
+    StringBuffer buffer = new StringBuffer();
+    buffer.append("Depth");
+    append(buffer, "Histogram");
+    append(buffer, "Bucket");
+    append(buffer, "Files");
+    append(buffer, "Bytes");
+    return buffer.toString();
+  }
+
+  @Override
+  protected void afterOutput() throws IOException {
+    final Histograms total = new Histograms();
+    for (Histograms h : allHistograms) {
+      total.add(h);
+    }
+    final PrintStream out = serialOutStream();
+    for (int depth = 0; depth < total.depths.size(); depth++) {
+      final DepthHistograms h = total.depths.get(depth);
+      for (int i = 0; i < h.sizeFiles.length; i++) {
+        printBucket(out, depth, SIZE, DepthHistograms.log2BucketBound(i),
+            h.sizeFiles[i], h.sizeBytes[i]);
+      }
+      for (int i = 0; i < h.ageFiles.length; i++) {
+        printBucket(out, depth, AGE, DepthHistograms.log2BucketBound(i),
+            h.ageFiles[i], h.ageBytes[i]);
+      }
+      for (int i = 0; i < h.replicationFiles.length; i++) {
+        printBucket(out, depth, REPLICATION, i, h.replicationFiles[i],
+            h.replicationBytes[i]);
+      }
+    }
+    out.flush();
+  }
+
+  private void printBucket(PrintStream out, int depth, String histogram,
+      long bucket, long files, long bytes) {
+    if (files == 0) {
+      return;
+    }
+    StringBuffer buffer = new StringBuffer();
+    buffer.append(depth);
+    append(buffer, histogram);
+    append(buffer, bucket);
+    append(buffer, files);
+    append(buffer, bytes);
+    out.println(buffer);
+  }
+}
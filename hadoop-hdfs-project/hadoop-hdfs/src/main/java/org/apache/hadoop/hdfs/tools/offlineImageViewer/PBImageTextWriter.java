@@ -32,6 +32,7 @@
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -40,7 +41,6 @@
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -152,95 +152,102 @@ private static interface MetadataMap extends Closeable {
 
   /**
    * Maintain all the metadata in memory.
+   * <p>
+   * The parent of every inode and the name of every directory are kept in
+   * open addressing tables of primitive longs rather than in maps of boxed
+   * ids and objects, which takes a fraction of the memory for large images.
+   * The paths of the directories are not kept; every thread caches the paths
+   * of the directories it recently looked up, which is enough as the inodes
+   * of a directory are mostly stored next to each other in the image.
    */
   private static class InMemoryMetadataDB implements MetadataMap {
     /**
-     * Represent a directory in memory.
+     * A hash table from long keys to long values using open addressing with
+     * linear probing. Keys must not be {@link Long#MIN_VALUE}.
      */
-    private static class Dir {
-      private final long inode;
-      private Dir parent = null;
-      private String name;
-      private String path = null;  // cached full path of the directory.
-
-      Dir(long inode, String name) {
-        this.inode = inode;
-        this.name = name;
-      }
+    private static class LongLongMap {
+      private static final long EMPTY = Long.MIN_VALUE;
+      private static final int MAX_CAPACITY = 1 << 30;
 
-      private void setParent(Dir parent) {
-        Preconditions.checkState(this.parent == null);
-        this.parent = parent;
-      }
+      private long[] keys;
+      private long[] values;
+      private int size = 0;
 
-      /**
-       * Returns the full path of this directory.
-       */
-      String getPath() throws IgnoreSnapshotException {
-        if (this.parent == null) {
-          if (this.inode == INodeId.ROOT_INODE_ID) {
-            return "/";
-          } else {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Not root inode with id {} having no parent.", inode);
-            }
-            throw PBImageTextWriter.createIgnoredSnapshotException(inode);
-          }
-        }
-        if (this.path == null) {
-          this.path = new Path(parent.getPath(), name.isEmpty() ? "/" : name).
-              toString();
-        }
-        return this.path;
+      LongLongMap() {
+        allocate(1024);
       }
 
-      String getName() throws IgnoreSnapshotException {
-        return name;
+      private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
       }
 
-      long getId() {
-        return inode;
+      private static int hash(long key, int mask) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
       }
 
-      @Override
-      public boolean equals(Object o) {
-        return o instanceof Dir && inode == ((Dir) o).inode;
+      private int indexOf(long key) {
+        final int mask = keys.length - 1;
+        int i = hash(key, mask);
+        while (keys[i] != EMPTY && keys[i] != key) {
+          i = (i + 1) & mask;
+        }
+        return i;
       }
 
-      @Override
-      public int hashCode() {
-        return Long.valueOf(inode).hashCode();
+      boolean containsKey(long key) {
+        return keys[indexOf(key)] == key;
       }
-    }
 
-    /**
-     * If the Dir entry does not exist (i.e. the inode was not contained in
-     * INodeSection) we still create a Dir entry which throws exceptions
-     * for calls other than getId().
-     * We can make sure this way, the getId and getParentId calls will
-     * always succeed if we have the information.
-     */
-    private static class CorruptedDir extends Dir {
-      CorruptedDir(long inode) {
-        super(inode, null);
+      /** @return the value of the key, or defaultValue if it is absent. */
+      long get(long key, long defaultValue) {
+        final int i = indexOf(key);
+        return keys[i] == key ? values[i] : defaultValue;
       }
 
-      @Override
-      String getPath() throws IgnoreSnapshotException {
-        throw PBImageTextWriter.createIgnoredSnapshotException(getId());
+      /** Add a key which is not in the map yet. */
+      void putNew(long key, long value) {
+        Preconditions.checkArgument(key != EMPTY);
+        int i = indexOf(key);
+        Preconditions.checkState(keys[i] != key,
+            "Duplicated key %s", key);
+        if (size + 1 > (keys.length >> 1) + (keys.length >> 2)) {
+          resize();
+          i = indexOf(key);
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
       }
 
-      @Override
-      String getName() throws IgnoreSnapshotException {
-        throw PBImageTextWriter.createIgnoredSnapshotException(getId());
+      private void resize() {
+        Preconditions.checkState(keys.length < MAX_CAPACITY,
+            "Too many entries (%s) for the in-memory metadata map, use a"
+                + " temporary directory instead", size);
+        final long[] oldKeys = keys;
+        final long[] oldValues = values;
+        allocate(keys.length << 1);
+        for (int j = 0; j < oldKeys.length; j++) {
+          if (oldKeys[j] != EMPTY) {
+            final int i = indexOf(oldKeys[j]);
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+          }
+        }
       }
     }
 
-    /** INode Id to Dir object mapping */
-    private Map<Long, Dir> dirMap = new HashMap<>();
-
     /** Children to parent directory INode ID mapping. */
-    private Map<Long, Dir> dirChildMap = new HashMap<>();
+    private final LongLongMap dirChildMap = new LongLongMap();
+    /** Directory INode ID to the index of its name in {@link #dirNames}. */
+    private final LongLongMap dirMap = new LongLongMap();
+    private byte[][] dirNames = new byte[1024][];
+
+    /** Recently resolved directory paths of each thread. */
+    private final ThreadLocal<DirPathCache> dirPathCache =
+        ThreadLocal.withInitial(DirPathCache::new);
 
     InMemoryMetadataDB() {
     }
@@ -249,29 +256,46 @@ String getName() throws IgnoreSnapshotException {
     public void close() throws IOException {
     }
 
-    private Dir getOrCreateCorrupted(long id) {
-      Dir dir = dirMap.get(id);
-      if (dir == null) {
-        dir = new CorruptedDir(id);
-        dirMap.put(id, dir);
-      }
-      return dir;
+    @Override
+    public synchronized void putDirChild(long parentId, long childId) {
+      dirChildMap.putNew(childId, parentId);
     }
 
     @Override
-    public void putDirChild(long parentId, long childId) {
-      Dir parent = getOrCreateCorrupted(parentId);
-      Dir child = getOrCreateCorrupted(childId);
-      child.setParent(parent);
-      Preconditions.checkState(!dirChildMap.containsKey(childId));
-      dirChildMap.put(childId, parent);
+    public synchronized void putDir(INode p) {
+      final int index = dirMap.size;
+      if (index == dirNames.length) {
+        dirNames = Arrays.copyOf(dirNames, index << 1);
+      }
+      dirMap.putNew(p.getId(), index);
+      dirNames[index] = p.getName().toByteArray();
     }
 
-    @Override
-    public void putDir(INode p) {
-      Preconditions.checkState(!dirMap.containsKey(p.getId()));
-      Dir dir = new Dir(p.getId(), p.getName().toStringUtf8());
-      dirMap.put(p.getId(), dir);
+    /**
+     * Returns the full path of the directory. A directory other than the
+     * root which has no parent, or which is not in the INode section, is
+     * only reachable from a snapshot or the image is corrupt.
+     */
+    private String getDirPath(long dir) throws IgnoreSnapshotException {
+      if (dir == INodeId.ROOT_INODE_ID) {
+        return "/";
+      }
+      final DirPathCache cache = dirPathCache.get();
+      String path = cache.get(dir);
+      if (path == null) {
+        final long parent = dirChildMap.get(dir, LongLongMap.EMPTY);
+        if (parent == LongLongMap.EMPTY) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Not root inode with id {} having no parent.", dir);
+          }
+          throw PBImageTextWriter.createIgnoredSnapshotException(dir);
+        }
+        final String name = getName(dir);
+        path = new Path(getDirPath(parent), name.isEmpty() ? "/" : name).
+            toString();
+        cache.put(dir, path);
+      }
+      return path;
     }
 
     @Override
@@ -279,13 +303,13 @@ public String getParentPath(long inode) throws IOException {
       if (inode == INodeId.ROOT_INODE_ID) {
         return "/";
       }
-      Dir parent = dirChildMap.get(inode);
-      if (parent == null) {
+      final long parent = dirChildMap.get(inode, LongLongMap.EMPTY);
+      if (parent == LongLongMap.EMPTY) {
         // The inode is an INodeReference, which is generated from snapshot.
         // For delimited oiv tool, no need to print out metadata in snapshots.
         throw PBImageTextWriter.createIgnoredSnapshotException(inode);
       }
-      return parent.getPath();
+      return getDirPath(parent);
     }
 
     @Override
@@ -294,23 +318,41 @@ public void sync() {
 
     @Override
     public String getName(long id) throws IgnoreSnapshotException {
-      Dir dir = dirMap.get(id);
-      if (dir != null) {
-        return dir.getName();
+      final long index = dirMap.get(id, LongLongMap.EMPTY);
+      if (index != LongLongMap.EMPTY) {
+        return new String(dirNames[(int) index], StandardCharsets.UTF_8);
       }
       throw PBImageTextWriter.createIgnoredSnapshotException(id);
     }
 
     @Override
     public long getParentId(long id) throws IgnoreSnapshotException {
-      Dir parentDir = dirChildMap.get(id);
-      if (parentDir != null) {
-        return parentDir.getId();
+      final long parent = dirChildMap.get(id, LongLongMap.EMPTY);
+      if (parent != LongLongMap.EMPTY) {
+        return parent;
       }
       throw PBImageTextWriter.createIgnoredSnapshotException(id);
     }
   }
 
+  /**
+   * A LRU cache for directory path strings.
+   *
+   * The key of this LRU cache is the inode of a directory.
+   */
+  private static class DirPathCache extends LinkedHashMap<Long, String> {
+    private final static int CAPACITY = 16 * 1024;
+
+    DirPathCache() {
+      super(CAPACITY);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, String> entry) {
+      return super.size() > CAPACITY;
+    }
+  }
+
   /**
    * A MetadataMap that stores metadata in LevelDB.
    */
@@ -342,7 +384,8 @@ public void close() throws IOException {
         db = null;
       }
 
-      public void put(byte[] key, byte[] value) throws IOException {
+      public synchronized void put(byte[] key, byte[] value)
+          throws IOException {
         batch.put(key, value);
         writeCount++;
         if (writeCount >= BATCH_SIZE) {
@@ -354,7 +397,7 @@ public byte[] get(byte[] key) throws IOException {
         return db.get(key);
       }
 
-      public void sync() throws IOException {
+      public synchronized void sync() throws IOException {
         try {
           db.write(batch);
         } finally {
@@ -366,24 +409,6 @@ public void sync() throws IOException {
       }
     }
 
-    /**
-     * A LRU cache for directory path strings.
-     *
-     * The key of this LRU cache is the inode of a directory.
-     */
-    private static class DirPathCache extends LinkedHashMap<Long, String> {
-      private final static int CAPACITY = 16 * 1024;
-
-      DirPathCache() {
-        super(CAPACITY);
-      }
-
-      @Override
-      protected boolean removeEldestEntry(Map.Entry<Long, String> entry) {
-        return super.size() > CAPACITY;
-      }
-    }
-
     /** Map the child inode to the parent directory inode. */
     private LevelDBStore dirChildMap = null;
     /** Directory entry map */
@@ -510,6 +535,9 @@ public long getParentId(long id) throws IOException {
   private File filename;
   private int numThreads;
   private String parallelOutputFile;
+  private boolean partitioned;
+  /** Set while {@link #afterOutput()} appends to the parallel output file. */
+  private PrintStream afterOutputStream = null;
   private final XAttr ecXAttr =
       XAttrHelper.buildXAttr(XATTR_ERASURECODING_POLICY);
 
@@ -521,6 +549,23 @@ public long getParentId(long id) throws IOException {
    */
   PBImageTextWriter(PrintStream out, String delimiter, String tempPath,
       int numThreads, String parallelOutputFile) throws IOException {
+    this(out, delimiter, tempPath, numThreads, parallelOutputFile, false);
+  }
+
+  /**
+   * Construct a PB FsImage writer to generate text file.
+   * @param out the writer to output text information of fsimage.
+   * @param tempPath the path to store metadata. If it is empty, store metadata
+   *                 in memory instead.
+   * @param numThreads the number of threads processing INode sub-sections.
+   * @param parallelOutputFile the file to output to in parallel.
+   * @param partitioned if true, parallelOutputFile is a directory and the
+   *                    inodes of each INode sub-section are written to their
+   *                    own file in it rather than merged into one file.
+   */
+  PBImageTextWriter(PrintStream out, String delimiter, String tempPath,
+      int numThreads, String parallelOutputFile, boolean partitioned)
+      throws IOException {
     this.out = out;
     this.delimiter = delimiter;
     if (tempPath.isEmpty()) {
@@ -530,6 +575,7 @@ public long getParentId(long id) throws IOException {
     }
     this.numThreads = numThreads;
     this.parallelOutputFile = parallelOutputFile;
+    this.partitioned = partitioned;
   }
 
   PBImageTextWriter(PrintStream out, String delimiter, String tempPath)
@@ -538,7 +584,7 @@ public long getParentId(long id) throws IOException {
   }
 
   protected PrintStream serialOutStream() {
-    return out;
+    return afterOutputStream != null ? afterOutputStream : out;
   }
 
   @Override
@@ -672,8 +718,12 @@ private void output(Configuration conf, FileSummary summary,
       FileInputStream fin, ArrayList<FileSummary.Section> sections)
       throws IOException {
     ArrayList<FileSummary.Section> allINodeSubSections =
-        getINodeSubSections(sections);
-    if (numThreads > 1 && !parallelOutputFile.equals("-") &&
+        getSections(sections, SectionName.INODE_SUB);
+    if (partitioned) {
+      // Without sub-sections, every INode section makes one partition.
+      outputInParallel(conf, summary, allINodeSubSections.size() > 1 ?
+          allINodeSubSections : getSections(sections, SectionName.INODE));
+    } else if (numThreads > 1 && !parallelOutputFile.equals("-") &&
         allINodeSubSections.size() > 1) {
       outputInParallel(conf, summary, allINodeSubSections);
     } else {
@@ -707,32 +757,41 @@ private void outputInSerial(Configuration conf, FileSummary summary,
   }
 
   /**
-   * STEP1: Multi-threaded process sub-sections.
-   * Given n (n>1) threads to process k (k>=n) sections,
-   * output parsed results of each section to tmp file in order.
-   * STEP2: Merge tmp files.
+   * Processes the inodes of an INode section or sub-section.
    */
-  private void outputInParallel(Configuration conf, FileSummary summary,
-      ArrayList<FileSummary.Section> subSections)
-      throws IOException {
-    int nThreads = Integer.min(numThreads, subSections.size());
-    LOG.info("Outputting in parallel with {} sub-sections using {} threads",
-        subSections.size(), nThreads);
+  private interface INodeSectionProcessor {
+    /**
+     * @param index the index of the section.
+     * @param in the inodes of the section, after the section header if any.
+     * @return the number of inodes processed.
+     */
+    long process(int index, InputStream in) throws IOException;
+  }
+
+  /**
+   * Process the inodes of the given sections concurrently and check that
+   * all the inodes of the INode section have been processed. The first
+   * section must start with the INode section header.
+   */
+  private void processInParallel(Configuration conf, FileSummary summary,
+      List<FileSummary.Section> subSections, String action,
+      INodeSectionProcessor processor) throws IOException {
+    int nThreads = Integer.max(1, Integer.min(numThreads, subSections.size()));
+    LOG.info("Processing {} sub-sections to {} using {} threads",
+        subSections.size(), action, nThreads);
     final CopyOnWriteArrayList<IOException> exceptions = new CopyOnWriteArrayList<>();
     CountDownLatch latch = new CountDownLatch(subSections.size());
     ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
     AtomicLong expectedINodes = new AtomicLong(0);
     AtomicLong totalParsed = new AtomicLong(0);
     String codec = summary.getCodec();
-    String[] paths = new String[subSections.size()];
 
     for (int i = 0; i < subSections.size(); i++) {
-      paths[i] = parallelOutputFile + ".tmp." + i;
       int index = i;
       executorService.submit(() -> {
-        LOG.info("Output iNodes of section-{}", index);
+        LOG.info("Processing iNodes of section-{} to {}", index, action);
         InputStream is = null;
-        try (PrintStream outStream = new PrintStream(paths[index], "UTF-8")) {
+        try {
           long startTime = Time.monotonicNow();
           is = getInputStreamForSection(subSections.get(index), codec, conf);
           if (index == 0) {
@@ -740,9 +799,10 @@ private void outputInParallel(Configuration conf, FileSummary summary,
             INodeSection s = INodeSection.parseDelimitedFrom(is);
             expectedINodes.set(s.getNumInodes());
           }
-          totalParsed.addAndGet(outputINodes(is, outStream));
+          totalParsed.addAndGet(processor.process(index, is));
           long timeTaken = Time.monotonicNow() - startTime;
-          LOG.info("Time to output iNodes of section-{}: {} ms", index, timeTaken);
+          LOG.info("Time to {} iNodes of section-{}: {} ms", action, index,
+              timeTaken);
         } catch (Exception e) {
           exceptions.add(new IOException(e));
         } finally {
@@ -767,16 +827,60 @@ private void outputInParallel(Configuration conf, FileSummary summary,
 
     executorService.shutdown();
     if (exceptions.size() != 0) {
-      LOG.error("Failed to output INode sub-sections, {} exception(s) occurred.",
-          exceptions.size());
+      LOG.error("Failed to {} INode sub-sections, {} exception(s) occurred.",
+          action, exceptions.size());
       throw exceptions.get(0);
     }
     if (totalParsed.get() != expectedINodes.get()) {
       throw new IOException("Expected to parse " + expectedINodes + " in parallel, " +
           "but parsed " + totalParsed.get() + ". The image may be corrupt.");
     }
-    LOG.info("Completed outputting all INode sub-sections to {} tmp files.",
-        subSections.size());
+  }
+
+  /**
+   * STEP1: Multi-threaded process sub-sections.
+   * Given n (n>1) threads to process k (k>=n) sections,
+   * output parsed results of each section to tmp file in order.
+   * STEP2: Merge tmp files, or keep them as partitions of the output.
+   */
+  private void outputInParallel(Configuration conf, FileSummary summary,
+      ArrayList<FileSummary.Section> subSections)
+      throws IOException {
+    String[] paths = new String[subSections.size()];
+    File partitionDir = new File(parallelOutputFile);
+    if (partitioned) {
+      if (partitionDir.exists()) {
+        throw new IOException("Folder " + partitionDir + " already exists! " +
+            "Delete manually or provide another (not existing) directory!");
+      }
+      if (!partitionDir.mkdirs()) {
+        throw new IOException("Failed to mkdir on " + partitionDir);
+      }
+    }
+    for (int i = 0; i < subSections.size(); i++) {
+      paths[i] = partitioned ?
+          new File(partitionDir, String.format("part-%05d", i)).getPath() :
+          parallelOutputFile + ".tmp." + i;
+    }
+
+    processInParallel(conf, summary, subSections, "output",
+        (index, is) -> {
+          try (PrintStream outStream = new PrintStream(paths[index], "UTF-8")) {
+            return outputINodes(is, outStream);
+          }
+        });
+    LOG.info("Completed outputting all INode sub-sections to {} {} files.",
+        subSections.size(), partitioned ? "partition" : "tmp");
+
+    if (partitioned) {
+      // Files starting with '_' are skipped by the usual input formats.
+      try (PrintStream ps = new PrintStream(
+          new File(partitionDir, "_header").getPath(), "UTF-8")) {
+        ps.println(getHeader());
+      }
+      afterOutput();
+      return;
+    }
 
     try (PrintStream ps = new PrintStream(parallelOutputFile, "UTF-8")) {
       ps.println(getHeader());
@@ -787,6 +891,14 @@ private void outputInParallel(Configuration conf, FileSummary summary,
     mergeFiles(paths, parallelOutputFile);
     long timeTaken = Time.monotonicNow() - startTime;
     LOG.info("Completed all stages. Time to merge files: {} ms", timeTaken);
+
+    try (PrintStream ps = new PrintStream(
+        new FileOutputStream(parallelOutputFile, true), false, "UTF-8")) {
+      afterOutputStream = ps;
+      afterOutput();
+    } finally {
+      afterOutputStream = null;
+    }
   }
 
   protected PermissionStatus getPermission(long perm) {
@@ -800,6 +912,17 @@ private void loadDirectories(
       throws IOException {
     LOG.info("Loading directories");
     long startTime = Time.monotonicNow();
+    ArrayList<FileSummary.Section> subSections =
+        getSections(sections, SectionName.INODE_SUB);
+    if (numThreads > 1 && subSections.size() > 1) {
+      AtomicInteger numDirs = new AtomicInteger(0);
+      processInParallel(conf, summary, subSections, "load directories",
+          (index, is) -> loadDirectoriesInINodes(is, numDirs));
+      LOG.info("Found {} directories in INode section.", numDirs);
+      LOG.info("Finished loading directories in {}ms",
+          Time.monotonicNow() - startTime);
+      return;
+    }
     for (FileSummary.Section section : sections) {
       if (SectionName.fromString(section.getName())
           == SectionName.INODE) {
@@ -837,6 +960,7 @@ private void loadINodeDirSection(
   /**
    * Checks the inode (saves if directory), and counts them. Can be overridden
    * if additional steps are taken when iterating through INodeSection.
+   * It is called concurrently when more than one thread is used.
    */
   protected void checkNode(INode p, AtomicInteger numDirs) throws IOException {
     if (p.hasDirectory()) {
@@ -863,6 +987,24 @@ private void loadDirectoriesInINodeSection(InputStream in)
     LOG.info("Found {} directories in INode section.", numDirs);
   }
 
+  /**
+   * Load the filenames of the directories from an INode sub-section.
+   * @return the number of inodes in the sub-section.
+   */
+  private long loadDirectoriesInINodes(InputStream in, AtomicInteger numDirs)
+      throws IOException {
+    long count = 0;
+    while (true) {
+      INode p = INode.parseDelimitedFrom(in);
+      if (p == null) {
+        break;
+      }
+      checkNode(p, numDirs);
+      count++;
+    }
+    return count;
+  }
+
   /**
    * Scan the INodeDirectory section to construct the namespace.
    */
@@ -958,13 +1100,13 @@ public int getStoragePolicy(
     return HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED;
   }
 
-  private ArrayList<FileSummary.Section> getINodeSubSections(
-      ArrayList<FileSummary.Section> sections) {
+  private ArrayList<FileSummary.Section> getSections(
+      List<FileSummary.Section> sections, SectionName name) {
     ArrayList<FileSummary.Section> subSections = new ArrayList<>();
     Iterator<FileSummary.Section> iter = sections.iterator();
     while (iter.hasNext()) {
       FileSummary.Section s = iter.next();
-      if (SectionName.fromString(s.getName()) == SectionName.INODE_SUB) {
+      if (SectionName.fromString(s.getName()) == name) {
         subSections.add(s);
       }
     }
@@ -54,4 +54,54 @@ public interface RwLock {
 
   /** Check if the current thread holds write lock. */
   public boolean hasWriteLock();
+
+  /**
+   * Acquire read lock for the given mode.
+   * @param lockMode The lock mode.
+   */
+  default void readLock(RwLockMode lockMode) {
+    readLock();
+  }
+
+  /**
+   * Release read lock for the given mode with operation name.
+   * @param lockMode The lock mode.
+   * @param opName Option name.
+   */
+  default void readUnlock(RwLockMode lockMode, String opName) {
+    readUnlock(opName);
+  }
+
+  /**
+   * Check if the current thread holds read lock for the given mode.
+   * @param lockMode The lock mode.
+   */
+  default boolean hasReadLock(RwLockMode lockMode) {
+    return hasReadLock();
+  }
+
+  /**
+   * Acquire write lock for the given mode.
+   * @param lockMode The lock mode.
+   */
+  default void writeLock(RwLockMode lockMode) {
+    writeLock();
+  }
+
+  /**
+   * Release write lock for the given mode with operation name.
+   * @param lockMode The lock mode.
+   * @param opName Option name.
+   */
+  default void writeUnlock(RwLockMode lockMode, String opName) {
+    writeUnlock(opName);
+  }
+
+  /**
+   * Check if the current thread holds write lock for the given mode.
+   * @param lockMode The lock mode.
+   */
+  default boolean hasWriteLock(RwLockMode lockMode) {
+    return hasWriteLock();
+  }
 }
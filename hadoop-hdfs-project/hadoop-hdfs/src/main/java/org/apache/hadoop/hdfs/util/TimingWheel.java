@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Preconditions;
+
+/**
+ * A hierarchical timing wheel, which hands out items once their deadline has
+ * been reached.
+ * <p>
+ * Time is divided into ticks of a fixed length. Each level of the wheel has
+ * 64 slots, and a slot of level L spans 64^L ticks. An item is added in O(1)
+ * to the lowest level whose slots tell its tick apart from the current tick,
+ * and moves down a level each time the current tick enters its slot. Adding
+ * an item and handing it out thus both cost O(1), independently of the number
+ * of items in the wheel.
+ * <p>
+ * {@link #advance} hands out all items whose deadline falls in a tick up to
+ * and including the tick of the given time. Items may thus be handed out up
+ * to one tick before their deadline, but never after the first
+ * {@link #advance} past it. Items added with a deadline in an elapsed tick
+ * are handed out by the first {@link #advance} to a later tick.
+ * <p>
+ * This class is not thread safe.
+ */
+@InterfaceAudience.Private
+public class TimingWheel<T> {
+  private static final int BITS = 6;
+  private static final int SLOTS = 1 << BITS;
+  private static final long MASK = SLOTS - 1;
+  /** Enough levels to cover any tick representable as a long. */
+  private static final int LEVELS = (Long.SIZE + BITS - 1) / BITS;
+
+  private static final class Timer<T> {
+    private final T item;
+    private final long tick;
+
+    private Timer(T item, long tick) {
+      this.item = item;
+      this.tick = tick;
+    }
+  }
+
+  private final long tickMs;
+  @SuppressWarnings("unchecked")
+  private final ArrayDeque<Timer<T>>[][] slots = new ArrayDeque[LEVELS][];
+  private final int[] counts = new int[LEVELS];
+  /** The first tick which has not been handed out yet. */
+  private long current;
+  private int size;
+
+  /**
+   * @param tickMs the length of a tick in milliseconds
+   * @param now the current time in milliseconds
+   */
+  public TimingWheel(long tickMs, long now) {
+    Preconditions.checkArgument(tickMs > 0, "tickMs must be positive");
+    this.tickMs = tickMs;
+    this.current = Math.floorDiv(now, tickMs);
+  }
+
+  /** Add an item to be handed out once its deadline is reached. */
+  public void add(T item, long deadline) {
+    addTimer(new Timer<>(item,
+        Math.max(Math.floorDiv(deadline, tickMs), current)));
+  }
+
+  private void addTimer(Timer<T> timer) {
+    final long diff = timer.tick ^ current;
+    final int level = diff == 0 ? 0
+        : (Long.SIZE - 1 - Long.numberOfLeadingZeros(diff)) / BITS;
+    final int slot = (int) ((timer.tick >> (BITS * level)) & MASK);
+    if (slots[level] == null) {
+      @SuppressWarnings("unchecked")
+      final ArrayDeque<Timer<T>>[] levelSlots = new ArrayDeque[SLOTS];
+      slots[level] = levelSlots;
+    }
+    ArrayDeque<Timer<T>> queue = slots[level][slot];
+    if (queue == null) {
+      queue = new ArrayDeque<>();
+      slots[level][slot] = queue;
+    }
+    queue.add(timer);
+    counts[level]++;
+    size++;
+  }
+
+  /**
+   * Advance the wheel to the given time.
+   * @param now the current time in milliseconds
+   * @param due receives the items whose deadline has been reached
+   */
+  public void advance(long now, Consumer<? super T> due) {
+    final long target = Math.floorDiv(now, tickMs);
+    while (current <= target) {
+      if (size == 0) {
+        current = target + 1;
+        return;
+      }
+      if (counts[0] > 0) {
+        final ArrayDeque<Timer<T>> queue = slots[0][(int) (current & MASK)];
+        if (queue != null) {
+          counts[0] -= queue.size();
+          size -= queue.size();
+          for (Timer<T> timer; (timer = queue.poll()) != null;) {
+            due.accept(timer.item);
+          }
+        }
+        current++;
+      } else {
+        // Nothing can be due before the next slot of the lowest non empty
+        // level moves down.
+        int level = 1;
+        while (counts[level] == 0) {
+          level++;
+        }
+        final int shift = BITS * level;
+        final long next = ((current >> shift) + 1) << shift;
+        if (next > target + 1) {
+          current = target + 1;
+          return;
+        }
+        current = next;
+      }
+      cascade();
+    }
+  }
+
+  /** Move down the slots which the current tick has just entered. */
+  private void cascade() {
+    for (int level = 1; level < LEVELS; level++) {
+      final int shift = BITS * level;
+      if ((current & ((1L << shift) - 1)) != 0) {
+        return;
+      }
+      if (counts[level] == 0) {
+        continue;
+      }
+      final ArrayDeque<Timer<T>> queue =
+          slots[level][(int) ((current >> shift) & MASK)];
+      if (queue == null || queue.isEmpty()) {
+        continue;
+      }
+      counts[level] -= queue.size();
+      size -= queue.size();
+      final Object[] timers = queue.toArray();
+      queue.clear();
+      for (Object timer : timers) {
+        @SuppressWarnings("unchecked")
+        final Timer<T> t = (Timer<T>) timer;
+        addTimer(t);
+      }
+    }
+  }
+
+  /** @return the number of items in the wheel. */
+  public int size() {
+    return size;
+  }
+
+  /** Remove all items from the wheel. */
+  public void clear() {
+    for (int level = 0; level < LEVELS; level++) {
+      slots[level] = null;
+      counts[level] = 0;
+    }
+    size = 0;
+  }
+}
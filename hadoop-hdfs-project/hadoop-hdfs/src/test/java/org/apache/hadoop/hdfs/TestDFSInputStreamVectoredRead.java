@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test {@link DFSInputStream#readVectored} on replicated and striped files,
+ * with the ranges read on the hedged read thread pool.
+ */
+public class TestDFSInputStreamVectoredRead {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem fs;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 4);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    final String xor = SystemErasureCodingPolicies.getByID(
+        SystemErasureCodingPolicies.XOR_2_1_POLICY_ID).getName();
+    fs.enableErasureCodingPolicy(xor);
+    fs.mkdirs(new Path("/ec"));
+    fs.setErasureCodingPolicy(new Path("/ec"), xor);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static byte[] writeFile(Path p, int len) throws Exception {
+    final byte[] data = new byte[len];
+    new Random(len).nextBytes(data);
+    DFSTestUtil.writeFile(fs, p, data);
+    return data;
+  }
+
+  /**
+   * Ranges which are coalesced, ranges across block boundaries and ranges
+   * far apart, given out of order.
+   */
+  private static List<FileRange> newRanges(int fileLen) {
+    final List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(BLOCK_SIZE - 100, 200));
+    ranges.add(FileRange.createFileRange(0, 100));
+    ranges.add(FileRange.createFileRange(100, 1000));
+    ranges.add(FileRange.createFileRange(1500, 0));
+    ranges.add(FileRange.createFileRange(2000, 4000));
+    ranges.add(FileRange.createFileRange(2L * BLOCK_SIZE + 7, 300000));
+    ranges.add(FileRange.createFileRange(3L * BLOCK_SIZE - 10, 70000));
+    ranges.add(FileRange.createFileRange(fileLen - 10, 10));
+    Collections.shuffle(ranges, new Random(0));
+    return ranges;
+  }
+
+  private static void verifyVectoredRead(Path p, byte[] data)
+      throws Exception {
+    final Set<String> threads = ConcurrentHashMap.newKeySet();
+    final IntFunction<ByteBuffer> allocate = len -> {
+      threads.add(Thread.currentThread().getName());
+      return ByteBuffer.allocate(len);
+    };
+    try (FSDataInputStream in = fs.open(p)) {
+      assertTrue(in.hasCapability(StreamCapabilities.VECTOREDIO));
+      final List<FileRange> ranges = newRanges(data.length);
+      in.readVectored(ranges, allocate);
+      for (FileRange range : ranges) {
+        final ByteBuffer buf = range.getData().get();
+        assertEquals(range.toString(), range.getLength(), buf.remaining());
+        for (int i = 0; i < range.getLength(); i++) {
+          assertEquals(range.toString(),
+              data[(int) range.getOffset() + i], buf.get());
+        }
+      }
+    }
+    boolean pooled = false;
+    for (String name : threads) {
+      pooled |= name.startsWith("hedgedRead-");
+    }
+    assertTrue("Ranges were read by " + threads, pooled);
+  }
+
+  @Test(timeout = 120000)
+  public void testReplicatedFile() throws Exception {
+    final Path p = new Path("/file");
+    verifyVectoredRead(p, writeFile(p, 4 * BLOCK_SIZE + 100));
+  }
+
+  @Test(timeout = 120000)
+  public void testStripedFile() throws Exception {
+    final Path p = new Path("/ec/file");
+    verifyVectoredRead(p, writeFile(p, 4 * BLOCK_SIZE + 100));
+  }
+
+  /**
+   * The ranges read on the hedged read thread pool do not start hedged
+   * reads of their own on the same pool, even when every read is slow
+   * enough to be hedged.
+   */
+  @Test(timeout = 120000)
+  public void testRangesAreNotHedged() throws Exception {
+    final Path p = new Path("/unhedged");
+    final byte[] data = writeFile(p, 4 * BLOCK_SIZE + 100);
+    final Configuration conf =
+        new HdfsConfiguration(cluster.getConfiguration(0));
+    conf.setLong(HdfsClientConfigKeys.HedgedRead.THRESHOLD_MILLIS_KEY, 1);
+    try (DistributedFileSystem client = (DistributedFileSystem)
+        FileSystem.newInstance(cluster.getURI(), conf);
+        FSDataInputStream in = client.open(p)) {
+      final DFSHedgedReadMetrics metrics =
+          client.getClient().getHedgedReadMetrics();
+      final long hedgedOps = metrics.getHedgedReadOps();
+      final long inCurThread = metrics.getHedgedReadOpsInCurThread();
+      final List<FileRange> ranges = newRanges(data.length);
+      in.readVectored(ranges, ByteBuffer::allocate);
+      for (FileRange range : ranges) {
+        final ByteBuffer buf = range.getData().get();
+        for (int i = 0; i < range.getLength(); i++) {
+          assertEquals(range.toString(),
+              data[(int) range.getOffset() + i], buf.get());
+        }
+      }
+      assertEquals(hedgedOps, metrics.getHedgedReadOps());
+      assertEquals(inCurThread, metrics.getHedgedReadOpsInCurThread());
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testRangeBeyondEndOfFile() throws Exception {
+    final Path p = new Path("/short");
+    writeFile(p, 1000);
+    try (FSDataInputStream in = fs.open(p)) {
+      in.readVectored(
+          Collections.singletonList(FileRange.createFileRange(900, 200)),
+          ByteBuffer::allocate);
+      fail("read beyond the end of the file");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+}
@@ -44,6 +44,7 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.QuotaUsage;
+import org.apache.hadoop.fs.SafeModeAction;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.client.impl.LeaseRenewer;
@@ -52,12 +53,15 @@
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.FSImageTestUtil;
+import org.apache.hadoop.hdfs.server.namenode.INode;
 import org.apache.hadoop.hdfs.tools.DFSAdmin;
 import org.apache.hadoop.hdfs.web.WebHdfsConstants;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.LambdaTestUtils;
 import org.apache.hadoop.test.PathUtils;
 import org.apache.hadoop.util.Lists;
 import org.apache.hadoop.util.ToolRunner;
@@ -1726,6 +1730,97 @@ private static void scanIntoList(
     scanner.close();
   }
 
+  /**
+   * Test that the quota usage of a directory without quota is cached once
+   * the quota usage tracking xattr is set on it, and that it survives a
+   * restart.
+   */
+  @Test
+  public void testQuotaUsageTracking() throws Exception {
+    Configuration dfsConf = new HdfsConfiguration();
+    dfsConf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, DEFAULT_BLOCK_SIZE);
+    MiniDFSCluster dfsCluster =
+        new MiniDFSCluster.Builder(dfsConf).numDataNodes(1).build();
+    try {
+      dfsCluster.waitActive();
+      DistributedFileSystem fs = dfsCluster.getFileSystem();
+      final Path dir = new Path("/tracked");
+      final Path sub = new Path(dir, "sub");
+      final Path file1 = new Path(sub, "file1");
+      final Path file2 = new Path(dir, "file2");
+      DFSTestUtil.createFile(fs, file1, 1000, (short) 1, 0);
+      LambdaTestUtils.intercept(IOException.class, "on a directory",
+          () -> fs.setXAttr(file1, HdfsServerConstants.XATTR_QUOTA_USAGE_TRACKED,
+              null));
+
+      fs.setXAttr(dir, HdfsServerConstants.XATTR_QUOTA_USAGE_TRACKED, null);
+      assertTrue(getINode(dfsCluster, dir).isQuotaUsageTracked());
+      assertTrue(getINode(dfsCluster, dir).hasCachedUsage());
+      assertFalse(getINode(dfsCluster, dir).isQuotaSet());
+      checkTrackedUsage(fs, dir, 3, 1000);
+
+      // clearing a quota keeps the quota usage tracked
+      fs.setQuota(dir, 100, HdfsConstants.QUOTA_DONT_SET);
+      assertTrue(getINode(dfsCluster, dir).isQuotaSet());
+      fs.setQuota(dir, HdfsConstants.QUOTA_RESET, HdfsConstants.QUOTA_DONT_SET);
+      assertFalse(getINode(dfsCluster, dir).isQuotaSet());
+      assertTrue(getINode(dfsCluster, dir).hasCachedUsage());
+
+      DFSTestUtil.createFile(fs, file2, 2000, (short) 1, 0);
+      DFSTestUtil.appendFile(fs, file1, 500);
+      checkTrackedUsage(fs, dir, 4, 3500);
+      fs.rename(sub, new Path("/sub"));
+      checkTrackedUsage(fs, dir, 2, 2000);
+      fs.rename(new Path("/sub"), sub);
+      fs.setReplication(file2, (short) 2);
+      checkTrackedUsage(fs, dir, 4, 5500);
+
+      // files kept by a snapshot are still counted
+      fs.allowSnapshot(dir);
+      fs.createSnapshot(dir, "s1");
+      fs.delete(file2, false);
+      checkTrackedUsage(fs, dir, 4, 5500);
+      fs.deleteSnapshot(dir, "s1");
+      checkTrackedUsage(fs, dir, 3, 1500);
+
+      // the tracking is persisted in the fsimage and the edits
+      fs.setSafeMode(SafeModeAction.ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.LEAVE);
+      DFSTestUtil.createFile(fs, file2, 2000, (short) 1, 0);
+      dfsCluster.restartNameNode(true);
+      assertTrue(getINode(dfsCluster, dir).isQuotaUsageTracked());
+      checkTrackedUsage(fs, dir, 4, 3500);
+
+      fs.removeXAttr(dir, HdfsServerConstants.XATTR_QUOTA_USAGE_TRACKED);
+      assertFalse(getINode(dfsCluster, dir).isQuotaUsageTracked());
+      assertFalse(getINode(dfsCluster, dir).hasCachedUsage());
+      assertEquals(null,
+          getINode(dfsCluster, dir).asDirectory().getDirectoryWithQuotaFeature());
+      checkTrackedUsage(fs, dir, 4, 3500);
+    } finally {
+      dfsCluster.shutdown();
+    }
+  }
+
+  private static INode getINode(MiniDFSCluster dfsCluster, Path path)
+      throws IOException {
+    return dfsCluster.getNamesystem().getFSDirectory()
+        .getINode(path.toString());
+  }
+
+  private static void checkTrackedUsage(DistributedFileSystem fs, Path path,
+      long names, long space) throws IOException {
+    QuotaUsage qu = fs.getQuotaUsage(path);
+    assertEquals(names, qu.getFileAndDirectoryCount());
+    assertEquals(space, qu.getSpaceConsumed());
+    assertEquals(HdfsConstants.QUOTA_RESET, qu.getQuota());
+    assertEquals(HdfsConstants.QUOTA_RESET, qu.getSpaceQuota());
+    ContentSummary cs = fs.getContentSummary(path);
+    assertEquals(cs.getFileAndDirectoryCount(), qu.getFileAndDirectoryCount());
+    assertEquals(cs.getSpaceConsumed(), qu.getSpaceConsumed());
+  }
+
   // quota and count should match.
   private void checkQuotaAndCount(DistributedFileSystem fs, Path path)
       throws IOException {
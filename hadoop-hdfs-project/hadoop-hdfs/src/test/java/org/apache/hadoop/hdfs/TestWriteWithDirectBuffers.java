@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test writes through pipelines with the packets in direct buffers, on the
+ * client and on the DataNodes.
+ */
+public class TestWriteWithDirectBuffers {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem fs;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_KEY, true);
+    conf.setBoolean(
+        HdfsClientConfigKeys.Write.DIRECT_BUFFERS_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /** Write in pieces of random sizes, with an hflush after some of them. */
+  private static byte[] write(FSDataOutputStream out, int len, long seed)
+      throws Exception {
+    final Random rand = new Random(seed);
+    final byte[] data = new byte[len];
+    rand.nextBytes(data);
+    int off = 0;
+    while (off < len) {
+      final int n = Math.min(len - off, 1 + rand.nextInt(100000));
+      out.write(data, off, n);
+      off += n;
+      if (rand.nextInt(4) == 0) {
+        out.hflush();
+      }
+    }
+    return data;
+  }
+
+  private static void verify(Path p, byte[]... parts) throws Exception {
+    int len = 0;
+    for (byte[] part : parts) {
+      len += part.length;
+    }
+    final byte[] expected = new byte[len];
+    int off = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, expected, off, part.length);
+      off += part.length;
+    }
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, p));
+  }
+
+  @Test(timeout = 120000)
+  public void testWrite() throws Exception {
+    final Path p = new Path("/write");
+    final byte[] data;
+    try (FSDataOutputStream out = fs.create(p)) {
+      data = write(out, 2 * BLOCK_SIZE + 12345, 1);
+    }
+    verify(p, data);
+  }
+
+  /** Appends which do not start at a chunk boundary. */
+  @Test(timeout = 120000)
+  public void testAppend() throws Exception {
+    final Path p = new Path("/append");
+    final byte[] first;
+    try (FSDataOutputStream out = fs.create(p)) {
+      first = write(out, 1000, 2);
+    }
+    final byte[] second;
+    try (FSDataOutputStream out = fs.append(p)) {
+      second = write(out, 100, 3);
+      out.hflush();
+    }
+    final byte[] third;
+    try (FSDataOutputStream out = fs.append(p)) {
+      third = write(out, BLOCK_SIZE, 4);
+    }
+    verify(p, first, second, third);
+  }
+
+  /** A client which writes from heap packets to the DataNodes. */
+  @Test(timeout = 120000)
+  public void testHeapClient() throws Exception {
+    final Configuration conf = new Configuration(cluster.getConfiguration(0));
+    conf.setBoolean(
+        HdfsClientConfigKeys.Write.DIRECT_BUFFERS_ENABLED_KEY, false);
+    final Path p = new Path("/heap");
+    final byte[] data;
+    try (FileSystem heapFs = FileSystem.newInstance(fs.getUri(), conf);
+        FSDataOutputStream out = heapFs.create(p)) {
+      data = write(out, BLOCK_SIZE + 777, 5);
+    }
+    verify(p, data);
+  }
+
+  /** Replicas copied between the DataNodes. */
+  @Test(timeout = 120000)
+  public void testReplication() throws Exception {
+    final Path p = new Path("/replicate");
+    final byte[] data = new byte[BLOCK_SIZE / 2 + 3];
+    new Random(6).nextBytes(data);
+    try (FSDataOutputStream out = fs.create(p, (short) 1)) {
+      out.write(data);
+    }
+    fs.setReplication(p, (short) 3);
+    DFSTestUtil.waitReplication(fs, p, (short) 3);
+
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, p);
+    int replicas = 0;
+    for (int i = 0; i < cluster.getDataNodes().size(); i++) {
+      final File f = cluster.getBlockFile(i, block);
+      if (f != null && f.exists()) {
+        assertArrayEquals(data, Files.readAllBytes(f.toPath()));
+        replicas++;
+      }
+    }
+    assertEquals(3, replicas);
+  }
+}
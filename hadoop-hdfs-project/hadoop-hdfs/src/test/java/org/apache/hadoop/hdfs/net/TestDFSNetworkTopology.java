@@ -24,7 +24,9 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo.DatanodeInfoBuilder;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerTestUtil;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStorageInfo;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.net.Node;
 import org.junit.Before;
 import org.junit.Rule;
@@ -42,6 +44,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 
@@ -686,4 +689,50 @@ public void testChooseRandomWithStorageTypeWithExcludeNodes() {
         null, excluded, StorageType.DISK);
     assertNotNull("/default/rack1/host1 should be selected.", n);
   }
+
+  /**
+   * Tests that the lock-free storage type choice notices storage types added
+   * to a datanode after it joined the topology.
+   */
+  @Test
+  public void testChooseRandomWithStorageTypeAfterStorageChange() {
+    DFSNetworkTopology dfsCluster =
+        DFSNetworkTopology.getInstance(new Configuration());
+    final String[] racks = {"/default/rack1", "/default/rack1",
+        "/default/rack2"};
+    final String[] hosts = {"host1", "host2", "host3"};
+    final StorageType[] types = {StorageType.DISK, StorageType.DISK,
+        StorageType.DISK};
+    final DatanodeStorageInfo[] storages =
+        DFSTestUtil.createDatanodeStorageInfos(3, racks, hosts, types);
+    DatanodeDescriptor[] dns = DFSTestUtil.toDatanodeDescriptor(storages);
+    for (DatanodeDescriptor dn : dns) {
+      dfsCluster.add(dn);
+    }
+    assertNull(dfsCluster.chooseRandomWithStorageType("/default", null,
+        StorageType.SSD));
+    HashSet<Node> excluded = new HashSet<>();
+    excluded.add(dns[0]);
+    for (int i = 0; i < 20; i++) {
+      assertSame(dns[1], dfsCluster.chooseRandomWithStorageType(
+          "/default/rack1", excluded, StorageType.DISK));
+    }
+
+    BlockManagerTestUtil.updateStorage(dns[2],
+        new DatanodeStorage("ssd", DatanodeStorage.State.NORMAL,
+            StorageType.SSD));
+    for (int i = 0; i < 20; i++) {
+      assertSame(dns[2], dfsCluster.chooseRandomWithStorageType("/default",
+          null, StorageType.SSD));
+      assertSame(dns[2], dfsCluster.chooseRandomWithStorageTypeTwoTrial(
+          "/default", null, StorageType.SSD));
+    }
+    assertNull(dfsCluster.chooseRandomWithStorageType("/default/rack1", null,
+        StorageType.SSD));
+    assertNull(dfsCluster.chooseRandomWithStorageType("~/default/rack2", null,
+        StorageType.SSD));
+    excluded.add(dns[2]);
+    assertNull(dfsCluster.chooseRandomWithStorageType("/default", excluded,
+        StorageType.SSD));
+  }
 }
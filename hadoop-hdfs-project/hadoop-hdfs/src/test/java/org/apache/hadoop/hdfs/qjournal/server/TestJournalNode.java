@@ -298,6 +298,9 @@ public void testJournal() throws Exception {
     MetricsAsserts.assertCounter("BatchesWritten", 2L, metrics);
     MetricsAsserts.assertCounter("BatchesWrittenWhileLagging", 1L, metrics);
     MetricsAsserts.assertGauge("CurrentLagTxns", 98L, metrics);
+    MetricsAsserts.assertQuantileGauges("BatchWrites60s", metrics,
+        "LatencyMicros");
+    MetricsAsserts.assertQuantileGauges("BatchTxns60s", metrics, "Txns");
     lastJournalTimestamp = MetricsAsserts.getLongGauge(
         "LastJournalTimestamp", metrics);
     assertTrue(lastJournalTimestamp > beginTimestamp);
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.TestBlockStoragePolicy;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the latency of
+ * {@link BlockPlacementPolicy#chooseTarget} on a mostly full cluster, with
+ * and without the {@link WeightedTargetIndex}.
+ * <p>
+ * The benchmark starts a name-node, registers simulated datanodes with its
+ * topology and heartbeat manager, and reports a fraction of them as too full
+ * to take another block. It then calls the block placement policy directly.
+ * <p>
+ * Usage: ChooseTargetBenchmark [-datanodes N] [-racks N] [-fullness F]
+ *   [-replicas N] [-ops N]
+ */
+public class ChooseTargetBenchmark extends Configured implements Tool {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(ChooseTargetBenchmark.class);
+  private static final String USAGE = "Usage: ChooseTargetBenchmark"
+      + " [-datanodes N] [-racks N] [-fullness F] [-replicas N] [-ops N]";
+  private static final long BLOCK_SIZE = 1024;
+  private static final long MIN_REMAINING =
+      HdfsServerConstants.MIN_BLOCKS_FOR_WRITE * BLOCK_SIZE;
+  private static final long CAPACITY = 1000 * MIN_REMAINING;
+
+  private int numDatanodes = 1000;
+  private int numRacks = 50;
+  private double fullness = 0.9;
+  private int numReplicas = 3;
+  private int numOps = 100000;
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      switch (args[i]) {
+      case "-datanodes":
+        numDatanodes = Integer.parseInt(args[++i]);
+        break;
+      case "-racks":
+        numRacks = Integer.parseInt(args[++i]);
+        break;
+      case "-fullness":
+        fullness = Double.parseDouble(args[++i]);
+        break;
+      case "-replicas":
+        numReplicas = Integer.parseInt(args[++i]);
+        break;
+      case "-ops":
+        numOps = Integer.parseInt(args[++i]);
+        break;
+      default:
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    LOG.info("--- chooseTarget: {} datanodes on {} racks, {}% full, {}"
+        + " replicas, {} ops ---", numDatanodes, numRacks, fullness * 100,
+        numReplicas, numOps);
+    report("topology", run(false));
+    report("weighted index", run(true));
+    return 0;
+  }
+
+  /** @return the sorted latencies of all operations in nanoseconds. */
+  long[] run(boolean useIndex) throws Exception {
+    final Configuration conf = new HdfsConfiguration(getConf());
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_ENABLED_KEY,
+        useIndex);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
+    final File baseDir = GenericTestUtils.getTestDir(
+        ChooseTargetBenchmark.class.getSimpleName());
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        new File(baseDir, "name").getPath());
+    DFSTestUtil.formatNameNode(conf);
+    final NameNode namenode = new NameNode(conf);
+    try {
+      final BlockManager bm = namenode.getNamesystem().getBlockManager();
+      addDatanodes(bm.getDatanodeManager());
+      final BlockPlacementPolicy policy = bm.getBlockPlacementPolicy();
+      final long[] latencies = new long[numOps];
+      int failures = 0;
+      for (int i = -numOps / 10; i < numOps; i++) {
+        final long start = System.nanoTime();
+        final DatanodeStorageInfo[] targets = policy.chooseTarget(
+            "/benchmark", numReplicas, null, new ArrayList<>(), false, null,
+            BLOCK_SIZE, TestBlockStoragePolicy.DEFAULT_STORAGE_POLICY, null);
+        final long elapsed = System.nanoTime() - start;
+        if (i >= 0) {
+          latencies[i] = elapsed;
+          if (targets.length < numReplicas) {
+            failures++;
+          }
+        }
+      }
+      if (failures > 0) {
+        LOG.warn("{} of {} ops chose less than {} targets", failures, numOps,
+            numReplicas);
+      }
+      Arrays.sort(latencies);
+      return latencies;
+    } finally {
+      namenode.stop();
+    }
+  }
+
+  private void addDatanodes(DatanodeManager dm) {
+    final String[] racks = new String[numDatanodes];
+    for (int i = 0; i < numDatanodes; i++) {
+      racks[i] = "/rack" + (i % numRacks);
+    }
+    final DatanodeStorageInfo[] storages =
+        DFSTestUtil.createDatanodeStorageInfos(racks);
+    final HeartbeatManager hbm = dm.getHeartbeatManager();
+    final Random random = new Random(0);
+    for (DatanodeStorageInfo storage : storages) {
+      final DatanodeDescriptor dn = storage.getDatanodeDescriptor();
+      dm.getNetworkTopology().add(dn);
+      hbm.addDatanode(dn);
+      hbm.updateDnStat(dn);
+      final long remaining = random.nextDouble() < fullness
+          ? MIN_REMAINING - 1
+          : MIN_REMAINING + (long) (random.nextDouble() * CAPACITY / 10);
+      dn.getStorageInfos()[0].setUtilizationForTesting(CAPACITY,
+          CAPACITY - remaining, remaining, 0L);
+      hbm.updateHeartbeat(dn,
+          BlockManagerTestUtil.getStorageReportsForDatanode(dn), 0L, 0L,
+          random.nextInt(10), 0, null);
+    }
+  }
+
+  private static void report(String name, long[] latencies) {
+    long total = 0;
+    for (long latency : latencies) {
+      total += latency;
+    }
+    LOG.info("{}: avg {} us, p50 {} us, p99 {} us, max {} us", name,
+        total / latencies.length / 1000,
+        latencies[latencies.length / 2] / 1000,
+        latencies[(int) (latencies.length * 0.99)] / 1000,
+        latencies[latencies.length - 1] / 1000);
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new ChooseTargetBenchmark(), args));
+  }
+}
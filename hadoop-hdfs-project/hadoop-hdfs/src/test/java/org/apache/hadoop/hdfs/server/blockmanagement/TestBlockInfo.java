@@ -61,6 +61,28 @@ public void testIsDeleted() {
     Assert.assertTrue(blockInfo.isDeleted());
   }
 
+  @Test
+  public void testBlocksMapLookupByBlockId() {
+    // A small capacity so that several blocks share a bucket.
+    BlocksMap blocksMap = new BlocksMap(4);
+    BlockCollection bc = Mockito.mock(BlockCollection.class);
+    when(bc.getId()).thenReturn(1000L);
+    BlockInfo[] blockInfos = new BlockInfo[16];
+    for (int i = 0; i < blockInfos.length; i++) {
+      blockInfos[i] = new BlockInfoContiguous(
+          new Block(i, 0, GenerationStamp.LAST_RESERVED_STAMP), (short) 3);
+      blocksMap.addBlockCollection(blockInfos[i], bc);
+    }
+    for (BlockInfo blockInfo : blockInfos) {
+      Assert.assertSame(blockInfo,
+          blocksMap.getStoredBlock(blockInfo.getBlockId()));
+      Assert.assertSame(blockInfo, blocksMap.getStoredBlock(
+          new Block(blockInfo.getBlockId())));
+    }
+    Assert.assertNull(blocksMap.getStoredBlock(blockInfos.length));
+    blocksMap.close();
+  }
+
   @Test
   public void testAddStorage() throws Exception {
     BlockInfo blockInfo = new BlockInfoContiguous((short) 3);
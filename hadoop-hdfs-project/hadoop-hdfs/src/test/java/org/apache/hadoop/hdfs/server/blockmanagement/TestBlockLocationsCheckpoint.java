@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.InternalDataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test that the replica locations saved alongside the fsimage are added
+ * provisionally at startup, and reconciled with the block reports.
+ */
+public class TestBlockLocationsCheckpoint {
+  private static final int NUM_DATANODES = 3;
+  private static final int NUM_FILES = 5;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  /** Holds back the full block reports of the datanodes. */
+  private final CountDownLatch releaseReports = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_ENABLED_KEY,
+        true);
+    // The saved locations are only added in startup safe mode, so give all
+    // the datanodes the time to send a heartbeat.
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_SAFEMODE_MIN_DATANODES_KEY,
+        NUM_DATANODES);
+    conf.setInt(MiniDFSCluster.DFS_NAMENODE_SAFEMODE_EXTENSION_TESTING_KEY,
+        5000);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    // Do not reuse a connection to the NameNode from before its restart.
+    conf.setInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_KEY,
+        1000);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(NUM_DATANODES).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    for (int i = 0; i < NUM_FILES; i++) {
+      final Path p = new Path("/file" + i);
+      DFSTestUtil.createFile(fs, p, 1024, (short) NUM_DATANODES, i);
+      DFSTestUtil.waitReplication(fs, p, (short) NUM_DATANODES);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    releaseReports.countDown();
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void saveNamespace() throws Exception {
+    fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    fs.saveNamespace();
+    fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+  }
+
+  /** Restart the NameNode with the full block reports held back. */
+  private FSNamesystem restartWithoutBlockReports() throws Exception {
+    for (DataNode dn : cluster.getDataNodes()) {
+      final DatanodeProtocolClientSideTranslatorPB spy =
+          InternalDataNodeTestUtils.spyOnBposToNN(dn, cluster.getNameNode());
+      Mockito.doAnswer(invocation -> {
+        releaseReports.await();
+        return invocation.callRealMethod();
+      }).when(spy).blockReport(any(), anyString(), any(), any());
+    }
+    cluster.restartNameNode(false);
+    return cluster.getNamesystem();
+  }
+
+  private static int countStoredReplicas(MiniDFSCluster cluster,
+      ExtendedBlock block) throws Exception {
+    int replicas = 0;
+    for (DataNode dn : cluster.getDataNodes()) {
+      if (dn.getFSDataset().getStoredBlock(block.getBlockPoolId(),
+          block.getBlockId()) != null) {
+        replicas++;
+      }
+    }
+    return replicas;
+  }
+
+  @Test(timeout = 120000)
+  public void testLeaveSafeModeBeforeBlockReports() throws Exception {
+    saveNamespace();
+    final List<File> files =
+        cluster.getNamesystem().getFSImage().getBlockLocationsFiles();
+    assertFalse(files.isEmpty());
+    for (File f : files) {
+      assertTrue(f + " not saved", f.exists());
+    }
+
+    // Drop a replica after the locations were saved, so that one of them
+    // is not confirmed by the block reports.
+    final Path reduced = new Path("/file0");
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, reduced);
+    fs.setReplication(reduced, (short) (NUM_DATANODES - 1));
+    GenericTestUtils.waitFor(() -> {
+      try {
+        return countStoredReplicas(cluster, block) == NUM_DATANODES - 1;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }, 100, 60000);
+
+    final FSNamesystem fsn = restartWithoutBlockReports();
+    final int saved = NUM_FILES * NUM_DATANODES;
+    GenericTestUtils.waitFor(() -> !fsn.isInSafeMode(), 100, 60000);
+    assertEquals(saved, fsn.getProvisionalReplicasAdded());
+    assertEquals(0, fsn.getProvisionalReplicasValidated());
+    // The namespace is readable from the provisional locations.
+    for (int i = 0; i < NUM_FILES; i++) {
+      DFSTestUtil.readFile(fs, new Path("/file" + i));
+    }
+    for (DatanodeDescriptor dn :
+        fsn.getBlockManager().getDatanodeManager().getDatanodes()) {
+      for (DatanodeStorageInfo storage : dn.getStorageInfos()) {
+        assertTrue(storage.areBlockContentsStale());
+      }
+    }
+
+    releaseReports.countDown();
+    GenericTestUtils.waitFor(() -> fsn.getProvisionalReplicasValidated()
+        + fsn.getProvisionalReplicasInvalidated() == saved, 100, 60000);
+    assertEquals(saved - 1, fsn.getProvisionalReplicasValidated());
+    assertEquals(1, fsn.getProvisionalReplicasInvalidated());
+    assertEquals(NUM_DATANODES - 1, fsn.getBlockManager().getStoredBlock(
+        block.getLocalBlock()).numNodes());
+  }
+
+  @Test(timeout = 120000)
+  public void testIgnoreOldLocations() throws Exception {
+    saveNamespace();
+    cluster.getConfiguration(0).setTimeDuration(
+        DFSConfigKeys.DFS_NAMENODE_BLOCK_LOCATIONS_CHECKPOINT_MAX_AGE_KEY,
+        1, TimeUnit.MILLISECONDS);
+    Thread.sleep(10);
+    final FSNamesystem fsn = restartWithoutBlockReports();
+    // Without the saved locations, the block reports are needed.
+    Thread.sleep(8000);
+    assertTrue(fsn.isInSafeMode());
+    releaseReports.countDown();
+    GenericTestUtils.waitFor(() -> !fsn.isInSafeMode(), 100, 60000);
+    assertEquals(0, fsn.getProvisionalReplicasAdded());
+  }
+
+  @Test(timeout = 120000)
+  public void testSaveAndLoad() throws Exception {
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    final File f = new File(GenericTestUtils.getTestDir(),
+        "blocklocations-" + System.nanoTime());
+    bm.saveBlockLocations(Collections.singletonList(f), 1);
+    assertTrue(f.exists());
+    final BlockLocationsCheckpoint loaded = BlockLocationsCheckpoint.load(
+        Collections.singletonList(f), 0, 0);
+    assertEquals(NUM_FILES * NUM_DATANODES, loaded.getNumReplicas());
+    assertEquals(1, loaded.getTxId());
+    loaded.close();
+    assertNull(BlockLocationsCheckpoint.load(
+        Collections.singletonList(f), 1, Long.MAX_VALUE));
+
+    // A storage which has not reported is not saved.
+    for (DatanodeDescriptor dn : bm.getDatanodeManager().getDatanodes()) {
+      for (DatanodeStorageInfo storage : dn.getStorageInfos()) {
+        storage.setBlockReportCount(0);
+      }
+    }
+    assertTrue(f.delete());
+    bm.saveBlockLocations(Collections.singletonList(f), 2);
+    assertFalse(f.exists());
+  }
+}
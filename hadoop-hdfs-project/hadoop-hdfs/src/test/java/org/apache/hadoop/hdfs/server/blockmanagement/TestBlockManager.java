@@ -71,6 +71,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
@@ -166,6 +167,8 @@ public void setupMockCluster() throws IOException {
     fsn = Mockito.mock(FSNamesystem.class);
     Mockito.doReturn(true).when(fsn).hasWriteLock();
     Mockito.doReturn(true).when(fsn).hasReadLock();
+    Mockito.doReturn(true).when(fsn).hasWriteLock(Mockito.any());
+    Mockito.doReturn(true).when(fsn).hasReadLock(Mockito.any());
     Mockito.doReturn(true).when(fsn).isRunning();
     //Make shouldPopulaeReplQueues return true
     HAContext haContext = Mockito.mock(HAContext.class);
@@ -1315,6 +1318,137 @@ private BlockInfo addEcBlockToBM(long blkId, ErasureCodingPolicy ecPolicy) {
     return blockInfo;
   }
 
+  @Test
+  public void testReportDiffOutsideWriteLock() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 2);
+    bm = new BlockManager(fsn, false, conf);
+
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    DatanodeStorage storage = new DatanodeStorage(ds.getStorageID());
+    node.setAlive(true);
+    DatanodeRegistration nodeReg =  new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+    // after the registration, which would start a mis-replication scan
+    bm.setInitializedReplQueues(true);
+
+    BlockInfo kept = addBlockToBM(100);
+    BlockInfo unreported = addBlockToBM(101);
+    BlockInfo removedMeanwhile = addBlockToBM(102);
+    BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
+    builder.add(new FinalizedReplica(kept, null, null));
+    builder.add(new FinalizedReplica(unreported, null, null));
+    builder.add(new FinalizedReplica(removedMeanwhile, null, null));
+    StorageBlockReport[] reports = {
+        new StorageBlockReport(storage, builder.build())};
+
+    // the first report of a storage is processed under the write lock
+    BlockManager.ReportDiff[] diffs = bm.computeReportDiffs(node, reports);
+    assertNull(diffs[0]);
+    bm.processReport(node, storage, reports[0].getBlocks(), null, diffs[0]);
+    assertEquals(3, ds.numBlocks());
+
+    BlockInfo added = addBlockToBM(103);
+    builder = BlockListAsLongs.builder();
+    builder.add(new FinalizedReplica(kept, null, null));
+    builder.add(new FinalizedReplica(added, null, null));
+    builder.add(new FinalizedReplica(new Block(104), null, null));
+    reports[0] = new StorageBlockReport(storage, builder.build());
+    diffs = bm.computeReportDiffs(node, reports);
+    assertNotNull(diffs[0]);
+    // the new and the unknown replica
+    assertEquals(2, diffs[0].getNumToProcess());
+    // the two unreported blocks
+    assertEquals(2, diffs[0].getNumToRemove());
+    assertEquals(3, ds.numBlocks());
+
+    // the diff is checked again against changes made before it is applied
+    bm.removeStoredBlock(removedMeanwhile, node);
+    bm.processReport(node, storage, reports[0].getBlocks(), null, diffs[0]);
+    assertTrue(kept.findStorageInfo(ds) >= 0);
+    assertTrue(added.findStorageInfo(ds) >= 0);
+    assertEquals(-1, unreported.findStorageInfo(ds));
+    assertEquals(-1, removedMeanwhile.findStorageInfo(ds));
+    assertEquals(2, ds.numBlocks());
+    assertEquals(1, bm.getPendingDeletionBlocksCount());
+    bm.close();
+  }
+
+  @Test
+  public void testReportDiffOfChangedStorage() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 2);
+    bm = new BlockManager(fsn, false, conf);
+
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    DatanodeStorage storage = new DatanodeStorage(ds.getStorageID());
+    node.setAlive(true);
+    DatanodeRegistration nodeReg =  new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+    // after the registration, which would start a mis-replication scan
+    bm.setInitializedReplQueues(true);
+
+    BlockInfo kept = addBlockToBM(200);
+    BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
+    builder.add(new FinalizedReplica(kept, null, null));
+    StorageBlockReport[] reports = {
+        new StorageBlockReport(storage, builder.build())};
+    bm.processReport(node, storage, reports[0].getBlocks(), null, null);
+    assertEquals(1, ds.numBlocks());
+
+    // nothing to apply to the storage as it was diffed
+    BlockManager.ReportDiff[] diffs = bm.computeReportDiffs(node, reports);
+    assertEquals(0, diffs[0].getNumToProcess());
+    assertEquals(0, diffs[0].getNumToRemove());
+
+    // a replica received after the diff was computed, and not in the report
+    BlockInfo received = addBlockToBM(201);
+    StorageReceivedDeletedBlocks srdb = new StorageReceivedDeletedBlocks(
+        storage, new ReceivedDeletedBlockInfo[] {new ReceivedDeletedBlockInfo(
+            new Block(received),
+            ReceivedDeletedBlockInfo.BlockStatus.RECEIVED_BLOCK, null)});
+    bm.processIncrementalBlockReport(node, srdb);
+    assertEquals(2, ds.numBlocks());
+
+    // the outdated diff is dropped and the whole report is processed
+    bm.processReport(node, storage, reports[0].getBlocks(), null, diffs[0]);
+    assertTrue(kept.findStorageInfo(ds) >= 0);
+    assertEquals(-1, received.findStorageInfo(ds));
+    assertEquals(1, ds.numBlocks());
+    bm.close();
+  }
+
+  @Test(timeout = 60000)
+  public void testReportDiffWithCluster() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 2);
+    Path file = new Path("/test-file");
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+      // the first reports of the storages are not diffed
+      assertEquals(0, getLongCounter("BlockReportDiffNumOps",
+          getMetrics("NameNodeActivity")));
+
+      cluster.triggerBlockReports();
+      GenericTestUtils.waitFor(() -> getLongCounter("BlockReportDiffNumOps",
+          getMetrics("NameNodeActivity")) == cluster.getStoragesPerDatanode(),
+          100, 10000);
+      ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, file);
+      assertEquals(1, cluster.getNamesystem().getBlockManager()
+          .getStoredBlock(block.getLocalBlock()).numNodes());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   private BlockInfo addBlockToBM(long blkId) {
     Block block = new Block(blkId);
     BlockInfo blockInfo = new BlockInfoContiguous(block, (short) 3);
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.net.NodeBase;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link WeightedTargetIndex} follows the heartbeats of the
+ * datanodes and that the default block placement policy samples from it.
+ */
+public class TestWeightedTargetIndex extends BaseReplicationPolicyTest {
+  private static final long MIN_REMAINING =
+      HdfsServerConstants.MIN_BLOCKS_FOR_WRITE * BLOCK_SIZE;
+  private static final long CAPACITY = 100 * MIN_REMAINING;
+
+  private final Random random = new Random(0);
+
+  public TestWeightedTargetIndex() {
+    this.blockPlacementPolicy = BlockPlacementPolicyDefault.class.getName();
+  }
+
+  @Override
+  DatanodeDescriptor[] getDatanodeDescriptors(Configuration conf) {
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_ENABLED_KEY,
+        true);
+    conf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_WEIGHTED_INDEX_REFRESH_INTERVAL_KEY,
+        0);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    final String[] racks = {
+        "/d1/r1",
+        "/d1/r1",
+        "/d1/r2",
+        "/d1/r2",
+        "/d2/r3",
+        "/d2/r3"};
+    storages = DFSTestUtil.createDatanodeStorageInfos(racks);
+    return DFSTestUtil.toDatanodeDescriptor(storages);
+  }
+
+  private WeightedTargetIndex getIndex() {
+    WeightedTargetIndex index =
+        dnManager.getHeartbeatManager().getWeightedTargetIndex();
+    assertNotNull(index);
+    return index;
+  }
+
+  private void setRemaining(DatanodeDescriptor dn, long remaining,
+      int xceivers) {
+    updateHeartbeatWithUsage(dn, CAPACITY, CAPACITY - remaining, remaining,
+        0L, 0L, 0L, xceivers, 0);
+  }
+
+  @Test
+  public void testIndexFollowsHeartbeats() throws Exception {
+    final WeightedTargetIndex index = getIndex();
+    assertEquals(6, index.getNumStorages(StorageType.DEFAULT, null));
+    assertEquals(2, index.getNumStorages(StorageType.DEFAULT, "/d1/r1"));
+    assertEquals(0, index.getNumStorages(StorageType.SSD, null));
+
+    // a full storage leaves the index and comes back once space is freed
+    setRemaining(dataNodes[0], MIN_REMAINING - 1, 0);
+    assertEquals(5, index.getNumStorages(StorageType.DEFAULT, null));
+    assertEquals(1, index.getNumStorages(StorageType.DEFAULT, "/d1/r1"));
+    setRemaining(dataNodes[0], MIN_REMAINING, 0);
+    assertEquals(6, index.getNumStorages(StorageType.DEFAULT, null));
+
+    // decommissioning nodes are not indexed
+    dnManager.getHeartbeatManager().startDecommission(dataNodes[1]);
+    assertEquals(1, index.getNumStorages(StorageType.DEFAULT, "/d1/r1"));
+    dnManager.getHeartbeatManager().stopDecommission(dataNodes[1]);
+    assertEquals(2, index.getNumStorages(StorageType.DEFAULT, "/d1/r1"));
+
+    // stale nodes are dropped by the heartbeat check
+    DFSTestUtil.resetLastUpdatesWithOffset(dataNodes[2],
+        -(dnManager.getStaleInterval() + 1));
+    BlockManagerTestUtil.checkHeartbeat(
+        namenode.getNamesystem().getBlockManager());
+    assertEquals(1, index.getNumStorages(StorageType.DEFAULT, "/d1/r2"));
+    setRemaining(dataNodes[2], MIN_REMAINING, 0);
+    assertEquals(2, index.getNumStorages(StorageType.DEFAULT, "/d1/r2"));
+
+    dnManager.getHeartbeatManager().removeDatanode(dataNodes[3]);
+    assertEquals(1, index.getNumStorages(StorageType.DEFAULT, "/d1/r2"));
+    assertEquals(5, index.getNumStorages(StorageType.DEFAULT, null));
+  }
+
+  @Test
+  public void testChooseDatanodeInScope() {
+    final WeightedTargetIndex index = getIndex();
+    for (int i = 0; i < 100; i++) {
+      DatanodeDescriptor dn = index.chooseDatanode("~/d1/r1", null,
+          StorageType.DEFAULT, random);
+      assertNotEquals("/d1/r1", dn.getNetworkLocation());
+      dn = index.chooseDatanode("/d2/r3",
+          Collections.singleton(dataNodes[4]), StorageType.DEFAULT, random);
+      assertEquals(dataNodes[5], dn);
+      dn = index.chooseDatanode(NodeBase.ROOT, null, StorageType.DEFAULT,
+          random);
+      assertNotNull(dn);
+    }
+    assertNull(index.chooseDatanode("/d3/r4", null, StorageType.DEFAULT,
+        random));
+    assertNull(index.chooseDatanode(NodeBase.ROOT, null, StorageType.SSD,
+        random));
+    assertNull(index.chooseDatanode("/d2/r3",
+        Arrays.asList(dataNodes[4], dataNodes[5]), StorageType.DEFAULT,
+        random));
+  }
+
+  @Test
+  public void testSamplingWeights() {
+    final WeightedTargetIndex index = getIndex();
+    // dn0 has three times the remaining space of dn1
+    setRemaining(dataNodes[0], 3 * MIN_REMAINING, 0);
+    setRemaining(dataNodes[1], MIN_REMAINING, 0);
+    final int samples = 20000;
+    int chosen = 0;
+    for (int i = 0; i < samples; i++) {
+      if (index.chooseDatanode("/d1/r1", null, StorageType.DEFAULT, random)
+          == dataNodes[0]) {
+        chosen++;
+      }
+    }
+    assertEquals(0.75, (double) chosen / samples, 0.02);
+
+    // a node busier than the average of its group is chosen less often
+    setRemaining(dataNodes[0], MIN_REMAINING, 0);
+    setRemaining(dataNodes[1], MIN_REMAINING, 9);
+    chosen = 0;
+    for (int i = 0; i < samples; i++) {
+      if (index.chooseDatanode("/d1/r1", null, StorageType.DEFAULT, random)
+          == dataNodes[1]) {
+        chosen++;
+      }
+    }
+    // weights 1 and (4.5 + 1) / (9 + 1)
+    assertEquals(0.55 / 1.55, (double) chosen / samples, 0.02);
+  }
+
+  @Test
+  public void testSamplingSkipsExcludedAndStaleNodes() {
+    final WeightedTargetIndex index = getIndex();
+    setRemaining(dataNodes[0], 4 * MIN_REMAINING, 0);
+    setRemaining(dataNodes[1], 4 * MIN_REMAINING, 0);
+    setRemaining(dataNodes[2], 2 * MIN_REMAINING, 0);
+    setRemaining(dataNodes[3], 4 * MIN_REMAINING, 0);
+    setRemaining(dataNodes[4], MIN_REMAINING, 0);
+    setRemaining(dataNodes[5], MIN_REMAINING, 0);
+    DFSTestUtil.resetLastUpdatesWithOffset(dataNodes[3],
+        -(dnManager.getStaleInterval() + 1));
+    BlockManagerTestUtil.checkHeartbeat(
+        namenode.getNamesystem().getBlockManager());
+
+    final int samples = 20000;
+    final int[] chosen = new int[dataNodes.length];
+    for (int i = 0; i < samples; i++) {
+      DatanodeDescriptor dn = index.chooseDatanode(NodeBase.ROOT,
+          Collections.singleton(dataNodes[1]), StorageType.DEFAULT, random);
+      assertNotNull(dn);
+      chosen[Arrays.asList(dataNodes).indexOf(dn)]++;
+    }
+    assertEquals(0, chosen[1]);
+    assertEquals(0, chosen[3]);
+    // the remaining space of the other nodes is split 4:2:1:1
+    assertEquals(0.5, (double) chosen[0] / samples, 0.02);
+    assertEquals(0.25, (double) chosen[2] / samples, 0.02);
+    assertEquals(0.125, (double) chosen[4] / samples, 0.02);
+    assertEquals(0.125, (double) chosen[5] / samples, 0.02);
+  }
+
+  @Test
+  public void testChooseTargetUsesIndex() {
+    for (DatanodeDescriptor dn : dataNodes) {
+      setRemaining(dn, MIN_REMAINING, 0);
+    }
+    setRemaining(dataNodes[4], CAPACITY, 0);
+    int chosen = 0;
+    for (int i = 0; i < 100; i++) {
+      DatanodeStorageInfo[] targets =
+          chooseTarget(1, (DatanodeDescriptor) null);
+      assertEquals(1, targets.length);
+      if (targets[0].getDatanodeDescriptor() == dataNodes[4]) {
+        chosen++;
+      }
+    }
+    // dn4 holds 100 of the 105 units of remaining space
+    assertTrue("dn4 chosen " + chosen + " times", chosen > 80);
+  }
+}
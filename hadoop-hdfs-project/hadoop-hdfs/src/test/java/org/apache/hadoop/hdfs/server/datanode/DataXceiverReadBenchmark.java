@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures how block reads scale with the number of concurrent readers, with
+ * the reads served by DataXceiver threads and by the selector threads of the
+ * {@link DataXceiverEventLoop}.
+ * <p>
+ * Each reader keeps its own stream open and issues positional reads at random
+ * offsets of a shared file. Besides the throughput, the peak number of
+ * DataXceiver threads on the DataNode is reported.
+ * <p>
+ * Usage: DataXceiverReadBenchmark [-readers N] [-reads N] [-size N]
+ */
+public class DataXceiverReadBenchmark extends Configured implements Tool {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(DataXceiverReadBenchmark.class);
+  private static final String USAGE =
+      "Usage: DataXceiverReadBenchmark [-readers N] [-reads N] [-size N]";
+  private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+  private static final int FILE_SIZE = 4 * BLOCK_SIZE;
+
+  private int numReaders = 64;
+  private int readsPerReader = 200;
+  private int readSize = 64 * 1024;
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      switch (args[i]) {
+      case "-readers":
+        numReaders = Integer.parseInt(args[++i]);
+        break;
+      case "-reads":
+        readsPerReader = Integer.parseInt(args[++i]);
+        break;
+      case "-size":
+        readSize = Integer.parseInt(args[++i]);
+        break;
+      default:
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    if (readSize <= 0 || readSize > FILE_SIZE) {
+      System.err.println("-size must be between 1 and " + FILE_SIZE);
+      return -1;
+    }
+    LOG.info("--- block reads: {} readers, {} reads of {} bytes each ---",
+        numReaders, readsPerReader, readSize);
+    final boolean threads = run(false);
+    final boolean eventLoop = run(true);
+    return threads && eventLoop ? 0 : 1;
+  }
+
+  /** @return whether all the reads returned the file contents. */
+  boolean run(boolean eventLoop) throws Exception {
+    final Configuration conf = new HdfsConfiguration(getConf());
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY, eventLoop);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY,
+        Math.max(numReaders * 2,
+            DFSConfigKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT));
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final Path file = new Path("/benchmark");
+      final byte[] data = new byte[FILE_SIZE];
+      new Random(0).nextBytes(data);
+      DFSTestUtil.writeFile(fs, file, data);
+
+      final AtomicInteger mismatches = new AtomicInteger();
+      final LongAdder bytesRead = new LongAdder();
+      final Thread[] readers = new Thread[numReaders];
+      for (int t = 0; t < numReaders; t++) {
+        final Random rand = new Random(t);
+        readers[t] = new Thread(() -> {
+          final byte[] buf = new byte[readSize];
+          try (FSDataInputStream in = fs.open(file)) {
+            for (int i = 0; i < readsPerReader; i++) {
+              final int pos = rand.nextInt(FILE_SIZE - readSize + 1);
+              in.readFully(pos, buf, 0, readSize);
+              for (int j = 0; j < readSize; j++) {
+                if (buf[j] != data[pos + j]) {
+                  mismatches.incrementAndGet();
+                  break;
+                }
+              }
+              bytesRead.add(readSize);
+            }
+          } catch (Exception e) {
+            LOG.error("Reader failed", e);
+            mismatches.incrementAndGet();
+          }
+        });
+      }
+      final XceiverThreadSampler sampler = new XceiverThreadSampler();
+      sampler.start();
+      final long start = System.nanoTime();
+      for (Thread t : readers) {
+        t.start();
+      }
+      for (Thread t : readers) {
+        t.join();
+      }
+      final long elapsed = Math.max(1, System.nanoTime() - start);
+      sampler.interrupt();
+      sampler.join();
+
+      final long reads = (long) numReaders * readsPerReader;
+      LOG.info("{}: {} reads in {} ms, {} ops/s, {} MB/s,"
+          + " peak of {} DataXceiver threads, {} failed readers",
+          eventLoop ? "event loop" : "threads", reads, elapsed / 1000000,
+          reads * 1000000000L / elapsed,
+          bytesRead.sum() * 1000000000L / elapsed / (1024 * 1024),
+          sampler.peak, mismatches.get());
+      return mismatches.get() == 0;
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /** Samples the number of DataXceiver threads of the JVM. */
+  private static class XceiverThreadSampler extends Thread {
+    private volatile int peak;
+
+    XceiverThreadSampler() {
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!isInterrupted()) {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+          if (t.getName().startsWith("DataXceiver for")) {
+            count++;
+          }
+        }
+        peak = Math.max(peak, count);
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new DataXceiverReadBenchmark(), args));
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Test the block reads done with {@link FileIoProvider#readAsync}.
+ */
+public class TestAsyncBlockRead {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+
+  private static Configuration newConf() {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_ASYNC_READ_THREADS_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_ASYNC_READ_QUEUE_DEPTH_KEY, 3);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_FILEIO_PROFILING_SAMPLING_PERCENTAGE_KEY,
+        100);
+    return conf;
+  }
+
+  @Test(timeout = 60000)
+  public void testReadAsync() throws Exception {
+    final File dir = GenericTestUtils.getTestDir("TestAsyncBlockRead");
+    assertTrue(dir.isDirectory() || dir.mkdirs());
+    final File f = new File(dir, "data");
+    final byte[] data = new byte[10000];
+    new Random(0).nextBytes(data);
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(data);
+    }
+
+    final FileIoProvider disabled =
+        new FileIoProvider(new HdfsConfiguration(), null);
+    assertFalse(disabled.isAsyncReadEnabled());
+    final FileIoProvider provider = new FileIoProvider(newConf(), null);
+    assertTrue(provider.isAsyncReadEnabled());
+    try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+      final FileChannel ch = raf.getChannel();
+      ByteBuffer buf = ByteBuffer.allocate(4096);
+      assertEquals(4096, (int) provider.readAsync(null, ch, buf, 1000).get());
+      for (int i = 0; i < 4096; i++) {
+        assertEquals(data[1000 + i], buf.get(i));
+      }
+      // short read at the end of the file
+      buf.clear();
+      assertEquals(1000, (int) provider.readAsync(null, ch, buf, 9000).get());
+      buf.clear();
+      assertEquals(0, (int) provider.readAsync(null, ch, buf, 20000).get());
+
+      ch.close();
+      buf.clear();
+      try {
+        provider.readAsync(null, ch, buf, 0).get();
+        fail("read a closed channel");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof ClosedChannelException);
+      }
+    } finally {
+      provider.shutdown();
+    }
+    try {
+      provider.readAsync(null, null, ByteBuffer.allocate(1), 0).get();
+      fail("read after shutdown");
+    } catch (ExecutionException e) {
+      GenericTestUtils.assertExceptionContains("shut down", e.getCause());
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testBlockReads() throws Exception {
+    final Configuration conf = newConf();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final Path p = new Path("/file");
+      // Several packets per block, with a partial packet at the end.
+      final byte[] data = new byte[2 * BLOCK_SIZE + 12345];
+      new Random(1).nextBytes(data);
+      DFSTestUtil.writeFile(fs, p, data);
+
+      final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, p);
+      final DataNodeVolumeMetrics metrics =
+          dn.getFSDataset().getVolume(block).getMetrics();
+      final long before = metrics.getAsyncReadIoSampleCount();
+
+      assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, p));
+      final byte[] buf = new byte[100000];
+      try (FSDataInputStream in = fs.open(p)) {
+        for (long pos : new long[] {1, 65535, BLOCK_SIZE - 50000,
+            data.length - buf.length}) {
+          in.readFully(pos, buf, 0, buf.length);
+          for (int i = 0; i < buf.length; i++) {
+            assertEquals(data[(int) pos + i], buf[i]);
+          }
+        }
+      }
+      assertTrue(metrics.getAsyncReadIoSampleCount() > before);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Sender;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the block reads served by the {@link DataXceiverEventLoop}.
+ */
+public class TestDataXceiverEventLoop {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private DataXceiverServer xserver;
+  private DataXceiverEventLoop eventLoop;
+
+  private void startCluster(int selectorThreads) throws IOException {
+    startCluster(selectorThreads, new HdfsConfiguration());
+  }
+
+  private void startCluster(int selectorThreads, Configuration conf)
+      throws IOException {
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_THREADS_KEY,
+        selectorThreads);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY, 5000);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    xserver = cluster.getDataNodes().get(0).getXferServer();
+    eventLoop = xserver.getEventLoop();
+    assertNotNull(eventLoop);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private byte[] writeFile(Path p, int len, long seed) throws IOException {
+    final byte[] data = new byte[len];
+    new Random(seed).nextBytes(data);
+    DFSTestUtil.writeFile(fs, p, data);
+    return data;
+  }
+
+  @Test(timeout = 120000)
+  public void testReadsOnEventLoop() throws Exception {
+    startCluster(2);
+    final int numFiles = 4;
+    final List<byte[]> contents = new ArrayList<>();
+    for (int i = 0; i < numFiles; i++) {
+      contents.add(writeFile(new Path("/file" + i),
+          BLOCK_SIZE * 2 + 1000 * i, i));
+    }
+    // The writes were handed over to DataXceiver threads.
+    final long handedOver = eventLoop.getNumHandedOver();
+    assertTrue(handedOver >= numFiles);
+
+    final ExecutorService readers = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<?>> results = new ArrayList<>();
+      for (int r = 0; r < 16; r++) {
+        final int i = r % numFiles;
+        results.add(readers.submit(() -> {
+          final Path p = new Path("/file" + i);
+          assertArrayEquals(contents.get(i), DFSTestUtil.readFileBuffer(fs, p));
+          // positional reads within and across the blocks
+          final byte[] buf = new byte[4096];
+          try (FSDataInputStream in = fs.open(p)) {
+            for (long pos : new long[] {0, 513, BLOCK_SIZE - 100,
+                2L * BLOCK_SIZE - buf.length}) {
+              in.readFully(pos, buf, 0, buf.length);
+              for (int j = 0; j < buf.length; j++) {
+                assertEquals(contents.get(i)[(int) pos + j], buf[j]);
+              }
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : results) {
+        f.get();
+      }
+    } finally {
+      readers.shutdownNow();
+    }
+    assertEquals(handedOver, eventLoop.getNumHandedOver());
+  }
+
+  @Test(timeout = 120000)
+  public void testBlockChecksum() throws Exception {
+    startCluster(1);
+    writeFile(new Path("/a"), BLOCK_SIZE + 10, 1);
+    writeFile(new Path("/b"), BLOCK_SIZE + 10, 1);
+    writeFile(new Path("/c"), BLOCK_SIZE + 10, 2);
+    final long handedOver = eventLoop.getNumHandedOver();
+    assertEquals(fs.getFileChecksum(new Path("/a")),
+        fs.getFileChecksum(new Path("/b")));
+    assertNotEquals(fs.getFileChecksum(new Path("/a")),
+        fs.getFileChecksum(new Path("/c")));
+    assertEquals(handedOver, eventLoop.getNumHandedOver());
+  }
+
+  @Test(timeout = 120000)
+  public void testThrottledReadsHandedOver() throws Exception {
+    startCluster(1);
+    final byte[] data = writeFile(new Path("/file"), 10000, 1);
+    final long handedOver = eventLoop.getNumHandedOver();
+    xserver.setReadThrottler(new DataTransferThrottler(1024 * 1024 * 1024));
+    assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, new Path("/file")));
+    assertTrue(eventLoop.getNumHandedOver() > handedOver);
+  }
+
+  /**
+   * Reads with a valid block token are served on the event loop, and a read
+   * with an invalid token is refused there.
+   */
+  @Test(timeout = 120000)
+  public void testBlockTokenChecked() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_BLOCK_ACCESS_TOKEN_ENABLE_KEY, true);
+    startCluster(1, conf);
+    final Path p = new Path("/file");
+    final byte[] data = writeFile(p, 10000, 1);
+    final long handedOver = eventLoop.getNumHandedOver();
+    assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, p));
+    assertEquals(handedOver, eventLoop.getNumHandedOver());
+
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, p);
+    try (Socket s = new Socket()) {
+      s.connect(cluster.getDataNodes().get(0).getXferAddress());
+      final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+      new Sender(out).readBlock(block, BlockTokenSecretManager.DUMMY_TOKEN,
+          "unauthorized", 0, block.getNumBytes(), true,
+          CachingStrategy.newDefaultStrategy());
+      out.flush();
+      final DataInputStream in = new DataInputStream(s.getInputStream());
+      final BlockOpResponseProto response =
+          BlockOpResponseProto.parseFrom(PBHelperClient.vintPrefixed(in));
+      assertEquals(Status.ERROR_ACCESS_TOKEN, response.getStatus());
+      // the connection is closed after the response
+      assertEquals(-1, in.read());
+    }
+    assertEquals(handedOver, eventLoop.getNumHandedOver());
+  }
+
+  /**
+   * A reader which does not read does not hold up the other connections of
+   * the selector thread, and is disconnected after the write timeout.
+   */
+  @Test(timeout = 120000)
+  public void testStalledReader() throws Exception {
+    startCluster(1);
+    // A block larger than the socket buffers.
+    final Path big = new Path("/big");
+    final long bigBlockSize = 32L * BLOCK_SIZE;
+    DFSTestUtil.createFile(fs, big, 4096, bigBlockSize, bigBlockSize,
+        (short) 1, 1);
+    final byte[] data = writeFile(new Path("/small"), 10000, 2);
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, big);
+
+    final InetSocketAddress addr =
+        cluster.getDataNodes().get(0).getXferAddress();
+    try (Socket s = new Socket()) {
+      s.setReceiveBufferSize(4096);
+      s.connect(addr);
+      final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+      new Sender(out).readBlock(block, BlockTokenSecretManager.DUMMY_TOKEN,
+          "stalled", 0, block.getNumBytes(), true,
+          CachingStrategy.newDefaultStrategy());
+      out.flush();
+      GenericTestUtils.waitFor(() -> eventLoop.getNumConnections() == 1,
+          10, 10000);
+
+      assertArrayEquals(data,
+          DFSTestUtil.readFileBuffer(fs, new Path("/small")));
+      // The stalled reader and the idle connection of the client are closed.
+      GenericTestUtils.waitFor(() -> eventLoop.getNumConnections() == 0,
+          100, 30000);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.HADOOP_CALLER_CONTEXT_ENABLED_KEY;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.FSNamesystemAuditLogger;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+/**
+ * Measures the time the RPC handlers spend in the default audit logger, with
+ * the events formatted on the handler and with the events handed to the
+ * audit ring.
+ * <p>
+ * The formatted messages are counted instead of being sent to log4j, so the
+ * numbers show the cost of the audit logger itself rather than that of the
+ * configured appender.
+ * <p>
+ * Usage: AuditLoggerBenchmark [-threads N] [-ops N] [-ring N]
+ */
+public class AuditLoggerBenchmark extends Configured implements Tool {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(AuditLoggerBenchmark.class);
+  private static final String USAGE =
+      "Usage: AuditLoggerBenchmark [-threads N] [-ops N] [-ring N]";
+
+  private int numThreads = 8;
+  private int numOps = 1000000;
+  private int ringSize = 65536;
+
+  /** Counts the messages instead of writing them. */
+  private static class CountingAuditLogger extends FSNamesystemAuditLogger {
+    private final LongAdder messages = new LongAdder();
+
+    @Override
+    public void logAuditMessage(String message) {
+      messages.increment();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      switch (args[i]) {
+      case "-threads":
+        numThreads = Integer.parseInt(args[++i]);
+        break;
+      case "-ops":
+        numOps = Integer.parseInt(args[++i]);
+        break;
+      case "-ring":
+        ringSize = Integer.parseInt(args[++i]);
+        break;
+      default:
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    GenericTestUtils.setLogLevel(FSNamesystem.AUDIT_LOG, Level.INFO);
+    LOG.info("--- audit logger: {} threads, {} ops, ring of {} ---",
+        numThreads, numOps, ringSize);
+    // The first round warms up the JIT for both modes.
+    long sync = 0;
+    long ring = 0;
+    for (int round = 0; round < 2; round++) {
+      sync = run(0);
+      ring = run(ringSize);
+    }
+    return sync == ring ? 0 : 1;
+  }
+
+  /** @return the number of messages written. */
+  long run(int ring) throws Exception {
+    final Configuration conf = new HdfsConfiguration(getConf());
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY,
+        ring);
+    conf.setBoolean(HADOOP_CALLER_CONTEXT_ENABLED_KEY, true);
+    final CountingAuditLogger logger = new CountingAuditLogger();
+    logger.initialize(conf);
+
+    final InetAddress addr = InetAddress.getLoopbackAddress();
+    final FileStatus status = new FileStatus(0, true, 0, 0, 0, 0,
+        FsPermission.getDirDefault(), "hdfs", "supergroup",
+        new Path("/benchmark"));
+    final CallerContext context =
+        new CallerContext.Builder("benchmark_job_0001_m_000001").build();
+    final int opsPerThread = numOps / numThreads;
+    final LongAdder handlerNanos = new LongAdder();
+    final Thread[] handlers = new Thread[numThreads];
+    final long start = System.nanoTime();
+    for (int t = 0; t < numThreads; t++) {
+      final String user = "user" + t;
+      handlers[t] = new Thread(() -> {
+        final long begin = System.nanoTime();
+        for (int i = 0; i < opsPerThread; i++) {
+          logger.logAuditEvent(true, user, addr, "mkdirs",
+              "/benchmark/dir" + (i & 1023), null, status, context, null,
+              null);
+        }
+        handlerNanos.add(System.nanoTime() - begin);
+      });
+      handlers[t].start();
+    }
+    for (Thread t : handlers) {
+      t.join();
+    }
+    final long handlerDone = System.nanoTime() - start;
+    logger.close();
+    final long written = System.nanoTime() - start;
+    final AuditEventRing r = logger.getRing();
+    final long total = (long) opsPerThread * numThreads;
+    LOG.info("{}: handler {} ns/op, handlers done in {} ms, written in {} ms,"
+        + " {} written, {} dropped, {} blocked",
+        ring > 0 ? "ring" : "sync", handlerNanos.sum() / total,
+        handlerDone / 1000000, written / 1000000, logger.messages.sum(),
+        r == null ? 0 : r.getDroppedEvents(),
+        r == null ? 0 : r.getBlockedEvents());
+    return logger.messages.sum();
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new AuditLoggerBenchmark(), args));
+  }
+}
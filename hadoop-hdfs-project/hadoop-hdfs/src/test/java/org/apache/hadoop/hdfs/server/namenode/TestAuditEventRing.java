@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.FSNamesystemAuditLogger;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.slf4j.event.Level;
+
+/**
+ * Test the ring which hands audit events to a background writer.
+ */
+public class TestAuditEventRing {
+  @Rule
+  public Timeout timeout = new Timeout(120000);
+
+  private static final InetAddress ADDR = InetAddress.getLoopbackAddress();
+
+  private static boolean publish(AuditEventRing ring, String cmd) {
+    return ring.publish(true, "user", ADDR, cmd, "/src", null, null, null,
+        null, null, null);
+  }
+
+  @Test
+  public void testEventsWrittenInOrder() throws Exception {
+    final List<String> written =
+        Collections.synchronizedList(new ArrayList<>());
+    final AuditEventRing ring =
+        new AuditEventRing(8, true, e -> written.add(e.getCmd()));
+    assertEquals(8, ring.getCapacity());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(publish(ring, "cmd" + i));
+    }
+    ring.close();
+    assertEquals(1000, written.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("cmd" + i, written.get(i));
+    }
+    assertEquals(0, ring.getDroppedEvents());
+    assertEquals(0, ring.getPendingEvents());
+    assertFalse(ring.isRunning());
+    assertFalse(publish(ring, "late"));
+  }
+
+  @Test
+  public void testCapacity() throws Exception {
+    final int[][] expected = {{1, 2}, {2, 2}, {3, 4}, {8, 8}, {9, 16}};
+    for (int[] e : expected) {
+      final AuditEventRing ring = new AuditEventRing(e[0], true, ev -> { });
+      assertEquals(e[1], ring.getCapacity());
+      ring.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentPublishers() throws Exception {
+    final int threads = 4;
+    final int events = 5000;
+    final List<String> written = new ArrayList<>();
+    final AuditEventRing ring =
+        new AuditEventRing(16, true, e -> written.add(e.getCmd()));
+    final Thread[] publishers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int id = t;
+      publishers[t] = new Thread(() -> {
+        for (int i = 0; i < events; i++) {
+          publish(ring, id + ":" + i);
+        }
+      });
+      publishers[t].start();
+    }
+    for (Thread t : publishers) {
+      t.join();
+    }
+    ring.close();
+    assertEquals(threads * events, written.size());
+    // The events of each publisher keep their order.
+    final int[] next = new int[threads];
+    for (String cmd : written) {
+      final String[] parts = cmd.split(":");
+      final int id = Integer.parseInt(parts[0]);
+      assertEquals(next[id]++, Integer.parseInt(parts[1]));
+    }
+  }
+
+  @Test
+  public void testDropWhenFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> written =
+        Collections.synchronizedList(new ArrayList<>());
+    final AuditEventRing ring = new AuditEventRing(4, false, e -> {
+      written.add(e.getCmd());
+      try {
+        release.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    int accepted = 0;
+    for (int i = 0; i < 10; i++) {
+      if (publish(ring, "cmd" + i)) {
+        accepted++;
+      }
+    }
+    // The writer holds on to the first slot while it is stuck in the sink.
+    assertEquals(4, accepted);
+    assertEquals(6, ring.getDroppedEvents());
+    assertEquals(4, ring.getPendingEvents());
+    release.countDown();
+    ring.close();
+    assertEquals(4, written.size());
+    assertEquals("cmd0", written.get(0));
+    assertEquals(0, ring.getBlockedEvents());
+  }
+
+  @Test
+  public void testBlockWhenFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> written =
+        Collections.synchronizedList(new ArrayList<>());
+    final AuditEventRing ring = new AuditEventRing(2, true, e -> {
+      written.add(e.getCmd());
+      try {
+        release.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(publish(ring, "cmd0"));
+    assertTrue(publish(ring, "cmd1"));
+    final Thread publisher = new Thread(() -> publish(ring, "cmd2"));
+    publisher.start();
+    GenericTestUtils.waitFor(() -> ring.getBlockedEvents() == 1, 10, 10000);
+    assertTrue(publisher.isAlive());
+    release.countDown();
+    publisher.join();
+    ring.close();
+    assertEquals(3, written.size());
+    assertEquals("cmd2", written.get(2));
+    assertEquals(0, ring.getDroppedEvents());
+  }
+
+  @Test
+  public void testSinkFailureFailsRing() throws Exception {
+    final CountDownLatch fail = new CountDownLatch(1);
+    final List<String> written =
+        Collections.synchronizedList(new ArrayList<>());
+    final AuditEventRing ring = new AuditEventRing(2, true, e -> {
+      if ("bad".equals(e.getCmd())) {
+        try {
+          fail.await();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        throw new OutOfMemoryError("test");
+      }
+      written.add(e.getCmd());
+    });
+    assertTrue(publish(ring, "good"));
+    assertTrue(publish(ring, "bad"));
+    GenericTestUtils.waitFor(() -> written.size() == 1, 10, 10000);
+    // A handler waiting for space gives up once the writer failed.
+    final Thread publisher = new Thread(() -> publish(ring, "blocked"));
+    publisher.start();
+    GenericTestUtils.waitFor(() -> ring.getBlockedEvents() == 1, 10, 10000);
+    fail.countDown();
+    publisher.join();
+
+    assertTrue(ring.isFailed());
+    assertFalse(ring.isRunning());
+    assertFalse(publish(ring, "late"));
+    ring.close();
+    assertEquals(Collections.singletonList("good"), written);
+  }
+
+  /** Collects the messages instead of sending them to log4j. */
+  private static class CollectingAuditLogger extends FSNamesystemAuditLogger {
+    private final List<String> messages =
+        Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void logAuditMessage(String message) {
+      messages.add(message);
+    }
+  }
+
+  @Test
+  public void testAuditLoggerWritesThroughRing() throws Exception {
+    GenericTestUtils.setLogLevel(FSNamesystem.AUDIT_LOG, Level.INFO);
+    final Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST, "skipped");
+    final CollectingAuditLogger sync = new CollectingAuditLogger();
+    sync.initialize(conf);
+    assertNull(sync.getRing());
+
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY, 4);
+    final CollectingAuditLogger async = new CollectingAuditLogger();
+    async.initialize(conf);
+    assertTrue(async.getRing().isRunning());
+
+    for (int i = 0; i < 100; i++) {
+      for (HdfsAuditLogger logger : new HdfsAuditLogger[] {sync, async}) {
+        logger.logAuditEvent(i % 2 == 0, "user" + i, ADDR,
+            i % 10 == 0 ? "skipped" : "open", "/a\tb" + i, null, null, null,
+            null, null);
+      }
+    }
+    async.close();
+    assertEquals(90, sync.messages.size());
+    assertEquals(sync.messages, async.messages);
+
+    // Once closed, the events are written by the caller.
+    async.logAuditEvent(true, "user", ADDR, "open", "/late", null, null,
+        null, null, null);
+    assertEquals(91, async.messages.size());
+  }
+
+  @Test
+  public void testAuditLoggerWritesAfterRingFailure() throws Exception {
+    GenericTestUtils.setLogLevel(FSNamesystem.AUDIT_LOG, Level.INFO);
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY, 4);
+    final List<String> messages =
+        Collections.synchronizedList(new ArrayList<>());
+    final FSNamesystemAuditLogger logger = new FSNamesystemAuditLogger() {
+      @Override
+      public void logAuditMessage(String message) {
+        if (message.contains("src=/bad")
+            && Thread.currentThread().getName().equals("AuditLogWriter")) {
+          throw new IllegalStateException("test");
+        }
+        messages.add(message);
+      }
+    };
+    logger.initialize(conf);
+    logger.logAuditEvent(true, "user", ADDR, "open", "/bad", null, null,
+        null, null, null);
+    GenericTestUtils.waitFor(() -> logger.getRing().isFailed(), 10, 10000);
+
+    // The handler writes the events itself once the ring has failed.
+    logger.logAuditEvent(true, "user", ADDR, "open", "/bad", null, null,
+        null, null, null);
+    assertEquals(1, messages.size());
+    assertTrue(messages.get(0).contains("src=/bad"));
+    logger.close();
+  }
+}
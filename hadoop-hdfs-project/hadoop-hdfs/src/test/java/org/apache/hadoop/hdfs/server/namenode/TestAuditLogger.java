@@ -28,6 +28,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.FSNamesystemAuditLogger;
 import org.apache.hadoop.hdfs.server.namenode.top.TopAuditLogger;
 import org.apache.hadoop.hdfs.web.resources.GetOpParam;
 import org.apache.hadoop.ipc.CallerContext;
@@ -54,7 +55,11 @@
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.HADOOP_CALLER_CONTEXT_ENABLED_KEY;
@@ -70,6 +75,8 @@
 import static org.apache.hadoop.fs.permission.FsAction.READ_EXECUTE;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BLOCKING_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_WITH_REMOTE_PORT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.NNTOP_ENABLED_KEY;
 import static org.junit.Assert.assertEquals;
@@ -111,6 +118,8 @@ public void setup() {
     DummyAuditLogger.initialized = false;
     DummyAuditLogger.logCount = 0;
     DummyAuditLogger.remoteAddr = null;
+    RingAuditLogger.MESSAGES.clear();
+    RingAuditLogger.stall = null;
 
     Configuration conf = new HdfsConfiguration();
     ProxyUsers.refreshSuperUserGroupsConfiguration(conf);    
@@ -628,6 +637,136 @@ public void testCallerContextCharacterEscape() throws IOException {
     }
   }
 
+  /**
+   * Tests that the default audit logger writes the events handed to its
+   * ring in order, and that a handler waits for space in a full ring.
+   */
+  @Test(timeout = 60000)
+  public void testAuditLogRingBlocksWhenFull() throws Exception {
+    MiniDFSCluster cluster = startRingCluster(true);
+    try {
+      final FSNamesystem fsn = cluster.getNamesystem();
+      final FileSystem fs = cluster.getFileSystem();
+      RingAuditLogger.stall = new CountDownLatch(1);
+      final Thread client = new Thread(() -> {
+        try {
+          for (int i = 0; i < 5; i++) {
+            fs.mkdirs(new Path("/ring/d" + i));
+          }
+        } catch (IOException e) {
+          LOG.error("mkdirs failed", e);
+        }
+      });
+      client.start();
+      // The writer is stuck on the first event and the ring holds two.
+      GenericTestUtils.waitFor(() -> fsn.getAuditEventsBlocked() == 1, 10,
+          10000);
+      assertTrue(client.isAlive());
+      RingAuditLogger.stall.countDown();
+      client.join();
+      GenericTestUtils.waitFor(() -> fsn.getAuditEventsPending() == 0, 10,
+          10000);
+      assertEquals(Lists.newArrayList("/ring/d0", "/ring/d1", "/ring/d2",
+          "/ring/d3", "/ring/d4"), getLoggedMkdirs());
+      assertEquals(0, fsn.getAuditEventsDropped());
+    } finally {
+      RingAuditLogger.release();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Tests that the events which do not fit in a full non-blocking ring are
+   * dropped, and that the following events are written again in order.
+   */
+  @Test(timeout = 60000)
+  public void testAuditLogRingDropsWhenFull() throws Exception {
+    MiniDFSCluster cluster = startRingCluster(false);
+    try {
+      final FSNamesystem fsn = cluster.getNamesystem();
+      final FileSystem fs = cluster.getFileSystem();
+      RingAuditLogger.stall = new CountDownLatch(1);
+      for (int i = 0; i < 5; i++) {
+        fs.mkdirs(new Path("/ring/d" + i));
+      }
+      assertEquals(3, fsn.getAuditEventsDropped());
+      RingAuditLogger.stall.countDown();
+      fs.mkdirs(new Path("/ring/d5"));
+      GenericTestUtils.waitFor(() -> fsn.getAuditEventsPending() == 0, 10,
+          10000);
+      assertEquals(Lists.newArrayList("/ring/d0", "/ring/d1", "/ring/d5"),
+          getLoggedMkdirs());
+      assertEquals(3, fsn.getAuditEventsDropped());
+      assertEquals(0, fsn.getAuditEventsBlocked());
+    } finally {
+      RingAuditLogger.release();
+      cluster.shutdown();
+    }
+  }
+
+  /** Start a namenode logging through a ring of two events. */
+  private static MiniDFSCluster startRingCluster(boolean blocking)
+      throws Exception {
+    GenericTestUtils.setLogLevel(FSNamesystem.AUDIT_LOG, Level.INFO);
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFS_NAMENODE_AUDIT_LOGGERS_KEY, RingAuditLogger.class.getName());
+    conf.setInt(DFS_NAMENODE_AUDIT_LOG_RING_BUFFER_SIZE_KEY, 2);
+    conf.setBoolean(DFS_NAMENODE_AUDIT_LOG_RING_BLOCKING_KEY, blocking);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitClusterUp();
+    final FSNamesystem fsn = cluster.getNamesystem();
+    GenericTestUtils.waitFor(() -> fsn.getAuditEventsPending() == 0, 10,
+        10000);
+    RingAuditLogger.MESSAGES.clear();
+    return cluster;
+  }
+
+  /** @return the paths of the logged mkdirs, in the order they were logged. */
+  private static List<String> getLoggedMkdirs() {
+    final Pattern mkdirs = Pattern.compile(".*cmd=mkdirs\\ssrc=(\\S+)\\s.*");
+    final List<String> paths = new ArrayList<>();
+    synchronized (RingAuditLogger.MESSAGES) {
+      for (String message : RingAuditLogger.MESSAGES) {
+        Matcher m = mkdirs.matcher(message);
+        if (m.matches()) {
+          paths.add(m.group(1));
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * The default audit logger, collecting the messages of its writer thread,
+   * which waits for {@link #stall} when it is set.
+   */
+  public static class RingAuditLogger extends FSNamesystemAuditLogger {
+    static final List<String> MESSAGES =
+        Collections.synchronizedList(new ArrayList<>());
+    static volatile CountDownLatch stall;
+
+    static void release() {
+      final CountDownLatch latch = stall;
+      if (latch != null) {
+        latch.countDown();
+      }
+    }
+
+    @Override
+    public void logAuditMessage(String message) {
+      final CountDownLatch latch = stall;
+      if (latch != null) {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      MESSAGES.add(message);
+    }
+  }
+
   public static class DummyAuditLogger implements AuditLogger {
 
     static boolean initialized;
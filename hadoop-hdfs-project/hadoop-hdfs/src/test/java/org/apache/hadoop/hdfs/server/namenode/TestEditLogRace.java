@@ -19,6 +19,7 @@
 
 import static org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes.OP_SET_OWNER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.argThat;
@@ -62,9 +63,11 @@
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.ExitUtil;
 import org.apache.hadoop.util.Time;
 import org.mockito.ArgumentMatcher;
 import org.slf4j.event.Level;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -85,15 +88,19 @@ public class TestEditLogRace {
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{ false });
-    params.add(new Object[]{ true });
+    params.add(new Object[]{ false, false });
+    params.add(new Object[]{ true, false });
+    params.add(new Object[]{ true, true });
     return params;
   }
 
   private static boolean useAsyncEditLog;
+  private static boolean usePipelinedEditLog;
 
-  public TestEditLogRace(boolean useAsyncEditLog) {
+  public TestEditLogRace(boolean useAsyncEditLog,
+      boolean usePipelinedEditLog) {
     TestEditLogRace.useAsyncEditLog = useAsyncEditLog;
+    TestEditLogRace.usePipelinedEditLog = usePipelinedEditLog;
   }
 
   private static final String NAME_DIR = MiniDFSCluster.getBaseDirectory() + "name-0-1";
@@ -376,6 +383,8 @@ private Configuration getConf() {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
         useAsyncEditLog);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED,
+        usePipelinedEditLog);
     FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY, NAME_DIR);
@@ -496,6 +505,75 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
     }
   }
   
+  /**
+   * Stopping the pipelined edit log must let the flush in progress, and the
+   * batches queued behind it, complete rather than abort them.
+   */
+  @Test(timeout=60000)
+  public void testRestartWhileFlushing() throws Exception {
+    Assume.assumeTrue(usePipelinedEditLog);
+    ExitUtil.disableSystemExit();
+    ExitUtil.resetFirstExitException();
+    Configuration conf = getConf();
+    NameNode.initMetrics(conf, NamenodeRole.NAMENODE);
+    DFSTestUtil.formatNameNode(conf);
+    final FSNamesystem namesystem = FSNamesystem.loadFromDisk(conf);
+
+    try {
+      final FSEditLog editLog = namesystem.getFSImage().getEditLog();
+      JournalAndStream jas = editLog.getJournals().get(0);
+      EditLogFileOutputStream spyElos =
+          spy((EditLogFileOutputStream)jas.getCurrentStream());
+      jas.setCurrentStreamForTests(spyElos);
+
+      final CountDownLatch inFlush = new CountDownLatch(1);
+      final CountDownLatch releaseFlush = new CountDownLatch(1);
+      doAnswer(invocation -> {
+        inFlush.countDown();
+        releaseFlush.await();
+        invocation.callRealMethod();
+        return null;
+      }).when(spyElos).flush();
+
+      final AtomicReference<Throwable> deferredException =
+          new AtomicReference<Throwable>();
+      final Thread[] editThreads = new Thread[2];
+      for (int i = 0; i < editThreads.length; i++) {
+        final String dir = "/test" + i;
+        editThreads[i] = new Thread(() -> {
+          try {
+            namesystem.mkdirs(dir, new PermissionStatus("test", "test",
+                new FsPermission((short)00755)), true);
+          } catch (Throwable t) {
+            LOG.error("Got exception", t);
+            deferredException.set(t);
+          }
+        });
+      }
+      editThreads[0].start();
+      inFlush.await();
+      // the second edit is queued behind the flush in progress.
+      editThreads[1].start();
+      final Thread restarter = new Thread(editLog::restart);
+      restarter.start();
+      GenericTestUtils.waitForThreadTermination(
+          "FSEditLogAsync", 10, 10000);
+
+      releaseFlush.countDown();
+      restarter.join();
+      for (Thread t : editThreads) {
+        t.join();
+      }
+      assertNull(deferredException.get());
+      assertFalse(ExitUtil.terminateCalled());
+      assertTrue(
+          namesystem.getFileInfo("/test1", false, false, false) != null);
+    } finally {
+      namesystem.close();
+      ExitUtil.resetFirstExitException();
+    }
+  }
+
   /**
    * Most of the FSNamesystem methods have a synchronized section where they
    * update the name system itself and write to the edit log, and then
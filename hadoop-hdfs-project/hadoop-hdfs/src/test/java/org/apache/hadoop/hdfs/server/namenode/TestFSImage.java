@@ -50,6 +50,10 @@
 import org.apache.hadoop.hdfs.protocol.BlockType;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.SnapshotTestHelper;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.Phase;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgressView;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.StepType;
 import org.apache.hadoop.io.erasurecode.ECSchema;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.util.Lists;
@@ -1159,6 +1163,77 @@ public void testParallelSaveAndLoadWithCompression()
     }
   }
 
+  @Test
+  public void testParallelLoadSnapshotDiffSubSections() throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, "true");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, "1");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, "4");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, "4");
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path baseDir = new Path("/snapdiff");
+      fs.mkdirs(baseDir);
+      fs.allowSnapshot(baseDir);
+      for (int i = 0; i < 10; i++) {
+        Path f = new Path(baseDir, Integer.toString(i));
+        DFSTestUtil.createFile(fs, f, 1, (short) 1, 0L);
+      }
+      fs.createSnapshot(baseDir, "s0");
+      // Every file gets a diff: half are appended to, half are deleted.
+      for (int i = 0; i < 10; i++) {
+        Path f = new Path(baseDir, Integer.toString(i));
+        if (i % 2 == 0) {
+          DFSTestUtil.appendFile(fs, f, "more");
+        } else {
+          fs.delete(f, false);
+        }
+      }
+      fs.createSnapshot(baseDir, "s1");
+
+      fs.setSafeMode(SafeModeAction.ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.LEAVE);
+
+      ArrayList<Section> sections = Lists.newArrayList(FSImageTestUtil
+          .getLatestImageSummary(cluster).getSectionsList());
+      ArrayList<Section> diffSubSections =
+          getSubSectionsOfName(sections, SectionName.SNAPSHOT_DIFF_SUB);
+      assertTrue(diffSubSections.size() > 1);
+      ensureSubSectionsAlignWithParent(diffSubSections,
+          getSubSectionsOfName(sections, SectionName.SNAPSHOT_DIFF).get(0));
+
+      cluster.restartNameNode();
+      cluster.waitActive();
+      // The startup progress is shared by the namenodes of this JVM and the
+      // loading phase already completed once, so only the count is updated.
+      StartupProgressView view = NameNode.getStartupProgress().createView();
+      Step diffStep = null;
+      for (Step step : view.getSteps(Phase.LOADING_FSIMAGE)) {
+        if (step.getType() == StepType.SNAPSHOT_DIFFS) {
+          diffStep = step;
+        }
+      }
+      assertNotNull(diffStep);
+      assertTrue(view.getCount(Phase.LOADING_FSIMAGE, diffStep) > 0);
+
+      fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        String name = Integer.toString(i);
+        Path inS0 = new Path(baseDir, ".snapshot/s0/" + name);
+        assertEquals(1, fs.getFileStatus(inS0).getLen());
+        assertEquals(i % 2 == 0, fs.exists(new Path(baseDir, name)));
+      }
+      assertEquals(1 + "more".length(),
+          fs.getFileStatus(new Path(baseDir, ".snapshot/s1/0")).getLen());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   private void ensureSubSectionsAlignWithParent(ArrayList<Section> subSec,
       Section parent) {
     // For each sub-section, check its offset + length == the next section
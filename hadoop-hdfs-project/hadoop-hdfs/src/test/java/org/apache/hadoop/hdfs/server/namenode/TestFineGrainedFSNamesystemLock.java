@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.util.RwLockMode;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.MetricsAsserts;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Test;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the FineGrainedFSNamesystemLock, which splits the FSNamesystem lock
+ * into a namespace lock and a block manager lock.
+ */
+public class TestFineGrainedFSNamesystemLock {
+
+  @Test
+  public void testLockModes() {
+    FineGrainedFSNamesystemLock fsnLock =
+        new FineGrainedFSNamesystemLock(new Configuration(), null);
+
+    fsnLock.writeLock(RwLockMode.FS);
+    assertTrue(fsnLock.hasWriteLock(RwLockMode.FS));
+    assertTrue(fsnLock.hasReadLock(RwLockMode.FS));
+    assertFalse(fsnLock.hasWriteLock(RwLockMode.BM));
+    assertFalse(fsnLock.hasWriteLock(RwLockMode.GLOBAL));
+
+    fsnLock.writeLock(RwLockMode.BM);
+    assertTrue(fsnLock.hasWriteLock(RwLockMode.GLOBAL));
+    fsnLock.writeUnlock(RwLockMode.BM, "bm", false, null);
+    fsnLock.writeUnlock(RwLockMode.FS, "fs", false, null);
+    assertFalse(fsnLock.hasReadLock(RwLockMode.FS));
+
+    fsnLock.readLock(RwLockMode.GLOBAL);
+    assertEquals(1, fsnLock.getReadHoldCount(RwLockMode.FS));
+    assertEquals(1, fsnLock.getReadHoldCount(RwLockMode.BM));
+    assertTrue(fsnLock.hasReadLock(RwLockMode.GLOBAL));
+    assertFalse(fsnLock.hasWriteLock(RwLockMode.GLOBAL));
+    fsnLock.readUnlock(RwLockMode.GLOBAL, "global", null);
+    assertFalse(fsnLock.hasReadLock(RwLockMode.FS));
+    assertFalse(fsnLock.hasReadLock(RwLockMode.BM));
+  }
+
+  @Test(timeout = 30000)
+  public void testNamespaceAndBlockLocksAreIndependent() throws Exception {
+    final FineGrainedFSNamesystemLock fsnLock =
+        new FineGrainedFSNamesystemLock(new Configuration(), null);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      fsnLock.writeLock(RwLockMode.FS);
+      // A block manager only writer is not blocked by a namespace writer.
+      executor.submit(() -> {
+        fsnLock.writeLock(RwLockMode.BM);
+        fsnLock.writeUnlock(RwLockMode.BM, "bm", false, null);
+      }).get(10, TimeUnit.SECONDS);
+
+      // A global writer has to wait for the namespace lock.
+      Future<?> global = executor.submit(() -> {
+        fsnLock.writeLock(RwLockMode.GLOBAL);
+        fsnLock.writeUnlock(RwLockMode.GLOBAL, "global", false, null);
+      });
+      try {
+        global.get(500, TimeUnit.MILLISECONDS);
+        fail("The global lock should not be acquired while the namespace"
+            + " lock is held");
+      } catch (TimeoutException e) {
+        // expected
+      }
+      fsnLock.writeUnlock(RwLockMode.FS, "fs", false, null);
+      global.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDetailedHoldMetrics() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY,
+        true);
+    FakeTimer timer = new FakeTimer();
+    MetricsRegistry registry = new MetricsRegistry("Test");
+    MutableRatesWithAggregation rates =
+        registry.newRatesWithAggregation("Test");
+    FineGrainedFSNamesystemLock fsnLock =
+        new FineGrainedFSNamesystemLock(conf, rates, timer);
+
+    fsnLock.writeLock(RwLockMode.FS);
+    timer.advance(1);
+    fsnLock.writeUnlock(RwLockMode.FS, "foo", false, null);
+
+    fsnLock.writeLock(RwLockMode.GLOBAL);
+    timer.advance(1);
+    fsnLock.writeUnlock(RwLockMode.GLOBAL, "bar", false, null);
+
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    rates.snapshot(rb, true);
+
+    assertCounter("FSNWriteLockFooNanosNumOps", 1L, rb);
+    assertCounter("FSNWriteLockBarNanosNumOps", 1L, rb);
+    assertCounter("BMWriteLockBarNanosNumOps", 1L, rb);
+    assertCounter("FSNWriteLockOverallNanosNumOps", 2L, rb);
+    assertCounter("BMWriteLockOverallNanosNumOps", 1L, rb);
+  }
+
+  @Test(timeout = 120000)
+  public void testNamespaceOperations() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_KEY,
+        FineGrainedFSNamesystemLock.class.getName());
+    try (MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build()) {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      FSNamesystem fsn = cluster.getNamesystem();
+      Path dir = new Path("/testNamespaceOperations");
+      Path file = new Path(dir, "file");
+      Path renamed = new Path(dir, "renamed");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+      assertTrue(fs.rename(file, renamed));
+      assertEquals(1, fsn.getBlockManager().getTotalBlocks());
+
+      assertTrue(fs.delete(dir, true));
+      assertFalse(fs.exists(renamed));
+      GenericTestUtils.waitFor(
+          () -> fsn.getBlockManager().getTotalBlocks() == 0, 100, 10000);
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testNamespaceOperationsRunAlongsideBlockManagerWork()
+      throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_LOCK_MODEL_PROVIDER_CLASS_KEY,
+        FineGrainedFSNamesystemLock.class.getName());
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try (MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build()) {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final FSNamesystem fsn = cluster.getNamesystem();
+      Path dir = new Path("/testAlongsideBlockManagerWork");
+      Path file = new Path(dir, "file");
+      Path renamed = new Path(dir, "renamed");
+      Path created = new Path(dir, "created");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+
+      // Hold the block manager lock like the MarkedDeleteBlockScrubber does.
+      final CountDownLatch bmLocked = new CountDownLatch(1);
+      final CountDownLatch releaseBm = new CountDownLatch(1);
+      Future<?> bmWork = executor.submit(() -> {
+        fsn.writeLock(RwLockMode.BM);
+        try {
+          bmLocked.countDown();
+          releaseBm.await();
+        } finally {
+          fsn.writeUnlock(RwLockMode.BM, "bmWork");
+        }
+        return null;
+      });
+      bmLocked.await();
+
+      FSDataOutputStream out;
+      try {
+        assertTrue(fs.rename(file, renamed));
+        assertTrue(fs.delete(renamed, false));
+        out = fs.create(created);
+
+        // Operations on the global lock wait for the block manager work.
+        Future<?> global = executor.submit(() -> {
+          fsn.writeLock();
+          fsn.writeUnlock("global");
+        });
+        try {
+          global.get(500, TimeUnit.MILLISECONDS);
+          fail("The global lock should not be acquired while the block"
+              + " manager lock is held");
+        } catch (TimeoutException e) {
+          // expected
+        }
+      } finally {
+        releaseBm.countDown();
+      }
+      bmWork.get(10, TimeUnit.SECONDS);
+      out.close();
+
+      assertFalse(fs.exists(renamed));
+      assertTrue(fs.exists(created));
+      GenericTestUtils.waitFor(
+          () -> fsn.getBlockManager().getTotalBlocks() == 0, 100, 10000);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -22,6 +22,7 @@
 import static org.apache.hadoop.hdfs.protocol.BlockType.STRIPED;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -292,6 +293,25 @@ public void testGetFullPathName() {
     assertEquals(Path.SEPARATOR, root.getFullPathName());
   }
 
+  @Test
+  public void testINodeMapGetById() {
+    INodeDirectory root = new INodeDirectory(INodeId.ROOT_INODE_ID,
+        INodeDirectory.ROOT_NAME, perm, 0L);
+    INodeMap inodeMap = INodeMap.newInstance(root);
+    assertSame(root, inodeMap.get(INodeId.ROOT_INODE_ID));
+
+    final long firstId = INodeId.ROOT_INODE_ID + 1;
+    for (long id = firstId; id < firstId + 100; id++) {
+      inodeMap.put(createINodeFile(id));
+    }
+    for (long id = firstId; id < firstId + 100; id++) {
+      assertEquals(id, inodeMap.get(id).getId());
+    }
+    inodeMap.remove(createINodeFile(firstId));
+    assertNull(inodeMap.get(firstId));
+    assertNull(inodeMap.get(firstId + 100));
+  }
+
   @Test
   public void testGetBlockType() {
     replication = 3;
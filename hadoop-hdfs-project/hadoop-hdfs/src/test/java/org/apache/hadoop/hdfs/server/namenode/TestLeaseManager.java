@@ -21,12 +21,16 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.SafeModeAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
@@ -36,6 +40,9 @@
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.FakeTimer;
 import org.apache.hadoop.util.Lists;
 
 import org.junit.Rule;
@@ -103,6 +110,89 @@ public void testCheckLease() throws InterruptedException {
     assertTrue(lm.countLease() < numLease);
   }
 
+  /**
+   * Check that a lease renewed before its hard limit expired is only released
+   * once the renewed hard limit has expired.
+   */
+  @Test
+  public void testRenewedLeaseIsNotReleased() throws Exception {
+    FakeTimer timer = new FakeTimer();
+    LeaseManager lm = new LeaseManager(makeMockFsNameSystem(), timer);
+    lm.setLeasePeriod(1000L, 2000L);
+    lm.addLease("holder", INodeId.ROOT_INODE_ID + 1);
+    timer.advance(1000);
+    lm.renewLease("holder");
+
+    // past the expiry of the lease before it was renewed
+    timer.advance(1200);
+    lm.checkLeases();
+    assertEquals(1, lm.countLease());
+
+    // past the expiry of the renewed lease
+    timer.advance(1000);
+    lm.checkLeases();
+    assertEquals(0, lm.countLease());
+  }
+
+  /**
+   * Check that the lease monitor releases the expired leases in batches,
+   * releasing the namesystem lock in between.
+   */
+  @Test
+  public void testExpiredLeasesAreReleasedInBatches() throws Exception {
+    FSNamesystem fsn = makeMockFsNameSystem();
+    // Stop releasing leases after each file.
+    when(fsn.getMaxLockHoldToReleaseLeaseMs()).thenReturn(-1L);
+    when(fsn.getLeaseRecheckIntervalMs()).thenReturn(10L);
+    LeaseManager lm = new LeaseManager(fsn);
+    lm.setLeasePeriod(0L, 0L);
+    final int numLeases = 10;
+    for (long i = 0; i < numLeases; i++) {
+      lm.addLease("holder" + i, INodeId.ROOT_INODE_ID + i);
+    }
+    lm.startMonitor();
+    try {
+      GenericTestUtils.waitFor(() -> lm.countLease() == 0, 10, 10000);
+    } finally {
+      lm.stopMonitor();
+    }
+    verify(fsn, atLeast(numLeases)).writeLockInterruptibly();
+    verify(fsn, atLeast(numLeases)).writeUnlock("leaseManager");
+  }
+
+  /**
+   * Check the metrics of the lease monitor.
+   */
+  @Test
+  public void testLeaseMonitorMetrics() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_KEY,
+        100L);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      DistributedFileSystem dfs = cluster.getFileSystem();
+      FSDataOutputStream out = dfs.create(new Path("/testLeaseMonitor"));
+      out.write(1);
+      out.hflush();
+      // Stop renewing the lease and let it expire.
+      dfs.getClient().getLeaseRenewer().interruptAndJoin();
+      cluster.setLeasePeriod(100L, 100L);
+
+      final String holder = dfs.getClient().getClientName();
+      final LeaseManager lm = cluster.getNamesystem().leaseManager;
+      GenericTestUtils.waitFor(() -> lm.getLease(holder) == null, 100, 30000);
+
+      MetricsRecordBuilder rb = getMetrics("NameNodeActivity");
+      assertCounterGt("LeasesScannedNumOps", 0L, rb);
+      assertCounterGt("LeaseRecoveryBatches", 0L, rb);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Test whether the internal lease holder name is updated properly.
    */
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.FileNotFoundException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetGenstampV2Op;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.TimesOp;
+import org.apache.hadoop.hdfs.server.namenode.ha.HATestUtil;
+import org.apache.hadoop.hdfs.server.namenode.ha.ObserverReadProxyProvider;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ObserverNamespaceCache}.
+ */
+public class TestObserverNamespaceCache {
+
+  private static final Collection<String> GROUPS =
+      Collections.singleton("group");
+
+  private static Configuration conf;
+  private static MiniQJMHACluster qjmhaCluster;
+  private static MiniDFSCluster dfsCluster;
+  private static DistributedFileSystem dfs;
+  private static ObserverNamespaceCache observerCache;
+
+  private final OpInstanceCache opCache = new OpInstanceCache();
+  private final AtomicLong txId = new AtomicLong(100);
+  private final FakeTimer timer = new FakeTimer();
+  private final ObserverNamespaceCache cache =
+      new ObserverNamespaceCache(100, 10, 1000, txId::get, timer);
+
+  private void cacheStatus(String path) {
+    cache.put(path, "user", GROUPS, true, mock(HdfsFileStatus.class));
+  }
+
+  private boolean isCached(String path) {
+    return cache.get(path, "user", GROUPS, true) != null;
+  }
+
+  @Test
+  public void testIsCacheable() {
+    assertTrue(ObserverNamespaceCache.isCacheable("/"));
+    assertTrue(ObserverNamespaceCache.isCacheable("/a/b"));
+    assertFalse(ObserverNamespaceCache.isCacheable("a/b"));
+    assertFalse(ObserverNamespaceCache.isCacheable("/a/b/"));
+    assertFalse(ObserverNamespaceCache.isCacheable("/a//b"));
+    assertFalse(ObserverNamespaceCache.isCacheable("/a/../b"));
+    assertFalse(ObserverNamespaceCache.isCacheable("/a/.snapshot/s1"));
+    assertFalse(ObserverNamespaceCache.isCacheable("/.reserved/.inodes/1"));
+  }
+
+  @Test
+  public void testKeyedByUserAndLinkResolution() {
+    cache.put("/a", "user", GROUPS, true, null);
+    assertNotNull(cache.get("/a", "user", GROUPS, true));
+    assertFalse(cache.get("/a", "user", GROUPS, true).isPresent());
+    assertNull(cache.get("/a", "other", GROUPS, true));
+    assertNull(cache.get("/a", "user", GROUPS, false));
+  }
+
+  @Test
+  public void testChangedGroups() {
+    cacheStatus("/a");
+    assertNull(cache.get("/a", "user", Collections.emptySet(), true));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidateSubtreeAndParent() {
+    for (String path : new String[] {"/", "/a", "/a/b", "/a/b/c", "/a/bc",
+        "/a/b/c/d", "/x"}) {
+      cacheStatus(path);
+    }
+    DeleteOp delete = DeleteOp.getInstance(opCache).setPath("/a/b");
+    cache.invalidate(delete);
+
+    assertFalse(isCached("/a/b"));
+    assertFalse(isCached("/a/b/c"));
+    assertFalse(isCached("/a/b/c/d"));
+    // the parent's children count and modification time changed
+    assertFalse(isCached("/a"));
+    assertTrue(isCached("/"));
+    assertTrue(isCached("/a/bc"));
+    assertTrue(isCached("/x"));
+  }
+
+  @Test
+  public void testInvalidateRename() {
+    for (String path : new String[] {"/src/f", "/dst/f", "/dst", "/other"}) {
+      cacheStatus(path);
+    }
+    RenameOp rename = RenameOp.getInstance(opCache)
+        .setSource("/src/f").setDestination("/dst/f");
+    cache.invalidate(rename);
+
+    assertFalse(isCached("/src/f"));
+    assertFalse(isCached("/dst/f"));
+    assertFalse(isCached("/dst"));
+    assertTrue(isCached("/other"));
+  }
+
+  @Test
+  public void testOpsWithoutNamespaceChanges() {
+    cacheStatus("/a");
+    cache.invalidate(SetGenstampV2Op.getInstance(opCache));
+    assertTrue(isCached("/a"));
+
+    TimesOp times = TimesOp.getInstance(opCache).setPath("/");
+    cache.invalidate(times);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testTxIdWindow() {
+    cacheStatus("/a");
+    txId.addAndGet(9);
+    assertTrue(isCached("/a"));
+    txId.incrementAndGet();
+    assertFalse(isCached("/a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testTtl() {
+    cacheStatus("/a");
+    timer.advance(999);
+    assertTrue(isCached("/a"));
+    timer.advance(1);
+    assertFalse(isCached("/a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testMaxEntries() {
+    for (int i = 0; i < 100; i++) {
+      cacheStatus("/f" + i);
+    }
+    assertEquals(100, cache.size());
+    cacheStatus("/g");
+    assertEquals(1, cache.size());
+    assertTrue(isCached("/g"));
+  }
+
+  @BeforeClass
+  public static void startUpCluster() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY, true);
+    conf.setBoolean(DFS_NAMENODE_OBSERVER_NAMESPACE_CACHE_ENABLED_KEY, true);
+    qjmhaCluster = HATestUtil.setUpObserverCluster(conf, 1, 1, true);
+    dfsCluster = qjmhaCluster.getDfsCluster();
+    dfs = HATestUtil.configureObserverReadFs(
+        dfsCluster, conf, ObserverReadProxyProvider.class, true);
+    observerCache = dfsCluster.getNamesystem(2).getNamespaceCache();
+  }
+
+  @AfterClass
+  public static void shutDownCluster() throws Exception {
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testObserverReads() throws Exception {
+    assertNotNull(observerCache);
+
+    Path dir = new Path("/dir");
+    Path file = new Path(dir, "file");
+    LambdaTestUtils.intercept(FileNotFoundException.class,
+        () -> dfs.getFileStatus(file));
+    assertTrue(observerCache.size() > 0);
+
+    DFSTestUtil.createFile(dfs, file, 10, (short) 1, 0L);
+    FileStatus status = dfs.getFileStatus(file);
+    assertEquals(10, status.getLen());
+    assertEquals(status, dfs.getFileStatus(file));
+    assertTrue(observerCache.size() > 0);
+
+    dfs.setPermission(dir, new FsPermission((short) 0700));
+    assertEquals(new FsPermission((short) 0700),
+        dfs.getFileStatus(dir).getPermission());
+
+    DFSTestUtil.appendFile(dfs, file, 5);
+    assertEquals(15, dfs.getFileStatus(file).getLen());
+
+    Path renamed = new Path("/renamed");
+    dfs.rename(dir, renamed);
+    LambdaTestUtils.intercept(FileNotFoundException.class,
+        () -> dfs.getFileStatus(file));
+    assertEquals(15,
+        dfs.getFileStatus(new Path(renamed, "file")).getLen());
+  }
+
+  @Test(timeout = 120000)
+  public void testRevokedGroup() throws Exception {
+    Path dir = new Path("/secure");
+    Path file = new Path(dir, "file");
+    DFSTestUtil.createFile(dfs, file, 10, (short) 1, 0L);
+    dfs.setOwner(dir, null, "staff");
+    dfs.setPermission(dir, new FsPermission((short) 0750));
+
+    UserGroupInformation user =
+        UserGroupInformation.createUserForTesting("user", new String[] {
+            "staff"});
+    DistributedFileSystem userFs = user.doAs(
+        (PrivilegedExceptionAction<DistributedFileSystem>) () ->
+            HATestUtil.configureObserverReadFs(dfsCluster, conf,
+                ObserverReadProxyProvider.class, true));
+    assertEquals(10, userFs.getFileStatus(file).getLen());
+    assertEquals(10, userFs.getFileStatus(file).getLen());
+    assertTrue(observerCache.size() > 0);
+
+    // the cached status is not served once the group is revoked
+    UserGroupInformation.createUserForTesting("user", new String[] {
+        "other"});
+    LambdaTestUtils.intercept(AccessControlException.class,
+        () -> userFs.getFileStatus(file));
+
+    UserGroupInformation.createUserForTesting("user", new String[] {
+        "staff"});
+    assertEquals(10, userFs.getFileStatus(file).getLen());
+    assertTrue(observerCache.size() > 0);
+    dfsCluster.getNameNodeRpc(2).refreshUserToGroupsMappings();
+    assertEquals(0, observerCache.size());
+    assertEquals(10, userFs.getFileStatus(file).getLen());
+    assertTrue(observerCache.size() > 0);
+    dfsCluster.getNameNodeRpc(2).refreshSuperUserGroupsConfiguration();
+    assertEquals(0, observerCache.size());
+  }
+}
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetGenstampV2Op;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PipelinedEditLogInputStream}.
+ */
+public class TestPipelinedEditLogInputStream {
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor();
+
+  /**
+   * A stream of SetGenstampV2Ops which decodes ops the way the edit log
+   * readers do, with the op cache of the calling thread.
+   */
+  private static class GenstampStream extends EditLogInputStream {
+    private final OpInstanceCache cache = new OpInstanceCache();
+    private final long numOps;
+    private final long failAt;
+    private long next = 1;
+    private volatile boolean closed;
+
+    GenstampStream(long numOps, long failAt) {
+      this.numOps = numOps;
+      this.failAt = failAt;
+    }
+
+    @Override
+    protected FSEditLogOp nextOp() throws IOException {
+      if (next == failAt) {
+        throw new IOException("failed at " + next);
+      }
+      if (next > numOps) {
+        return null;
+      }
+      SetGenstampV2Op op = SetGenstampV2Op.getInstance(cache);
+      op.setGenerationStamp(next);
+      op.setTransactionId(next);
+      next++;
+      return op;
+    }
+
+    @Override
+    public String getName() {
+      return "genstamps";
+    }
+
+    @Override
+    public long getFirstTxId() {
+      return 1;
+    }
+
+    @Override
+    public long getLastTxId() {
+      return numOps;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public int getVersion(boolean verifyVersion) {
+      return NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+    }
+
+    @Override
+    public long getPosition() {
+      return next - 1;
+    }
+
+    @Override
+    public long length() {
+      return numOps;
+    }
+
+    @Override
+    public boolean isInProgress() {
+      return false;
+    }
+
+    @Override
+    public void setMaxOpSize(int maxOpSize) {
+    }
+
+    @Override
+    public boolean isLocalLog() {
+      return true;
+    }
+  }
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testOpsAreDecodedInOrder() throws Exception {
+    GenstampStream source = new GenstampStream(100, -1);
+    List<FSEditLogOp> ops = new ArrayList<>();
+    try (EditLogInputStream in =
+        new PipelinedEditLogInputStream(source, 10, executor)) {
+      assertEquals(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION,
+          in.getVersion(true));
+      for (long i = 1; i <= 100; i++) {
+        FSEditLogOp op = in.readOp();
+        assertEquals(i, op.getTransactionId());
+        assertEquals(i, in.getPosition());
+        ops.add(op);
+      }
+      assertNull(in.readOp());
+      assertNull(in.readOp());
+    }
+    assertTrue(source.closed);
+    // ops decoded ahead must not share instances
+    for (int i = 0; i < ops.size(); i++) {
+      assertEquals(i + 1,
+          ((SetGenstampV2Op) ops.get(i)).genStampV2);
+    }
+  }
+
+  @Test
+  public void testDecodeErrorIsReturned() throws Exception {
+    try (EditLogInputStream in = new PipelinedEditLogInputStream(
+        new GenstampStream(100, 6), 10, executor)) {
+      for (long i = 1; i <= 5; i++) {
+        assertEquals(i, in.readOp().getTransactionId());
+      }
+      LambdaTestUtils.intercept(IOException.class, "failed at 6",
+          in::readOp);
+      assertNull(in.readOp());
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testCloseStopsDecoding() throws Exception {
+    GenstampStream endless = new GenstampStream(Long.MAX_VALUE, -1);
+    EditLogInputStream in =
+        new PipelinedEditLogInputStream(endless, 1, executor);
+    assertEquals(1, in.readOp().getTransactionId());
+    in.close();
+    assertTrue(endless.closed);
+
+    // the executor moves on to the next stream
+    try (EditLogInputStream next = new PipelinedEditLogInputStream(
+        new GenstampStream(1, -1), 1, executor)) {
+      assertEquals(1, next.readOp().getTransactionId());
+      assertNull(next.readOp());
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 30000)
+  public void testCloseWaitsForDecoder() throws Exception {
+    final CountDownLatch reading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final boolean[] closedWhileReading = new boolean[1];
+    GenstampStream source = new GenstampStream(Long.MAX_VALUE, -1) {
+      @Override
+      protected FSEditLogOp nextOp() throws IOException {
+        if (getPosition() == 1) {
+          reading.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          closedWhileReading[0] = super.closed;
+        }
+        return super.nextOp();
+      }
+    };
+    EditLogInputStream in =
+        new PipelinedEditLogInputStream(source, 1, executor);
+    assertEquals(1, in.readOp().getTransactionId());
+    reading.await();
+
+    Thread closer = new Thread(() -> {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    closer.start();
+    GenericTestUtils.waitFor(
+        () -> closer.getState() == Thread.State.WAITING, 10, 10000);
+    assertFalse(source.closed);
+    release.countDown();
+    closer.join();
+    assertTrue(source.closed);
+    assertFalse(closedWhileReading[0]);
+  }
+}
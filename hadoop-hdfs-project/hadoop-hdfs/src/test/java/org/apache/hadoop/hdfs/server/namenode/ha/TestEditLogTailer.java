@@ -107,7 +107,19 @@ private static Configuration getConf() {
   @Test
   public void testTailer() throws IOException, InterruptedException,
       ServiceFailedException {
+    testTailer(getConf());
+  }
+
+  @Test
+  public void testTailerWithDecodeAhead() throws IOException,
+      InterruptedException, ServiceFailedException {
     Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_DECODE_AHEAD_OPS_KEY, 2);
+    testTailer(conf);
+  }
+
+  private static void testTailer(Configuration conf) throws IOException,
+      InterruptedException, ServiceFailedException {
     conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 0);
     conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_KEY, 100);
     conf.setLong(EditLogTailer.DFS_HA_TAILEDITS_MAX_TXNS_PER_LOCK_KEY, 3);
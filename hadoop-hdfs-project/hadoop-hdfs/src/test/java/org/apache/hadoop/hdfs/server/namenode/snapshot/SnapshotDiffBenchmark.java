@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.snapshot;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.io.EnumSetWritable;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the time to page through a snapshot diff report listing of a
+ * large directory tree in which only a few files have changed, with and
+ * without skipping the subtrees which have not changed since the earlier
+ * snapshot.
+ * <p>
+ * The benchmark starts a name-node, creates {@code -dirs} directories of
+ * {@code -files} empty files each under a snapshottable directory, takes a
+ * snapshot, changes the permission of {@code -changes} random files and takes
+ * another snapshot. It then computes the listing between the two snapshots
+ * the same way as getSnapshotDiffReportListing does.
+ * <p>
+ * Usage: SnapshotDiffBenchmark [-dirs N] [-files N] [-changes N]
+ *   [-limit N] [-iterations N]
+ */
+public class SnapshotDiffBenchmark extends Configured implements Tool {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(SnapshotDiffBenchmark.class);
+  private static final String USAGE = "Usage: SnapshotDiffBenchmark"
+      + " [-dirs N] [-files N] [-changes N] [-limit N] [-iterations N]";
+  private static final String ROOT = "/benchmark";
+  private static final String CLIENT = "SnapshotDiffBenchmark";
+
+  private int numDirs = 1000;
+  private int filesPerDir = 100;
+  private int numChanges = 100;
+  private int limit =
+      DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT_DEFAULT;
+  private int iterations = 10;
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      switch (args[i]) {
+      case "-dirs":
+        numDirs = Integer.parseInt(args[++i]);
+        break;
+      case "-files":
+        filesPerDir = Integer.parseInt(args[++i]);
+        break;
+      case "-changes":
+        numChanges = Integer.parseInt(args[++i]);
+        break;
+      case "-limit":
+        limit = Integer.parseInt(args[++i]);
+        break;
+      case "-iterations":
+        iterations = Integer.parseInt(args[++i]);
+        break;
+      default:
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    LOG.info("--- snapshot diff: {} dirs of {} files, {} changes, {} entries"
+        + " per page, {} iterations ---", numDirs, filesPerDir, numChanges,
+        limit, iterations);
+
+    final Configuration conf = new HdfsConfiguration(getConf());
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
+    final File baseDir = GenericTestUtils.getTestDir(
+        SnapshotDiffBenchmark.class.getSimpleName());
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        new File(baseDir, "name").getPath());
+    DFSTestUtil.formatNameNode(conf);
+    final NameNode namenode = new NameNode(conf);
+    try {
+      createTree(namenode.getRpcServer());
+      final FSNamesystem fsn = namenode.getNamesystem();
+      final INodeDirectory root =
+          fsn.getFSDirectory().getINode(ROOT).asDirectory();
+      final long walked = run(fsn, root, false);
+      final long skipped = run(fsn, root, true);
+      if (walked != skipped) {
+        LOG.error("The reports differ: {} entries when walking the tree, {}"
+            + " when skipping unchanged subtrees", walked, skipped);
+        return 1;
+      }
+      return 0;
+    } finally {
+      namenode.stop();
+    }
+  }
+
+  private void createTree(NamenodeProtocols nn) throws Exception {
+    final long start = System.nanoTime();
+    final FsPermission perm = FsPermission.getFileDefault();
+    final EnumSetWritable<CreateFlag> flags =
+        new EnumSetWritable<>(EnumSet.of(CreateFlag.CREATE));
+    final int fanout = Math.max(1, (int) Math.sqrt(numDirs));
+    final String[] files = new String[numDirs * filesPerDir];
+    for (int d = 0; d < numDirs; d++) {
+      final String dir = ROOT + "/d" + (d / fanout) + "/d" + d;
+      for (int f = 0; f < filesPerDir; f++) {
+        final String file = dir + "/f" + f;
+        final HdfsFileStatus status = nn.create(file, perm, CLIENT, flags,
+            true, (short) 1, 1024L, null, null, null);
+        nn.complete(file, CLIENT, null, status.getFileId());
+        files[d * filesPerDir + f] = file;
+      }
+    }
+    nn.allowSnapshot(ROOT);
+    nn.createSnapshot(ROOT, "s0");
+    final Random random = new Random(0);
+    for (int i = 0; i < numChanges; i++) {
+      nn.setPermission(files[random.nextInt(files.length)],
+          FsPermission.createImmutable((short) 0600));
+    }
+    nn.createSnapshot(ROOT, "s1");
+    LOG.info("Created {} files in {} ms", files.length,
+        (System.nanoTime() - start) / 1000000);
+  }
+
+  /** @return the number of entries in the report. */
+  private long run(FSNamesystem fsn, INodeDirectory root,
+      boolean skipUnchanged) throws Exception {
+    final DirectorySnapshottableFeature sf =
+        root.getDirectorySnapshottableFeature();
+    long entries = 0;
+    long pages = 0;
+    final long[] latencies = new long[iterations];
+    for (int i = -1; i < iterations; i++) {
+      entries = 0;
+      pages = 0;
+      final long start = System.nanoTime();
+      byte[] startPath = DFSUtilClient.EMPTY_BYTES;
+      int index = -1;
+      do {
+        final SnapshotDiffReportListing report;
+        fsn.readLock();
+        try {
+          report = sf.computeDiff(root, root, "s0", "s1", startPath, index,
+              limit, skipUnchanged).generateReport();
+        } finally {
+          fsn.readUnlock();
+        }
+        entries += report.getModifyList().size()
+            + report.getCreateList().size() + report.getDeleteList().size();
+        pages++;
+        startPath = report.getLastPath();
+        index = report.getLastIndex();
+      } while (startPath.length > 0 || index != -1);
+      // the first iteration only warms up
+      if (i >= 0) {
+        latencies[i] = System.nanoTime() - start;
+      }
+    }
+    long total = 0;
+    for (long latency : latencies) {
+      total += latency;
+    }
+    LOG.info("{}: {} entries in {} pages, avg {} us per report",
+        skipUnchanged ? "skip unchanged subtrees" : "walk the whole tree",
+        entries, pages, total / Math.max(1, iterations) / 1000);
+    return entries;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new SnapshotDiffBenchmark(), args));
+  }
+}
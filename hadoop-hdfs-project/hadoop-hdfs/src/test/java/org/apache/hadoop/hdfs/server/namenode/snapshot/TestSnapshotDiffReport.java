@@ -24,6 +24,7 @@
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -38,9 +39,12 @@
 import org.apache.hadoop.fs.Options.Rename;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.SafeModeAction;
+import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
@@ -50,9 +54,11 @@
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
 import org.apache.hadoop.hdfs.protocol.SnapshotStatus;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
@@ -1649,4 +1655,181 @@ private String diff(Path path, String from, String to) throws Exception {
     final String report = diff.toString();
     return report.substring(report.indexOf(":") + 1);
   }
+
+  /**
+   * Check that skipping the subtrees which have not changed since the earlier
+   * snapshot gives the same reports as walking the whole tree, including after
+   * the namenode has been restarted from an fsimage and after a snapshot has
+   * been deleted.
+   */
+  @Test
+  public void testSkipUnchangedSubtrees() throws Exception {
+    final Path root = new Path("/skip");
+    for (int i = 0; i < 4; i++) {
+      for (int j = 0; j < 3; j++) {
+        DFSTestUtil.createFile(hdfs, new Path(root, "d" + i + "/e" + j + "/f"),
+            BLOCKSIZE, REPLICATION, SEED);
+      }
+    }
+    hdfs.allowSnapshot(root);
+    hdfs.createSnapshot(root, "s0");
+    DFSTestUtil.appendFile(hdfs, new Path(root, "d1/e1/f"), (int) BUFFERLEN);
+    DFSTestUtil.createFile(hdfs, new Path(root, "d2/e0/g"), BLOCKSIZE,
+        REPLICATION, SEED);
+    hdfs.createSnapshot(root, "s1");
+    hdfs.rename(new Path(root, "d3/e2"), new Path(root, "d0/e3"));
+    hdfs.setReplication(new Path(root, "d1/e2/f"), REPLICATION_1);
+    hdfs.delete(new Path(root, "d2/e1"), true);
+    hdfs.createSnapshot(root, "s2");
+    hdfs.setPermission(new Path(root, "d3/e0"),
+        FsPermission.createImmutable((short) 0700));
+
+    final String[] snapshots = {"s0", "s1", "s2", ""};
+    assertSameDiffs(root, root, snapshots);
+    assertSameDiffs(root, new Path(root, "d1"), snapshots);
+
+    // d0, d2 and d3 have not changed between s0 and s1
+    final FSNamesystem fsn = cluster.getNamesystem();
+    final INodeDirectory rootDir = fsn.getFSDirectory()
+        .getINode(root.toString()).asDirectory();
+    final DirectorySnapshottableFeature sf =
+        rootDir.getDirectorySnapshottableFeature();
+    fsn.readLock();
+    try {
+      final SnapshotDiffReport.DiffStats walked = sf.computeDiff(rootDir,
+          rootDir, "s0", "s1", false).generateReport().getStats();
+      final SnapshotDiffReport.DiffStats skipped = sf.computeDiff(rootDir,
+          rootDir, "s0", "s1", true).generateReport().getStats();
+      assertTrue(skipped.getTotalDirsProcessed()
+          < walked.getTotalDirsProcessed());
+    } finally {
+      fsn.readUnlock();
+    }
+
+    hdfs.setSafeMode(SafeModeAction.ENTER);
+    hdfs.saveNamespace();
+    hdfs.setSafeMode(SafeModeAction.LEAVE);
+    cluster.restartNameNode(true);
+    hdfs = cluster.getFileSystem();
+    assertSameDiffs(root, root, snapshots);
+
+    hdfs.deleteSnapshot(root, "s1");
+    assertSameDiffs(root, root, "s0", "s2", "");
+  }
+
+  /**
+   * Check that the marks are raised again when the changes are replayed from
+   * the edit log, so that the changed paths deep below the snapshot root are
+   * still reported and only the unchanged subtrees are skipped.
+   */
+  @Test
+  public void testSkipUnchangedSubtreesAfterEditLogReplay() throws Exception {
+    final Path root = new Path("/replay");
+    final Path changed = new Path(root, "a/b/c");
+    final Path unchanged = new Path(root, "a/x");
+    DFSTestUtil.createFile(hdfs, new Path(changed, "f"), BLOCKSIZE,
+        REPLICATION, SEED);
+    DFSTestUtil.createFile(hdfs, new Path(unchanged, "f"), BLOCKSIZE,
+        REPLICATION, SEED);
+    DFSTestUtil.createFile(hdfs, new Path(root, "y/z/g"), BLOCKSIZE,
+        REPLICATION, SEED);
+    hdfs.allowSnapshot(root);
+    hdfs.createSnapshot(root, "s0");
+    DFSTestUtil.appendFile(hdfs, new Path(changed, "f"), (int) BUFFERLEN);
+    hdfs.mkdirs(new Path(root, "y/z/h"));
+    hdfs.createSnapshot(root, "s1");
+    hdfs.delete(new Path(root, "y/z/g"), false);
+
+    // the marks are only rebuilt from the edit log
+    cluster.restartNameNode(true);
+    hdfs = cluster.getFileSystem();
+
+    final String[] snapshots = {"s0", "s1", ""};
+    assertSameDiffs(root, root, snapshots);
+    assertSameDiffs(root, new Path(root, "a"), snapshots);
+    verifyDiffReport(root, "s0", "",
+        new DiffReportEntry(DiffType.MODIFY, DFSUtil.string2Bytes("y/z")),
+        new DiffReportEntry(DiffType.CREATE, DFSUtil.string2Bytes("y/z/h")),
+        new DiffReportEntry(DiffType.DELETE, DFSUtil.string2Bytes("y/z/g")),
+        new DiffReportEntry(DiffType.MODIFY,
+            DFSUtil.string2Bytes("a/b/c/f")));
+
+    final FSNamesystem fsn = cluster.getNamesystem();
+    fsn.readLock();
+    try {
+      final INodeDirectory rootDir = fsn.getFSDirectory()
+          .getINode(root.toString()).asDirectory();
+      final int s0 = rootDir.getDirectorySnapshottableFeature()
+          .getSnapshot(DFSUtil.string2Bytes("s0")).getId();
+      assertTrue(fsn.getFSDirectory().getINode(changed.toString())
+          .asDirectory().getLatestSubtreeDiffId() >= s0);
+      assertTrue(fsn.getFSDirectory().getINode(unchanged.toString())
+          .asDirectory().getLatestSubtreeDiffId() < s0);
+    } finally {
+      fsn.readUnlock();
+    }
+  }
+
+  private void assertSameDiffs(Path snapshotRoot, Path scope,
+      String... snapshots) throws Exception {
+    final FSNamesystem fsn = cluster.getNamesystem();
+    final INodeDirectory rootDir = fsn.getFSDirectory()
+        .getINode(snapshotRoot.toString()).asDirectory();
+    final INodeDirectory scopeDir = fsn.getFSDirectory()
+        .getINode(scope.toString()).asDirectory();
+    final DirectorySnapshottableFeature sf =
+        rootDir.getDirectorySnapshottableFeature();
+    for (String from : snapshots) {
+      for (String to : snapshots) {
+        if (from.equals(to)) {
+          continue;
+        }
+        fsn.readLock();
+        try {
+          final SnapshotDiffReport walked = sf.computeDiff(rootDir, scopeDir,
+              from, to, false).generateReport();
+          final SnapshotDiffReport skipped = sf.computeDiff(rootDir, scopeDir,
+              from, to, true).generateReport();
+          LOG.info("Diff of {} from {} to {}: {}", scope, from, to, walked);
+          assertEquals(walked.getDiffList(), skipped.getDiffList());
+          assertEquals(listDiffs(sf, rootDir, scopeDir, from, to, false),
+              listDiffs(sf, rootDir, scopeDir, from, to, true));
+        } finally {
+          fsn.readUnlock();
+        }
+      }
+    }
+  }
+
+  /** @return all the pages of a diff report listing with 2 entries a page. */
+  private static String listDiffs(DirectorySnapshottableFeature sf,
+      INodeDirectory rootDir, INodeDirectory scopeDir, String from, String to,
+      boolean skipUnchanged) throws SnapshotException {
+    final StringBuilder b = new StringBuilder();
+    byte[] startPath = DFSUtilClient.EMPTY_BYTES;
+    int index = -1;
+    do {
+      final SnapshotDiffReportListing report = sf.computeDiff(rootDir,
+          scopeDir, from, to, startPath, index, 2, skipUnchanged)
+          .generateReport();
+      for (List<DiffReportListingEntry> entries : Arrays.asList(
+          report.getModifyList(), report.getCreateList(),
+          report.getDeleteList())) {
+        for (DiffReportListingEntry e : entries) {
+          b.append(e.getDirId()).append(' ').append(e.getFileId())
+              .append(' ').append(toPath(e.getSourcePath()))
+              .append(" -> ").append(toPath(e.getTargetPath())).append('\n');
+        }
+      }
+      b.append("--\n");
+      startPath = report.getLastPath();
+      index = report.getLastIndex();
+    } while (startPath.length > 0 || index != -1);
+    return b.toString();
+  }
+
+  private static String toPath(byte[][] components) {
+    return components == null ? null : DFSUtilClient.bytes2String(
+        DFSUtilClient.byteArray2bytes(components));
+  }
 }
@@ -220,6 +220,48 @@ public void testOpTotal() throws Exception {
     }
   }
 
+  @Test
+  public void testMaxTrackedUsers() throws Exception {
+    int numTopUsers = 2;
+    Configuration config = new Configuration();
+    config.setInt(DFSConfigKeys.NNTOP_BUCKETS_PER_WINDOW_KEY, 2);
+    config.setInt(DFSConfigKeys.NNTOP_NUM_USERS_KEY, numTopUsers);
+    config.setInt(DFSConfigKeys.NNTOP_MAX_TRACKED_USERS_KEY, 4);
+    int period = 10;
+    RollingWindowManager rollingWindowManager =
+        new RollingWindowManager(config, period);
+
+    // two heavy users among many more light users than are tracked
+    long total = 0;
+    for (int i = 0; i < 100; i++) {
+      rollingWindowManager.recordMetric(0, "op1", users[0], 5);
+      rollingWindowManager.recordMetric(0, "op1", users[1], 3);
+      rollingWindowManager.recordMetric(0, "op1",
+          users[2 + i % (users.length - 2)], 1);
+      total += 9;
+    }
+    TopWindow window = rollingWindowManager.snapshot(0);
+    assertEquals(2, window.getOps().size());
+    Op op = window.getOps().get(1);
+    assertEquals("op1", op.getOpType());
+    assertEquals(total, op.getTotalCount());
+    List<User> topUsers = op.getTopUsers();
+    assertEquals(numTopUsers, topUsers.size());
+    assertEquals(users[0], topUsers.get(0).getUser());
+    assertEquals(users[1], topUsers.get(1).getUser());
+    Assert.assertTrue(op.getAllUsers().size() <= 4);
+    Op allOp = window.getOps().get(0);
+    assertEquals(TopConf.ALL_CMDS, allOp.getOpType());
+    assertEquals(topUsers, allOp.getTopUsers());
+
+    rollingWindowManager.recordMetric(period / 2, "op1", users[2], 7);
+    window = rollingWindowManager.snapshot(period / 2);
+    assertEquals(total + 7, window.getOps().get(1).getTotalCount());
+    // the first bucket is out of the window
+    checkValues(rollingWindowManager, period, "op1", 7, 7);
+    checkValues(rollingWindowManager, period * 2, "op1", 0, 0);
+  }
+
   private void checkValues(RollingWindowManager rwManager, long time,
       String opType, long value, long expectedTotal) throws Exception {
     TopWindow window = rwManager.snapshot(time);
@@ -33,7 +33,9 @@
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.commons.collections4.map.LinkedMap;
@@ -339,6 +341,92 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
     }
     cache.close();
   }
+
+  /**
+   * Creates replicas of a block with new streams of the files of a pair, so
+   * that the replica can be created again after it has been evicted.
+   */
+  private static ShortCircuitReplicaCreator newStreamsCreator(
+      ExtendedBlockId key, ShortCircuitCache cache,
+      TestFileDescriptorPair pair) {
+    return () -> {
+      try {
+        return new ShortCircuitReplicaInfo(new ShortCircuitReplica(key,
+            new FileInputStream(pair.dir.getDir() + "/file0"),
+            new FileInputStream(pair.dir.getDir() + "/file1"),
+            cache, Time.monotonicNow(), null));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    };
+  }
+
+  @Test(timeout=60000)
+  public void testShardedCacheConcurrentReaders() throws Exception {
+    final ShortCircuitCache small =
+        new ShortCircuitCache(2, 10000000, 1, 10000000, 1, 10000000, 0, 16);
+    Assert.assertEquals(2, small.getNumShards());
+    small.close();
+
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(8, 10000000, 4, 10000000, 1, 10000000, 0, 4);
+    Assert.assertEquals(4, cache.getNumShards());
+    final TestFileDescriptorPair pair = new TestFileDescriptorPair();
+    final int numBlocks = 32;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread[] readers = new Thread[8];
+    for (int t = 0; t < readers.length; t++) {
+      final Random rand = new Random(t);
+      readers[t] = new Thread(() -> {
+        try {
+          for (int i = 0; i < 2000; i++) {
+            ExtendedBlockId key =
+                new ExtendedBlockId(rand.nextInt(numBlocks), "test_bp1");
+            // Two readers of the same block, so that the first one to close
+            // drops its reference without the shard lock.
+            ShortCircuitReplicaInfo first = cache.fetchOrCreate(key,
+                newStreamsCreator(key, cache, pair));
+            ShortCircuitReplicaInfo second = cache.fetchOrCreate(key,
+                newStreamsCreator(key, cache, pair));
+            Assert.assertNotNull(first.getReplica());
+            Assert.assertNotNull(second.getReplica());
+            first.getReplica().unref();
+            second.getReplica().unref();
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      readers[t].start();
+    }
+    for (Thread t : readers) {
+      t.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError("reader failed", failure.get());
+    }
+    // Every cached replica is only referenced by the cache, and each shard
+    // holds at most its share of the cache.
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          LinkedMap evictable,
+          LinkedMap evictableMmapped) {
+        Assert.assertTrue(failedLoads.isEmpty());
+        Assert.assertTrue(evictable.size() <= 8);
+        Assert.assertEquals(0, evictableMmapped.size());
+        Assert.assertEquals(replicas.size(), evictable.size());
+        for (ShortCircuitReplica replica : replicas.values()) {
+          Assert.assertEquals(1, replica.refCount.get());
+          Assert.assertNotNull(replica.getEvictableTimeNs());
+        }
+      }
+    });
+    cache.close();
+    pair.close();
+  }
   
   @Test(timeout=60000)
   public void testTimeBasedStaleness() throws Exception {
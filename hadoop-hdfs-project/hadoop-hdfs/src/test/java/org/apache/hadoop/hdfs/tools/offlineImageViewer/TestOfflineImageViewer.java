@@ -42,6 +42,7 @@
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -143,6 +144,7 @@
 import static org.apache.hadoop.hdfs.tools.offlineImageViewer.PBImageXmlWriter.ERASURE_CODING_SECTION_SCHEMA;
 import static org.apache.hadoop.hdfs.tools.offlineImageViewer.PBImageXmlWriter.ERASURE_CODING_SECTION_SCHEMA_CODEC_NAME;
 import static org.apache.hadoop.hdfs.tools.offlineImageViewer.PBImageXmlWriter.ERASURE_CODING_SECTION_SCHEMA_OPTION;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -850,6 +852,120 @@ public void testParallelPBDelimitedWriter() throws Exception {
         + "/parallel-delimited.db");
   }
 
+  @Test
+  public void testPartitionedPBDelimitedWriter() throws Exception {
+    File serialOut = new File(tempDir, "serialDelimitedForPartitions");
+    assertEquals(0, OfflineImageViewerPB.run(new String[] {"-p", "Delimited",
+        "-i", originalFsimage.getAbsolutePath(),
+        "-o", serialOut.getAbsolutePath()}));
+    List<String> expected = Files.readAllLines(serialOut.toPath());
+
+    File partitionDir = new File(tempDir, "partitionedDelimitedOut");
+    FileUtils.deleteDirectory(partitionDir);
+    assertEquals(0, OfflineImageViewerPB.run(new String[] {"-p", "Delimited",
+        "-i", originalFsimage.getAbsolutePath(),
+        "-o", partitionDir.getAbsolutePath(),
+        "-m", "4", "-partition"}));
+    String[] parts = partitionDir.list((dir, name) -> name.startsWith("part-"));
+    Arrays.sort(parts);
+    assertTrue(parts.length > 1);
+    List<String> actual = Lists.newArrayList(
+        Files.readAllLines(new File(partitionDir, "_header").toPath()));
+    for (String part : parts) {
+      actual.addAll(Files.readAllLines(new File(partitionDir, part).toPath()));
+    }
+    assertEquals(expected, actual);
+
+    // The partitions are never written over an existing directory.
+    assertEquals(-1, OfflineImageViewerPB.run(new String[] {"-p", "Delimited",
+        "-i", originalFsimage.getAbsolutePath(),
+        "-o", partitionDir.getAbsolutePath(),
+        "-m", "4", "-partition"}));
+  }
+
+  @Test
+  public void testPBHistogramWriter() throws Exception {
+    // Aggregate the output of the Delimited processor by hand.
+    File delimitedOut = new File(tempDir, "delimitedForHistogram");
+    assertEquals(0, OfflineImageViewerPB.run(new String[] {"-p", "Delimited",
+        "-i", originalFsimage.getAbsolutePath(),
+        "-o", delimitedOut.getAbsolutePath()}));
+    Map<String, long[]> expected = new HashMap<>();
+    List<String> rows = Files.readAllLines(delimitedOut.toPath());
+    for (String row : rows.subList(1, rows.size())) {
+      String[] fields = row.split("\t");
+      if (fields[9].startsWith("d")) {
+        continue;
+      }
+      int depth = StringUtils.countMatches(fields[0], '/');
+      long size = Long.parseLong(fields[6]);
+      for (String key : new String[] {depth + "\tSize",
+          depth + "\tReplication\t" + fields[1]}) {
+        long[] v = expected.computeIfAbsent(key, k -> new long[2]);
+        v[0]++;
+        v[1] += size;
+      }
+    }
+
+    File serialOut = new File(tempDir, "serialHistogramOut");
+    assertEquals(0, OfflineImageViewerPB.run(new String[] {"-p", "Histogram",
+        "-i", originalFsimage.getAbsolutePath(),
+        "-o", serialOut.getAbsolutePath()}));
+    File parallelOut = new File(tempDir, "parallelHistogramOut");
+    assertEquals(0, OfflineImageViewerPB.run(new String[] {"-p", "Histogram",
+        "-i", originalFsimage.getAbsolutePath(),
+        "-o", parallelOut.getAbsolutePath(), "-m", "4"}));
+    List<String> histogram = Files.readAllLines(serialOut.toPath());
+    assertEquals(histogram, Files.readAllLines(parallelOut.toPath()));
+    assertEquals("Depth\tHistogram\tBucket\tFiles\tBytes", histogram.get(0));
+
+    Map<String, long[]> actual = new HashMap<>();
+    long ageFiles = 0;
+    for (String row : histogram.subList(1, histogram.size())) {
+      String[] fields = row.split("\t");
+      long files = Long.parseLong(fields[3]);
+      long bytes = Long.parseLong(fields[4]);
+      String key = fields[0] + "\t" + fields[1];
+      if (fields[1].equals(PBImageHistogramWriter.REPLICATION)) {
+        key += "\t" + fields[2];
+      } else if (fields[1].equals(PBImageHistogramWriter.AGE)) {
+        ageFiles += files;
+        continue;
+      }
+      long[] v = actual.computeIfAbsent(key, k -> new long[2]);
+      v[0] += files;
+      v[1] += bytes;
+    }
+    assertEquals(expected.keySet(), actual.keySet());
+    long sizeFiles = 0;
+    for (Map.Entry<String, long[]> e : expected.entrySet()) {
+      assertArrayEquals(e.getKey(), e.getValue(), actual.get(e.getKey()));
+      if (e.getKey().endsWith("Size")) {
+        sizeFiles += e.getValue()[0];
+      }
+    }
+    assertEquals(sizeFiles, ageFiles);
+  }
+
+  @Test
+  public void testHistogramBuckets() {
+    assertEquals(0, PBImageHistogramWriter.DepthHistograms.log2Bucket(0));
+    assertEquals(1, PBImageHistogramWriter.DepthHistograms.log2Bucket(1));
+    assertEquals(2, PBImageHistogramWriter.DepthHistograms.log2Bucket(2));
+    assertEquals(3, PBImageHistogramWriter.DepthHistograms.log2Bucket(3));
+    assertEquals(3, PBImageHistogramWriter.DepthHistograms.log2Bucket(4));
+    assertEquals(4, PBImageHistogramWriter.DepthHistograms.log2Bucket(5));
+    assertEquals(64,
+        PBImageHistogramWriter.DepthHistograms.log2Bucket(Long.MAX_VALUE));
+    assertEquals(4, PBImageHistogramWriter.DepthHistograms.log2BucketBound(3));
+    assertEquals(Long.MAX_VALUE,
+        PBImageHistogramWriter.DepthHistograms.log2BucketBound(64));
+
+    assertEquals(1, PBImageHistogramWriter.getChildDepth("/"));
+    assertEquals(2, PBImageHistogramWriter.getChildDepth("/dir0"));
+    assertEquals(3, PBImageHistogramWriter.getChildDepth("/dir0/dir1"));
+  }
+
   @Test
   public void testCorruptionOutputEntryBuilder() throws IOException {
     PBImageCorruptionDetector corrDetector =
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTimingWheel {
+  private static final long TICK = 10;
+
+  private static List<Long> advance(TimingWheel<Long> wheel, long now) {
+    List<Long> due = new ArrayList<>();
+    wheel.advance(now, due::add);
+    Collections.sort(due);
+    return due;
+  }
+
+  @Test
+  public void testItemsAreDueAtTheirTick() {
+    final TimingWheel<Long> wheel = new TimingWheel<>(TICK, 1000);
+    wheel.add(1005L, 1005);
+    wheel.add(1015L, 1015);
+    wheel.add(1019L, 1019);
+    wheel.add(1030L, 1030);
+    assertEquals(4, wheel.size());
+
+    assertEquals(Arrays.asList(1005L), advance(wheel, 1001));
+    assertEquals(Collections.emptyList(), advance(wheel, 1009));
+    // due up to one tick early
+    assertEquals(Arrays.asList(1015L, 1019L), advance(wheel, 1010));
+    assertEquals(Collections.emptyList(), advance(wheel, 1029));
+    assertEquals(Arrays.asList(1030L), advance(wheel, 5000));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testElapsedItemsAreDueAtTheNextTick() {
+    final TimingWheel<Long> wheel = new TimingWheel<>(TICK, 1000);
+    wheel.advance(1005, t -> { });
+    // the tick of 1000 has been handed out already
+    wheel.add(500L, 500);
+    wheel.add(1008L, 1008);
+    assertEquals(Collections.emptyList(), advance(wheel, 1009));
+    assertEquals(Arrays.asList(500L, 1008L), advance(wheel, 1010));
+  }
+
+  @Test
+  public void testFarDeadlinesMoveDownTheLevels() {
+    final Random random = new Random(0);
+    final long start = 123456789L;
+    final TimingWheel<Long> wheel = new TimingWheel<>(TICK, start);
+    final List<Long> deadlines = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      // up to four levels of slots ahead
+      long deadline = start + (long) (random.nextDouble() * TICK * (1 << 24));
+      deadlines.add(deadline);
+      wheel.add(deadline, deadline);
+    }
+    Collections.sort(deadlines);
+
+    final List<Long> handedOut = new ArrayList<>();
+    long now = start;
+    while (wheel.size() > 0) {
+      now += 1 + random.nextInt(100000);
+      for (long deadline : advance(wheel, now)) {
+        assertTrue(deadline + " due at " + now,
+            deadline / TICK <= now / TICK);
+        assertTrue(deadline + " due late at " + now,
+            deadline > now - 100000 - TICK);
+        handedOut.add(deadline);
+      }
+    }
+    assertEquals(deadlines, handedOut);
+  }
+
+  @Test
+  public void testClear() {
+    final TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+    wheel.add(10L, 10);
+    wheel.add(100000L, 100000);
+    wheel.clear();
+    assertEquals(0, wheel.size());
+    assertEquals(Collections.emptyList(), advance(wheel, 1000000));
+    wheel.add(1000015L, 1000015);
+    assertEquals(Arrays.asList(1000015L), advance(wheel, 1000010));
+  }
+}
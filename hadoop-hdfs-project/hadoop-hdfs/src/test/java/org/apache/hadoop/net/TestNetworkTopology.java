@@ -20,6 +20,9 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -475,6 +478,93 @@ public void testChooseRandomExcludedNodeList() {
     }
   }
 
+  /**
+   * This test checks that the lock-free snapshot is rebuilt after nodes are
+   * added or removed, and that it agrees with the tree on distances.
+   */
+  @Test
+  public void testSnapshotFollowsTopologyChanges() {
+    NetworkTopology topology =
+        NetworkTopology.getInstance(new Configuration());
+    for (DatanodeDescriptor dn : dataNodes) {
+      topology.add(dn);
+    }
+    NetworkTopology.Snapshot snapshot = topology.getSnapshot();
+    assertSame(snapshot, topology.getSnapshot());
+    assertEquals(dataNodes.length, snapshot.getNumOfLeaves());
+    for (DatanodeDescriptor dn1 : dataNodes) {
+      for (DatanodeDescriptor dn2 : dataNodes) {
+        assertEquals(NetworkTopology.getDistanceByPath(dn1, dn2),
+            topology.getDistance(dn1, dn2));
+      }
+    }
+
+    topology.remove(dataNodes[0]);
+    assertNotSame(snapshot, topology.getSnapshot());
+    assertFalse(topology.contains(dataNodes[0]));
+    assertEquals(Integer.MAX_VALUE,
+        topology.getDistance(dataNodes[0], dataNodes[1]));
+    for (int i = 0; i < 20; i++) {
+      assertSame(dataNodes[1], topology.chooseRandom("/d1/r1"));
+    }
+    Set<Node> excludedNodes = new HashSet<>();
+    excludedNodes.add(dataNodes[1]);
+    assertNull(topology.chooseRandom("/d1/r1", excludedNodes));
+    assertNull(topology.chooseRandom(NodeBase.getPath(dataNodes[0])));
+
+    topology.add(dataNodes[0]);
+    assertTrue(topology.contains(dataNodes[0]));
+    for (int i = 0; i < 20; i++) {
+      assertSame(dataNodes[0], topology.chooseRandom("/d1/r1", excludedNodes));
+    }
+  }
+
+  /**
+   * This test checks that a node removed while chooseRandom reads the
+   * snapshot is not returned, and that a chooseRandom right after the removal
+   * never returns it either.
+   */
+  @Test
+  public void testChooseRandomAfterRemove() {
+    final boolean[] removeOnDraw = {false};
+    final NetworkTopology topology = new NetworkTopology() {
+      private final Random random = new Random() {
+        @Override
+        public int nextInt(int bound) {
+          if (removeOnDraw[0]) {
+            // the removal completes after the snapshot was read, and the
+            // first leaf is the one that was removed
+            removeOnDraw[0] = false;
+            remove(dataNodes[0]);
+            return 0;
+          }
+          return super.nextInt(bound);
+        }
+      };
+
+      @Override
+      Random getRandom() {
+        return random;
+      }
+    };
+    topology.add(dataNodes[0]);
+    topology.add(dataNodes[1]);
+    assertSame(dataNodes[0], topology.getSnapshot().getLeaf(0));
+
+    removeOnDraw[0] = true;
+    assertSame(dataNodes[1], topology.chooseRandom("/d1/r1"));
+    assertFalse(topology.contains(dataNodes[0]));
+    for (int i = 0; i < 20; i++) {
+      assertSame(dataNodes[1], topology.chooseRandom("/d1/r1"));
+    }
+
+    topology.add(dataNodes[0]);
+    topology.remove(dataNodes[1]);
+    for (int i = 0; i < 20; i++) {
+      assertSame(dataNodes[0], topology.chooseRandom("/d1/r1"));
+    }
+  }
+
   /**
    * This test checks that chooseRandom works when all nodes are excluded.
    */
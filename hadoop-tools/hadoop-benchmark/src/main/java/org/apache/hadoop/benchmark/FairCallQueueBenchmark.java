@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.FairCallQueue;
+import org.apache.hadoop.ipc.Schedulable;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * Measure enqueue and dequeue throughput of the FairCallQueue when many
+ * readers and handlers use it at once, with plain and sharded sub-queues.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FairCallQueueBenchmark {
+
+  static final String NAMESPACE = "ipc.benchmark";
+  static final int PRIORITY_LEVELS = 4;
+  static final int CAPACITY = 4096;
+
+  static final class BenchmarkCall implements Schedulable {
+    private final int priorityLevel;
+
+    BenchmarkCall(int priorityLevel) {
+      this.priorityLevel = priorityLevel;
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return null;
+    }
+
+    @Override
+    public int getPriorityLevel() {
+      return priorityLevel;
+    }
+  }
+
+  @State(Scope.Group)
+  public static class QueueChoice {
+
+    /** Number of shards per sub-queue, 0 for LinkedBlockingQueue. */
+    @Param({"0", "8", "16"})
+    private int shards;
+
+    private FairCallQueue<Schedulable> queue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      Configuration conf = new Configuration();
+      conf.setInt(NAMESPACE + "." +
+          CommonConfigurationKeys.IPC_CALLQUEUE_SUBQUEUE_SHARDS_KEY, shards);
+      queue = new FairCallQueue<>(PRIORITY_LEVELS, CAPACITY, NAMESPACE, conf);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class CallSource {
+    private final Schedulable[] calls = new Schedulable[PRIORITY_LEVELS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      for (int i = 0; i < PRIORITY_LEVELS; i++) {
+        calls[i] = new BenchmarkCall(i);
+      }
+    }
+
+    Schedulable nextCall() {
+      next = (next + 1) % PRIORITY_LEVELS;
+      return calls[next];
+    }
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(8)
+  public boolean enqueue(QueueChoice queueChoice, CallSource source) {
+    return queueChoice.queue.offer(source.nextCall());
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(8)
+  public void dequeue(QueueChoice queueChoice, Blackhole blackhole) {
+    blackhole.consume(queueChoice.queue.poll());
+  }
+
+  /**
+   * Run the benchmarks.
+   * @param args unused.
+   * @throws Exception any ex.
+   */
+  public static void main(String[] args) throws Exception {
+    OptionsBuilder opts = new OptionsBuilder();
+    opts.include("FairCallQueueBenchmark");
+    opts.jvmArgs("-server", "-Xms256m", "-Xmx2g");
+    opts.forks(1);
+    new Runner(opts.build()).run();
+  }
+}
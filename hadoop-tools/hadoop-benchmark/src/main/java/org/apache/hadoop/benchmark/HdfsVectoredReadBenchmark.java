@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * The HDFS variant of {@link VectoredReadBenchmark}: reads column chunk
+ * sized ranges of a file in HDFS with vectored reads and with one
+ * positional read per range.
+ * <p>
+ * The ranges are read in parallel on the hedged read thread pool when it is
+ * configured, which is set by the {@code hedgedReadThreads} parameter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HdfsVectoredReadBenchmark {
+
+  static final Path DATA_PATH = getTestDataPath();
+  static final String DATA_PATH_PROPERTY = "bench.hdfs.data";
+  static final int NUM_RANGES = 100;
+  static final long SEEK_SIZE = 1024L * 1024;
+
+  static Path getTestDataPath() {
+    String value = System.getProperty(DATA_PATH_PROPERTY);
+    return new Path(value == null ? "hdfs:///tmp/taxi.orc" : value);
+  }
+
+  @State(Scope.Thread)
+  public static class FileSystemChoice {
+
+    @Param({"0", "16"})
+    private int hedgedReadThreads;
+
+    private FileSystem fs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      Configuration conf = new Configuration();
+      conf.setInt("dfs.client.hedged.read.threadpool.size",
+          hedgedReadThreads);
+      try {
+        fs = FileSystem.newInstance(DATA_PATH.toUri(), conf);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Can't get filesystem", e);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      fs.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ReadChoice {
+    @Param({"direct", "array"})
+    private String bufferKind;
+
+    /** Size of each range, from small column chunks to whole stripes. */
+    @Param({"4096", "65536", "1048576"})
+    private int readSize;
+
+    private IntFunction<ByteBuffer> allocate;
+    @Setup(Level.Trial)
+    public void setup() {
+      allocate = "array".equals(bufferKind)
+                     ? ByteBuffer::allocate : ByteBuffer::allocateDirect;
+    }
+  }
+
+  @Benchmark
+  public void vectoredRead(FileSystemChoice fsChoice,
+                           ReadChoice readChoice,
+                           Blackhole blackhole) throws Exception {
+    try (FSDataInputStream stream = fsChoice.fs.open(DATA_PATH)) {
+      List<FileRange> ranges = new ArrayList<>();
+      for (int m = 0; m < NUM_RANGES; ++m) {
+        ranges.add(FileRange.createFileRange(m * SEEK_SIZE,
+            readChoice.readSize));
+      }
+      stream.readVectored(ranges, readChoice.allocate);
+      for (FileRange range : ranges) {
+        blackhole.consume(range.getData().get());
+      }
+    }
+  }
+
+  @Benchmark
+  public void syncRead(FileSystemChoice fsChoice,
+                       ReadChoice readChoice,
+                       Blackhole blackhole) throws Exception {
+    try (FSDataInputStream stream = fsChoice.fs.open(DATA_PATH)) {
+      List<byte[]> result = new ArrayList<>();
+      for (int m = 0; m < NUM_RANGES; ++m) {
+        byte[] buffer = new byte[readChoice.readSize];
+        stream.readFully(m * SEEK_SIZE, buffer);
+        result.add(buffer);
+      }
+      blackhole.consume(result);
+    }
+  }
+
+  /**
+   * Run the benchmarks.
+   * @param args the URI of a data file of at least 100MB in HDFS
+   * @throws Exception any ex.
+   */
+  public static void main(String[] args) throws Exception {
+    OptionsBuilder opts = new OptionsBuilder();
+    opts.include("HdfsVectoredReadBenchmark");
+    opts.jvmArgs("-server", "-Xms256m", "-Xmx2g",
+        "-D" + DATA_PATH_PROPERTY + "=" + args[0]);
+    opts.forks(1);
+    new Runner(opts.build()).run();
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.ExtendedBlockId;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Mmap;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Read;
+import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
+import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
+import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitReplica;
+import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitReplicaInfo;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Measures the concurrent opening and closing of short-circuit readers:
+ * each operation looks up the replica of a block in a
+ * {@link ShortCircuitCache}, creating it when it is not cached, and drops
+ * the reference again, as a BlockReaderLocal does when it is closed.
+ * <p>
+ * The {@code shards} parameter sets the number of shards of the cache.
+ * The blocks are read from files on the local disk, so that the cost of a
+ * cache miss is that of opening the file descriptors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShortCircuitCacheBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class CacheState {
+
+    @Param({"1", "16"})
+    private int shards;
+
+    /** Number of blocks read, a few of which do not fit in the cache. */
+    @Param({"64", "300"})
+    private int numBlocks;
+
+    private File dir;
+    private File dataFile;
+    private File metaFile;
+    private ExtendedBlockId[] keys;
+    private ShortCircuitCache cache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      dir = Files.createTempDirectory("ShortCircuitCacheBenchmark").toFile();
+      dataFile = new File(dir, "data");
+      try (FileOutputStream out = new FileOutputStream(dataFile)) {
+        out.write(new byte[4096]);
+      }
+      metaFile = new File(dir, "meta");
+      try (DataOutputStream out =
+               new DataOutputStream(new FileOutputStream(metaFile))) {
+        BlockMetadataHeader.writeHeader(out,
+            DataChecksum.newDataChecksum(DataChecksum.Type.CRC32C, 512));
+      }
+      keys = new ExtendedBlockId[numBlocks];
+      for (int i = 0; i < numBlocks; i++) {
+        keys[i] = new ExtendedBlockId(i, "BP-benchmark");
+      }
+      cache = new ShortCircuitCache(
+          Read.ShortCircuit.STREAMS_CACHE_SIZE_DEFAULT,
+          Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_DEFAULT,
+          Mmap.CACHE_SIZE_DEFAULT,
+          Mmap.CACHE_TIMEOUT_MS_DEFAULT,
+          Mmap.RETRY_TIMEOUT_MS_DEFAULT,
+          HdfsClientConfigKeys.ShortCircuit.REPLICA_STALE_THRESHOLD_MS_DEFAULT,
+          0, shards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      cache.close();
+      FileUtil.fullyDelete(dir);
+    }
+
+    /** Open a reader of a block and close it again. */
+    ShortCircuitReplica openClose(ExtendedBlockId key) {
+      ShortCircuitReplicaInfo info = cache.fetchOrCreate(key,
+          () -> newReplica(key));
+      ShortCircuitReplica replica = info.getReplica();
+      if (replica == null) {
+        throw new IllegalStateException("Failed to load " + key);
+      }
+      replica.unref();
+      return replica;
+    }
+
+    /** Open new file descriptors of a block, as the DataNode passes them. */
+    private ShortCircuitReplicaInfo newReplica(ExtendedBlockId key) {
+      try {
+        return new ShortCircuitReplicaInfo(new ShortCircuitReplica(key,
+            new FileInputStream(dataFile), new FileInputStream(metaFile),
+            cache, Time.monotonicNow(), null));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /** Readers of random blocks. */
+  @Benchmark
+  @Threads(16)
+  public void randomBlocks(CacheState state, Blackhole blackhole) {
+    ExtendedBlockId key =
+        state.keys[ThreadLocalRandom.current().nextInt(state.numBlocks)];
+    blackhole.consume(state.openClose(key));
+  }
+
+  /**
+   * Readers of a single block, whose replica most threads hold at the same
+   * time.
+   */
+  @Benchmark
+  @Threads(16)
+  public void hotBlock(CacheState state, Blackhole blackhole) {
+    blackhole.consume(state.openClose(state.keys[0]));
+  }
+
+  /**
+   * Run the benchmarks.
+   * @param args unused
+   * @throws Exception any ex.
+   */
+  public static void main(String[] args) throws Exception {
+    OptionsBuilder opts = new OptionsBuilder();
+    opts.include("ShortCircuitCacheBenchmark");
+    opts.jvmArgs("-server", "-Xms256m", "-Xmx2g");
+    opts.forks(1);
+    new Runner(opts.build()).run();
+  }
+}
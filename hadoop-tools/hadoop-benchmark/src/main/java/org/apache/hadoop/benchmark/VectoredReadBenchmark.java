@@ -236,7 +236,7 @@ public void syncRead(FileSystemChoice fsChoice,
    */
   public static void main(String[] args) throws Exception {
     OptionsBuilder opts = new OptionsBuilder();
-    opts.include("VectoredReadBenchmark");
+    opts.include("\\.VectoredReadBenchmark\\.");
     opts.jvmArgs("-server", "-Xms256m", "-Xmx2g",
         "-D" + DATA_PATH_PROPERTY + "=" + args[0]);
     opts.forks(1);